@@ -0,0 +1,25 @@
+package finley.peter.nextgear.benchmark;
+
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import finley.peter.nextgear.NextGearAssignmentApplication;
+
+/**
+ * Starts the application, without the web server, for benchmarks that need
+ * the service or repository layers.
+ */
+final class BenchmarkContext {
+
+	private BenchmarkContext() {
+	}
+
+	static ConfigurableApplicationContext start(String... properties) {
+		
+		return new SpringApplicationBuilder(NextGearAssignmentApplication.class)
+				.web(false)
+				.properties("spring.main.banner-mode=off", "logging.level.root=WARN")
+				.properties(properties)
+				.run();
+	}
+}
@@ -0,0 +1,106 @@
+package finley.peter.nextgear.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.Example;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort.Direction;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import finley.peter.nextgear.dao.ContractRepository;
+import finley.peter.nextgear.model.Contract;
+import finley.peter.nextgear.model.ContractField;
+import finley.peter.nextgear.model.ContractFilter;
+import finley.peter.nextgear.model.ContractStatus;
+import finley.peter.nextgear.model.ContractSummary;
+import finley.peter.nextgear.model.ContractType;
+import finley.peter.nextgear.service.ContractService;
+
+/**
+ * Compares listing a page of contracts by status using a query by
+ * {@link Example} against the typed {@link ContractFilter} query used by
+ * <code>GET /contracts</code>.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations=5, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(1)
+public class ContractQueryBenchmark {
+
+	private static final int CONTRACTS = 10000;
+	
+	private static final int PAGE_SIZE = 100;
+	
+	private ConfigurableApplicationContext context;
+	
+	private ContractRepository contractRepository;
+	
+	private TransactionTemplate transactionTemplate;
+	
+	@Setup(Level.Trial)
+	public void setup() {
+		
+		context = BenchmarkContext.start();
+		contractRepository = context.getBean(ContractRepository.class);
+		transactionTemplate = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+		transactionTemplate.setReadOnly(true);
+		
+		ContractService contractService = context.getBean(ContractService.class);
+		
+		List<Contract> contracts = new ArrayList<>(CONTRACTS);
+		for(int i = 0; i < CONTRACTS; i++) {
+			
+			Contract contract = new Contract();
+			contract.setName("contract" + i);
+			contract.setBusinessNumber(i);
+			contract.setType(i % 2 == 0 ? ContractType.EXPRESS : ContractType.SALES);
+			contract.setAmountRequested(1000 + i);
+			contracts.add(contract);
+		}
+		
+		contractService.createAll(contracts);
+	}
+	
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		context.close();
+	}
+	
+	@Benchmark
+	public Slice<Contract> example() {
+		
+		Contract probe = new Contract();
+		probe.setStatus(ContractStatus.APPROVED);
+		
+		return transactionTemplate.execute(status -> contractRepository.findAll(Example.of(probe), 
+				new PageRequest(0, PAGE_SIZE, Direction.ASC, "id")));
+	}
+	
+	@Benchmark
+	public Slice<ContractSummary> typedFilter() {
+		
+		ContractFilter filter = new ContractFilter();
+		filter.setStatus(ContractStatus.APPROVED);
+		
+		return transactionTemplate.execute(status -> contractRepository.findSummaries(filter, ContractField.ALL, 0, PAGE_SIZE));
+	}
+}
@@ -0,0 +1,127 @@
+package finley.peter.nextgear.benchmark;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+import finley.peter.nextgear.json.ContractJsonComponent;
+import finley.peter.nextgear.model.Contract;
+import finley.peter.nextgear.model.ContractStatus;
+import finley.peter.nextgear.model.ContractSummary;
+import finley.peter.nextgear.model.ContractType;
+
+/**
+ * Benchmarks JSON and Smile serialization of contract lists of various sizes,
+ * using {@link ObjectMapper}s configured the same way as Spring Boot's. The
+ * payload sizes of each format are printed when the benchmark is set up.
+ * <p>
+ * The <code>bean</code> benchmarks use Jackson's bean serializers, the others
+ * the hand-written ones in {@link ContractJsonComponent} that the application
+ * uses. Run with <code>-prof gc</code> to compare the bytes allocated per list
+ * written (<code>gc.alloc.rate.norm</code>), which is the serialization
+ * garbage of a page request.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations=5, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(1)
+public class ContractSerializationBenchmark {
+
+	@Param({"1", "100", "10000"})
+	public int size;
+	
+	private ObjectMapper beanMapper;
+	
+	private ObjectMapper objectMapper;
+	
+	private ObjectMapper smileMapper;
+	
+	private List<Contract> contracts;
+	
+	private List<ContractSummary> summaries;
+	
+	@Setup
+	public void setup() throws JsonProcessingException {
+		
+		SimpleModule module = new SimpleModule()
+				.addSerializer(Contract.class, new ContractJsonComponent.ContractSerializer())
+				.addSerializer(ContractSummary.class, new ContractJsonComponent.ContractSummarySerializer());
+		
+		beanMapper = Jackson2ObjectMapperBuilder.json().build();
+		objectMapper = Jackson2ObjectMapperBuilder.json().modulesToInstall(module).build();
+		
+		smileMapper = new ObjectMapper(new SmileFactory());
+		Jackson2ObjectMapperBuilder.json().modulesToInstall(module).configure(smileMapper);
+		
+		contracts = new ArrayList<>(size);
+		summaries = new ArrayList<>(size);
+		
+		for(int i = 0; i < size; i++) {
+			
+			Contract contract = new Contract();
+			contract.setId(i);
+			contract.setName("contract" + i);
+			contract.setBusinessNumber(i);
+			contract.setActivationDate(new Date());
+			contract.setAmountRequested(1000 + i);
+			contract.setStatus(ContractStatus.APPROVED);
+			contract.setType(ContractType.EXPRESS);
+			contract.setVersion(0L);
+			contract.setLastModified(new Date());
+			contracts.add(contract);
+			
+			summaries.add(new ContractSummary(contract.getId(), contract.getName(), contract.getBusinessNumber(), 
+					contract.getActivationDate(), contract.getAmountRequested(), contract.getStatus(), contract.getType(), 
+					contract.getVersion(), contract.getLastModified()));
+		}
+		
+		System.out.printf("%n%d summaries: JSON %d bytes, Smile %d bytes%n", size, 
+				objectMapper.writeValueAsBytes(summaries).length, smileMapper.writeValueAsBytes(summaries).length);
+	}
+	
+	@Benchmark
+	public byte[] beanContracts() throws JsonProcessingException {
+		return beanMapper.writeValueAsBytes(contracts);
+	}
+	
+	@Benchmark
+	public byte[] beanSummaries() throws JsonProcessingException {
+		return beanMapper.writeValueAsBytes(summaries);
+	}
+	
+	@Benchmark
+	public byte[] contracts() throws JsonProcessingException {
+		return objectMapper.writeValueAsBytes(contracts);
+	}
+	
+	@Benchmark
+	public byte[] summaries() throws JsonProcessingException {
+		return objectMapper.writeValueAsBytes(summaries);
+	}
+	
+	@Benchmark
+	public byte[] summariesSmile() throws JsonProcessingException {
+		return smileMapper.writeValueAsBytes(summaries);
+	}
+}
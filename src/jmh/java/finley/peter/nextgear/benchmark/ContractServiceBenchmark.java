@@ -0,0 +1,90 @@
+package finley.peter.nextgear.benchmark;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import finley.peter.nextgear.model.Contract;
+import finley.peter.nextgear.model.ContractType;
+import finley.peter.nextgear.service.ContractService;
+
+/**
+ * Benchmarks {@link ContractService} operations against the embedded H2
+ * database, with and without the contract cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations=5, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(1)
+public class ContractServiceBenchmark {
+
+	private static final int CONTRACTS = 10000;
+	
+	@Param({"caffeine", "none"})
+	public String cacheType;
+	
+	private ConfigurableApplicationContext context;
+	
+	private ContractService contractService;
+	
+	private long[] ids;
+	
+	@Setup(Level.Trial)
+	public void setup() {
+		
+		context = BenchmarkContext.start("spring.cache.type=" + cacheType);
+		contractService = context.getBean(ContractService.class);
+		
+		ids = new long[CONTRACTS];
+		for(int i = 0; i < CONTRACTS; i++) {
+			ids[i] = contractService.create("contract" + i, i, ContractType.SALES, 1000 + i).getId();
+		}
+	}
+	
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		context.close();
+	}
+	
+	@Benchmark
+	public Contract create() {
+		return contractService.create("benchmark", 1, ContractType.SALES, 1000);
+	}
+	
+	@Benchmark
+	public Contract findOne() {
+		return contractService.findOne(randomId());
+	}
+	
+	@Benchmark
+	public void update() {
+		
+		Contract contract = new Contract();
+		contract.setId(randomId());
+		contract.setName("updated");
+		contract.setBusinessNumber(2);
+		contract.setAmountRequested(2000);
+		
+		contractService.update(contract);
+	}
+	
+	private long randomId() {
+		return ids[ThreadLocalRandom.current().nextInt(ids.length)];
+	}
+}
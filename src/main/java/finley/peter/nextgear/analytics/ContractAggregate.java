@@ -0,0 +1,117 @@
+package finley.peter.nextgear.analytics;
+
+import java.util.Map;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+
+import finley.peter.nextgear.model.ContractType;
+
+/**
+ * The count, sum, average, range and percentiles of the amount requested of
+ * one group of contracts. Dimensions the contracts weren't grouped by are null
+ * and left out of the JSON. A status or month of <code>NONE</code> groups
+ * contracts with no status or no activation date.
+ */
+@JsonInclude(Include.NON_NULL)
+public class ContractAggregate {
+
+	private ContractType type;
+	private String status;
+	private String month;
+	private long count;
+	private long sum;
+	private double average;
+	private int min;
+	private int max;
+	private Map<String, Integer> percentiles;
+	
+	public ContractAggregate() {
+	}
+
+	public ContractType getType() {
+		return type;
+	}
+
+	public void setType(ContractType type) {
+		this.type = type;
+	}
+
+	public String getStatus() {
+		return status;
+	}
+
+	public void setStatus(String status) {
+		this.status = status;
+	}
+
+	/**
+	 * @return the activation month as yyyy-MM
+	 */
+	public String getMonth() {
+		return month;
+	}
+
+	public void setMonth(String month) {
+		this.month = month;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public void setCount(long count) {
+		this.count = count;
+	}
+
+	public long getSum() {
+		return sum;
+	}
+
+	public void setSum(long sum) {
+		this.sum = sum;
+	}
+
+	public double getAverage() {
+		return average;
+	}
+
+	public void setAverage(double average) {
+		this.average = average;
+	}
+
+	public int getMin() {
+		return min;
+	}
+
+	public void setMin(int min) {
+		this.min = min;
+	}
+
+	public int getMax() {
+		return max;
+	}
+
+	public void setMax(int max) {
+		this.max = max;
+	}
+
+	/**
+	 * @return the amount at each requested percentile, keyed by
+	 *         <code>p</code> followed by the percentile, e.g. <code>p99</code>
+	 */
+	public Map<String, Integer> getPercentiles() {
+		return percentiles;
+	}
+
+	public void setPercentiles(Map<String, Integer> percentiles) {
+		this.percentiles = percentiles;
+	}
+
+	@Override
+	public String toString() {
+		return "ContractAggregate [type=" + type + ", status=" + status + ", month=" + month + ", count=" + count
+				+ ", sum=" + sum + ", average=" + average + ", min=" + min + ", max=" + max + ", percentiles="
+				+ percentiles + "]";
+	}
+}
@@ -0,0 +1,438 @@
+package finley.peter.nextgear.analytics;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import finley.peter.nextgear.model.Contract;
+import finley.peter.nextgear.model.ContractStatus;
+import finley.peter.nextgear.model.ContractType;
+import finley.peter.nextgear.service.ContractEvent;
+
+/**
+ * An in-memory, column oriented copy of the contract table for analytical
+ * queries, so they never touch the database. Each column is a primitive array
+ * indexed by row, with rows ordered by contract id. The copy is loaded on
+ * startup and then kept current from the {@link ContractEvent}s of committed
+ * transactions.
+ * <p>
+ * Aggregations scan the columns in parallel on a dedicated fork-join pool
+ * under a read lock. Changes are applied under the write lock; deleted rows are
+ * marked and only removed once they make up half of the rows.
+ */
+@Component
+public class ContractColumns {
+
+	static final byte NO_STATUS = 0;
+	static final int NO_MONTH = 0;
+	
+	private static final byte DELETED = -1;
+	
+	private static final int INITIAL_CAPACITY = 1024;
+	
+	/**
+	 * Maximum number of rows scanned by one fork-join task.
+	 */
+	static final int SCAN_THRESHOLD = 16 * 1024;
+	
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	
+	private final ForkJoinPool pool;
+	
+	private final ZoneId zone = ZoneId.systemDefault();
+	
+	private long[] ids;
+	private int[] amounts;
+	private byte[] statuses;
+	private byte[] types;
+	private int[] months;
+	
+	private int size;
+	private int deleted;
+	
+	public ContractColumns(@Value("${contracts.analytics.parallelism:0}") int parallelism) {
+		this.pool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+		clear();
+	}
+	
+	@PreDestroy
+	public void shutdown() {
+		pool.shutdown();
+	}
+	
+	/**
+	 * Replace the contents with the given rows. Changes are blocked until the
+	 * load completes, so changes committed while loading are not lost. Rows
+	 * are cheapest to load in id order, but may come in any order, such as one
+	 * shard after another.
+	 * 
+	 * @param rows the id, amount requested, status, type and activation date of
+	 *            each contract, as returned by
+	 *            {@link finley.peter.nextgear.dao.ContractRepository#streamColumns()}
+	 */
+	public void load(Stream<Object[]> rows) {
+		
+		lock.writeLock().lock();
+		try {
+			
+			clear();
+			rows.forEach(row -> append((Long) row[0], (Integer) row[1], (ContractStatus) row[2], 
+					(ContractType) row[3], (Date) row[4]));
+			
+			if(!isSorted()) {
+				sort();
+			}
+			
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * Apply a committed change.
+	 * 
+	 * @param event
+	 */
+	@TransactionalEventListener
+	public void onContractEvent(ContractEvent event) {
+		
+		Contract contract = event.getContract();
+		
+		lock.writeLock().lock();
+		try {
+			switch(event.getType()) {
+			case CREATED:
+				upsert(contract.getId(), contract.getAmountRequested(), contract.getStatus(), 
+						contract.getType(), contract.getActivationDate());
+				break;
+			case UPDATED:
+				updateAmount(contract.getId(), contract.getAmountRequested());
+				break;
+			case DECIDED:
+				updateStatus(contract.getId(), contract.getStatus(), contract.getActivationDate());
+				break;
+			case DELETED:
+				remove(contract.getId());
+				break;
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * @return the number of contracts
+	 */
+	public int size() {
+		
+		lock.readLock().lock();
+		try {
+			return size - deleted;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Aggregate the amount requested of all contracts, grouped by the given
+	 * dimensions.
+	 * 
+	 * @param groupBy the dimensions to group by, none for a single group
+	 * @param percentiles the percentiles of the amount to calculate, each
+	 *            greater than 0 and at most 100
+	 * @return one aggregate per group, ordered by type, status and month
+	 */
+	public List<ContractAggregate> aggregate(Set<ContractDimension> groupBy, double[] percentiles) {
+		
+		for(double percentile : percentiles) {
+			if(!(percentile > 0 && percentile <= 100)) {
+				throw new IllegalArgumentException("Percentiles must be greater than 0 and at most 100: " + percentile);
+			}
+		}
+		
+		lock.readLock().lock();
+		try {
+			
+			ScanTask scan = new ScanTask(this, groupBy.contains(ContractDimension.TYPE), 
+					groupBy.contains(ContractDimension.STATUS), groupBy.contains(ContractDimension.MONTH), 
+					percentiles.length > 0, 0, size);
+			
+			return pool.invoke(scan).toAggregates(percentiles);
+			
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	static ContractStatus status(byte code) {
+		return ContractStatus.values()[code - 1];
+	}
+	
+	private void clear() {
+		ids = new long[INITIAL_CAPACITY];
+		amounts = new int[INITIAL_CAPACITY];
+		statuses = new byte[INITIAL_CAPACITY];
+		types = new byte[INITIAL_CAPACITY];
+		months = new int[INITIAL_CAPACITY];
+		size = 0;
+		deleted = 0;
+	}
+	
+	private void append(long id, int amount, ContractStatus status, ContractType type, Date activationDate) {
+		
+		ensureCapacity(size + 1);
+		set(size++, id, amount, status, type, activationDate);
+	}
+	
+	private void upsert(long id, int amount, ContractStatus status, ContractType type, Date activationDate) {
+		
+		int row = Arrays.binarySearch(ids, 0, size, id);
+		
+		if(row < 0) {
+			
+			// ids mostly arrive in order so this is usually an append
+			row = -row - 1;
+			ensureCapacity(size + 1);
+			if(row < size) {
+				shift(row);
+			}
+			size++;
+			
+		} else if(statuses[row] == DELETED) {
+			deleted--;
+		}
+		
+		set(row, id, amount, status, type, activationDate);
+	}
+	
+	private void set(int row, long id, int amount, ContractStatus status, ContractType type, Date activationDate) {
+		ids[row] = id;
+		amounts[row] = amount;
+		statuses[row] = status == null ? NO_STATUS : (byte) (status.ordinal() + 1);
+		types[row] = (byte) type.ordinal();
+		months[row] = month(activationDate);
+	}
+	
+	private void updateAmount(long id, int amount) {
+		
+		int row = Arrays.binarySearch(ids, 0, size, id);
+		
+		// the amount can only change while the contract has no status
+		if(row >= 0 && statuses[row] == NO_STATUS) {
+			amounts[row] = amount;
+		}
+	}
+	
+	private void updateStatus(long id, ContractStatus status, Date activationDate) {
+		
+		int row = Arrays.binarySearch(ids, 0, size, id);
+		
+		if(row >= 0 && statuses[row] != DELETED) {
+			statuses[row] = (byte) (status.ordinal() + 1);
+			months[row] = month(activationDate);
+		}
+	}
+	
+	private void remove(long id) {
+		
+		int row = Arrays.binarySearch(ids, 0, size, id);
+		
+		if(row >= 0 && statuses[row] != DELETED) {
+			statuses[row] = DELETED;
+			deleted++;
+			
+			if(deleted > INITIAL_CAPACITY && deleted * 2 > size) {
+				compact();
+			}
+		}
+	}
+	
+	private int month(Date date) {
+		
+		if(date == null) {
+			return NO_MONTH;
+		}
+		
+		LocalDate localDate = Instant.ofEpochMilli(date.getTime()).atZone(zone).toLocalDate();
+		return localDate.getYear() * 100 + localDate.getMonthValue();
+	}
+	
+	private void ensureCapacity(int capacity) {
+		
+		if(capacity > ids.length) {
+			int newCapacity = Math.max(capacity, ids.length * 2);
+			ids = Arrays.copyOf(ids, newCapacity);
+			amounts = Arrays.copyOf(amounts, newCapacity);
+			statuses = Arrays.copyOf(statuses, newCapacity);
+			types = Arrays.copyOf(types, newCapacity);
+			months = Arrays.copyOf(months, newCapacity);
+		}
+	}
+	
+	/**
+	 * Move the rows from the given row onwards up by one.
+	 */
+	private void shift(int row) {
+		int length = size - row;
+		System.arraycopy(ids, row, ids, row + 1, length);
+		System.arraycopy(amounts, row, amounts, row + 1, length);
+		System.arraycopy(statuses, row, statuses, row + 1, length);
+		System.arraycopy(types, row, types, row + 1, length);
+		System.arraycopy(months, row, months, row + 1, length);
+	}
+	
+	private boolean isSorted() {
+		
+		for(int row = 1; row < size; row++) {
+			if(ids[row - 1] > ids[row]) {
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Reorder the rows by id.
+	 */
+	private void sort() {
+		
+		Integer[] order = new Integer[size];
+		for(int row = 0; row < size; row++) {
+			order[row] = row;
+		}
+		
+		long[] unsortedIds = ids;
+		Arrays.sort(order, (row1, row2) -> Long.compare(unsortedIds[row1], unsortedIds[row2]));
+		
+		long[] sortedIds = new long[ids.length];
+		int[] sortedAmounts = new int[ids.length];
+		byte[] sortedStatuses = new byte[ids.length];
+		byte[] sortedTypes = new byte[ids.length];
+		int[] sortedMonths = new int[ids.length];
+		
+		for(int row = 0; row < size; row++) {
+			int from = order[row];
+			sortedIds[row] = ids[from];
+			sortedAmounts[row] = amounts[from];
+			sortedStatuses[row] = statuses[from];
+			sortedTypes[row] = types[from];
+			sortedMonths[row] = months[from];
+		}
+		
+		ids = sortedIds;
+		amounts = sortedAmounts;
+		statuses = sortedStatuses;
+		types = sortedTypes;
+		months = sortedMonths;
+	}
+	
+	/**
+	 * Remove deleted rows.
+	 */
+	private void compact() {
+		
+		int live = 0;
+		for(int row = 0; row < size; row++) {
+			if(statuses[row] != DELETED) {
+				ids[live] = ids[row];
+				amounts[live] = amounts[row];
+				statuses[live] = statuses[row];
+				types[live] = types[row];
+				months[live] = months[row];
+				live++;
+			}
+		}
+		
+		size = live;
+		deleted = 0;
+	}
+	
+	/**
+	 * Aggregates a range of rows, splitting it in two until it is no larger
+	 * than {@link ContractColumns#SCAN_THRESHOLD}.
+	 */
+	private static class ScanTask extends RecursiveTask<GroupAccumulator> {
+
+		private static final long serialVersionUID = 1L;
+		
+		private final ContractColumns columns;
+		private final boolean byType;
+		private final boolean byStatus;
+		private final boolean byMonth;
+		private final boolean keepAmounts;
+		private final int from;
+		private final int to;
+		
+		ScanTask(ContractColumns columns, boolean byType, boolean byStatus, boolean byMonth, boolean keepAmounts,
+				int from, int to) {
+			this.columns = columns;
+			this.byType = byType;
+			this.byStatus = byStatus;
+			this.byMonth = byMonth;
+			this.keepAmounts = keepAmounts;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected GroupAccumulator compute() {
+			
+			if(to - from <= SCAN_THRESHOLD) {
+				return scan();
+			}
+			
+			int middle = (from + to) >>> 1;
+			ScanTask left = new ScanTask(columns, byType, byStatus, byMonth, keepAmounts, from, middle);
+			ScanTask right = new ScanTask(columns, byType, byStatus, byMonth, keepAmounts, middle, to);
+			
+			left.fork();
+			GroupAccumulator rightResult = right.compute();
+			
+			return left.join().merge(rightResult);
+		}
+		
+		private GroupAccumulator scan() {
+			
+			// read the columns once, the caller holds the read lock so they can't change
+			int[] amounts = columns.amounts;
+			byte[] statuses = columns.statuses;
+			byte[] types = columns.types;
+			int[] months = columns.months;
+			
+			GroupAccumulator accumulator = new GroupAccumulator(keepAmounts);
+			
+			for(int row = from; row < to; row++) {
+				
+				byte status = statuses[row];
+				if(status == DELETED) {
+					continue;
+				}
+				
+				long key = GroupAccumulator.key(
+						byType ? types[row] + 1 : 0, 
+						byStatus ? status + 1 : 0, 
+						byMonth ? months[row] + 1 : 0);
+				
+				accumulator.add(key, amounts[row]);
+			}
+			
+			return accumulator;
+		}
+	}
+}
@@ -0,0 +1,72 @@
+package finley.peter.nextgear.analytics;
+
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+
+import finley.peter.nextgear.dao.ContractRepository;
+import finley.peter.nextgear.dao.ContractShards;
+import finley.peter.nextgear.dao.ShardContext;
+
+/**
+ * Loads the {@link ContractColumns} from the database on startup, after which
+ * they are kept current by contract events. With sharding, the shards are read
+ * one after another.
+ */
+@Component
+public class ContractColumnsInitializer implements ApplicationRunner {
+
+	private ContractRepository contractRepository;
+	
+	private ContractColumns contractColumns;
+	
+	private ContractShards contractShards;
+	
+	private PlatformTransactionManager transactionManager;
+	
+	public ContractColumnsInitializer(ContractRepository contractRepository, ContractColumns contractColumns,
+			ContractShards contractShards, PlatformTransactionManager transactionManager) {
+		this.contractRepository = contractRepository;
+		this.contractColumns = contractColumns;
+		this.contractShards = contractShards;
+		this.transactionManager = transactionManager;
+	}
+
+	@Override
+	public void run(ApplicationArguments args) {
+		
+		// flatMap reads and closes each shard's stream before opening the next
+		try(Stream<Object[]> rows = IntStream.range(0, contractShards.getCount()).boxed().flatMap(this::streamShard)) {
+			contractColumns.load(rows);
+		}
+	}
+	
+	/**
+	 * Stream a shard's rows in a transaction that ends when the stream is
+	 * closed. The transaction isn't read only so it reads from the primary,
+	 * which the events keeping the columns current come from, rather than a
+	 * replica that may lag behind.
+	 */
+	private Stream<Object[]> streamShard(int shard) {
+		
+		DefaultTransactionDefinition definition = new DefaultTransactionDefinition(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+		
+		return ShardContext.call(shard, () -> {
+			
+			TransactionStatus status = transactionManager.getTransaction(definition);
+			try {
+				return contractRepository.streamColumns().onClose(() -> transactionManager.commit(status));
+			} catch(RuntimeException e) {
+				transactionManager.rollback(status);
+				throw e;
+			}
+		});
+	}
+}
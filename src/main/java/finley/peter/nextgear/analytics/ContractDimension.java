@@ -0,0 +1,27 @@
+package finley.peter.nextgear.analytics;
+
+/**
+ * Dimensions contract aggregations can be grouped by.
+ */
+public enum ContractDimension {
+
+	TYPE, STATUS, MONTH;
+	
+	/**
+	 * Get a dimension by name, ignoring case.
+	 * 
+	 * @param name the dimension name
+	 * @return the dimension
+	 * @throws IllegalArgumentException if there is no such dimension
+	 */
+	public static ContractDimension parse(String name) {
+		
+		for(ContractDimension dimension : values()) {
+			if(dimension.name().equalsIgnoreCase(name.trim())) {
+				return dimension;
+			}
+		}
+		
+		throw new IllegalArgumentException("Unknown dimension: " + name + ", expected one of type, status or month");
+	}
+}
@@ -0,0 +1,248 @@
+package finley.peter.nextgear.analytics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import finley.peter.nextgear.model.ContractStatus;
+import finley.peter.nextgear.model.ContractType;
+
+/**
+ * Accumulates the amounts of one scan of {@link ContractColumns} by group key.
+ * Groups are kept in an open addressing hash table of parallel primitive
+ * arrays so adding a row doesn't allocate. Amounts are only kept, for
+ * percentiles, if asked for.
+ * <p>
+ * A group key packs the dimension codes used by {@link ContractColumns}, each
+ * plus one so that zero means the dimension isn't grouped by: the type in bits
+ * 48-55, the status in bits 40-47 and the activation month in the bits below,
+ * so keys sort by type, status and then month.
+ */
+final class GroupAccumulator {
+
+	private static final int INITIAL_CAPACITY = 16;
+	
+	private final boolean keepAmounts;
+	
+	// key + 1 so that zero marks an empty slot
+	private long[] keys = new long[INITIAL_CAPACITY];
+	private long[] counts = new long[INITIAL_CAPACITY];
+	private long[] sums = new long[INITIAL_CAPACITY];
+	private int[] mins = new int[INITIAL_CAPACITY];
+	private int[] maxes = new int[INITIAL_CAPACITY];
+	private int[][] amounts = new int[INITIAL_CAPACITY][];
+	
+	private int groups;
+	
+	GroupAccumulator(boolean keepAmounts) {
+		this.keepAmounts = keepAmounts;
+	}
+	
+	static long key(int type, int status, int month) {
+		return ((long) type << 48) | ((long) status << 40) | month;
+	}
+	
+	void add(long key, int amount) {
+		
+		int slot = slot(key);
+		
+		if(counts[slot] == 0 || amount < mins[slot]) {
+			mins[slot] = amount;
+		}
+		if(counts[slot] == 0 || amount > maxes[slot]) {
+			maxes[slot] = amount;
+		}
+		
+		if(keepAmounts) {
+			int[] groupAmounts = amounts[slot];
+			if(groupAmounts == null) {
+				groupAmounts = amounts[slot] = new int[16];
+			} else if(groupAmounts.length == counts[slot]) {
+				groupAmounts = amounts[slot] = Arrays.copyOf(groupAmounts, groupAmounts.length * 2);
+			}
+			groupAmounts[(int) counts[slot]] = amount;
+		}
+		
+		counts[slot]++;
+		sums[slot] += amount;
+	}
+	
+	/**
+	 * Add all of another accumulator's groups to this one.
+	 * 
+	 * @return this accumulator
+	 */
+	GroupAccumulator merge(GroupAccumulator other) {
+		
+		for(int i = 0; i < other.keys.length; i++) {
+			
+			if(other.keys[i] == 0) {
+				continue;
+			}
+			
+			int slot = slot(other.keys[i] - 1);
+			int count = (int) counts[slot];
+			int otherCount = (int) other.counts[i];
+			
+			mins[slot] = count == 0 ? other.mins[i] : Math.min(mins[slot], other.mins[i]);
+			maxes[slot] = count == 0 ? other.maxes[i] : Math.max(maxes[slot], other.maxes[i]);
+			
+			if(keepAmounts) {
+				int[] groupAmounts = amounts[slot] == null ? new int[otherCount] 
+						: Arrays.copyOf(amounts[slot], count + otherCount);
+				System.arraycopy(other.amounts[i], 0, groupAmounts, count, otherCount);
+				amounts[slot] = groupAmounts;
+			}
+			
+			counts[slot] += other.counts[i];
+			sums[slot] += other.sums[i];
+		}
+		
+		return this;
+	}
+	
+	/**
+	 * Build the aggregates of every group, ordered by type, status and month.
+	 * 
+	 * @param percentiles the percentiles to calculate, only if amounts are kept
+	 */
+	List<ContractAggregate> toAggregates(double[] percentiles) {
+		
+		long[] sortedKeys = Arrays.stream(keys).filter(key -> key != 0).sorted().toArray();
+		
+		List<ContractAggregate> aggregates = new ArrayList<>(sortedKeys.length);
+		for(long sortedKey : sortedKeys) {
+			
+			long key = sortedKey - 1;
+			int slot = slot(key);
+			
+			ContractAggregate aggregate = new ContractAggregate();
+			aggregate.setType(type((int) (key >>> 48)));
+			aggregate.setStatus(status((int) ((key >>> 40) & 0xFF)));
+			aggregate.setMonth(month((int) (key & 0xFFFFFFFFL)));
+			aggregate.setCount(counts[slot]);
+			aggregate.setSum(sums[slot]);
+			aggregate.setAverage((double) sums[slot] / counts[slot]);
+			aggregate.setMin(mins[slot]);
+			aggregate.setMax(maxes[slot]);
+			
+			if(keepAmounts) {
+				aggregate.setPercentiles(percentiles(amounts[slot], (int) counts[slot], percentiles));
+			}
+			
+			aggregates.add(aggregate);
+		}
+		
+		return aggregates;
+	}
+	
+	/**
+	 * Nearest-rank percentiles of the first count amounts, which are sorted in
+	 * place.
+	 */
+	private static Map<String, Integer> percentiles(int[] amounts, int count, double[] percentiles) {
+		
+		Arrays.sort(amounts, 0, count);
+		
+		Map<String, Integer> values = new LinkedHashMap<>();
+		for(double percentile : percentiles) {
+			
+			int rank = (int) Math.ceil(percentile / 100 * count);
+			
+			String name = percentile == Math.rint(percentile) ? Long.toString((long) percentile) : Double.toString(percentile);
+			values.put("p" + name, amounts[Math.max(rank, 1) - 1]);
+		}
+		
+		return values;
+	}
+	
+	private static ContractType type(int code) {
+		return code == 0 ? null : ContractType.values()[code - 1];
+	}
+	
+	private static String status(int code) {
+		
+		if(code == 0) {
+			return null;
+		}
+		
+		byte status = (byte) (code - 1);
+		return status == ContractColumns.NO_STATUS ? "NONE" : ContractColumns.status(status).name();
+	}
+	
+	private static String month(int code) {
+		
+		if(code == 0) {
+			return null;
+		}
+		
+		int month = code - 1;
+		return month == ContractColumns.NO_MONTH ? "NONE" : String.format("%04d-%02d", month / 100, month % 100);
+	}
+	
+	/**
+	 * Find the slot for a key, adding the group if it is new.
+	 */
+	private int slot(long key) {
+		
+		int slot = find(keys, key);
+		
+		if(keys[slot] == 0) {
+			
+			// keep the table at most half full
+			if((groups + 1) * 2 > keys.length) {
+				resize();
+				slot = find(keys, key);
+			}
+			
+			keys[slot] = key + 1;
+			groups++;
+		}
+		
+		return slot;
+	}
+	
+	private static int find(long[] keys, long key) {
+		
+		int mask = keys.length - 1;
+		int slot = Long.hashCode(key * 0x9E3779B97F4A7C15L) & mask;
+		
+		while(keys[slot] != 0 && keys[slot] != key + 1) {
+			slot = (slot + 1) & mask;
+		}
+		
+		return slot;
+	}
+	
+	private void resize() {
+		
+		long[] oldKeys = keys;
+		long[] oldCounts = counts;
+		long[] oldSums = sums;
+		int[] oldMins = mins;
+		int[] oldMaxes = maxes;
+		int[][] oldAmounts = amounts;
+		
+		int capacity = oldKeys.length * 2;
+		keys = new long[capacity];
+		counts = new long[capacity];
+		sums = new long[capacity];
+		mins = new int[capacity];
+		maxes = new int[capacity];
+		amounts = new int[capacity][];
+		
+		for(int i = 0; i < oldKeys.length; i++) {
+			if(oldKeys[i] != 0) {
+				int slot = find(keys, oldKeys[i] - 1);
+				keys[slot] = oldKeys[i];
+				counts[slot] = oldCounts[i];
+				sums[slot] = oldSums[i];
+				mins[slot] = oldMins[i];
+				maxes[slot] = oldMaxes[i];
+				amounts[slot] = oldAmounts[i];
+			}
+		}
+	}
+}
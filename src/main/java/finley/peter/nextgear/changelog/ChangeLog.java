@@ -0,0 +1,446 @@
+package finley.peter.nextgear.changelog;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import finley.peter.nextgear.model.Contract;
+import finley.peter.nextgear.model.ContractStatus;
+import finley.peter.nextgear.model.ContractType;
+import finley.peter.nextgear.service.ContractEvent;
+
+/**
+ * Append-only log of committed contract changes, kept in memory-mapped
+ * segment files of a fixed size in a directory. A new segment is started when
+ * the current one is full, and the log is read back in order by
+ * {@link #replay(Consumer)}.
+ * <p>
+ * Each record is its length, the CRC32 of its body and the body: the event
+ * type and the fields of the event's contract. The length is written last, and
+ * segments start zeroed, so a zero length marks the end of the log. A record
+ * that was only partly written when the process died is found by its checksum
+ * when the log is opened, and dropped along with anything after it.
+ * <p>
+ * Records are in the operating system's page cache once appended, so they
+ * survive the process but not the machine, unless the segment has since been
+ * forced to disk, which happens when it is full and when the log is closed.
+ */
+public class ChangeLog {
+	
+	private static final Logger logger = LoggerFactory.getLogger(ChangeLog.class);
+	
+	private static final String SUFFIX = ".log";
+	
+	/**
+	 * Length and checksum.
+	 */
+	private static final int HEADER_SIZE = 8;
+	
+	// bits of the mask of fields present in a record
+	private static final int ID = 1;
+	private static final int NAME = 1 << 1;
+	private static final int BUSINESS_NUMBER = 1 << 2;
+	private static final int ACTIVATION_DATE = 1 << 3;
+	private static final int AMOUNT_REQUESTED = 1 << 4;
+	private static final int STATUS = 1 << 5;
+	private static final int TYPE = 1 << 6;
+	private static final int VERSION = 1 << 7;
+	private static final int LAST_MODIFIED = 1 << 8;
+	
+	private final Path directory;
+	
+	private final int segmentSize;
+	
+	private final CRC32 crc = new CRC32();
+	
+	private ByteBuffer body = ByteBuffer.allocate(256);
+	
+	private int segment;
+	
+	private MappedByteBuffer current;
+	
+	/**
+	 * Open the log in the directory, creating both if they don't exist.
+	 *
+	 * @param directory the directory holding the segments
+	 * @param segmentSize the size of a segment in bytes, which limits the size
+	 *            of a record
+	 */
+	public ChangeLog(Path directory, int segmentSize) throws IOException {
+		
+		if(segmentSize < 1024) {
+			throw new IllegalArgumentException("Change log segments must be at least 1024 bytes");
+		}
+		
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+		
+		Files.createDirectories(directory);
+		
+		List<Integer> segments = segments();
+		if(segments.isEmpty()) {
+			roll(0);
+		} else {
+			segment = segments.get(segments.size() - 1);
+			current = map(segment, FileChannel.MapMode.READ_WRITE);
+			current.position(recover(current));
+		}
+	}
+
+	/**
+	 * Record a committed change. Changes to a contract committed at about the
+	 * same time may be recorded in either order, so each carries the version
+	 * the contract was left at.
+	 */
+	@TransactionalEventListener
+	public void onContractEvent(ContractEvent event) {
+		
+		if(event.getType() != ContractEvent.Type.UPDATED) {
+			append(event);
+			return;
+		}
+		
+		// updates are logged as stored, a contract since deleted has its delete logged
+		Contract contract = event.getStoredContract();
+		if(contract != null) {
+			append(ContractEvent.updated(contract));
+		}
+	}
+
+	/**
+	 * Append a change to the log.
+	 *
+	 * @throws IllegalArgumentException if the record doesn't fit in a segment
+	 */
+	public synchronized void append(ContractEvent event) {
+		
+		if(current == null) {
+			throw new IllegalStateException("Change log is closed");
+		}
+		
+		encode(event);
+		
+		int length = body.remaining();
+		if(HEADER_SIZE + length > segmentSize) {
+			throw new IllegalArgumentException("Change log record of " + length + " bytes is larger than a segment");
+		}
+		
+		if(HEADER_SIZE + length > current.remaining()) {
+			current.force();
+			roll(segment + 1);
+		}
+		
+		crc.reset();
+		crc.update(body.duplicate());
+		
+		// the length goes in last, until then the record reads as the end of the log
+		int start = current.position();
+		current.position(start + 4);
+		current.putInt((int) crc.getValue());
+		current.put(body);
+		current.putInt(start, length);
+	}
+
+	/**
+	 * Pass every change in the log, oldest first, to the consumer. Changes
+	 * appended while replaying are not included.
+	 *
+	 * @throws IllegalStateException if a segment is corrupt
+	 */
+	public void replay(Consumer<ContractEvent> consumer) throws IOException {
+		
+		int last;
+		int end;
+		synchronized(this) {
+			
+			if(current == null) {
+				throw new IllegalStateException("Change log is closed");
+			}
+			
+			last = segment;
+			end = current.position();
+		}
+		
+		CRC32 checksum = new CRC32();
+		
+		for(int replayed : segments()) {
+			
+			if(replayed > last) {
+				break;
+			}
+			
+			ByteBuffer buffer = map(replayed, FileChannel.MapMode.READ_ONLY);
+			int limit = replayed == last ? end : buffer.limit();
+			
+			int position = 0;
+			while(length(buffer, position, limit) != 0) {
+				
+				ByteBuffer record = record(buffer, position, limit, checksum);
+				if(record == null) {
+					throw new IllegalStateException("Change log segment " + file(replayed) + " is corrupt at " + position);
+				}
+				
+				consumer.accept(decode(record));
+				position = record.limit();
+			}
+		}
+	}
+
+	/**
+	 * @return the number of segments in the log
+	 */
+	public synchronized int getSegmentCount() throws IOException {
+		return segments().size();
+	}
+
+	/**
+	 * Force the current segment to disk and stop appending.
+	 */
+	@PreDestroy
+	public synchronized void close() {
+		
+		if(current != null) {
+			current.force();
+			current = null;
+		}
+	}
+
+	/**
+	 * Start a new segment.
+	 */
+	private void roll(int next) {
+		
+		try {
+			try(RandomAccessFile file = new RandomAccessFile(file(next).toFile(), "rw")) {
+				file.setLength(segmentSize);
+			}
+			
+			current = map(next, FileChannel.MapMode.READ_WRITE);
+			segment = next;
+			
+		} catch(IOException e) {
+			throw new UncheckedIOException("Failed to create change log segment " + file(next), e);
+		}
+	}
+
+	/**
+	 * Find the end of the valid records of the last segment, clearing anything
+	 * after it.
+	 *
+	 * @return the position to append at
+	 */
+	private int recover(MappedByteBuffer buffer) {
+		
+		CRC32 checksum = new CRC32();
+		
+		int end = 0;
+		ByteBuffer record;
+		while(length(buffer, end, buffer.limit()) != 0 
+				&& (record = record(buffer, end, buffer.limit(), checksum)) != null) {
+			end = record.limit();
+		}
+		
+		if(length(buffer, end, buffer.limit()) != 0) {
+			
+			logger.warn("Dropping a partly written record and anything after it at {} in change log segment {}",
+					end, file(segment));
+					
+			for(int position = end; position < buffer.limit(); position++) {
+				buffer.put(position, (byte) 0);
+			}
+			buffer.force();
+		}
+		
+		return end;
+	}
+
+	/**
+	 * @return the body of the record at the position, null if it is
+	 *         incomplete or fails its checksum
+	 */
+	private static ByteBuffer record(ByteBuffer buffer, int position, int limit, CRC32 checksum) {
+		
+		int length = buffer.getInt(position);
+		if(length <= 0 || position + HEADER_SIZE + length > limit) {
+			return null;
+		}
+		
+		ByteBuffer record = buffer.duplicate();
+		record.limit(position + HEADER_SIZE + length).position(position + HEADER_SIZE);
+		
+		checksum.reset();
+		checksum.update(record.duplicate());
+		
+		return (int) checksum.getValue() == buffer.getInt(position + 4) ? record : null;
+	}
+
+	/**
+	 * @return the length of the record at the position, 0 at the end of the
+	 *         log or when there is no room for another record before the limit
+	 */
+	private static int length(ByteBuffer buffer, int position, int limit) {
+		return position + HEADER_SIZE <= limit ? buffer.getInt(position) : 0;
+	}
+
+	private void encode(ContractEvent event) {
+		
+		Contract contract = event.getContract();
+		byte[] name = contract.getName() == null ? null : contract.getName().getBytes(StandardCharsets.UTF_8);
+		
+		// type, mask, three longs, two dates, int, two enums and the name
+		int size = 3 + 5 * 8 + 4 + 2 + (name == null ? 0 : 4 + name.length);
+		if(body.capacity() < size) {
+			body = ByteBuffer.allocate(Math.max(size, body.capacity() * 2));
+		}
+		
+		int mask = (contract.getId() == null ? 0 : ID)
+				| (name == null ? 0 : NAME)
+				| (contract.getBusinessNumber() == null ? 0 : BUSINESS_NUMBER)
+				| (contract.getActivationDate() == null ? 0 : ACTIVATION_DATE)
+				| (contract.getAmountRequested() == null ? 0 : AMOUNT_REQUESTED)
+				| (contract.getStatus() == null ? 0 : STATUS)
+				| (contract.getType() == null ? 0 : TYPE)
+				| (contract.getVersion() == null ? 0 : VERSION)
+				| (contract.getLastModified() == null ? 0 : LAST_MODIFIED);
+				
+		body.clear();
+		body.put((byte) event.getType().ordinal());
+		body.putShort((short) mask);
+		
+		if(contract.getId() != null) {
+			body.putLong(contract.getId());
+		}
+		if(name != null) {
+			body.putInt(name.length);
+			body.put(name);
+		}
+		if(contract.getBusinessNumber() != null) {
+			body.putLong(contract.getBusinessNumber());
+		}
+		if(contract.getActivationDate() != null) {
+			body.putLong(contract.getActivationDate().getTime());
+		}
+		if(contract.getAmountRequested() != null) {
+			body.putInt(contract.getAmountRequested());
+		}
+		if(contract.getStatus() != null) {
+			body.put((byte) contract.getStatus().ordinal());
+		}
+		if(contract.getType() != null) {
+			body.put((byte) contract.getType().ordinal());
+		}
+		if(contract.getVersion() != null) {
+			body.putLong(contract.getVersion());
+		}
+		if(contract.getLastModified() != null) {
+			body.putLong(contract.getLastModified().getTime());
+		}
+		
+		body.flip();
+	}
+
+	private static ContractEvent decode(ByteBuffer record) {
+		
+		ContractEvent.Type type = ContractEvent.Type.values()[record.get()];
+		int mask = record.getShort() & 0xffff;
+		
+		Contract contract = new Contract();
+		
+		if((mask & ID) != 0) {
+			contract.setId(record.getLong());
+		}
+		if((mask & NAME) != 0) {
+			byte[] name = new byte[record.getInt()];
+			record.get(name);
+			contract.setName(new String(name, StandardCharsets.UTF_8));
+		}
+		if((mask & BUSINESS_NUMBER) != 0) {
+			contract.setBusinessNumber(record.getLong());
+		}
+		if((mask & ACTIVATION_DATE) != 0) {
+			contract.setActivationDate(new Date(record.getLong()));
+		}
+		if((mask & AMOUNT_REQUESTED) != 0) {
+			contract.setAmountRequested(record.getInt());
+		}
+		if((mask & STATUS) != 0) {
+			contract.setStatus(ContractStatus.values()[record.get()]);
+		}
+		if((mask & TYPE) != 0) {
+			contract.setType(ContractType.values()[record.get()]);
+		}
+		if((mask & VERSION) != 0) {
+			contract.setVersion(record.getLong());
+		}
+		if((mask & LAST_MODIFIED) != 0) {
+			contract.setLastModified(new Date(record.getLong()));
+		}
+		
+		switch(type) {
+		case CREATED:
+			return ContractEvent.created(contract);
+		case UPDATED:
+			return ContractEvent.updated(contract);
+		case DECIDED:
+			return ContractEvent.decided(contract);
+		default:
+			return ContractEvent.deleted(contract.getId(), contract.getLastModified());
+		}
+	}
+
+	/**
+	 * @return the numbers of the segments in the directory, in order
+	 */
+	private List<Integer> segments() throws IOException {
+		
+		try(Stream<Path> files = Files.list(directory)) {
+			
+			List<Integer> segments = files
+					.map(file -> file.getFileName().toString())
+					.filter(name -> name.endsWith(SUFFIX))
+					.map(name -> Integer.valueOf(name.substring(0, name.length() - SUFFIX.length())))
+					.collect(Collectors.toCollection(ArrayList::new));
+					
+			Collections.sort(segments);
+			
+			return segments;
+		}
+	}
+
+	private MappedByteBuffer map(int segment, FileChannel.MapMode mode) throws IOException {
+		
+		StandardOpenOption[] options = mode == FileChannel.MapMode.READ_ONLY
+				? new StandardOpenOption[] { StandardOpenOption.READ }
+				: new StandardOpenOption[] { StandardOpenOption.READ, StandardOpenOption.WRITE };
+				
+		// the mapping stays valid once the channel is closed
+		try(FileChannel channel = FileChannel.open(file(segment), options)) {
+			return channel.map(mode, 0, channel.size());
+		}
+	}
+
+	private Path file(int segment) {
+		return directory.resolve(String.format("%010d", segment) + SUFFIX);
+	}
+}
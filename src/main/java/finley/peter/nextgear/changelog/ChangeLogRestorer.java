@@ -0,0 +1,278 @@
+package finley.peter.nextgear.changelog;
+
+import java.io.IOException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import finley.peter.nextgear.dao.ContractShards;
+import finley.peter.nextgear.dao.ReplicaContext;
+import finley.peter.nextgear.dao.ShardContext;
+import finley.peter.nextgear.model.Contract;
+import finley.peter.nextgear.model.ContractField;
+import finley.peter.nextgear.model.ContractFilter;
+import finley.peter.nextgear.service.ContractEvent;
+import finley.peter.nextgear.service.ContractService;
+
+/**
+ * Rebuilds the contracts from the {@link ChangeLog} when the application
+ * starts with an empty database, as it does with an in-memory one. The log is
+ * replayed into memory and the resulting contracts written to their shards
+ * with JDBC batches, bypassing JPA, along with the tombstones of the deleted
+ * ones, after which the id sequences are moved past every logged id and the
+ * statistics rebuilt.
+ * <p>
+ * This runs once every bean has been created, before the server accepts
+ * requests and before the startup runners load the statistics and analytics
+ * from the database. The sequences are restarted with H2's statements, like
+ * the rest of the application assumes H2.
+ */
+public class ChangeLogRestorer implements SmartInitializingSingleton {
+	
+	private static final Logger logger = LoggerFactory.getLogger(ChangeLogRestorer.class);
+	
+	private static final int BATCH_SIZE = 1000;
+	
+	private static final String INSERT_TOMBSTONE = "insert into contract_tombstone (contract_id, deleted) values (?, ?)";
+	
+	private static final String INSERT = "insert into contract (contract_id, name, business_number, activation_date, "
+			+ "amount_requested, status, type, version, last_modified) values (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+			
+	private ChangeLog changeLog;
+	
+	private ContractService contractService;
+	
+	private ContractShards contractShards;
+	
+	private JdbcTemplate jdbcTemplate;
+	
+	public ChangeLogRestorer(ChangeLog changeLog, ContractService contractService, ContractShards contractShards,
+			DataSource dataSource) {
+		this.changeLog = changeLog;
+		this.contractService = contractService;
+		this.contractShards = contractShards;
+		this.jdbcTemplate = new JdbcTemplate(dataSource);
+	}
+
+	@Override
+	public void afterSingletonsInstantiated() {
+		
+		// replicas are filled from the primary later on, so may still be empty
+		ReplicaContext.setPrimaryOnly(true);
+		try {
+			if(contractService.findPage(new ContractFilter(), EnumSet.of(ContractField.ID), 0, 1).hasContent()) {
+				return;
+			}
+		} finally {
+			ReplicaContext.clear();
+		}
+		
+		long start = System.nanoTime();
+		
+		Replay replay = new Replay();
+		
+		// the ids of deleted contracts mustn't be handed out again either
+		Map<Integer, Long> lastIds = new HashMap<>();
+		
+		try {
+			changeLog.replay(event -> {
+				replay.apply(event);
+				lastIds.merge(contractShards.shardOfId(event.getContract().getId()), event.getContract().getId(), Math::max);
+			});
+		} catch(IOException e) {
+			throw new IllegalStateException("Failed to replay the change log", e);
+		}
+		
+		if(lastIds.isEmpty()) {
+			return;
+		}
+		
+		Collection<Contract> contracts = replay.getContracts();
+		
+		Map<Integer, List<Contract>> byShard = contracts.stream()
+				.collect(Collectors.groupingBy(contract -> contractShards.shardOfId(contract.getId())));
+				
+		Map<Integer, List<Object[]>> tombstonesByShard = replay.getTombstones().entrySet().stream()
+				.collect(Collectors.groupingBy(tombstone -> contractShards.shardOfId(tombstone.getKey()),
+						Collectors.mapping(tombstone -> new Object[] {
+							tombstone.getKey(), new Timestamp(tombstone.getValue().getTime())
+						}, Collectors.toList())));
+						
+		lastIds.forEach((shard, lastId) -> ShardContext.run(shard, () -> {
+			insert(byShard.getOrDefault(shard, Collections.emptyList()));
+			jdbcTemplate.batchUpdate(INSERT_TOMBSTONE, tombstonesByShard.getOrDefault(shard, Collections.emptyList()));
+			restartSequence(lastId);
+		}));
+		
+		contractService.rebuildStatistics();
+		
+		logger.info("Restored {} contracts from the change log in {} ms", contracts.size(),
+				(System.nanoTime() - start) / 1000000);
+	}
+
+	/**
+	 * Insert contracts into the current shard.
+	 */
+	private void insert(List<Contract> contracts) {
+		
+		for(int start = 0; start < contracts.size(); start += BATCH_SIZE) {
+			
+			List<Object[]> rows = new ArrayList<>(BATCH_SIZE);
+			for(Contract contract : contracts.subList(start, Math.min(start + BATCH_SIZE, contracts.size()))) {
+				rows.add(new Object[] {
+					contract.getId(),
+					contract.getName(),
+					contract.getBusinessNumber(),
+					contract.getActivationDate() == null ? null : new Timestamp(contract.getActivationDate().getTime()),
+					contract.getAmountRequested(),
+					contract.getStatus() == null ? null : contract.getStatus().ordinal(),
+					contract.getType() == null ? null : contract.getType().ordinal(),
+					contract.getVersion(),
+					contract.getLastModified() == null ? null : new Timestamp(contract.getLastModified().getTime())
+				});
+			}
+			
+			jdbcTemplate.batchUpdate(INSERT, rows);
+		}
+	}
+
+	/**
+	 * Move the current shard's id sequence past the given id.
+	 */
+	private void restartSequence(long lastId) {
+		
+		// ids are encoded with the shard, see ContractShards.encodeId
+		long lastSequence = Math.floorDiv(lastId, contractShards.getCount());
+		
+		long nextSequence = jdbcTemplate.queryForObject("select next value for hibernate_sequence", Long.class);
+		if(nextSequence <= lastSequence) {
+			jdbcTemplate.execute("alter sequence hibernate_sequence restart with " + (lastSequence + 1));
+		}
+	}
+
+	/**
+	 * The contracts as left by the changes replayed so far.
+	 * <p>
+	 * Changes are logged in the order their transactions' listeners ran rather
+	 * than the order they committed, so a contract's update, decision or delete
+	 * can be logged before its create. Updates and decisions that come first
+	 * are held until the create, and a deleted contract isn't created again.
+	 * Updates and decisions are logged with the contract as committed, so one
+	 * only replaces the contract if its version is newer. Those logged without
+	 * a version are applied field by field.
+	 */
+	static class Replay {
+		
+		private final Map<Long, Contract> contracts = new LinkedHashMap<>();
+		
+		private final Map<Long, List<ContractEvent>> early = new HashMap<>();
+		
+		/**
+		 * Deleted contracts by id, with when they were deleted if known.
+		 */
+		private final Map<Long, Date> deleted = new HashMap<>();
+		
+		private final Map<Long, Date> tombstones = new LinkedHashMap<>();
+		
+		/**
+		 * Apply a logged change to the contracts, as the contract service
+		 * applied it to the database.
+		 */
+		void apply(ContractEvent event) {
+			
+			Contract change = event.getContract();
+			long id = change.getId();
+			
+			if(event.getType() == ContractEvent.Type.DELETED) {
+				
+				deleted.put(id, change.getLastModified());
+				early.remove(id);
+				
+				// deletes logged before tombstones were kept have no time
+				if(contracts.remove(id) != null && change.getLastModified() != null) {
+					tombstones.put(id, change.getLastModified());
+				}
+				
+				return;
+			}
+			
+			if(event.getType() == ContractEvent.Type.CREATED) {
+				
+				if(deleted.containsKey(id)) {
+					if(deleted.get(id) != null) {
+						tombstones.put(id, deleted.get(id));
+					}
+					return;
+				}
+				
+				contracts.put(id, change);
+				early.getOrDefault(id, Collections.emptyList()).forEach(this::apply);
+				early.remove(id);
+				return;
+			}
+			
+			Contract contract = contracts.get(id);
+			if(contract == null) {
+				if(!deleted.containsKey(id)) {
+					early.computeIfAbsent(id, key -> new ArrayList<>()).add(event);
+				}
+				return;
+			}
+			
+			if(change.getVersion() != null) {
+				if(change.getVersion() > contract.getVersion()) {
+					contracts.put(id, change);
+				}
+				return;
+			}
+			
+			if(event.getType() == ContractEvent.Type.UPDATED) {
+				
+				contract.setName(change.getName());
+				contract.setBusinessNumber(change.getBusinessNumber());
+				
+				// the amount is read-only once the contract is decided
+				if(contract.getStatus() == null) {
+					contract.setAmountRequested(change.getAmountRequested());
+				}
+				
+			} else {
+				contract.setStatus(change.getStatus());
+				contract.setActivationDate(change.getActivationDate());
+			}
+			
+			contract.setVersion(contract.getVersion() + 1);
+			contract.setLastModified(change.getLastModified());
+		}
+		
+		/**
+		 * @return the contracts, in the order they were created
+		 */
+		Collection<Contract> getContracts() {
+			return contracts.values();
+		}
+		
+		/**
+		 * @return when each deleted contract was deleted, for those whose time
+		 *         is known
+		 */
+		Map<Long, Date> getTombstones() {
+			return tombstones;
+		}
+	}
+}
@@ -0,0 +1,150 @@
+package finley.peter.nextgear.concurrent;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.core.task.TaskDecorator;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+/**
+ * Runs blocking database work on a fixed size pool of threads with a bounded
+ * queue, so request threads are not tied up waiting on the database. Work is
+ * rejected, rather than queued indefinitely, when the queue is full or when it
+ * has waited in the queue longer than the queue timeout.
+ * <p>
+ * Publishes the following metrics under <code>executor.&lt;name&gt;</code>:
+ * the number of <code>active</code> threads, the number of <code>queued</code>
+ * tasks, the queue <code>wait</code> time, and counts of tasks
+ * <code>rejected</code> because the queue was full or <code>expired</code>
+ * because they waited too long.
+ */
+public class DatabaseExecutor {
+
+	private final ThreadPoolExecutor executor;
+	
+	private final long queueTimeoutNanos;
+	
+	private final Timer waitTimer;
+	private final Counter rejected;
+	private final Counter expired;
+	
+	private TaskDecorator taskDecorator = task -> task;
+	
+	/**
+	 * Create an executor that runs tasks on the calling thread, for when
+	 * asynchronous execution is disabled.
+	 */
+	public DatabaseExecutor() {
+		this.executor = null;
+		this.queueTimeoutNanos = 0;
+		this.waitTimer = new Timer();
+		this.rejected = new Counter();
+		this.expired = new Counter();
+	}
+	
+	/**
+	 * Create an executor with its own thread pool.
+	 * 
+	 * @param name the name used for threads and metrics
+	 * @param poolSize the number of threads
+	 * @param queueCapacity the maximum number of tasks waiting for a thread
+	 * @param queueTimeoutMillis the maximum time a task may wait for a thread
+	 * @param metricRegistry the registry to publish metrics to
+	 */
+	public DatabaseExecutor(String name, int poolSize, int queueCapacity, long queueTimeoutMillis, 
+			MetricRegistry metricRegistry) {
+		
+		this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0, TimeUnit.MILLISECONDS, 
+				new ArrayBlockingQueue<>(queueCapacity), new CustomizableThreadFactory(name + "-"));
+		this.queueTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(queueTimeoutMillis);
+		
+		String prefix = MetricRegistry.name("executor", name);
+		metricRegistry.register(MetricRegistry.name(prefix, "active"), (Gauge<Integer>) executor::getActiveCount);
+		metricRegistry.register(MetricRegistry.name(prefix, "queued"), (Gauge<Integer>) () -> executor.getQueue().size());
+		this.waitTimer = metricRegistry.timer(MetricRegistry.name(prefix, "wait"));
+		this.rejected = metricRegistry.counter(MetricRegistry.name(prefix, "rejected"));
+		this.expired = metricRegistry.counter(MetricRegistry.name(prefix, "expired"));
+	}
+
+	/**
+	 * Set a decorator applied to tasks on the submitting thread, for example
+	 * to carry thread bound context over to the database thread. Not applied
+	 * when tasks run on the calling thread.
+	 * 
+	 * @param taskDecorator the decorator
+	 */
+	public void setTaskDecorator(TaskDecorator taskDecorator) {
+		this.taskDecorator = taskDecorator;
+	}
+
+	/**
+	 * Run the task on a database thread.
+	 * 
+	 * @param task the task to run
+	 * @return a future completed with the task's result or exception, or with a
+	 *         {@link RejectedExecutionException} if the task could not be run
+	 *         in time
+	 */
+	public <T> CompletableFuture<T> submit(Callable<T> task) {
+		
+		CompletableFuture<T> future = new CompletableFuture<>();
+		
+		if(executor == null) {
+			run(task, future);
+			return future;
+		}
+		
+		long queuedAt = System.nanoTime();
+		try {
+			executor.execute(taskDecorator.decorate(() -> {
+				
+				long waited = System.nanoTime() - queuedAt;
+				waitTimer.update(waited, TimeUnit.NANOSECONDS);
+				
+				// the client has likely given up, don't add to the load
+				if(waited > queueTimeoutNanos) {
+					expired.inc();
+					future.completeExceptionally(new RejectedExecutionException("Timed out waiting for a database thread"));
+					return;
+				}
+				
+				run(task, future);
+			}));
+		} catch(RejectedExecutionException e) {
+			rejected.inc();
+			future.completeExceptionally(new RejectedExecutionException("Too many pending database requests", e));
+		}
+		
+		return future;
+	}
+	
+	/**
+	 * Stop accepting tasks and wait for queued tasks to finish.
+	 * 
+	 * @throws InterruptedException
+	 */
+	public void shutdown() throws InterruptedException {
+		
+		if(executor != null) {
+			executor.shutdown();
+			executor.awaitTermination(queueTimeoutNanos, TimeUnit.NANOSECONDS);
+		}
+	}
+	
+	private static <T> void run(Callable<T> task, CompletableFuture<T> future) {
+		try {
+			future.complete(task.call());
+		} catch(Throwable e) {
+			future.completeExceptionally(e);
+		}
+	}
+}
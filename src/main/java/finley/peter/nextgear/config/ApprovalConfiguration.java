@@ -0,0 +1,33 @@
+package finley.peter.nextgear.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+import finley.peter.nextgear.service.AmountLimitDecisionRule;
+import finley.peter.nextgear.service.ContractDecisionRule;
+
+/**
+ * Configures the rule the contract approval service decides SALES contracts
+ * with. A different rule can be plugged in by declaring a
+ * {@link org.springframework.context.annotation.Primary} rule bean. With
+ * <code>contracts.approval.enabled=true</code> the approval service runs every
+ * <code>contracts.approval.interval</code> milliseconds.
+ */
+@Configuration
+public class ApprovalConfiguration {
+
+	@Bean
+	public ContractDecisionRule contractDecisionRule(
+			@Value("${contracts.approval.amount-limit:100000}") int amountLimit) {
+		return new AmountLimitDecisionRule(amountLimit);
+	}
+	
+	@Configuration
+	@EnableScheduling
+	@ConditionalOnProperty("contracts.approval.enabled")
+	static class SchedulingConfiguration {
+	}
+}
@@ -0,0 +1,39 @@
+package finley.peter.nextgear.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.codahale.metrics.MetricRegistry;
+
+import finley.peter.nextgear.concurrent.DatabaseExecutor;
+import finley.peter.nextgear.dao.ReplicaContext;
+
+/**
+ * Configures the {@link DatabaseExecutor} the contract controller runs
+ * service calls on. With <code>contracts.async.enabled=false</code> service
+ * calls run on the request thread instead.
+ */
+@Configuration
+public class AsyncConfiguration {
+
+	@Bean(destroyMethod="shutdown")
+	public DatabaseExecutor databaseExecutor(
+			@Value("${contracts.async.enabled:false}") boolean enabled,
+			@Value("${contracts.async.pool-size:16}") int poolSize,
+			@Value("${contracts.async.queue-capacity:200}") int queueCapacity,
+			@Value("${contracts.async.queue-timeout:5000}") long queueTimeout,
+			MetricRegistry metricRegistry) {
+		
+		if(!enabled) {
+			return new DatabaseExecutor();
+		}
+		
+		DatabaseExecutor executor = new DatabaseExecutor("database", poolSize, queueCapacity, queueTimeout, metricRegistry);
+		
+		// reads after a write go where the request thread's would
+		executor.setTaskDecorator(ReplicaContext::decorate);
+		
+		return executor;
+	}
+}
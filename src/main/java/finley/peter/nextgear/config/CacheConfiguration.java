@@ -0,0 +1,51 @@
+package finley.peter.nextgear.config;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import finley.peter.nextgear.service.impl.ContractServiceImpl;
+
+/**
+ * Enables the contract cache and publishes its hit, miss and eviction counts
+ * on the actuator <code>/metrics</code> endpoint. The cache is sized and
+ * expired through <code>spring.cache.caffeine.spec</code> and can be turned
+ * off with <code>spring.cache.type=none</code>.
+ */
+@Configuration
+@EnableCaching
+public class CacheConfiguration {
+
+	@Bean
+	public PublicMetrics contractCacheMetrics(CacheManager cacheManager) {
+		return () -> cacheMetrics(cacheManager.getCache(ContractServiceImpl.CONTRACT_CACHE));
+	}
+	
+	private Collection<Metric<?>> cacheMetrics(Cache cache) {
+		
+		List<Metric<?>> metrics = new ArrayList<>();
+		
+		if(cache instanceof CaffeineCache) {
+			
+			String prefix = "cache." + cache.getName() + ".";
+			CacheStats stats = ((CaffeineCache) cache).getNativeCache().stats();
+			
+			metrics.add(new Metric<>(prefix + "hits", stats.hitCount()));
+			metrics.add(new Metric<>(prefix + "misses", stats.missCount()));
+			metrics.add(new Metric<>(prefix + "evictions", stats.evictionCount()));
+		}
+		
+		return metrics;
+	}
+}
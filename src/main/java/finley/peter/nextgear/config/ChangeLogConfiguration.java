@@ -0,0 +1,42 @@
+package finley.peter.nextgear.config;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import finley.peter.nextgear.changelog.ChangeLog;
+import finley.peter.nextgear.changelog.ChangeLogRestorer;
+import finley.peter.nextgear.dao.ContractShards;
+import finley.peter.nextgear.service.ContractService;
+
+/**
+ * Configures the contract change log. With
+ * <code>contracts.change-log.enabled=true</code> every committed contract
+ * change is appended to a {@link ChangeLog} in
+ * <code>contracts.change-log.directory</code>, and with
+ * <code>contracts.change-log.restore=true</code> an empty database is rebuilt
+ * from it on startup.
+ */
+@Configuration
+@ConditionalOnProperty("contracts.change-log.enabled")
+public class ChangeLogConfiguration {
+	
+	@Bean
+	public ChangeLog changeLog(@Value("${contracts.change-log.directory}") String directory,
+			@Value("${contracts.change-log.segment-size:67108864}") int segmentSize) throws IOException {
+		return new ChangeLog(Paths.get(directory), segmentSize);
+	}
+	
+	@Bean
+	@ConditionalOnProperty(name="contracts.change-log.restore", matchIfMissing=true)
+	public ChangeLogRestorer changeLogRestorer(ChangeLog changeLog, ContractService contractService, 
+			ContractShards contractShards, DataSource dataSource) {
+		return new ChangeLogRestorer(changeLog, contractService, contractShards, dataSource);
+	}
+}
@@ -0,0 +1,110 @@
+package finley.peter.nextgear.config;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+import finley.peter.nextgear.service.impl.ShardedContractService;
+
+/**
+ * Times every call to the contract controller, service and repositories.
+ * Timers are named <code>timer.&lt;layer&gt;.&lt;type&gt;.&lt;method&gt;</code>
+ * (e.g. <code>timer.service.ContractService.findOne</code>) and published on
+ * the actuator <code>/metrics</code> endpoint with their rates and latency
+ * percentiles in nanoseconds. Calls returning a {@link CompletionStage}, such
+ * as the controller's, are timed until it completes.
+ * <p>
+ * When sharding, calls to the {@link ShardedContractService} are timed as the
+ * <code>sharded</code> layer, and the service layer times its calls to each
+ * shard, so no call is counted twice under the same name.
+ */
+@Aspect
+@Component
+public class LatencyMetricsAspect {
+
+	private static final String BASE_PACKAGE = "finley.peter.nextgear.";
+	
+	private final MetricRegistry metricRegistry;
+	
+	// resolved once per proxy and method so timing a call doesn't build a name
+	private final ConcurrentMap<Class<?>, ConcurrentMap<Method, Timer>> timers = new ConcurrentHashMap<>();
+	
+	public LatencyMetricsAspect(MetricRegistry metricRegistry) {
+		this.metricRegistry = metricRegistry;
+	}
+
+	@Around("execution(public * finley.peter.nextgear.web.controller.ContractController.*(..))")
+	public Object timeController(ProceedingJoinPoint joinPoint) throws Throwable {
+		return time(joinPoint, "controller");
+	}
+
+	@Around("execution(public * finley.peter.nextgear.service.ContractService+.*(..)) "
+			+ "&& !target(finley.peter.nextgear.service.impl.ShardedContractService)")
+	public Object timeService(ProceedingJoinPoint joinPoint) throws Throwable {
+		return time(joinPoint, "service");
+	}
+
+	@Around("execution(public * finley.peter.nextgear.service.ContractService+.*(..)) "
+			+ "&& target(finley.peter.nextgear.service.impl.ShardedContractService)")
+	public Object timeShardedService(ProceedingJoinPoint joinPoint) throws Throwable {
+		return time(joinPoint, "sharded");
+	}
+
+	@Around("execution(public * finley.peter.nextgear.dao.*Repository+.*(..))")
+	public Object timeRepository(ProceedingJoinPoint joinPoint) throws Throwable {
+		return time(joinPoint, "repository");
+	}
+	
+	private Object time(ProceedingJoinPoint joinPoint, String layer) throws Throwable {
+		
+		Class<?> proxyType = joinPoint.getThis().getClass();
+		Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+		
+		Timer timer = timers.computeIfAbsent(proxyType, key -> new ConcurrentHashMap<>())
+				.computeIfAbsent(method, key -> metricRegistry.timer(name(proxyType, method, layer)));
+		
+		Timer.Context context = timer.time();
+		
+		Object result;
+		try {
+			result = joinPoint.proceed();
+		} catch(Throwable e) {
+			context.stop();
+			throw e;
+		}
+		
+		if(result instanceof CompletionStage) {
+			((CompletionStage<?>) result).whenComplete((value, error) -> context.stop());
+		} else {
+			context.stop();
+		}
+		
+		return result;
+	}
+	
+	private static String name(Class<?> proxyType, Method method, String layer) {
+		
+		// name after our own interface (e.g. ContractRepository rather than
+		// CrudRepository for inherited methods), falling back to the declaring class
+		Class<?> type = method.getDeclaringClass();
+		for(Class<?> proxyInterface : ClassUtils.getAllInterfacesForClassAsSet(proxyType)) {
+			if(proxyInterface.getName().startsWith(BASE_PACKAGE)) {
+				type = proxyInterface;
+				break;
+			}
+		}
+		
+		return MetricRegistry.name("timer", layer, type.getSimpleName(), method.getName());
+	}
+}
@@ -0,0 +1,83 @@
+package finley.peter.nextgear.config;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import finley.peter.nextgear.dao.ReplicaContext;
+
+/**
+ * Lets a client read its own writes while they may not yet have reached the
+ * replicas. Every write request is answered with a cookie holding the time of
+ * the write, and requests that carry a cookie from within the window read from
+ * the primary, as do writes themselves.
+ */
+public class ReadYourWritesFilter extends OncePerRequestFilter {
+
+	static final String COOKIE = "contracts-last-write";
+	
+	private static final Set<String> READ_METHODS = new HashSet<>(Arrays.asList("GET", "HEAD", "OPTIONS"));
+	
+	private final long windowMillis;
+	
+	/**
+	 * @param windowMillis how long after a write the client reads from the
+	 *            primary
+	 */
+	public ReadYourWritesFilter(long windowMillis) {
+		this.windowMillis = windowMillis;
+	}
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+			throws ServletException, IOException {
+		
+		long now = System.currentTimeMillis();
+		boolean write = !READ_METHODS.contains(request.getMethod());
+		
+		if(write) {
+			Cookie cookie = new Cookie(COOKIE, Long.toString(now));
+			cookie.setPath("/");
+			cookie.setHttpOnly(true);
+			cookie.setMaxAge((int) TimeUnit.MILLISECONDS.toSeconds(windowMillis + 999));
+			response.addCookie(cookie);
+		}
+		
+		ReplicaContext.setPrimaryOnly(write || now - lastWrite(request) < windowMillis);
+		try {
+			filterChain.doFilter(request, response);
+		} finally {
+			ReplicaContext.clear();
+		}
+	}
+	
+	/**
+	 * @return the time of the client's last write, 0 if it hasn't written
+	 */
+	private static long lastWrite(HttpServletRequest request) {
+		
+		if(request.getCookies() != null) {
+			for(Cookie cookie : request.getCookies()) {
+				if(COOKIE.equals(cookie.getName())) {
+					try {
+						return Long.parseLong(cookie.getValue());
+					} catch(NumberFormatException e) {
+						return 0;
+					}
+				}
+			}
+		}
+		
+		return 0;
+	}
+}
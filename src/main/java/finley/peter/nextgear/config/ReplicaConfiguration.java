@@ -0,0 +1,92 @@
+package finley.peter.nextgear.config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.autoconfigure.orm.jpa.JpaProperties;
+import org.springframework.boot.orm.jpa.EntityManagerFactoryBuilder;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import finley.peter.nextgear.dao.ContractReplicaFeeder;
+import finley.peter.nextgear.dao.ContractShards;
+import finley.peter.nextgear.dao.ReadWriteRoutingDataSource;
+
+/**
+ * Configures read replicas. With <code>contracts.replicas.count</code> greater
+ * than 0, read only transactions go to that many replica databases, using
+ * <code>contracts.replicas.url</code> with <code>{replica}</code> replaced by
+ * the replica number and the credentials of <code>spring.datasource</code>,
+ * which remains the primary. Clients read from the primary for
+ * <code>contracts.replicas.read-your-writes</code> milliseconds after writing.
+ * <p>
+ * With <code>contracts.replicas.feed=true</code> the replicas are fed from the
+ * primary by a {@link ContractReplicaFeeder}, after
+ * <code>contracts.replicas.lag</code> milliseconds, for replicas with no
+ * replication of their own. Replicas can't be combined with sharding.
+ */
+@Configuration
+@ConditionalOnExpression("${contracts.replicas.count:0} > 0")
+public class ReplicaConfiguration {
+
+	/**
+	 * The routing data source, behind a proxy that holds off choosing a
+	 * connection until a statement is run.
+	 */
+	@Bean
+	@Primary
+	public DataSource dataSource(DataSourceProperties properties, ContractShards contractShards,
+			@Value("${contracts.replicas.count}") int count,
+			@Value("${contracts.replicas.url}") String url) {
+		
+		if(contractShards.getCount() > 1) {
+			throw new IllegalStateException("Replicas can't be used with sharding");
+		}
+		
+		List<DataSource> replicas = new ArrayList<>();
+		for(int replica = 0; replica < count; replica++) {
+			replicas.add(properties.initializeDataSourceBuilder()
+					.url(url.replace("{replica}", Integer.toString(replica)))
+					.build());
+		}
+		
+		return new LazyConnectionDataSourceProxy(
+				new ReadWriteRoutingDataSource(properties.initializeDataSourceBuilder().build(), replicas));
+	}
+	
+	/**
+	 * The routing data source of {@link #dataSource}, as a bean of its own
+	 * after it so the data source initializer sees the primary first.
+	 */
+	@Bean(destroyMethod="close")
+	public ReadWriteRoutingDataSource readWriteRoutingDataSource(DataSource dataSource) {
+		return (ReadWriteRoutingDataSource) ((LazyConnectionDataSourceProxy) dataSource).getTargetDataSource();
+	}
+	
+	@Bean
+	public SchemaInitializer replicaSchemaInitializer(ReadWriteRoutingDataSource dataSource, 
+			EntityManagerFactoryBuilder builder, JpaProperties jpaProperties) {
+		return new SchemaInitializer(dataSource.getReplicas(), "replica", builder, jpaProperties);
+	}
+	
+	@Bean
+	@ConditionalOnProperty(name="contracts.replicas.feed", matchIfMissing=true)
+	public ContractReplicaFeeder contractReplicaFeeder(ReadWriteRoutingDataSource dataSource, 
+			@Value("${contracts.replicas.lag:0}") long lag) {
+		return new ContractReplicaFeeder(dataSource.getPrimary(), dataSource.getReplicas(), lag);
+	}
+	
+	@Bean
+	public FilterRegistrationBean readYourWritesFilter(@Value("${contracts.replicas.read-your-writes:5000}") long window) {
+		return new FilterRegistrationBean(new ReadYourWritesFilter(window));
+	}
+}
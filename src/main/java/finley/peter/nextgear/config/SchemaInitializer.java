@@ -0,0 +1,72 @@
+package finley.peter.nextgear.config;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.boot.autoconfigure.orm.jpa.JpaProperties;
+import org.springframework.boot.orm.jpa.EntityManagerFactoryBuilder;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+
+import finley.peter.nextgear.model.Contract;
+
+/**
+ * Hibernate only creates the schema through the data source it is given,
+ * which for a routing data source is its default target. Creates it on other
+ * data sources, such as further shards or replicas, the same way: by starting
+ * and closing an entity manager factory for each, as long as Hibernate is
+ * configured to create the schema at all.
+ */
+class SchemaInitializer implements InitializingBean {
+	
+	private static final String HBM2DDL_AUTO = "hibernate.hbm2ddl.auto";
+	
+	private final List<DataSource> dataSources;
+	private final String name;
+	private final EntityManagerFactoryBuilder builder;
+	private final JpaProperties jpaProperties;
+	
+	/**
+	 * @param dataSources the data sources to create the schema on
+	 * @param name a name for the data sources, used for the persistence units
+	 * @param builder
+	 * @param jpaProperties
+	 */
+	SchemaInitializer(List<DataSource> dataSources, String name, EntityManagerFactoryBuilder builder, 
+			JpaProperties jpaProperties) {
+		this.dataSources = dataSources;
+		this.name = name;
+		this.builder = builder;
+		this.jpaProperties = jpaProperties;
+	}
+
+	@Override
+	public void afterPropertiesSet() {
+		
+		for(int i = 0; i < dataSources.size(); i++) {
+			
+			DataSource dataSource = dataSources.get(i);
+			Map<String, Object> properties = new HashMap<>(jpaProperties.getHibernateProperties(dataSource));
+			
+			// dropping when this factory closes would undo it
+			Object ddl = properties.get(HBM2DDL_AUTO);
+			if("create-drop".equals(ddl)) {
+				properties.put(HBM2DDL_AUTO, "create");
+			} else if(!"create".equals(ddl) && !"update".equals(ddl)) {
+				return;
+			}
+			
+			LocalContainerEntityManagerFactoryBean factory = builder.dataSource(dataSource)
+					.packages(Contract.class)
+					.persistenceUnit(name + i)
+					.properties(properties)
+					.build();
+			
+			factory.afterPropertiesSet();
+			factory.destroy();
+		}
+	}
+}
@@ -0,0 +1,76 @@
+package finley.peter.nextgear.config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.autoconfigure.orm.jpa.JpaProperties;
+import org.springframework.boot.orm.jpa.EntityManagerFactoryBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+import finley.peter.nextgear.dao.ContractShards;
+import finley.peter.nextgear.dao.ShardRoutingDataSource;
+import finley.peter.nextgear.service.ContractService;
+import finley.peter.nextgear.service.impl.ShardedContractService;
+
+/**
+ * Configures contract sharding. With <code>contracts.sharding.shards</code>
+ * greater than 1 the data source routes to that many databases: shard 0 is the
+ * usual <code>spring.datasource</code> and the others use
+ * <code>contracts.sharding.url</code> with <code>{shard}</code> replaced by the
+ * shard number, and the same credentials. The {@link ShardedContractService}
+ * then becomes the primary contract service.
+ */
+@Configuration
+public class ShardingConfiguration {
+
+	@Bean
+	public ContractShards contractShards(@Value("${contracts.sharding.shards:1}") int shards) {
+		return new ContractShards(shards);
+	}
+	
+	@Configuration
+	@ConditionalOnExpression("${contracts.sharding.shards:1} > 1")
+	static class ShardedConfiguration {
+		
+		@Bean(destroyMethod="close")
+		@Primary
+		public ShardRoutingDataSource dataSource(DataSourceProperties properties, ContractShards contractShards,
+				@Value("${contracts.sharding.url}") String url) {
+			
+			List<DataSource> shards = new ArrayList<>();
+			shards.add(properties.initializeDataSourceBuilder().build());
+			for(int shard = 1; shard < contractShards.getCount(); shard++) {
+				shards.add(properties.initializeDataSourceBuilder()
+						.url(url.replace("{shard}", Integer.toString(shard)))
+						.build());
+			}
+			
+			return new ShardRoutingDataSource(shards);
+		}
+		
+		@Bean
+		public SchemaInitializer shardSchemaInitializer(ShardRoutingDataSource dataSource, 
+				EntityManagerFactoryBuilder builder, JpaProperties jpaProperties) {
+			
+			// shard 0 has its schema created by Hibernate
+			List<DataSource> shards = dataSource.getShards();
+			return new SchemaInitializer(shards.subList(1, shards.size()), "shard", builder, jpaProperties);
+		}
+		
+		@Bean(destroyMethod="shutdown")
+		@Primary
+		public ShardedContractService shardedContractService(
+				@Qualifier("contractServiceImpl") ContractService contractService, ContractShards contractShards,
+				@Value("${contracts.sharding.pool-size:16}") int poolSize) {
+			return new ShardedContractService(contractService, contractShards, poolSize);
+		}
+	}
+}
@@ -0,0 +1,43 @@
+package finley.peter.nextgear.config;
+
+import java.util.List;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurerAdapter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+/**
+ * Lets clients ask for Smile, Jackson's binary JSON, instead of JSON with
+ * <code>Accept: application/x-jackson-smile</code>. Smile has the same data
+ * model as JSON, so the same annotations apply, but is smaller and cheaper to
+ * write: field names repeated in every element of a list are sent once and
+ * referred back to, and numbers are binary.
+ * <p>
+ * The Smile converter is added after the default ones, so JSON is still sent
+ * to clients that accept anything. The Smile mapper is configured with Spring
+ * Boot's Jackson settings, like the JSON one, so both representations have
+ * the same content.
+ */
+@Configuration
+public class SmileConfiguration extends WebMvcConfigurerAdapter {
+	
+	private Jackson2ObjectMapperBuilder builder;
+	
+	public SmileConfiguration(Jackson2ObjectMapperBuilder builder) {
+		this.builder = builder;
+	}
+
+	@Override
+	public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+		
+		// configure a new mapper rather than changing the shared builder's factory
+		ObjectMapper objectMapper = new ObjectMapper(new SmileFactory());
+		builder.configure(objectMapper);
+		
+		converters.add(new SmileHttpMessageConverter(objectMapper));
+	}
+}
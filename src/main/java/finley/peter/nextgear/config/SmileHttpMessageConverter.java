@@ -0,0 +1,22 @@
+package finley.peter.nextgear.config;
+
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.AbstractJackson2HttpMessageConverter;
+import org.springframework.util.Assert;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+/**
+ * Reads and writes <code>application/x-jackson-smile</code> with Jackson.
+ */
+public class SmileHttpMessageConverter extends AbstractJackson2HttpMessageConverter {
+	
+	/**
+	 * @param objectMapper a mapper created with a {@link SmileFactory}
+	 */
+	public SmileHttpMessageConverter(ObjectMapper objectMapper) {
+		super(objectMapper, new MediaType("application", "x-jackson-smile"));
+		Assert.isInstanceOf(SmileFactory.class, objectMapper.getFactory(), "SmileFactory required");
+	}
+}
@@ -0,0 +1,249 @@
+package finley.peter.nextgear.dao;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import finley.peter.nextgear.service.ContractEvent;
+import finley.peter.nextgear.service.ContractStatisticsRebuiltEvent;
+
+/**
+ * Feeds replica databases from the primary, for running with replicas that
+ * have no replication of their own, such as embedded databases. Every
+ * committed contract change is copied from the primary to the replicas on a
+ * single thread, after an optional lag, followed by the statistics of the
+ * contract's status and type before and after the change. A deleted
+ * contract's tombstone is copied along with the delete. The tables are copied
+ * in full once the application is ready, and the statistics whenever they are
+ * rebuilt.
+ * <p>
+ * Changes are copied as the primary has them when they are applied, so the
+ * replicas always catch up with the primary, whatever order changes arrive in.
+ */
+public class ContractReplicaFeeder {
+
+	private static final Logger logger = LoggerFactory.getLogger(ContractReplicaFeeder.class);
+	
+	private static final long POLL_INTERVAL_MILLIS = 100;
+	
+	private static final String CONTRACT = "contract";
+	private static final String CONTRACT_ID = "contract_id";
+	private static final String CONTRACT_STATISTIC = "contract_statistic";
+	private static final String CONTRACT_TOMBSTONE = "contract_tombstone";
+	private static final String STATUS = "status";
+	private static final String TYPE = "type";
+	
+	private final JdbcTemplate primary;
+	
+	private final List<JdbcTemplate> replicas;
+	
+	private final long lagNanos;
+	
+	private final BlockingQueue<Change> changes = new LinkedBlockingQueue<>();
+	
+	/**
+	 * Changes queued or being copied.
+	 */
+	private final AtomicInteger pending = new AtomicInteger();
+	
+	private final Thread feeder = new Thread(this::feed, "contract-replica-feeder");
+	
+	private volatile boolean running;
+	
+	/**
+	 * @param primary the primary database
+	 * @param replicas the replica databases, with the same schema
+	 * @param lagMillis how long after a change is committed to copy it
+	 */
+	public ContractReplicaFeeder(DataSource primary, List<DataSource> replicas, long lagMillis) {
+		this.primary = new JdbcTemplate(primary);
+		this.replicas = replicas.stream().map(JdbcTemplate::new).collect(Collectors.toList());
+		this.lagNanos = TimeUnit.MILLISECONDS.toNanos(lagMillis);
+	}
+	
+	@PostConstruct
+	public void start() {
+		running = true;
+		feeder.start();
+	}
+	
+	@PreDestroy
+	public void shutdown() throws InterruptedException {
+		running = false;
+		feeder.join();
+	}
+	
+	@EventListener
+	public void onApplicationReady(ApplicationReadyEvent event) {
+		add(new Change(null, true));
+	}
+	
+	@TransactionalEventListener
+	public void onContractEvent(ContractEvent event) {
+		add(new Change(event.getContract().getId(), false));
+	}
+	
+	@TransactionalEventListener
+	public void onStatisticsRebuilt(ContractStatisticsRebuiltEvent event) {
+		add(new Change(null, false));
+	}
+	
+	private void add(Change change) {
+		pending.incrementAndGet();
+		changes.add(change);
+	}
+	
+	/**
+	 * @return the number of changes not yet copied to the replicas
+	 */
+	public int getPending() {
+		return pending.get();
+	}
+	
+	private void feed() {
+		
+		try {
+			while(running) {
+				
+				Change change = changes.poll(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+				if(change == null) {
+					continue;
+				}
+				
+				long wait = change.committedAt + lagNanos - System.nanoTime();
+				if(wait > 0) {
+					TimeUnit.NANOSECONDS.sleep(wait);
+				}
+				
+				try {
+					if(change.contractId != null) {
+						copyContract(change.contractId);
+					} else {
+						if(change.all) {
+							copyTable(CONTRACT);
+							copyTable(CONTRACT_TOMBSTONE);
+						}
+						copyTable(CONTRACT_STATISTIC);
+					}
+				} catch(DataAccessException e) {
+					logger.warn("Failed to copy a change to the replicas", e);
+				} finally {
+					pending.decrementAndGet();
+				}
+			}
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	private void copyContract(long id) {
+		
+		List<Map<String, Object>> rows = primary.queryForList("select * from " + CONTRACT + " where " + CONTRACT_ID + " = ?", id);
+		
+		for(JdbcTemplate replica : replicas) {
+			
+			// the statistics of the contract as the replica has it change too
+			Set<List<Object>> statistics = new LinkedHashSet<>();
+			for(Map<String, Object> row : rows) {
+				statistics.add(Arrays.asList(row.get(STATUS), row.get(TYPE)));
+			}
+			for(Map<String, Object> row : replica.queryForList("select " + STATUS + ", " + TYPE + " from " + CONTRACT 
+					+ " where " + CONTRACT_ID + " = ?", id)) {
+				statistics.add(Arrays.asList(row.get(STATUS), row.get(TYPE)));
+			}
+			
+			if(rows.isEmpty()) {
+				replica.update("delete from " + CONTRACT + " where " + CONTRACT_ID + " = ?", id);
+				merge(replica, CONTRACT_TOMBSTONE, 
+						primary.queryForList("select * from " + CONTRACT_TOMBSTONE + " where " + CONTRACT_ID + " = ?", id));
+			} else {
+				merge(replica, CONTRACT, rows);
+			}
+			
+			for(List<Object> statistic : statistics) {
+				copyStatistic(replica, statistic.get(0), statistic.get(1));
+			}
+		}
+	}
+	
+	/**
+	 * Copy the statistic of a status, possibly null, and type.
+	 */
+	private void copyStatistic(JdbcTemplate replica, Object status, Object type) {
+		
+		String where = status == null ? STATUS + " is null" : STATUS + " = ?";
+		Object[] args = status == null ? new Object[] { type } : new Object[] { status, type };
+		
+		merge(replica, CONTRACT_STATISTIC, primary.queryForList("select * from " + CONTRACT_STATISTIC 
+				+ " where " + where + " and " + TYPE + " = ?", args));
+	}
+	
+	private void copyTable(String table) {
+		
+		List<Map<String, Object>> rows = primary.queryForList("select * from " + table);
+		
+		for(JdbcTemplate replica : replicas) {
+			replica.update("delete from " + table);
+			merge(replica, table, rows);
+		}
+	}
+	
+	/**
+	 * Insert or replace rows by primary key.
+	 */
+	private static void merge(JdbcTemplate replica, String table, List<Map<String, Object>> rows) {
+		
+		if(rows.isEmpty()) {
+			return;
+		}
+		
+		List<String> columns = new ArrayList<>(rows.get(0).keySet());
+		String sql = "merge into " + table + " (" + String.join(", ", columns) + ") values (" 
+				+ String.join(", ", Collections.nCopies(columns.size(), "?")) + ")";
+		
+		replica.batchUpdate(sql, rows.stream()
+				.map(row -> columns.stream().map(row::get).toArray())
+				.collect(Collectors.toList()));
+	}
+	
+	private static final class Change {
+		
+		/**
+		 * The changed contract, null to copy the statistics.
+		 */
+		private final Long contractId;
+		
+		/**
+		 * Whether to copy every table, when there is no contract.
+		 */
+		private final boolean all;
+		
+		private final long committedAt = System.nanoTime();
+		
+		private Change(Long contractId, boolean all) {
+			this.contractId = contractId;
+			this.all = all;
+		}
+	}
+}
@@ -1,11 +1,127 @@
 package finley.peter.nextgear.dao;
 
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Stream;
+
+import javax.persistence.QueryHint;
+
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import finley.peter.nextgear.model.Contract;
+import finley.peter.nextgear.model.ContractStatistic;
+import finley.peter.nextgear.model.ContractType;
 
 @Repository
-public interface ContractRepository extends JpaRepository<Contract, Long> {
+public interface ContractRepository extends JpaRepository<Contract, Long>, ContractRepositoryCustom {
+
+	/**
+	 * Number of rows fetched from the database per round trip when streaming.
+	 */
+	String STREAM_FETCH_SIZE = "500";
+
+	/**
+	 * Stream all contracts ordered by id through a forward-only cursor. Must be
+	 * called within a transaction and the stream must be closed when done.
+	 * 
+	 * @return a stream of all contracts
+	 */
+	@Query("select c from contract c order by c.id")
+	@QueryHints(@QueryHint(name="org.hibernate.fetchSize", value=STREAM_FETCH_SIZE))
+	Stream<Contract> streamAll();
+
+	/**
+	 * Stream the id, amount requested, status, type and activation date of all
+	 * contracts ordered by id through a forward-only cursor, without creating
+	 * entities. Must be called within a transaction and the stream must be
+	 * closed when done.
+	 * 
+	 * @return a stream of column values, in the order above
+	 */
+	@Query("select c.id, c.amountRequested, c.status, c.type, c.activationDate from contract c order by c.id")
+	@QueryHints(@QueryHint(name="org.hibernate.fetchSize", value=STREAM_FETCH_SIZE))
+	Stream<Object[]> streamColumns();
+
+	/**
+	 * Calculate the count and amount total of all contracts grouped by status
+	 * and type. Requires a full scan of the table.
+	 * 
+	 * @return one statistic for each status and type combination present
+	 */
+	@Query("select new finley.peter.nextgear.model.ContractStatistic(c.status, c.type, count(c), sum(c.amountRequested)) "
+			+ "from contract c group by c.status, c.type")
+	List<ContractStatistic> summarize();
+
+	/**
+	 * Find the ids of contracts of a type that have no status, in id order,
+	 * starting after the given id. Served by the status index.
+	 * 
+	 * @param type the type of contract
+	 * @param afterId the id to start after
+	 * @param pageable the number of ids to return, the page number must be 0
+	 * @return the ids
+	 */
+	@Query("select c.id from contract c where c.status is null and c.type = :type and c.id > :afterId order by c.id")
+	List<Long> findUndecidedIds(@Param("type") ContractType type, @Param("afterId") long afterId, Pageable pageable);
+
+	/**
+	 * Update a contract's name and business number, and its amount requested if
+	 * it has no status, in a single statement without reading it first. The
+	 * version is incremented.
+	 * 
+	 * @param id the contract to update
+	 * @param version the version the contract must be at, or null for any
+	 * @param name the new name
+	 * @param businessNumber the new business number
+	 * @param amountRequested the new amount, ignored if the contract has a status
+	 * @return the number of contracts updated, 0 if the contract doesn't exist
+	 *         or isn't at the given version
+	 */
+	@Modifying
+	@Query("update contract c set c.name = :name, c.businessNumber = :businessNumber, "
+			+ "c.amountRequested = case when c.status is null then :amountRequested else c.amountRequested end, "
+			+ "c.version = c.version + 1, c.lastModified = :lastModified "
+			+ "where c.id = :id and c.version = coalesce(:version, c.version)")
+	int updateDetails(@Param("id") long id, @Param("version") Long version, @Param("name") String name,
+			@Param("businessNumber") long businessNumber, @Param("amountRequested") int amountRequested,
+			@Param("lastModified") Date lastModified);
+
+	/**
+	 * Delete a contract without loading it first.
+	 * 
+	 * @param id the contract to delete
+	 * @param version the version the contract must be at, or null for any
+	 * @return the number of contracts deleted, 0 if the contract doesn't exist
+	 *         or isn't at the given version
+	 */
+	@Modifying
+	@Query("delete from contract c where c.id = :id and c.version = coalesce(:version, c.version)")
+	int deleteById(@Param("id") long id, @Param("version") Long version);
+
+	/**
+	 * Find which of the given ids are of contracts that exist.
+	 * 
+	 * @param ids the ids to look for
+	 * @return the ids of the contracts that exist, in id order
+	 */
+	@Query("select c.id from contract c where c.id in :ids order by c.id")
+	List<Long> findExistingIds(@Param("ids") Collection<Long> ids);
 
+	/**
+	 * Delete contracts without loading them first. Ids that don't exist are
+	 * ignored.
+	 * 
+	 * @param ids the contracts to delete
+	 * @return the number of contracts deleted
+	 */
+	@Modifying
+	@Query("delete from contract c where c.id in :ids")
+	int deleteByIds(@Param("ids") Collection<Long> ids);
 }
@@ -0,0 +1,40 @@
+package finley.peter.nextgear.dao;
+
+import java.util.List;
+import java.util.Set;
+
+import org.springframework.data.domain.Slice;
+
+import finley.peter.nextgear.model.ContractField;
+import finley.peter.nextgear.model.ContractFilter;
+import finley.peter.nextgear.model.ContractSummary;
+
+/**
+ * Custom queries added to {@link ContractRepository}.
+ */
+public interface ContractRepositoryCustom {
+
+	/**
+	 * Find the next slice of contract summaries matching the filter with an id
+	 * greater than the given id, ordered by id. Only the given fields, and the
+	 * id and version, are selected.
+	 * 
+	 * @param filter the filter to apply
+	 * @param fields the fields to select
+	 * @param id the last id seen by the caller
+	 * @param limit the maximum number of summaries to return
+	 * @return the next slice of contract summaries
+	 */
+	Slice<ContractSummary> findSummaries(ContractFilter filter, Set<ContractField> fields, long id, int limit);
+
+	/**
+	 * Find the ids of contracts matching the filter with an id greater than the
+	 * given id, ordered by id.
+	 * 
+	 * @param filter the filter to apply
+	 * @param id the last id seen by the caller
+	 * @param limit the maximum number of ids to return
+	 * @return the next ids
+	 */
+	List<Long> findIds(ContractFilter filter, long id, int limit);
+}
@@ -0,0 +1,276 @@
+package finley.peter.nextgear.dao;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Collectors;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.TypedQuery;
+
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+
+import finley.peter.nextgear.model.ContractField;
+import finley.peter.nextgear.model.ContractFilter;
+import finley.peter.nextgear.model.ContractStatus;
+import finley.peter.nextgear.model.ContractSummary;
+import finley.peter.nextgear.model.ContractType;
+
+/**
+ * Implementation of {@link ContractRepositoryCustom}.
+ * <p>
+ * The JPQL for a filter depends only on which of its properties are set, so
+ * each combination is built once and reused. Reusing the same JPQL string lets
+ * Hibernate reuse its parsed query plan as well.
+ * <p>
+ * Summaries limited to some fields select only those columns, plus the id and
+ * version every page needs. Their JPQL is cached by field set and filter too,
+ * for the first {@value #MAX_PROJECTED_QUERIES} combinations asked for, so the
+ * common field sets are planned once while a client asking for every possible
+ * combination can't fill the heap.
+ */
+public class ContractRepositoryImpl implements ContractRepositoryCustom {
+
+	private static final int STATUS = 1;
+	private static final int TYPE = 1 << 1;
+	private static final int BUSINESS_NUMBER = 1 << 2;
+	private static final int MIN_AMOUNT_REQUESTED = 1 << 3;
+	private static final int MAX_AMOUNT_REQUESTED = 1 << 4;
+	private static final int ACTIVATED_FROM = 1 << 5;
+	private static final int ACTIVATED_TO = 1 << 6;
+	private static final int MODIFIED_SINCE = 1 << 7;
+	
+	private static final String SELECT_SUMMARIES = "select new finley.peter.nextgear.model.ContractSummary("
+			+ "c.id, c.name, c.businessNumber, c.activationDate, c.amountRequested, c.status, c.type, c.version, "
+			+ "c.lastModified) ";
+	
+	private static final String SELECT_IDS = "select c.id ";
+	
+	private static final int MAX_PROJECTED_QUERIES = 1024;
+	
+	/**
+	 * Fields selected for every summary, to page and tag them.
+	 */
+	private static final Set<ContractField> REQUIRED_FIELDS = EnumSet.of(ContractField.ID, ContractField.VERSION);
+	
+	private final ConcurrentMap<Integer, String> summaryQueries = new ConcurrentHashMap<>();
+	
+	private final ConcurrentMap<Integer, String> projectedQueries = new ConcurrentHashMap<>();
+	
+	private final ConcurrentMap<Integer, String> idQueries = new ConcurrentHashMap<>();
+	
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	@Override
+	public Slice<ContractSummary> findSummaries(ContractFilter filter, Set<ContractField> fields, long id, int limit) {
+		
+		// fetch one extra row to find out if there is another slice
+		List<ContractSummary> summaries = fields.containsAll(ContractField.ALL) 
+				? selectSummaries(filter, id, limit + 1) 
+				: selectProjectedSummaries(filter, fields, id, limit + 1);
+		
+		boolean hasNext = summaries.size() > limit;
+		if(hasNext) {
+			summaries = summaries.subList(0, limit);
+		}
+		
+		return new SliceImpl<>(summaries, new PageRequest(0, limit), hasNext);
+	}
+
+	private List<ContractSummary> selectSummaries(ContractFilter filter, long id, int limit) {
+		
+		int properties = properties(filter);
+		String jpql = summaryQueries.computeIfAbsent(properties, p -> buildQuery(SELECT_SUMMARIES, p));
+		
+		TypedQuery<ContractSummary> query = entityManager.createQuery(jpql, ContractSummary.class);
+		bind(query, filter, properties, id);
+		query.setMaxResults(limit);
+		
+		return query.getResultList();
+	}
+	
+	private List<ContractSummary> selectProjectedSummaries(ContractFilter filter, Set<ContractField> fields, long id, 
+			int limit) {
+		
+		EnumSet<ContractField> selected = EnumSet.copyOf(REQUIRED_FIELDS);
+		selected.addAll(fields);
+		
+		int properties = properties(filter);
+		// the filter's properties take the low 8 bits
+		int key = ContractField.mask(selected) << 8 | properties;
+		
+		String jpql = projectedQueries.get(key);
+		if(jpql == null) {
+			jpql = buildQuery(selectFields(selected), properties);
+			if(projectedQueries.size() < MAX_PROJECTED_QUERIES) {
+				projectedQueries.putIfAbsent(key, jpql);
+			}
+		}
+		
+		TypedQuery<Object[]> query = entityManager.createQuery(jpql, Object[].class);
+		bind(query, filter, properties, id);
+		query.setMaxResults(limit);
+		
+		List<Object[]> rows = query.getResultList();
+		
+		List<ContractSummary> summaries = new ArrayList<>(rows.size());
+		Object[] values = new Object[ContractField.ALL.size()];
+		for(Object[] row : rows) {
+			
+			int column = 0;
+			for(ContractField field : selected) {
+				values[field.ordinal()] = row[column++];
+			}
+			
+			summaries.add(new ContractSummary(
+					(Long) values[ContractField.ID.ordinal()], 
+					(String) values[ContractField.NAME.ordinal()], 
+					(Long) values[ContractField.BUSINESS_NUMBER.ordinal()], 
+					(Date) values[ContractField.ACTIVATION_DATE.ordinal()], 
+					(Integer) values[ContractField.AMOUNT_REQUESTED.ordinal()], 
+					(ContractStatus) values[ContractField.STATUS.ordinal()], 
+					(ContractType) values[ContractField.TYPE.ordinal()], 
+					(Long) values[ContractField.VERSION.ordinal()], 
+					(Date) values[ContractField.LAST_MODIFIED.ordinal()], 
+					fields));
+		}
+		
+		return summaries;
+	}
+	
+	/**
+	 * Build the select clause for the given fields, in field order.
+	 */
+	private static String selectFields(Set<ContractField> fields) {
+		
+		return fields.stream()
+				.map(field -> "c." + field.getProperty())
+				.collect(Collectors.joining(", ", "select ", " "));
+	}
+
+	@Override
+	public List<Long> findIds(ContractFilter filter, long id, int limit) {
+		
+		int properties = properties(filter);
+		String jpql = idQueries.computeIfAbsent(properties, p -> buildQuery(SELECT_IDS, p));
+		
+		TypedQuery<Long> query = entityManager.createQuery(jpql, Long.class);
+		bind(query, filter, properties, id);
+		query.setMaxResults(limit);
+		
+		return query.getResultList();
+	}
+	
+	/**
+	 * Bind the id and the filter's set properties to a query built by
+	 * {@link #buildQuery(String, int)}.
+	 */
+	private static void bind(TypedQuery<?> query, ContractFilter filter, int properties, long id) {
+		
+		query.setParameter("id", id);
+		
+		if((properties & STATUS) != 0) {
+			query.setParameter("status", filter.getStatus());
+		}
+		if((properties & TYPE) != 0) {
+			query.setParameter("type", filter.getType());
+		}
+		if((properties & BUSINESS_NUMBER) != 0) {
+			query.setParameter("businessNumber", filter.getBusinessNumber());
+		}
+		if((properties & MIN_AMOUNT_REQUESTED) != 0) {
+			query.setParameter("minAmountRequested", filter.getMinAmountRequested());
+		}
+		if((properties & MAX_AMOUNT_REQUESTED) != 0) {
+			query.setParameter("maxAmountRequested", filter.getMaxAmountRequested());
+		}
+		if((properties & ACTIVATED_FROM) != 0) {
+			query.setParameter("activatedFrom", filter.getActivatedFrom());
+		}
+		if((properties & ACTIVATED_TO) != 0) {
+			query.setParameter("activatedTo", filter.getActivatedTo());
+		}
+		if((properties & MODIFIED_SINCE) != 0) {
+			query.setParameter("modifiedSince", filter.getModifiedSince());
+		}
+	}
+	
+	/**
+	 * Get a bit mask of the properties set on the filter.
+	 */
+	private static int properties(ContractFilter filter) {
+		
+		int properties = 0;
+		
+		if(filter.getStatus() != null) {
+			properties |= STATUS;
+		}
+		if(filter.getType() != null) {
+			properties |= TYPE;
+		}
+		if(filter.getBusinessNumber() != null) {
+			properties |= BUSINESS_NUMBER;
+		}
+		if(filter.getMinAmountRequested() != null) {
+			properties |= MIN_AMOUNT_REQUESTED;
+		}
+		if(filter.getMaxAmountRequested() != null) {
+			properties |= MAX_AMOUNT_REQUESTED;
+		}
+		if(filter.getActivatedFrom() != null) {
+			properties |= ACTIVATED_FROM;
+		}
+		if(filter.getActivatedTo() != null) {
+			properties |= ACTIVATED_TO;
+		}
+		if(filter.getModifiedSince() != null) {
+			properties |= MODIFIED_SINCE;
+		}
+		
+		return properties;
+	}
+	
+	/**
+	 * Build the JPQL for a filter with the given properties set.
+	 */
+	private static String buildQuery(String select, int properties) {
+		
+		StringBuilder jpql = new StringBuilder(select)
+				.append("from contract c where c.id > :id");
+		
+		if((properties & STATUS) != 0) {
+			jpql.append(" and c.status = :status");
+		}
+		if((properties & TYPE) != 0) {
+			jpql.append(" and c.type = :type");
+		}
+		if((properties & BUSINESS_NUMBER) != 0) {
+			jpql.append(" and c.businessNumber = :businessNumber");
+		}
+		if((properties & MIN_AMOUNT_REQUESTED) != 0) {
+			jpql.append(" and c.amountRequested >= :minAmountRequested");
+		}
+		if((properties & MAX_AMOUNT_REQUESTED) != 0) {
+			jpql.append(" and c.amountRequested <= :maxAmountRequested");
+		}
+		if((properties & ACTIVATED_FROM) != 0) {
+			jpql.append(" and c.activationDate >= :activatedFrom");
+		}
+		if((properties & ACTIVATED_TO) != 0) {
+			jpql.append(" and c.activationDate < :activatedTo");
+		}
+		if((properties & MODIFIED_SINCE) != 0) {
+			jpql.append(" and c.lastModified >= :modifiedSince");
+		}
+		
+		return jpql.append(" order by c.id").toString();
+	}
+}
@@ -0,0 +1,70 @@
+package finley.peter.nextgear.dao;
+
+/**
+ * Decides which shard a contract lives on. New contracts are placed by a hash
+ * of their business number, and every contract id encodes the shard it was
+ * created on, so a contract can be found by id without asking every shard.
+ * Contracts stay on the shard they were created on, even if their business
+ * number later changes.
+ * <p>
+ * With a single shard ids are the plain sequence values.
+ */
+public class ContractShards {
+
+	/**
+	 * Setting holding the number of shards, passed to Hibernate for
+	 * {@link ShardedIdGenerator}.
+	 */
+	public static final String SHARDS_SETTING = "contracts.sharding.shards";
+	
+	private static final long HASH_MULTIPLIER = 0x9E3779B97F4A7C15L;
+	
+	private final int count;
+	
+	/**
+	 * @param count the number of shards
+	 */
+	public ContractShards(int count) {
+		
+		if(count < 1) {
+			throw new IllegalArgumentException("There must be at least one shard");
+		}
+		
+		this.count = count;
+	}
+	
+	/**
+	 * @return the number of shards
+	 */
+	public int getCount() {
+		return count;
+	}
+	
+	/**
+	 * @param businessNumber the business number of a new contract
+	 * @return the shard the contract is created on
+	 */
+	public int shardOf(long businessNumber) {
+		
+		// mix all the bits, so runs of business numbers are spread evenly
+		return Math.floorMod(Long.hashCode(businessNumber * HASH_MULTIPLIER), count);
+	}
+	
+	/**
+	 * @param id a contract id
+	 * @return the shard the contract was created on
+	 */
+	public int shardOfId(long id) {
+		return (int) Math.floorMod(id, (long) count);
+	}
+	
+	/**
+	 * @param sequence the next value of a shard's id sequence
+	 * @param shard the shard
+	 * @param count the number of shards
+	 * @return a contract id that is unique across shards and encodes the shard
+	 */
+	public static long encodeId(long sequence, int shard, int count) {
+		return sequence * count + shard;
+	}
+}
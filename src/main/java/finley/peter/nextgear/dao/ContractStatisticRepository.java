@@ -0,0 +1,68 @@
+package finley.peter.nextgear.dao;
+
+import java.util.Collection;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import finley.peter.nextgear.model.ContractStatistic;
+
+@Repository
+public interface ContractStatisticRepository extends JpaRepository<ContractStatistic, String> {
+
+	/**
+	 * Condition matching contracts <code>c</code> to the statistic
+	 * <code>s</code> they are counted in.
+	 */
+	String SAME_STATISTIC = "and c.type = s.type and (c.status = s.status or (c.status is null and s.status is null))";
+
+	/**
+	 * Atomically add to the count and amount total of a statistic. Either value
+	 * may be negative.
+	 * 
+	 * @param id the statistic to update
+	 * @param count the number of contracts to add
+	 * @param amountRequested the amount to add
+	 * @return the number of statistics updated, 0 if the statistic doesn't exist
+	 */
+	@Modifying
+	@Query("update contract_statistic s set s.count = s.count + :count, "
+			+ "s.amountRequestedTotal = s.amountRequestedTotal + :amountRequested where s.id = :id")
+	int increment(@Param("id") String id, @Param("count") long count, @Param("amountRequested") long amountRequested);
+
+	/**
+	 * Atomically adjust the amount total of the statistic for contracts with no
+	 * status by the difference between a contract's current amount and a new
+	 * amount. Nothing is changed if the contract doesn't exist or has a status.
+	 * Must be called before the contract's amount is changed.
+	 * 
+	 * @param contractId the contract whose amount is changing
+	 * @param amountRequested the contract's new amount
+	 * @return the number of statistics updated
+	 */
+	@Modifying
+	@Query("update contract_statistic s set s.amountRequestedTotal = s.amountRequestedTotal + :amountRequested "
+			+ "- (select c.amountRequested from contract c where c.id = :contractId) "
+			+ "where s.status is null "
+			+ "and s.type = (select c.type from contract c where c.id = :contractId and c.status is null)")
+	int adjustPendingAmount(@Param("contractId") long contractId, @Param("amountRequested") long amountRequested);
+
+	/**
+	 * Atomically remove contracts from the statistics for their status and
+	 * type. Ids that don't exist are ignored. Must be called before the
+	 * contracts are deleted.
+	 * 
+	 * @param contractIds the contracts about to be deleted
+	 * @return the number of statistics updated
+	 */
+	@Modifying
+	@Query("update contract_statistic s set "
+			+ "s.count = s.count - (select count(c) from contract c where c.id in :contractIds " + SAME_STATISTIC + "), "
+			+ "s.amountRequestedTotal = s.amountRequestedTotal - (select coalesce(sum(c.amountRequested), 0) from contract c "
+			+ "where c.id in :contractIds " + SAME_STATISTIC + ") "
+			+ "where exists (select c.id from contract c where c.id in :contractIds " + SAME_STATISTIC + ")")
+	int subtractContracts(@Param("contractIds") Collection<Long> contractIds);
+}
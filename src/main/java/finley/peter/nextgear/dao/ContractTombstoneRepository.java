@@ -0,0 +1,39 @@
+package finley.peter.nextgear.dao;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import finley.peter.nextgear.model.ContractTombstone;
+
+@Repository
+public interface ContractTombstoneRepository extends JpaRepository<ContractTombstone, Long> {
+
+	/**
+	 * Record the deletion of those of the contracts that exist. Must be called
+	 * before they are deleted.
+	 * 
+	 * @param ids the contracts about to be deleted
+	 * @param deleted the time of the deletion
+	 * @return the number of tombstones added
+	 */
+	@Modifying
+	@Query(value="insert into contract_tombstone (contract_id, deleted) "
+			+ "select contract_id, :deleted from contract where contract_id in :ids", nativeQuery=true)
+	int addTombstones(@Param("ids") Collection<Long> ids, @Param("deleted") Date deleted);
+	
+	/**
+	 * Find tombstones of contracts deleted since a time with an id greater than
+	 * the given id, ordered by id.
+	 */
+	@Query("select t from contract_tombstone t where t.deleted >= :since and t.id > :afterId order by t.id")
+	List<ContractTombstone> findDeletedSince(@Param("since") Date since, @Param("afterId") long afterId, 
+			Pageable pageable);
+}
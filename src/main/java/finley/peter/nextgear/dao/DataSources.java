@@ -0,0 +1,31 @@
+package finley.peter.nextgear.dao;
+
+import java.lang.reflect.Method;
+
+import javax.sql.DataSource;
+
+import org.springframework.util.ReflectionUtils;
+
+/**
+ * Helpers for the data sources the routing data sources route to, which are
+ * not beans themselves.
+ */
+final class DataSources {
+
+	private DataSources() {
+	}
+	
+	/**
+	 * Close the connection pools of data sources, using the same close method
+	 * Spring infers for data source beans.
+	 */
+	static void close(Iterable<DataSource> dataSources) {
+		
+		for(DataSource dataSource : dataSources) {
+			Method close = ReflectionUtils.findMethod(dataSource.getClass(), "close");
+			if(close != null) {
+				ReflectionUtils.invokeMethod(close, dataSource);
+			}
+		}
+	}
+}
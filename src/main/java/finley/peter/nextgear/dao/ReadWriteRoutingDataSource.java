@@ -0,0 +1,90 @@
+package finley.peter.nextgear.dao;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Routes connections for read only transactions to replica data sources, in
+ * turn, and everything else to the primary. Reads go to the primary too when
+ * the {@link ReplicaContext} says so.
+ * <p>
+ * A transaction is only marked read only once it has begun, so this must be
+ * wrapped in a {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy}
+ * for the connection to be chosen at the first statement.
+ */
+public class ReadWriteRoutingDataSource extends AbstractRoutingDataSource {
+
+	private static final String PRIMARY = "primary";
+	
+	private final DataSource primary;
+	
+	private final List<DataSource> replicas;
+	
+	private final AtomicInteger nextReplica = new AtomicInteger();
+	
+	/**
+	 * @param primary the data source writes go to
+	 * @param replicas the data sources reads go to, at least one
+	 */
+	public ReadWriteRoutingDataSource(DataSource primary, List<DataSource> replicas) {
+		
+		if(replicas.isEmpty()) {
+			throw new IllegalArgumentException("At least one replica is required");
+		}
+		
+		this.primary = primary;
+		this.replicas = new ArrayList<>(replicas);
+		
+		Map<Object, Object> targets = new HashMap<>();
+		targets.put(PRIMARY, primary);
+		for(int replica = 0; replica < replicas.size(); replica++) {
+			targets.put(replica, replicas.get(replica));
+		}
+		
+		setTargetDataSources(targets);
+		setDefaultTargetDataSource(primary);
+		afterPropertiesSet();
+	}
+	
+	public DataSource getPrimary() {
+		return primary;
+	}
+	
+	public List<DataSource> getReplicas() {
+		return replicas;
+	}
+	
+	/**
+	 * Close the connection pools of the primary and replicas.
+	 */
+	public void close() {
+		
+		List<DataSource> all = new ArrayList<>(replicas);
+		all.add(primary);
+		
+		DataSources.close(all);
+	}
+
+	@Override
+	protected Object determineCurrentLookupKey() {
+		
+		boolean replicaRead = TransactionSynchronizationManager.isCurrentTransactionReadOnly() 
+				&& !ReplicaContext.isPrimaryOnly();
+		
+		ReplicaContext.setReplicaRead(replicaRead);
+		
+		if(replicaRead) {
+			return Math.floorMod(nextReplica.getAndIncrement(), replicas.size());
+		}
+		
+		return PRIMARY;
+	}
+}
@@ -0,0 +1,74 @@
+package finley.peter.nextgear.dao;
+
+/**
+ * Holds whether the current thread's reads must go to the primary database
+ * rather than a replica, see {@link ReadWriteRoutingDataSource}. Used to let
+ * a client read its own writes before they reach the replicas. Also records
+ * whether the thread's last connection was to a replica, so what was read
+ * from a lagging replica can be kept out of caches.
+ */
+public final class ReplicaContext {
+
+	private static final ThreadLocal<Boolean> PRIMARY_ONLY = new ThreadLocal<>();
+	
+	private static final ThreadLocal<Boolean> REPLICA_READ = new ThreadLocal<>();
+	
+	private ReplicaContext() {
+	}
+	
+	/**
+	 * @return true if the current thread's reads must go to the primary
+	 */
+	public static boolean isPrimaryOnly() {
+		return Boolean.TRUE.equals(PRIMARY_ONLY.get());
+	}
+	
+	/**
+	 * @param primaryOnly true if the current thread's reads must go to the
+	 *            primary, until {@link #clear()} is called
+	 */
+	public static void setPrimaryOnly(boolean primaryOnly) {
+		PRIMARY_ONLY.set(primaryOnly);
+	}
+	
+	public static void clear() {
+		PRIMARY_ONLY.remove();
+		REPLICA_READ.remove();
+	}
+	
+	/**
+	 * @return true if the current thread's last connection was to a replica
+	 */
+	public static boolean isReplicaRead() {
+		return Boolean.TRUE.equals(REPLICA_READ.get());
+	}
+	
+	/**
+	 * Record whether a connection was chosen for the current thread from a
+	 * replica.
+	 */
+	static void setReplicaRead(boolean replicaRead) {
+		REPLICA_READ.set(replicaRead);
+	}
+	
+	/**
+	 * Carry the current thread's setting over to a task run on another thread.
+	 * Usable as a {@link org.springframework.core.task.TaskDecorator}.
+	 * 
+	 * @param task the task
+	 * @return the task, run with the calling thread's setting
+	 */
+	public static Runnable decorate(Runnable task) {
+		
+		boolean primaryOnly = isPrimaryOnly();
+		
+		return () -> {
+			setPrimaryOnly(primaryOnly);
+			try {
+				task.run();
+			} finally {
+				clear();
+			}
+		};
+	}
+}
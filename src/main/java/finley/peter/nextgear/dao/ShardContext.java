@@ -0,0 +1,64 @@
+package finley.peter.nextgear.dao;
+
+import java.util.function.Supplier;
+
+/**
+ * Holds the shard the current thread's database work is routed to by
+ * {@link ShardRoutingDataSource}. The shard is read when a transaction opens
+ * its connection, so it must be set before the transaction begins. Without a
+ * shard set, work goes to shard 0.
+ */
+public final class ShardContext {
+
+	private static final ThreadLocal<Integer> CURRENT = new ThreadLocal<>();
+	
+	private ShardContext() {
+	}
+	
+	/**
+	 * @return the current thread's shard, 0 if none is set
+	 */
+	public static int current() {
+		
+		Integer shard = CURRENT.get();
+		return shard == null ? 0 : shard;
+	}
+	
+	/**
+	 * Run an action with its database work routed to a shard, restoring the
+	 * previous shard afterwards.
+	 * 
+	 * @param shard the shard
+	 * @param action the action
+	 * @return the action's result
+	 */
+	public static <T> T call(int shard, Supplier<T> action) {
+		
+		Integer previous = CURRENT.get();
+		CURRENT.set(shard);
+		try {
+			return action.get();
+		} finally {
+			if(previous == null) {
+				CURRENT.remove();
+			} else {
+				CURRENT.set(previous);
+			}
+		}
+	}
+	
+	/**
+	 * Run an action with its database work routed to a shard, restoring the
+	 * previous shard afterwards.
+	 * 
+	 * @param shard the shard
+	 * @param action the action
+	 */
+	public static void run(int shard, Runnable action) {
+		
+		call(shard, () -> {
+			action.run();
+			return null;
+		});
+	}
+}
@@ -0,0 +1,55 @@
+package finley.peter.nextgear.dao;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+/**
+ * Routes connections to one of several shard data sources, chosen by the
+ * {@link ShardContext} when the connection is opened.
+ */
+public class ShardRoutingDataSource extends AbstractRoutingDataSource {
+
+	private final List<DataSource> shards;
+	
+	/**
+	 * @param shards the data source of each shard, in shard order
+	 */
+	public ShardRoutingDataSource(List<DataSource> shards) {
+		
+		this.shards = new ArrayList<>(shards);
+		
+		Map<Object, Object> targets = new HashMap<>();
+		for(int shard = 0; shard < shards.size(); shard++) {
+			targets.put(shard, shards.get(shard));
+		}
+		
+		setTargetDataSources(targets);
+		setDefaultTargetDataSource(shards.get(0));
+		afterPropertiesSet();
+	}
+	
+	/**
+	 * @return the data source of each shard, in shard order
+	 */
+	public List<DataSource> getShards() {
+		return shards;
+	}
+	
+	/**
+	 * Close the connection pools of the shard data sources.
+	 */
+	public void close() {
+		DataSources.close(shards);
+	}
+
+	@Override
+	protected Object determineCurrentLookupKey() {
+		return ShardContext.current();
+	}
+}
@@ -0,0 +1,44 @@
+package finley.peter.nextgear.dao;
+
+import java.io.Serializable;
+import java.util.Properties;
+
+import org.hibernate.MappingException;
+import org.hibernate.engine.config.spi.ConfigurationService;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+import org.hibernate.internal.util.config.ConfigurationHelper;
+import org.hibernate.service.ServiceRegistry;
+import org.hibernate.type.Type;
+
+/**
+ * Generates contract ids from the <code>hibernate_sequence</code> of the
+ * shard the current transaction is connected to, encoded with the shard by
+ * {@link ContractShards#encodeId(long, int, int)}. The shard is taken from the
+ * {@link ShardContext} and the number of shards from the
+ * {@link ContractShards#SHARDS_SETTING} Hibernate setting.
+ * <p>
+ * Every id is read from the database, without pooling, since the sequence
+ * differs from one transaction to the next.
+ */
+public class ShardedIdGenerator extends SequenceStyleGenerator {
+
+	private int shards;
+	
+	@Override
+	public void configure(Type type, Properties params, ServiceRegistry serviceRegistry) throws MappingException {
+		
+		super.configure(type, params, serviceRegistry);
+		
+		shards = ConfigurationHelper.getInt(ContractShards.SHARDS_SETTING, 
+				serviceRegistry.getService(ConfigurationService.class).getSettings(), 1);
+	}
+	
+	@Override
+	public Serializable generate(SessionImplementor session, Object object) {
+		
+		long sequence = ((Number) super.generate(session, object)).longValue();
+		
+		return ContractShards.encodeId(sequence, ShardContext.current(), shards);
+	}
+}
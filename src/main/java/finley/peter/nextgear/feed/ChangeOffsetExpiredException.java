@@ -0,0 +1,16 @@
+package finley.peter.nextgear.feed;
+
+/**
+ * Thrown when changes are requested after an offset the
+ * {@link ContractChangeFeed} no longer holds the following changes of, or
+ * never had. The client must read the contracts in full before following the
+ * feed again.
+ */
+public class ChangeOffsetExpiredException extends RuntimeException {
+	
+	private static final long serialVersionUID = 1L;
+	
+	public ChangeOffsetExpiredException(String message) {
+		super(message);
+	}
+}
@@ -0,0 +1,60 @@
+package finley.peter.nextgear.feed;
+
+import finley.peter.nextgear.model.Contract;
+import finley.peter.nextgear.service.ContractEvent;
+
+/**
+ * A committed contract change in the {@link ContractChangeFeed}, at its offset
+ * in the feed.
+ */
+public class ContractChange {
+	
+	private long offset;
+	
+	private ContractEvent.Type type;
+	
+	private Contract contract;
+	
+	public ContractChange() {
+	}
+	
+	public ContractChange(long offset, ContractEvent.Type type, Contract contract) {
+		this.offset = offset;
+		this.type = type;
+		this.contract = contract;
+	}
+
+	/**
+	 * @return the position of the change in the feed, greater than that of
+	 *         every earlier change
+	 */
+	public long getOffset() {
+		return offset;
+	}
+
+	public void setOffset(long offset) {
+		this.offset = offset;
+	}
+
+	public ContractEvent.Type getType() {
+		return type;
+	}
+
+	public void setType(ContractEvent.Type type) {
+		this.type = type;
+	}
+
+	/**
+	 * @return the contract as described by {@link ContractEvent#getContract()}:
+	 *         only the id and time for deletes, and for updates the id, the
+	 *         name, business number and amount as given, the new version if
+	 *         the update was made at a version and the time of the update
+	 */
+	public Contract getContract() {
+		return contract;
+	}
+
+	public void setContract(Contract contract) {
+		this.contract = contract;
+	}
+}
@@ -0,0 +1,365 @@
+package finley.peter.nextgear.feed;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+
+import finley.peter.nextgear.model.Contract;
+import finley.peter.nextgear.service.ContractEvent;
+
+/**
+ * Committed contract changes, numbered by increasing offsets and held in a
+ * ring buffer of the most recent <code>contracts.changes.capacity</code>, for
+ * clients to follow from an offset by polling or streaming.
+ * <p>
+ * Publishing a change only stores it and signals the subscribers; changes are
+ * sent to them on a pool of <code>contracts.changes.senders</code> threads, so
+ * writers are never held up by clients. A streaming subscriber that falls so
+ * far behind that the changes it hasn't been sent are overwritten is
+ * disconnected, and finds its offset expired when it reconnects. Completing
+ * its emitter is left to the sender, as it waits for any send in progress.
+ */
+@Component
+public class ContractChangeFeed {
+	
+	private final ContractChange[] changes;
+	
+	/**
+	 * Offset of the last change published, guarded by this.
+	 */
+	private long lastOffset;
+	
+	private final int maxSubscribers;
+	
+	private final Set<Subscription> subscriptions = ConcurrentHashMap.newKeySet();
+	
+	private final ExecutorService senders;
+	
+	private final Counter disconnected;
+	
+	public ContractChangeFeed(MetricRegistry metricRegistry,
+			@Value("${contracts.changes.capacity:10000}") int capacity,
+			@Value("${contracts.changes.senders:4}") int senders,
+			@Value("${contracts.changes.max-subscribers:100}") int maxSubscribers) {
+			
+		if(capacity < 1) {
+			throw new IllegalArgumentException("Change feed capacity must be greater than 0");
+		}
+		
+		this.changes = new ContractChange[capacity];
+		this.maxSubscribers = maxSubscribers;
+		this.senders = Executors.newFixedThreadPool(senders, new CustomizableThreadFactory("contract-changes-"));
+		this.disconnected = metricRegistry.counter(MetricRegistry.name("changes", "disconnected"));
+		
+		metricRegistry.register(MetricRegistry.name("changes", "subscribers"), (Gauge<Integer>) subscriptions::size);
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		subscriptions.forEach(Subscription::close);
+		senders.shutdownNow();
+	}
+
+	@TransactionalEventListener
+	public void onContractEvent(ContractEvent event) {
+		publish(event.getType(), event.getContract());
+	}
+
+	/**
+	 * Add a change to the feed and signal the subscribers.
+	 *
+	 * @return the change's offset
+	 */
+	public long publish(ContractEvent.Type type, Contract contract) {
+		
+		long offset;
+		synchronized(this) {
+			offset = ++lastOffset;
+			changes[index(offset)] = new ContractChange(offset, type, contract);
+		}
+		
+		subscriptions.forEach(subscription -> subscription.signal(offset));
+		
+		return offset;
+	}
+
+	/**
+	 * @return the offset of the last change, 0 if there are none
+	 */
+	public synchronized long getLastOffset() {
+		return lastOffset;
+	}
+
+	/**
+	 * Get the changes following an offset.
+	 *
+	 * @param afterOffset the offset of the last change the client has seen, 0
+	 *            for all
+	 * @param limit the most changes to return
+	 * @return the changes, oldest first, empty if there are none yet
+	 * @throws ChangeOffsetExpiredException if the changes after the offset
+	 *             aren't held
+	 */
+	public synchronized List<ContractChange> read(long afterOffset, int limit) {
+		
+		if(limit < 1) {
+			throw new IllegalArgumentException("Limit must be greater than 0");
+		}
+		
+		if(afterOffset < 0 || afterOffset > lastOffset) {
+			throw new ChangeOffsetExpiredException("Offset " + afterOffset + " is unknown, the last offset is " + lastOffset);
+		}
+		
+		if(afterOffset < lastOffset - changes.length) {
+			throw new ChangeOffsetExpiredException("Changes after offset " + afterOffset + " have expired, the oldest held is "
+					+ (lastOffset - changes.length + 1));
+		}
+		
+		if(afterOffset == lastOffset) {
+			return Collections.emptyList();
+		}
+		
+		long last = Math.min(lastOffset, afterOffset + limit);
+		
+		List<ContractChange> result = new ArrayList<>((int) (last - afterOffset));
+		for(long offset = afterOffset + 1; offset <= last; offset++) {
+			result.add(changes[index(offset)]);
+		}
+		
+		return result;
+	}
+
+	/**
+	 * Complete the result with the changes following an offset as soon as
+	 * there are any. The result's timeout should complete it empty.
+	 *
+	 * @throws ChangeOffsetExpiredException if the changes after the offset
+	 *             aren't held
+	 * @throws RejectedExecutionException if there are too many subscribers
+	 */
+	public void poll(long afterOffset, int limit, DeferredResult<List<ContractChange>> result) {
+		
+		List<ContractChange> available = read(afterOffset, limit);
+		if(!available.isEmpty()) {
+			result.setResult(available);
+			return;
+		}
+		
+		subscribe(new PollSubscription(afterOffset, limit, result));
+	}
+
+	/**
+	 * Send the changes following an offset to the emitter, as they are
+	 * published, as events named by the change type with the offset as their
+	 * id.
+	 *
+	 * @throws ChangeOffsetExpiredException if the changes after the offset
+	 *             aren't held
+	 * @throws RejectedExecutionException if there are too many subscribers
+	 */
+	public void stream(long afterOffset, SseEmitter emitter) {
+		
+		read(afterOffset, 1);
+		
+		subscribe(new StreamSubscription(afterOffset, emitter));
+	}
+
+	private void subscribe(Subscription subscription) {
+		
+		if(subscriptions.size() >= maxSubscribers) {
+			throw new RejectedExecutionException("Too many change feed subscribers");
+		}
+		
+		subscriptions.add(subscription);
+		
+		// catch up with changes published since the offset was read
+		subscription.signal(getLastOffset());
+	}
+
+	private int index(long offset) {
+		return (int) (offset % changes.length);
+	}
+
+	/**
+	 * A client waiting for changes after an offset. Its changes are sent on
+	 * one sender thread at a time however often it is signalled.
+	 */
+	private abstract class Subscription {
+		
+		protected volatile long afterOffset;
+		
+		private final AtomicInteger signals = new AtomicInteger();
+		
+		Subscription(long afterOffset) {
+			this.afterOffset = afterOffset;
+		}
+		
+		/**
+		 * Called when a change is published, or the subscription added.
+		 */
+		void signal(long lastOffset) {
+			
+			if(lastOffset <= afterOffset) {
+				return;
+			}
+			
+			if(signals.getAndIncrement() == 0) {
+				try {
+					senders.execute(this::drain);
+				} catch(RejectedExecutionException e) {
+					// shutting down
+					close();
+				}
+			}
+		}
+		
+		private void drain() {
+			
+			int missed = 1;
+			do {
+				try {
+					send();
+				} catch(RuntimeException e) {
+					close();
+				}
+				
+				missed = signals.addAndGet(-missed);
+			} while(missed != 0);
+		}
+		
+		/**
+		 * Send the changes after the offset.
+		 */
+		abstract void send();
+		
+		void close() {
+			subscriptions.remove(this);
+		}
+	}
+
+	private class PollSubscription extends Subscription {
+		
+		private final int limit;
+		
+		private final DeferredResult<List<ContractChange>> result;
+		
+		PollSubscription(long afterOffset, int limit, DeferredResult<List<ContractChange>> result) {
+			super(afterOffset);
+			this.limit = limit;
+			this.result = result;
+			
+			result.onCompletion(this::close);
+		}
+		
+		@Override
+		void send() {
+			
+			if(result.isSetOrExpired()) {
+				close();
+				return;
+			}
+			
+			try {
+				List<ContractChange> available = read(afterOffset, limit);
+				if(!available.isEmpty()) {
+					result.setResult(available);
+					close();
+				}
+			} catch(ChangeOffsetExpiredException e) {
+				result.setErrorResult(e);
+				close();
+			}
+		}
+	}
+
+	private class StreamSubscription extends Subscription {
+		
+		private static final int BATCH_SIZE = 100;
+		
+		private final SseEmitter emitter;
+		
+		private volatile boolean disconnecting;
+		
+		StreamSubscription(long afterOffset, SseEmitter emitter) {
+			super(afterOffset);
+			this.emitter = emitter;
+			
+			emitter.onCompletion(super::close);
+			emitter.onTimeout(super::close);
+		}
+		
+		@Override
+		void signal(long lastOffset) {
+			
+			// disconnect a client that can't keep up, even if stuck sending;
+			// the sender completes the emitter once the stuck send returns
+			if(!disconnecting && lastOffset - afterOffset > changes.length) {
+				disconnecting = true;
+				disconnected.inc();
+				subscriptions.remove(this);
+			}
+			
+			super.signal(lastOffset);
+		}
+		
+		@Override
+		void send() {
+			
+			List<ContractChange> available;
+			do {
+				if(disconnecting) {
+					close();
+					return;
+				}
+				
+				available = read(afterOffset, BATCH_SIZE);
+				
+				for(ContractChange change : available) {
+					if(disconnecting) {
+						close();
+						return;
+					}
+					
+					try {
+						emitter.send(SseEmitter.event()
+								.id(Long.toString(change.getOffset()))
+								.name(change.getType().name())
+								.data(change));
+					} catch(IOException e) {
+						close();
+						return;
+					}
+					
+					afterOffset = change.getOffset();
+				}
+				
+			} while(available.size() == BATCH_SIZE);
+		}
+		
+		@Override
+		void close() {
+			super.close();
+			emitter.complete();
+		}
+	}
+}
@@ -0,0 +1,203 @@
+package finley.peter.nextgear.json;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.Set;
+
+import org.springframework.boot.jackson.JsonComponent;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import finley.peter.nextgear.model.Contract;
+import finley.peter.nextgear.model.ContractField;
+import finley.peter.nextgear.model.ContractStatus;
+import finley.peter.nextgear.model.ContractSummary;
+import finley.peter.nextgear.model.ContractType;
+
+/**
+ * Hand-written serializers for {@link Contract} and {@link ContractSummary},
+ * registered with Spring Boot's object mappers, JSON and Smile alike. Their
+ * output is the same as Jackson's bean serializer's. They write each field
+ * straight to the generator instead of going through a property writer per
+ * field:
+ * <ul>
+ * <li>field names and enum values are written from precomputed, pre-encoded
+ * tokens;</li>
+ * <li>numbers are written as primitives;</li>
+ * <li>dates go through the provider's date handling, which writes timestamps
+ * as plain numbers.</li>
+ * </ul>
+ * Null fields are written as nulls, or left out if the default property
+ * inclusion is anything other than <code>ALWAYS</code>. Only the fields a
+ * summary holds are written.
+ */
+@JsonComponent
+public class ContractJsonComponent {
+	
+	private static final SerializedString ID = new SerializedString("id");
+	private static final SerializedString NAME = new SerializedString("name");
+	private static final SerializedString BUSINESS_NUMBER = new SerializedString("businessNumber");
+	private static final SerializedString ACTIVATION_DATE = new SerializedString("activationDate");
+	private static final SerializedString AMOUNT_REQUESTED = new SerializedString("amountRequested");
+	private static final SerializedString STATUS = new SerializedString("status");
+	private static final SerializedString TYPE = new SerializedString("type");
+	private static final SerializedString VERSION = new SerializedString("version");
+	private static final SerializedString LAST_MODIFIED = new SerializedString("lastModified");
+	
+	private static final SerializedString[] STATUSES = names(ContractStatus.values());
+	
+	private static final SerializedString[] TYPES = names(ContractType.values());
+	
+	public static class ContractSerializer extends StdSerializer<Contract> {
+		
+		private static final long serialVersionUID = 1L;
+		
+		public ContractSerializer() {
+			super(Contract.class);
+		}
+		
+		@Override
+		public void serialize(Contract contract, JsonGenerator generator, SerializerProvider provider)
+				throws IOException {
+				
+			generator.writeStartObject();
+			writeFields(generator, provider, ContractField.ALL, contract.getId(), contract.getName(),
+					contract.getBusinessNumber(), contract.getActivationDate(), contract.getAmountRequested(),
+					contract.getStatus(), contract.getType(), contract.getVersion(), contract.getLastModified());
+			generator.writeEndObject();
+		}
+	}
+
+	public static class ContractSummarySerializer extends StdSerializer<ContractSummary> {
+		
+		private static final long serialVersionUID = 1L;
+		
+		public ContractSummarySerializer() {
+			super(ContractSummary.class);
+		}
+		
+		@Override
+		public void serialize(ContractSummary contract, JsonGenerator generator, SerializerProvider provider)
+				throws IOException {
+				
+			generator.writeStartObject();
+			writeFields(generator, provider, contract.getFields(), contract.getId(), contract.getName(),
+					contract.getBusinessNumber(), contract.getActivationDate(), contract.getAmountRequested(),
+					contract.getStatus(), contract.getType(), contract.getVersion(), contract.getLastModified());
+			generator.writeEndObject();
+		}
+	}
+
+	/**
+	 * Write the given fields of a contract or summary, in the order the bean
+	 * serializer writes them.
+	 */
+	private static void writeFields(JsonGenerator generator, SerializerProvider provider, Set<ContractField> fields,
+			Long id, String name, Long businessNumber, Date activationDate, Integer amountRequested,
+			ContractStatus status, ContractType type, Long version, Date lastModified) throws IOException {
+			
+		JsonInclude.Include inclusion = provider.getConfig().getDefaultPropertyInclusion().getValueInclusion();
+		boolean writeNulls = inclusion == JsonInclude.Include.ALWAYS || inclusion == JsonInclude.Include.USE_DEFAULTS;
+		
+		if(fields.contains(ContractField.ID)) {
+			if(id != null) {
+				generator.writeFieldName(ID);
+				generator.writeNumber(id.longValue());
+			} else if(writeNulls) {
+				writeNull(generator, ID);
+			}
+		}
+		
+		if(fields.contains(ContractField.NAME)) {
+			if(name != null) {
+				generator.writeFieldName(NAME);
+				generator.writeString(name);
+			} else if(writeNulls) {
+				writeNull(generator, NAME);
+			}
+		}
+		
+		if(fields.contains(ContractField.BUSINESS_NUMBER)) {
+			if(businessNumber != null) {
+				generator.writeFieldName(BUSINESS_NUMBER);
+				generator.writeNumber(businessNumber.longValue());
+			} else if(writeNulls) {
+				writeNull(generator, BUSINESS_NUMBER);
+			}
+		}
+		
+		if(fields.contains(ContractField.ACTIVATION_DATE)) {
+			if(activationDate != null) {
+				generator.writeFieldName(ACTIVATION_DATE);
+				provider.defaultSerializeDateValue(activationDate, generator);
+			} else if(writeNulls) {
+				writeNull(generator, ACTIVATION_DATE);
+			}
+		}
+		
+		if(fields.contains(ContractField.AMOUNT_REQUESTED)) {
+			if(amountRequested != null) {
+				generator.writeFieldName(AMOUNT_REQUESTED);
+				generator.writeNumber(amountRequested.intValue());
+			} else if(writeNulls) {
+				writeNull(generator, AMOUNT_REQUESTED);
+			}
+		}
+		
+		if(fields.contains(ContractField.STATUS)) {
+			if(status != null) {
+				generator.writeFieldName(STATUS);
+				generator.writeString(STATUSES[status.ordinal()]);
+			} else if(writeNulls) {
+				writeNull(generator, STATUS);
+			}
+		}
+		
+		if(fields.contains(ContractField.TYPE)) {
+			if(type != null) {
+				generator.writeFieldName(TYPE);
+				generator.writeString(TYPES[type.ordinal()]);
+			} else if(writeNulls) {
+				writeNull(generator, TYPE);
+			}
+		}
+		
+		if(fields.contains(ContractField.VERSION)) {
+			if(version != null) {
+				generator.writeFieldName(VERSION);
+				generator.writeNumber(version.longValue());
+			} else if(writeNulls) {
+				writeNull(generator, VERSION);
+			}
+		}
+		
+		if(fields.contains(ContractField.LAST_MODIFIED)) {
+			if(lastModified != null) {
+				generator.writeFieldName(LAST_MODIFIED);
+				provider.defaultSerializeDateValue(lastModified, generator);
+			} else if(writeNulls) {
+				writeNull(generator, LAST_MODIFIED);
+			}
+		}
+	}
+
+	private static void writeNull(JsonGenerator generator, SerializableString fieldName) throws IOException {
+		generator.writeFieldName(fieldName);
+		generator.writeNull();
+	}
+
+	private static SerializedString[] names(Enum<?>[] values) {
+		
+		SerializedString[] names = new SerializedString[values.length];
+		for(Enum<?> value : values) {
+			names[value.ordinal()] = new SerializedString(value.name());
+		}
+		
+		return names;
+	}
+}
@@ -5,14 +5,24 @@ import java.util.Date;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
-import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import javax.persistence.Version;
+
+import org.hibernate.annotations.GenericGenerator;
 
 @Entity(name="contract")
+@Table(name="contract", indexes={
+		@Index(name="idx_contract_business_number", columnList="business_number"),
+		@Index(name="idx_contract_status", columnList="status, type, contract_id"),
+		@Index(name="idx_contract_last_modified", columnList="last_modified")
+})
 public class Contract {
 	
 	@Id
-	@GeneratedValue(strategy=GenerationType.AUTO)
+	@GeneratedValue(generator="contract_id")
+	@GenericGenerator(name="contract_id", strategy="finley.peter.nextgear.dao.ShardedIdGenerator")
 	@Column(name="contract_id", nullable=false)
 	private Long id;
 	
@@ -33,6 +43,13 @@ public class Contract {
 	
 	@Column(name="type")
 	private ContractType type;
+	
+	@Version
+	@Column(name="version")
+	private Long version;
+	
+	@Column(name="last_modified")
+	private Date lastModified;
 
 	public Long getId() {
 		return id;
@@ -90,6 +107,28 @@ public class Contract {
 		this.type = type;
 	}
 
+	/**
+	 * @return the version, incremented every time the contract is updated
+	 */
+	public Long getVersion() {
+		return version;
+	}
+
+	public void setVersion(Long version) {
+		this.version = version;
+	}
+
+	/**
+	 * @return when the contract was created or last changed
+	 */
+	public Date getLastModified() {
+		return lastModified;
+	}
+
+	public void setLastModified(Date lastModified) {
+		this.lastModified = lastModified;
+	}
+
 	@Override
 	public int hashCode() {
 		final int prime = 31;
@@ -116,7 +155,7 @@ public class Contract {
 	public String toString() {
 		return "Contract [id=" + id + ", name=" + name + ", businessNumber=" + businessNumber + ", activationDate="
 				+ activationDate + ", amountRequested=" + amountRequested + ", status=" + status + ", type=" + type
-				+ "]";
+				+ ", version=" + version + ", lastModified=" + lastModified + "]";
 	}
 
 }
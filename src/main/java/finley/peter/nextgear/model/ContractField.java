@@ -0,0 +1,92 @@
+package finley.peter.nextgear.model;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * The fields of a {@link Contract} a client can ask for, named as they are in
+ * its JSON and JPQL. Fields are declared in the order they are written.
+ */
+public enum ContractField {
+	ID("id"),
+	NAME("name"),
+	BUSINESS_NUMBER("businessNumber"),
+	ACTIVATION_DATE("activationDate"),
+	AMOUNT_REQUESTED("amountRequested"),
+	STATUS("status"),
+	TYPE("type"),
+	VERSION("version"),
+	LAST_MODIFIED("lastModified");
+	
+	/**
+	 * Every field, as returned when the client doesn't ask for any in
+	 * particular.
+	 */
+	public static final Set<ContractField> ALL = Collections.unmodifiableSet(EnumSet.allOf(ContractField.class));
+	
+	private static final ContractField[] VALUES = values();
+	
+	private final String property;
+	
+	private ContractField(String property) {
+		this.property = property;
+	}
+
+	/**
+	 * @return the field's property name
+	 */
+	public String getProperty() {
+		return property;
+	}
+
+	/**
+	 * Parse a comma separated list of field names, such as
+	 * <code>id,status,amountRequested</code>.
+	 *
+	 * @param fields the field names, in any order, or null for all fields
+	 * @return the fields named
+	 * @throws IllegalArgumentException if a name isn't a field's or no names
+	 *             are given
+	 */
+	public static Set<ContractField> parse(String fields) {
+		
+		if(fields == null) {
+			return ALL;
+		}
+		
+		EnumSet<ContractField> parsed = EnumSet.noneOf(ContractField.class);
+		for(String name : fields.split(",")) {
+			parsed.add(forProperty(name.trim()));
+		}
+		
+		return parsed.size() == VALUES.length ? ALL : Collections.unmodifiableSet(parsed);
+	}
+
+	/**
+	 * Get a bit mask of fields, with the bit for each field's ordinal set.
+	 */
+	public static int mask(Set<ContractField> fields) {
+		
+		int mask = 0;
+		for(ContractField field : fields) {
+			mask |= 1 << field.ordinal();
+		}
+		
+		return mask;
+	}
+
+	private static ContractField forProperty(String property) {
+		
+		for(ContractField field : VALUES) {
+			if(field.property.equals(property)) {
+				return field;
+			}
+		}
+		
+		throw new IllegalArgumentException("Unknown contract field '" + property + "', fields are "
+				+ Arrays.stream(VALUES).map(ContractField::getProperty).collect(Collectors.joining(", ")));
+	}
+}
@@ -0,0 +1,129 @@
+package finley.peter.nextgear.model;
+
+import java.util.Date;
+
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.format.annotation.DateTimeFormat.ISO;
+
+/**
+ * Criteria for finding {@link Contract}s. Every property is optional; a null
+ * property doesn't restrict the results.
+ */
+public class ContractFilter {
+
+	private ContractStatus status;
+	
+	private ContractType type;
+	
+	private Long businessNumber;
+	
+	private Integer minAmountRequested;
+	
+	private Integer maxAmountRequested;
+	
+	@DateTimeFormat(iso=ISO.DATE)
+	private Date activatedFrom;
+	
+	@DateTimeFormat(iso=ISO.DATE)
+	private Date activatedTo;
+	
+	@DateTimeFormat(iso=ISO.DATE_TIME)
+	private Date modifiedSince;
+
+	public ContractStatus getStatus() {
+		return status;
+	}
+
+	public void setStatus(ContractStatus status) {
+		this.status = status;
+	}
+
+	public ContractType getType() {
+		return type;
+	}
+
+	public void setType(ContractType type) {
+		this.type = type;
+	}
+
+	public Long getBusinessNumber() {
+		return businessNumber;
+	}
+
+	public void setBusinessNumber(Long businessNumber) {
+		this.businessNumber = businessNumber;
+	}
+
+	/**
+	 * @return the smallest amount requested to include (inclusive)
+	 */
+	public Integer getMinAmountRequested() {
+		return minAmountRequested;
+	}
+
+	public void setMinAmountRequested(Integer minAmountRequested) {
+		this.minAmountRequested = minAmountRequested;
+	}
+
+	/**
+	 * @return the largest amount requested to include (inclusive)
+	 */
+	public Integer getMaxAmountRequested() {
+		return maxAmountRequested;
+	}
+
+	public void setMaxAmountRequested(Integer maxAmountRequested) {
+		this.maxAmountRequested = maxAmountRequested;
+	}
+
+	/**
+	 * @return the earliest activation date to include (inclusive)
+	 */
+	public Date getActivatedFrom() {
+		return activatedFrom;
+	}
+
+	public void setActivatedFrom(Date activatedFrom) {
+		this.activatedFrom = activatedFrom;
+	}
+
+	/**
+	 * @return the activation date to include up to (exclusive)
+	 */
+	public Date getActivatedTo() {
+		return activatedTo;
+	}
+
+	public void setActivatedTo(Date activatedTo) {
+		this.activatedTo = activatedTo;
+	}
+
+	/**
+	 * @return the earliest time of last modification to include (inclusive)
+	 */
+	public Date getModifiedSince() {
+		return modifiedSince;
+	}
+
+	public void setModifiedSince(Date modifiedSince) {
+		this.modifiedSince = modifiedSince;
+	}
+
+	/**
+	 * @return true if no property is set, so the filter matches every contract
+	 */
+	public boolean isEmpty() {
+		return status == null && type == null && businessNumber == null
+				&& minAmountRequested == null && maxAmountRequested == null
+				&& activatedFrom == null && activatedTo == null && modifiedSince == null;
+	}
+
+	@Override
+	public String toString() {
+		return "ContractFilter [status=" + status + ", type=" + type + ", businessNumber=" + businessNumber
+				+ ", minAmountRequested=" + minAmountRequested + ", maxAmountRequested=" + maxAmountRequested
+				+ ", activatedFrom=" + activatedFrom + ", activatedTo=" + activatedTo + ", modifiedSince=" + modifiedSince
+				+ "]";
+	}
+
+}
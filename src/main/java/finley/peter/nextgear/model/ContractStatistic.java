@@ -0,0 +1,99 @@
+package finley.peter.nextgear.model;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+
+/**
+ * Running count and total amount requested of all {@link Contract}s with a
+ * given status and type. A null status covers contracts that have not yet
+ * been approved or denied.
+ */
+@Entity(name="contract_statistic")
+public class ContractStatistic {
+
+	@Id
+	@Column(name="statistic_id", nullable=false)
+	private String id;
+	
+	@Column(name="status")
+	private ContractStatus status;
+	
+	@Column(name="type", nullable=false)
+	private ContractType type;
+	
+	@Column(name="contract_count", nullable=false)
+	private long count;
+	
+	@Column(name="amount_requested_total", nullable=false)
+	private long amountRequestedTotal;
+	
+	public ContractStatistic() {
+	}
+	
+	public ContractStatistic(ContractStatus status, ContractType type, long count, long amountRequestedTotal) {
+		this.id = key(status, type);
+		this.status = status;
+		this.type = type;
+		this.count = count;
+		this.amountRequestedTotal = amountRequestedTotal;
+	}
+	
+	/**
+	 * Build the id of the statistic for the given status and type.
+	 * 
+	 * @param status
+	 * @param type
+	 * @return
+	 */
+	public static String key(ContractStatus status, ContractType type) {
+		return (status == null ? "NONE" : status.name()) + "." + type.name();
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public void setId(String id) {
+		this.id = id;
+	}
+
+	public ContractStatus getStatus() {
+		return status;
+	}
+
+	public void setStatus(ContractStatus status) {
+		this.status = status;
+	}
+
+	public ContractType getType() {
+		return type;
+	}
+
+	public void setType(ContractType type) {
+		this.type = type;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public void setCount(long count) {
+		this.count = count;
+	}
+
+	public long getAmountRequestedTotal() {
+		return amountRequestedTotal;
+	}
+
+	public void setAmountRequestedTotal(long amountRequestedTotal) {
+		this.amountRequestedTotal = amountRequestedTotal;
+	}
+
+	@Override
+	public String toString() {
+		return "ContractStatistic [id=" + id + ", status=" + status + ", type=" + type + ", count=" + count
+				+ ", amountRequestedTotal=" + amountRequestedTotal + "]";
+	}
+
+}
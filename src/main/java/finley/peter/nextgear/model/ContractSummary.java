@@ -0,0 +1,109 @@
+package finley.peter.nextgear.model;
+
+import java.util.Date;
+import java.util.Set;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+/**
+ * Read-only view of a {@link Contract} used when listing contracts. Summaries
+ * are selected directly into this class so they are never managed (or dirty
+ * checked) by the persistence context.
+ * <p>
+ * A summary may be limited to the fields the client asked for. The others
+ * aren't written to the response, and aren't selected from the database.
+ */
+public class ContractSummary {
+
+	private final Long id;
+	private final String name;
+	private final Long businessNumber;
+	private final Date activationDate;
+	private final Integer amountRequested;
+	private final ContractStatus status;
+	private final ContractType type;
+	private final Long version;
+	private final Date lastModified;
+	private final Set<ContractField> fields;
+	
+	public ContractSummary(Long id, String name, Long businessNumber, Date activationDate, Integer amountRequested,
+			ContractStatus status, ContractType type, Long version, Date lastModified) {
+		this(id, name, businessNumber, activationDate, amountRequested, status, type, version, lastModified, 
+				ContractField.ALL);
+	}
+	
+	public ContractSummary(Long id, String name, Long businessNumber, Date activationDate, Integer amountRequested,
+			ContractStatus status, ContractType type, Long version, Date lastModified, Set<ContractField> fields) {
+		this.id = id;
+		this.name = name;
+		this.businessNumber = businessNumber;
+		this.activationDate = activationDate;
+		this.amountRequested = amountRequested;
+		this.status = status;
+		this.type = type;
+		this.version = version;
+		this.lastModified = lastModified;
+		this.fields = fields;
+	}
+	
+	/**
+	 * Summarize the given fields of a contract.
+	 */
+	public static ContractSummary of(Contract contract, Set<ContractField> fields) {
+		return new ContractSummary(contract.getId(), contract.getName(), contract.getBusinessNumber(), 
+				contract.getActivationDate(), contract.getAmountRequested(), contract.getStatus(), contract.getType(), 
+				contract.getVersion(), contract.getLastModified(), fields);
+	}
+
+	public Long getId() {
+		return id;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public Long getBusinessNumber() {
+		return businessNumber;
+	}
+
+	public Date getActivationDate() {
+		return activationDate;
+	}
+
+	public Integer getAmountRequested() {
+		return amountRequested;
+	}
+
+	public ContractStatus getStatus() {
+		return status;
+	}
+
+	public ContractType getType() {
+		return type;
+	}
+
+	public Long getVersion() {
+		return version;
+	}
+
+	public Date getLastModified() {
+		return lastModified;
+	}
+
+	/**
+	 * @return the fields the summary holds
+	 */
+	@JsonIgnore
+	public Set<ContractField> getFields() {
+		return fields;
+	}
+
+	@Override
+	public String toString() {
+		return "ContractSummary [id=" + id + ", name=" + name + ", businessNumber=" + businessNumber
+				+ ", activationDate=" + activationDate + ", amountRequested=" + amountRequested + ", status=" + status
+				+ ", type=" + type + ", version=" + version + ", lastModified=" + lastModified + ", fields=" + fields + "]";
+	}
+
+}
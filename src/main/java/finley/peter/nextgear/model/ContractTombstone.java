@@ -0,0 +1,59 @@
+package finley.peter.nextgear.model;
+
+import java.util.Date;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+
+/**
+ * Record of a deleted {@link Contract}, so clients syncing changes since a
+ * time can find out about deletes as well.
+ */
+@Entity(name="contract_tombstone")
+@Table(name="contract_tombstone", indexes={
+		@Index(name="idx_contract_tombstone_deleted", columnList="deleted")
+})
+public class ContractTombstone {
+
+	@Id
+	@Column(name="contract_id", nullable=false)
+	private Long id;
+	
+	@Column(name="deleted", nullable=false)
+	private Date deleted;
+	
+	public ContractTombstone() {
+	}
+	
+	public ContractTombstone(long id, Date deleted) {
+		this.id = id;
+		this.deleted = deleted;
+	}
+
+	/**
+	 * @return the id of the deleted contract
+	 */
+	public Long getId() {
+		return id;
+	}
+
+	public void setId(Long id) {
+		this.id = id;
+	}
+
+	public Date getDeleted() {
+		return deleted;
+	}
+
+	public void setDeleted(Date deleted) {
+		this.deleted = deleted;
+	}
+
+	@Override
+	public String toString() {
+		return "ContractTombstone [id=" + id + ", deleted=" + deleted + "]";
+	}
+}
@@ -0,0 +1,24 @@
+package finley.peter.nextgear.service;
+
+import finley.peter.nextgear.model.Contract;
+import finley.peter.nextgear.model.ContractStatus;
+
+/**
+ * Approves contracts requesting up to a limit and denies the rest.
+ */
+public class AmountLimitDecisionRule implements ContractDecisionRule {
+
+	private final int amountLimit;
+	
+	/**
+	 * @param amountLimit the largest amount that is approved
+	 */
+	public AmountLimitDecisionRule(int amountLimit) {
+		this.amountLimit = amountLimit;
+	}
+
+	@Override
+	public ContractStatus decide(Contract contract) {
+		return contract.getAmountRequested() <= amountLimit ? ContractStatus.APPROVED : ContractStatus.DENIED;
+	}
+}
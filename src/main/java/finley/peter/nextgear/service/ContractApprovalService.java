@@ -0,0 +1,19 @@
+package finley.peter.nextgear.service;
+
+/**
+ * Decides the status of SALES contracts, which are created without one, using
+ * a {@link ContractDecisionRule}.
+ */
+public interface ContractApprovalService {
+
+	/**
+	 * Decide every SALES contract that currently has no status. Contracts are
+	 * read in id order in chunks and each chunk is decided in its own
+	 * transaction, so a failure only leaves that chunk undecided until the next
+	 * run. Only one run happens at a time; a call made while another is running
+	 * returns immediately.
+	 * 
+	 * @return the number of contracts given a status
+	 */
+	long decidePending();
+}
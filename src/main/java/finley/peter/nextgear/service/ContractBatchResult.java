@@ -0,0 +1,48 @@
+package finley.peter.nextgear.service;
+
+import finley.peter.nextgear.model.Contract;
+
+/**
+ * The outcome of creating a single {@link Contract} as part of a batch. Either
+ * the created contract or the validation error that prevented it from being
+ * created is available.
+ */
+public class ContractBatchResult {
+
+	private final Contract contract;
+	private final IllegalArgumentException error;
+	
+	private ContractBatchResult(Contract contract, IllegalArgumentException error) {
+		this.contract = contract;
+		this.error = error;
+	}
+	
+	public static ContractBatchResult created(Contract contract) {
+		return new ContractBatchResult(contract, null);
+	}
+	
+	public static ContractBatchResult failed(IllegalArgumentException error) {
+		return new ContractBatchResult(null, error);
+	}
+
+	/**
+	 * @return true if the contract was created
+	 */
+	public boolean isCreated() {
+		return error == null;
+	}
+
+	/**
+	 * @return the created contract, or null if validation failed
+	 */
+	public Contract getContract() {
+		return contract;
+	}
+
+	/**
+	 * @return the validation error, or null if the contract was created
+	 */
+	public IllegalArgumentException getError() {
+		return error;
+	}
+}
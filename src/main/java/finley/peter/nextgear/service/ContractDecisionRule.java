@@ -0,0 +1,19 @@
+package finley.peter.nextgear.service;
+
+import finley.peter.nextgear.model.Contract;
+import finley.peter.nextgear.model.ContractStatus;
+
+/**
+ * Decides whether a contract with no status is approved or denied. Used by
+ * {@link ContractService#decideAll(java.util.Collection, ContractDecisionRule)}.
+ * Implementations are called concurrently, once per contract.
+ */
+@FunctionalInterface
+public interface ContractDecisionRule {
+
+	/**
+	 * @param contract a contract with no status, which must not be modified
+	 * @return the contract's new status, or null to leave it undecided
+	 */
+	ContractStatus decide(Contract contract);
+}
@@ -0,0 +1,130 @@
+package finley.peter.nextgear.service;
+
+import java.util.Date;
+import java.util.function.Supplier;
+
+import finley.peter.nextgear.model.Contract;
+
+/**
+ * Published by {@link ContractService} for every contract it creates, updates,
+ * decides or deletes. Events are published within the service's transaction; listeners
+ * that must only see committed changes should use
+ * {@link org.springframework.transaction.event.TransactionalEventListener}.
+ */
+public class ContractEvent {
+
+	public enum Type {
+		CREATED, UPDATED, DECIDED, DELETED
+	}
+	
+	private final Type type;
+	
+	private final Contract contract;
+	
+	private final Supplier<Contract> stored;
+	
+	private boolean read;
+	
+	private Contract storedContract;
+	
+	private ContractEvent(Type type, Contract contract, Supplier<Contract> stored) {
+		this.type = type;
+		this.contract = contract;
+		this.stored = stored;
+	}
+	
+	private ContractEvent(Type type, Contract contract) {
+		this(type, contract, null);
+	}
+	
+	/**
+	 * @param contract the contract as created
+	 */
+	public static ContractEvent created(Contract contract) {
+		return new ContractEvent(Type.CREATED, contract);
+	}
+	
+	/**
+	 * @param contract the contract as stored after the update
+	 */
+	public static ContractEvent updated(Contract contract) {
+		return new ContractEvent(Type.UPDATED, contract);
+	}
+	
+	/**
+	 * @param contract the update: the id, the name, business number and amount
+	 *            requested as given, the amount only taking effect if the
+	 *            contract has no status, the new version if the update was
+	 *            made at a version, otherwise null, and the time of the update
+	 * @param stored reads the contract as stored, see
+	 *            {@link #getStoredContract()}
+	 */
+	public static ContractEvent updated(Contract contract, Supplier<Contract> stored) {
+		return new ContractEvent(Type.UPDATED, contract, stored);
+	}
+	
+	/**
+	 * @param contract the contract with its new status and activation date
+	 */
+	public static ContractEvent decided(Contract contract) {
+		return new ContractEvent(Type.DECIDED, contract);
+	}
+	
+	/**
+	 * @param id the id of the deleted contract
+	 */
+	public static ContractEvent deleted(long id) {
+		return deleted(id, null);
+	}
+	
+	/**
+	 * @param id the id of the deleted contract
+	 * @param deleted when the contract was deleted, held as the contract's
+	 *            last modified time
+	 */
+	public static ContractEvent deleted(long id, Date deleted) {
+		
+		Contract contract = new Contract();
+		contract.setId(id);
+		contract.setLastModified(deleted);
+		
+		return new ContractEvent(Type.DELETED, contract);
+	}
+
+	public Type getType() {
+		return type;
+	}
+
+	/**
+	 * @return the contract, only the id is set for deletes
+	 */
+	public Contract getContract() {
+		return contract;
+	}
+
+	/**
+	 * Get the contract as stored, which for an update published with only the
+	 * update is read from the database the first time this is called, so
+	 * should only be called once the change has been committed.
+	 * 
+	 * @return the contract as stored, null if it has since been deleted
+	 */
+	public synchronized Contract getStoredContract() {
+		
+		if(stored == null) {
+			return contract;
+		}
+		
+		if(!read) {
+			storedContract = stored.get();
+			read = true;
+		}
+		
+		return storedContract;
+	}
+
+	@Override
+	public String toString() {
+		return "ContractEvent [type=" + type + ", contract=" + contract + "]";
+	}
+}
@@ -1,8 +1,21 @@
 package finley.peter.nextgear.service;
 
-import org.springframework.data.domain.Example;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Slice;
 
 import finley.peter.nextgear.model.Contract;
+import finley.peter.nextgear.model.ContractField;
+import finley.peter.nextgear.model.ContractFilter;
+import finley.peter.nextgear.model.ContractStatistic;
+import finley.peter.nextgear.model.ContractSummary;
+import finley.peter.nextgear.model.ContractTombstone;
 import finley.peter.nextgear.model.ContractType;
 
 /**
@@ -11,12 +24,62 @@ import finley.peter.nextgear.model.ContractType;
 public interface ContractService {
 
 	/**
-	 * Find all contracts, optionally filtered by the supplied example instance.
+	 * Find the next page of contracts matching the filter, ordered by id. Pages
+	 * are keyed on the last id seen rather than an offset so each page costs the
+	 * same regardless of how deep into the table it is.
+	 * 
+	 * @param filter the filter to apply
+	 * @param fields the fields the summaries should hold
+	 * @param afterId the id of the last contract on the previous page, or 0 for
+	 *            the first page
+	 * @param limit the maximum number of contracts to return
+	 * @return the next page of contract summaries
+	 */
+	Slice<ContractSummary> findPage(ContractFilter filter, Set<ContractField> fields, long afterId, int limit);
+
+	/**
+	 * Find the next page of contracts deleted since a time, ordered by id and
+	 * keyed on the last id seen like
+	 * {@link #findPage(ContractFilter, Set, long, int)}. Together with the
+	 * <code>modifiedSince</code> filter this lets a client sync only what has
+	 * changed since it last synced. Changes are stamped before they commit, so
+	 * a client must sync from a time set back by the longest a transaction may
+	 * take, rather than the time it last synced.
 	 * 
-	 * @param example the example to filter by
-	 * @return all matching contracts
+	 * @param since the earliest deletion time to include
+	 * @param afterId the id of the last contract on the previous page, or 0 for
+	 *            the first page
+	 * @param limit the maximum number of tombstones to return
+	 * @return the next page of tombstones of the deleted contracts
 	 */
-	Iterable<Contract> findAll(Example<Contract> example);
+	Slice<ContractTombstone> findDeleted(Date since, long afterId, int limit);
+
+	/**
+	 * Pass every contract, ordered by id, to the given consumer. Contracts are
+	 * read through a database cursor and detached once consumed so memory use
+	 * does not grow with the size of the table.
+	 * 
+	 * @param consumer receives each contract in turn
+	 */
+	void exportAll(Consumer<Contract> consumer);
+
+	/**
+	 * Get the count and amount total of contracts for every status and type
+	 * combination. Statistics are maintained as contracts are created, updated
+	 * and deleted so this does not scan the contracts.
+	 * 
+	 * @return the statistics
+	 */
+	List<ContractStatistic> getStatistics();
+	
+	/**
+	 * Recalculate the statistics returned by {@link #getStatistics()} from the
+	 * contracts themselves. Only needed if the statistics are suspected to be
+	 * out of step with the contracts.
+	 * 
+	 * @return the recalculated statistics
+	 */
+	List<ContractStatistic> rebuildStatistics();
 
 	/**
 	 * Find a single {@link Contract} by ID.
@@ -40,20 +103,105 @@ public interface ContractService {
 	Contract create(String name, long businessNumber, ContractType type, int amountRequested);
 	
 	/**
-	 * Update an existing contract.
+	 * Check new contract parameters against the rules of
+	 * {@link #create(String, long, ContractType, int)} without creating the
+	 * contract.
+	 * 
+	 * @param contract
+	 *            The contract parameters. Note that only the name, businessNumber,
+	 *            type, and amountRequested properties are used.
+	 * @throws IllegalArgumentException
+	 *             if the contract would not be created
+	 */
+	void validate(Contract contract);
+	
+	/**
+	 * Create several contracts in a single transaction. Each contract is
+	 * validated as in {@link #create(String, long, ContractType, int)};
+	 * contracts that fail validation are reported in their result and do not
+	 * prevent the others from being created.
+	 * 
+	 * @param contracts
+	 *            The contract parameters. Note that only the name, businessNumber,
+	 *            type, and amountRequested properties are used.
+	 * @return one result per contract, in the same order
+	 */
+	List<ContractBatchResult> createAll(List<Contract> contracts);
+	
+	/**
+	 * Update an existing contract. The contract is updated in place without
+	 * being read first; if a version is given the contract's new version is
+	 * one more than it.
 	 * 
 	 * @param contract
 	 *            The updated contract properties. Note that only the contract name
 	 *            and businessNumber may be changed. The amountRequested may be
-	 *            changed if the contract has no status.
-	 * @return the updated {@link Contract} instance
+	 *            changed if the contract has no status. If a version is given the
+	 *            update only succeeds if it matches the current version.
+	 * @throws IllegalArgumentException
+	 *             if the contract does not exist
+	 * @throws OptimisticLockingFailureException
+	 *             if the contract has been modified since the given version
 	 */
-	Contract update(Contract contract);
+	void update(Contract contract);
 	
 	/**
-	 * Delete a contract.
+	 * Delete a contract. The contract is deleted without being read first.
 	 * 
 	 * @param id
+	 * @param version
+	 *            if not null, only delete the contract if this is its current
+	 *            version
+	 * @throws EmptyResultDataAccessException
+	 *             if the contract does not exist
+	 * @throws OptimisticLockingFailureException
+	 *             if the contract has been modified since the given version
+	 */
+	void delete(long id, Long version);
+	
+	/**
+	 * Delete contracts by id. Contracts are deleted in chunks, each in its own
+	 * transaction, so a failure part way through leaves earlier chunks deleted.
+	 * Ids that don't exist are ignored.
+	 * 
+	 * @param ids the contracts to delete
+	 * @return the number of contracts deleted
+	 */
+	long deleteAll(Collection<Long> ids);
+	
+	/**
+	 * Delete all contracts matching a filter. Contracts are deleted in chunks,
+	 * each in its own transaction, so a failure part way through leaves earlier
+	 * chunks deleted.
+	 * 
+	 * @param filter the filter, at least one property must be set
+	 * @return the number of contracts deleted
+	 */
+	long deleteAll(ContractFilter filter);
+	
+	/**
+	 * Find the ids of contracts of a type that have no status, ordered by id.
+	 * Keyed on the last id seen like {@link #findPage(ContractFilter, Set, long, int)}.
+	 * 
+	 * @param type the type of contract
+	 * @param afterId the last id of the previous chunk, or 0 for the first
+	 * @param limit the maximum number of ids to return
+	 * @return the ids
+	 */
+	List<Long> findUndecidedIds(ContractType type, long afterId, int limit);
+	
+	/**
+	 * Set the status of contracts that have no status using a decision rule,
+	 * in a single transaction. Approved contracts are activated now. Contracts
+	 * that don't exist, already have a status, or the rule leaves undecided are
+	 * skipped.
+	 * 
+	 * @param ids the contracts to decide
+	 * @param rule the rule deciding each contract's status
+	 * @return the contracts given a status
+	 * @throws OptimisticLockingFailureException
+	 *             if any of the contracts is modified concurrently, in which
+	 *             case none are changed
 	 */
-	void delete(long id);
+	List<Contract> decideAll(Collection<Long> ids, ContractDecisionRule rule);
 }
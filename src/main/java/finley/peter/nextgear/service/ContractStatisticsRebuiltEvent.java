@@ -0,0 +1,9 @@
+package finley.peter.nextgear.service;
+
+/**
+ * Published by {@link ContractService} when it recalculates the contract
+ * statistics from the contracts, which changes them without any contract
+ * changing.
+ */
+public class ContractStatisticsRebuiltEvent {
+}
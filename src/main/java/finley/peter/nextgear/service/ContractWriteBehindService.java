@@ -0,0 +1,54 @@
+package finley.peter.nextgear.service;
+
+import java.util.concurrent.RejectedExecutionException;
+
+import finley.peter.nextgear.model.Contract;
+
+/**
+ * Accepts new contracts into a bounded in-memory queue and writes them to the
+ * database in the background, in batches, so creating a contract doesn't wait
+ * for a commit. Queued contracts are written before the application shuts
+ * down.
+ */
+public interface ContractWriteBehindService {
+
+	/**
+	 * @return true if contracts should be created through this service
+	 */
+	boolean isEnabled();
+	
+	/**
+	 * Validate a new contract and queue it to be created.
+	 * 
+	 * @param contract
+	 *            The contract parameters. Note that only the name, businessNumber,
+	 *            type, and amountRequested properties are used.
+	 * @return the queued contract, with the id to track it by
+	 * @throws IllegalArgumentException
+	 *             if the contract is invalid
+	 * @throws WriteQueueFullException
+	 *             if the queue is full
+	 * @throws RejectedExecutionException
+	 *             if the service is disabled or shutting down
+	 */
+	PendingContract submit(Contract contract);
+	
+	/**
+	 * Get a contract accepted by {@link #submit(Contract)}. Contracts are
+	 * tracked for a limited time after they are written.
+	 * 
+	 * @param trackingId
+	 * @return the contract, or null if it is not, or no longer, tracked
+	 */
+	PendingContract getPending(String trackingId);
+	
+	/**
+	 * @return the number of contracts waiting to be written
+	 */
+	int getQueued();
+	
+	/**
+	 * @return the maximum number of contracts that may wait to be written
+	 */
+	int getCapacity();
+}
@@ -0,0 +1,93 @@
+package finley.peter.nextgear.service;
+
+import finley.peter.nextgear.model.Contract;
+
+/**
+ * A contract accepted by {@link ContractWriteBehindService} and the progress of
+ * writing it to the database. The state is updated by the writer, so a
+ * pending contract read later reflects the outcome.
+ */
+public class PendingContract {
+
+	public enum State {
+		QUEUED, CREATED, FAILED
+	}
+	
+	private String trackingId;
+	private volatile State state;
+	private volatile Contract contract;
+	private volatile String error;
+	
+	public PendingContract() {
+	}
+	
+	public PendingContract(String trackingId, Contract contract) {
+		this.trackingId = trackingId;
+		this.contract = contract;
+		this.state = State.QUEUED;
+	}
+	
+	/**
+	 * Record that the contract has been written.
+	 * 
+	 * @param createdContract the contract as created
+	 */
+	public void created(Contract createdContract) {
+		this.contract = createdContract;
+		this.state = State.CREATED;
+	}
+	
+	/**
+	 * Record that the contract could not be written.
+	 * 
+	 * @param error the reason
+	 */
+	public void failed(String error) {
+		this.error = error;
+		this.state = State.FAILED;
+	}
+
+	public String getTrackingId() {
+		return trackingId;
+	}
+
+	public void setTrackingId(String trackingId) {
+		this.trackingId = trackingId;
+	}
+
+	public State getState() {
+		return state;
+	}
+
+	public void setState(State state) {
+		this.state = state;
+	}
+
+	/**
+	 * @return the contract as submitted while queued, as created once created
+	 */
+	public Contract getContract() {
+		return contract;
+	}
+
+	public void setContract(Contract contract) {
+		this.contract = contract;
+	}
+
+	/**
+	 * @return the reason the contract could not be written, if it failed
+	 */
+	public String getError() {
+		return error;
+	}
+
+	public void setError(String error) {
+		this.error = error;
+	}
+
+	@Override
+	public String toString() {
+		return "PendingContract [trackingId=" + trackingId + ", state=" + state + ", contract=" + contract + ", error="
+				+ error + "]";
+	}
+}
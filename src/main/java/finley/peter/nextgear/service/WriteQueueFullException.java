@@ -0,0 +1,14 @@
+package finley.peter.nextgear.service;
+
+/**
+ * Thrown when a contract can't be accepted for writing because the write
+ * queue is full. The client should retry later.
+ */
+public class WriteQueueFullException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	public WriteQueueFullException(String message) {
+		super(message);
+	}
+}
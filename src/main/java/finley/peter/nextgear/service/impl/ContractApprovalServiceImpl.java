@@ -0,0 +1,194 @@
+package finley.peter.nextgear.service.impl;
+
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+import finley.peter.nextgear.model.Contract;
+import finley.peter.nextgear.model.ContractStatus;
+import finley.peter.nextgear.model.ContractType;
+import finley.peter.nextgear.service.ContractApprovalService;
+import finley.peter.nextgear.service.ContractDecisionRule;
+import finley.peter.nextgear.service.ContractService;
+
+/**
+ * Implementation of {@link ContractApprovalService}. The calling thread scans
+ * the undecided contract ids a chunk at a time and hands each chunk to a pool
+ * of workers, which decide it with
+ * {@link ContractService#decideAll(java.util.Collection, ContractDecisionRule)}.
+ * Chunks are disjoint id ranges so workers never contend for the same rows.
+ * At most two chunks per worker are outstanding, so the scan doesn't run ahead
+ * of the workers.
+ * <p>
+ * Runs on a schedule when scheduling is enabled, see
+ * {@link finley.peter.nextgear.config.ApprovalConfiguration}.
+ */
+@Service
+public class ContractApprovalServiceImpl implements ContractApprovalService {
+
+	private static final Logger logger = LoggerFactory.getLogger(ContractApprovalServiceImpl.class);
+	
+	private ContractService contractService;
+	
+	private ContractDecisionRule decisionRule;
+	
+	private final int chunkSize;
+	private final int maxOutstanding;
+	
+	private final ExecutorService workers;
+	
+	private final AtomicBoolean running = new AtomicBoolean();
+	
+	private final Meter approved;
+	private final Meter denied;
+	private final Counter failed;
+	private final Timer chunks;
+	
+	public ContractApprovalServiceImpl(ContractService contractService, ContractDecisionRule decisionRule,
+			MetricRegistry metricRegistry,
+			@Value("${contracts.approval.chunk-size:500}") int chunkSize,
+			@Value("${contracts.approval.parallelism:4}") int parallelism) {
+		
+		if(chunkSize < 1 || parallelism < 1) {
+			throw new IllegalArgumentException("Approval chunk size and parallelism must be greater than 0");
+		}
+		
+		this.contractService = contractService;
+		this.decisionRule = decisionRule;
+		this.chunkSize = chunkSize;
+		this.maxOutstanding = parallelism * 2;
+		this.workers = Executors.newFixedThreadPool(parallelism, new CustomizableThreadFactory("contract-approval-"));
+		
+		this.approved = metricRegistry.meter("approval.contracts.approved");
+		this.denied = metricRegistry.meter("approval.contracts.denied");
+		this.failed = metricRegistry.counter("approval.contracts.failed");
+		this.chunks = metricRegistry.timer("approval.contracts.chunks");
+	}
+	
+	@PreDestroy
+	public void shutdown() {
+		workers.shutdownNow();
+	}
+
+	@Override
+	@Scheduled(fixedDelayString="${contracts.approval.interval:60000}", 
+			initialDelayString="${contracts.approval.interval:60000}")
+	public long decidePending() {
+		
+		if(!running.compareAndSet(false, true)) {
+			logger.info("Contract approval is already running");
+			return 0;
+		}
+		
+		try {
+			
+			long start = System.nanoTime();
+			long decided = decideChunks();
+			
+			if(decided > 0) {
+				logger.info("Decided {} contracts in {}ms", decided, (System.nanoTime() - start) / 1000000);
+			}
+			
+			return decided;
+			
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return 0;
+		} finally {
+			running.set(false);
+		}
+	}
+	
+	private long decideChunks() throws InterruptedException {
+		
+		CompletionService<Integer> completion = new ExecutorCompletionService<>(workers);
+		
+		long decided = 0;
+		int outstanding = 0;
+		long afterId = 0;
+		List<Long> chunk;
+		do {
+			
+			chunk = contractService.findUndecidedIds(ContractType.SALES, afterId, chunkSize);
+			
+			if(!chunk.isEmpty()) {
+				
+				// contracts the rule leaves undecided are skipped until the next run
+				afterId = chunk.get(chunk.size() - 1);
+				
+				List<Long> ids = chunk;
+				completion.submit(() -> decide(ids));
+				
+				if(++outstanding == maxOutstanding) {
+					decided += next(completion);
+					outstanding--;
+				}
+			}
+			
+		} while(chunk.size() == chunkSize);
+		
+		for(; outstanding > 0; outstanding--) {
+			decided += next(completion);
+		}
+		
+		return decided;
+	}
+	
+	private static int next(CompletionService<Integer> completion) throws InterruptedException {
+		
+		try {
+			return completion.take().get();
+		} catch(ExecutionException e) {
+			// decide handles exceptions, so this is an Error
+			throw new IllegalStateException("Contract approval failed", e.getCause());
+		}
+	}
+	
+	/**
+	 * Decide a chunk of contracts, recording the outcome.
+	 * 
+	 * @return the number of contracts given a status
+	 */
+	private int decide(List<Long> ids) {
+		
+		Timer.Context timer = chunks.time();
+		try {
+			
+			List<Contract> decided = contractService.decideAll(ids, decisionRule);
+			
+			long approvedCount = decided.stream().filter(contract -> contract.getStatus() == ContractStatus.APPROVED).count();
+			approved.mark(approvedCount);
+			denied.mark(decided.size() - approvedCount);
+			
+			return decided.size();
+			
+		} catch(RuntimeException e) {
+			
+			logger.error("Failed to decide contracts " + ids.get(0) + " to " + ids.get(ids.size() - 1), e);
+			failed.inc(ids.size());
+			
+			return 0;
+			
+		} finally {
+			timer.stop();
+		}
+	}
+}
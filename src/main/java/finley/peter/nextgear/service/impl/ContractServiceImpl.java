@@ -1,40 +1,276 @@
 package finley.peter.nextgear.service.impl;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
-import org.springframework.data.domain.Example;
+import javax.persistence.EntityManager;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.CachePut;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import finley.peter.nextgear.dao.ContractRepository;
+import finley.peter.nextgear.dao.ContractStatisticRepository;
+import finley.peter.nextgear.dao.ContractTombstoneRepository;
 import finley.peter.nextgear.model.Contract;
+import finley.peter.nextgear.model.ContractField;
+import finley.peter.nextgear.model.ContractFilter;
+import finley.peter.nextgear.model.ContractStatistic;
 import finley.peter.nextgear.model.ContractStatus;
+import finley.peter.nextgear.model.ContractSummary;
+import finley.peter.nextgear.model.ContractTombstone;
 import finley.peter.nextgear.model.ContractType;
+import finley.peter.nextgear.service.ContractBatchResult;
+import finley.peter.nextgear.service.ContractDecisionRule;
+import finley.peter.nextgear.service.ContractEvent;
 import finley.peter.nextgear.service.ContractService;
+import finley.peter.nextgear.service.ContractStatisticsRebuiltEvent;
 
 @Service
 public class ContractServiceImpl implements ContractService {
 
+	/**
+	 * Name of the cache holding contracts by id.
+	 */
+	public static final String CONTRACT_CACHE = "contracts";
+
 	private ContractRepository contractRepository;
 	
+	private ContractStatisticRepository contractStatisticRepository;
+	
+	private ContractTombstoneRepository contractTombstoneRepository;
+	
+	private EntityManager entityManager;
+	
+	private TransactionTemplate transactionTemplate;
+	
+	private TransactionTemplate committedReadTemplate;
+	
+	private CacheManager cacheManager;
+	
+	private ApplicationEventPublisher eventPublisher;
+	
 	private static final int EXPRESS_CONTRACT_AMOUNT_LIMIT = 50000;
 	
-	public ContractServiceImpl(ContractRepository contractRepository) {
+	/**
+	 * Number of contracts deleted per transaction by the bulk deletes.
+	 */
+	static final int DELETE_CHUNK_SIZE = 500;
+	
+	public ContractServiceImpl(ContractRepository contractRepository, 
+			ContractStatisticRepository contractStatisticRepository, 
+			ContractTombstoneRepository contractTombstoneRepository, EntityManager entityManager,
+			PlatformTransactionManager transactionManager, CacheManager cacheManager,
+			ApplicationEventPublisher eventPublisher) {
 		this.contractRepository = contractRepository;
+		this.contractStatisticRepository = contractStatisticRepository;
+		this.contractTombstoneRepository = contractTombstoneRepository;
+		this.entityManager = entityManager;
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.committedReadTemplate = new TransactionTemplate(transactionManager);
+		this.committedReadTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+		this.cacheManager = cacheManager;
+		this.eventPublisher = eventPublisher;
+	}
+
+	@Override
+	@Transactional(readOnly=true)
+	public Slice<ContractSummary> findPage(ContractFilter filter, Set<ContractField> fields, long afterId, int limit) {
+		
+		if(limit < 1) {
+			throw new IllegalArgumentException("Page limit must be greater than 0");
+		}
+		
+		return contractRepository.findSummaries(filter, fields, afterId, limit);
+	}
+
+	@Override
+	@Transactional(readOnly=true)
+	public Slice<ContractTombstone> findDeleted(Date since, long afterId, int limit) {
+		
+		if(since == null) {
+			throw new IllegalArgumentException("The time to find deletes since must be specified");
+		}
+		
+		if(limit < 1) {
+			throw new IllegalArgumentException("Page limit must be greater than 0");
+		}
+		
+		// fetch one more than the limit to find out if there is another page
+		List<ContractTombstone> tombstones = contractTombstoneRepository.findDeletedSince(since, afterId, 
+				new PageRequest(0, limit + 1));
+		
+		boolean hasNext = tombstones.size() > limit;
+		if(hasNext) {
+			tombstones = tombstones.subList(0, limit);
+		}
+		
+		return new SliceImpl<>(tombstones, new PageRequest(0, limit), hasNext);
 	}
 
 	@Override
-	public Iterable<Contract> findAll(Example<Contract> example) {
-		return contractRepository.findAll(example);
+	@Transactional(readOnly=true)
+	public void exportAll(Consumer<Contract> consumer) {
+		
+		try(Stream<Contract> contracts = contractRepository.streamAll()) {
+			contracts.forEach(contract -> {
+				consumer.accept(contract);
+				
+				// don't let the persistence context grow with the table
+				entityManager.detach(contract);
+			});
+		}
+	}
+
+	@Override
+	@Transactional(readOnly=true)
+	public List<ContractStatistic> getStatistics() {
+		return contractStatisticRepository.findAll();
+	}
+
+	@Override
+	@Transactional
+	public List<ContractStatistic> rebuildStatistics() {
+		
+		// start with every combination so each can be incremented later
+		Map<String, ContractStatistic> statistics = new LinkedHashMap<>();
+		for(ContractType type : ContractType.values()) {
+			statistics.put(ContractStatistic.key(null, type), new ContractStatistic(null, type, 0, 0));
+			for(ContractStatus status : ContractStatus.values()) {
+				statistics.put(ContractStatistic.key(status, type), new ContractStatistic(status, type, 0, 0));
+			}
+		}
+		
+		for(ContractStatistic statistic : contractRepository.summarize()) {
+			statistics.put(statistic.getId(), statistic);
+		}
+		
+		contractStatisticRepository.deleteAllInBatch();
+		
+		List<ContractStatistic> rebuilt = contractStatisticRepository.save(statistics.values());
+		
+		eventPublisher.publishEvent(new ContractStatisticsRebuiltEvent());
+		
+		return rebuilt;
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Contracts read from a replica aren't cached, as they may be older than
+	 * the primary's, which a client that has just written must read.
+	 */
 	@Override
+	@Cacheable(cacheNames=CONTRACT_CACHE, 
+			unless="#result == null || T(finley.peter.nextgear.dao.ReplicaContext).isReplicaRead()")
+	@Transactional(readOnly=true)
 	public Contract findOne(long id) {
 		return contractRepository.findOne(id);
 	}
 
 	@Override
+	@CachePut(cacheNames=CONTRACT_CACHE, key="#result.id")
+	@Transactional
 	public Contract create(String name, long businessNumber, ContractType type, int amountRequested) {
 		
+		Contract contract = newContract(name, businessNumber, type, amountRequested);
+		
+		updateStatistics(contract.getStatus(), type, 1, amountRequested);
+
+		Contract savedContract = contractRepository.save(contract);
+		
+		eventPublisher.publishEvent(ContractEvent.created(savedContract));
+		
+		return savedContract;
+	}
+
+	@Override
+	public void validate(Contract contract) {
+		newContract(contract);
+	}
+
+	@Override
+	@Transactional
+	public List<ContractBatchResult> createAll(List<Contract> contracts) {
+		
+		List<ContractBatchResult> results = new ArrayList<>(contracts.size());
+		List<Contract> validContracts = new ArrayList<>(contracts.size());
+		
+		for(Contract contract : contracts) {
+			try {
+				
+				Contract validContract = newContract(contract);
+				
+				validContracts.add(validContract);
+				results.add(ContractBatchResult.created(validContract));
+				
+			} catch(IllegalArgumentException e) {
+				results.add(ContractBatchResult.failed(e));
+			}
+		}
+		
+		// inserts are sent to the database in JDBC batches when the transaction flushes
+		contractRepository.save(validContracts);
+		
+		validContracts.forEach(contract -> eventPublisher.publishEvent(ContractEvent.created(contract)));
+		
+		Map<String, ContractStatistic> statistics = new LinkedHashMap<>();
+		for(Contract contract : validContracts) {
+			addToStatistics(statistics, contract.getStatus(), contract.getType(), 1, contract.getAmountRequested());
+		}
+		
+		updateStatistics(statistics);
+		
+		return results;
+	}
+	
+	/**
+	 * Validate the parameters of a contract given by a client, which may be
+	 * missing, and build a new, unsaved, contract.
+	 */
+	private Contract newContract(Contract contract) {
+		
+		if(contract.getBusinessNumber() == null) {
+			throw new IllegalArgumentException("Contract business number must be specified");
+		}
+		
+		if(contract.getAmountRequested() == null) {
+			throw new IllegalArgumentException("Contract amount must be specified");
+		}
+		
+		return newContract(contract.getName(), contract.getBusinessNumber(), 
+				contract.getType(), contract.getAmountRequested());
+	}
+	
+	/**
+	 * Validate the contract parameters and build a new, unsaved, contract.
+	 */
+	private Contract newContract(String name, long businessNumber, ContractType type, int amountRequested) {
+		
 		if(name == null || name.equals("")) {
 			throw new IllegalArgumentException("Contract name must be specified");
 		}
@@ -54,46 +290,308 @@ public class ContractServiceImpl implements ContractService {
 				+ EXPRESS_CONTRACT_AMOUNT_LIMIT);
 		}
 		
+		Date now = new Date();
+		
 		Contract contract = new Contract();
 		contract.setName(name);
 		contract.setBusinessNumber(businessNumber);
 		contract.setType(type);
 		contract.setAmountRequested(amountRequested);
+		contract.setLastModified(now);
 		
 		// automatically approve express contracts
 		if(type == ContractType.EXPRESS) {
-			contract.setActivationDate(new Date());
+			contract.setActivationDate(now);
 			contract.setStatus(ContractStatus.APPROVED);
 		}
-
-		return contractRepository.save(contract);
+		
+		return contract;
 	}
 
 	@Override
-	public Contract update(Contract contract) {
+	@Transactional
+	public void update(Contract contract) {
 		
 		long id = contract.getId();
+		Long version = contract.getVersion();
+		
+		if(contract.getBusinessNumber() == null) {
+			throw new IllegalArgumentException("Contract business number must be specified");
+		}
+		
+		if(contract.getAmountRequested() == null) {
+			throw new IllegalArgumentException("Contract amount must be specified");
+		}
+		
+		// must run first, it reads the amount the update below replaces
+		contractStatisticRepository.adjustPendingAmount(id, contract.getAmountRequested());
+		
+		Date now = new Date();
 		
-		Contract existingContract = contractRepository.findOne(id);
-		if(existingContract == null) {
+		// the amount only changes if the contract has no status, activation 
+		// date, status, and type are read-only
+		int updated = contractRepository.updateDetails(id, version, contract.getName(), 
+				contract.getBusinessNumber(), contract.getAmountRequested(), now);
+		
+		// throwing rolls back the statistics adjustment
+		if(updated == 0) {
+			
+			if(version != null && contractRepository.exists(id)) {
+				throw new OptimisticLockingFailureException("Contract " + id 
+						+ " has been modified since version " + version);
+			}
+			
 			throw new IllegalArgumentException("Contract does not exist with id: " + id);
 		}
 		
-		existingContract.setName(contract.getName());
-		existingContract.setBusinessNumber(contract.getBusinessNumber());
+		// a copy of what was updated, not the request, which has the fields the 
+		// update ignores and may be changed by the caller after it returns; the 
+		// contract as stored is only read for listeners that ask for it
+		Contract update = new Contract();
+		update.setId(id);
+		update.setName(contract.getName());
+		update.setBusinessNumber(contract.getBusinessNumber());
+		update.setAmountRequested(contract.getAmountRequested());
+		update.setVersion(version == null ? null : version + 1);
+		update.setLastModified(now);
+		
+		eventPublisher.publishEvent(ContractEvent.updated(update, () -> findCommitted(id)));
+		evictAfterCommit(id);
+	}
 
-		// if no status allow amount to be changed
-		if(existingContract.getStatus() == null) {
-			existingContract.setAmountRequested(contract.getAmountRequested());
+	@Override
+	@Transactional
+	public void delete(long id, Long version) {
+		
+		Date now = new Date();
+		
+		// must run first, they read the contract the delete below removes
+		contractStatisticRepository.subtractContracts(Collections.singleton(id));
+		contractTombstoneRepository.addTombstones(Collections.singleton(id), now);
+		
+		// throwing rolls back the statistics update
+		if(contractRepository.deleteById(id, version) == 0) {
+			
+			if(version != null && contractRepository.exists(id)) {
+				throw new OptimisticLockingFailureException("Contract " + id 
+						+ " has been modified since version " + version);
+			}
+			
+			throw new EmptyResultDataAccessException("Contract does not exist with id: " + id, 1);
 		}
+		
+		eventPublisher.publishEvent(ContractEvent.deleted(id, now));
+		evictAfterCommit(id);
+	}
 
-		// activation date, status, and type are read-only
+	@Override
+	public long deleteAll(Collection<Long> ids) {
+		
+		List<Long> distinctIds = new ArrayList<>(new LinkedHashSet<>(ids));
+		
+		long deleted = 0;
+		for(int start = 0; start < distinctIds.size(); start += DELETE_CHUNK_SIZE) {
+			
+			List<Long> chunk = distinctIds.subList(start, Math.min(start + DELETE_CHUNK_SIZE, distinctIds.size()));
+			
+			deleted += transactionTemplate.execute(status -> deleteChunk(contractRepository.findExistingIds(chunk)));
+			evict(chunk);
+		}
+		
+		return deleted;
+	}
 
-		return contractRepository.save(existingContract);
+	@Override
+	public long deleteAll(ContractFilter filter) {
+		
+		if(filter.isEmpty()) {
+			throw new IllegalArgumentException("A filter must be specified to delete contracts");
+		}
+		
+		long deleted = 0;
+		long afterId = 0;
+		List<Long> chunk;
+		do {
+			
+			long lastId = afterId;
+			chunk = transactionTemplate.execute(status -> {
+				
+				List<Long> ids = contractRepository.findIds(filter, lastId, DELETE_CHUNK_SIZE);
+				if(!ids.isEmpty()) {
+					deleteChunk(ids);
+				}
+				
+				return ids;
+			});
+			
+			if(!chunk.isEmpty()) {
+				evict(chunk);
+				deleted += chunk.size();
+				afterId = chunk.get(chunk.size() - 1);
+			}
+			
+		} while(chunk.size() == DELETE_CHUNK_SIZE);
+		
+		return deleted;
+	}
+	
+	@Override
+	@Transactional(readOnly=true)
+	public List<Long> findUndecidedIds(ContractType type, long afterId, int limit) {
+		
+		if(limit < 1) {
+			throw new IllegalArgumentException("Limit must be greater than 0");
+		}
+		
+		return contractRepository.findUndecidedIds(type, afterId, new PageRequest(0, limit));
 	}
 
 	@Override
-	public void delete(long id) {
-		contractRepository.delete(id);
+	public List<Contract> decideAll(Collection<Long> ids, ContractDecisionRule rule) {
+		
+		List<Contract> decided = transactionTemplate.execute(status -> {
+			
+			List<Contract> contracts = new ArrayList<>(ids.size());
+			Map<String, ContractStatistic> statistics = new LinkedHashMap<>();
+			Date now = new Date();
+			
+			for(Contract contract : contractRepository.findAll(ids)) {
+				
+				if(contract.getStatus() != null) {
+					continue;
+				}
+				
+				ContractStatus decision = rule.decide(contract);
+				if(decision == null) {
+					continue;
+				}
+				
+				// move the contract from the undecided statistic to its new one
+				addToStatistics(statistics, null, contract.getType(), -1, -contract.getAmountRequested());
+				addToStatistics(statistics, decision, contract.getType(), 1, contract.getAmountRequested());
+				
+				contract.setStatus(decision);
+				contract.setLastModified(now);
+				if(decision == ContractStatus.APPROVED) {
+					contract.setActivationDate(now);
+				}
+				
+				contracts.add(contract);
+			}
+			
+			updateStatistics(statistics);
+			
+			// the changed contracts are flushed in JDBC batches on commit, the
+			// version check rolls everything back if any changed concurrently
+			contracts.forEach(contract -> eventPublisher.publishEvent(ContractEvent.decided(contract)));
+			
+			return contracts;
+		});
+		
+		evict(decided.stream().map(Contract::getId).collect(Collectors.toList()));
+		
+		return decided;
+	}
+	
+	/**
+	 * Delete contracts, remove them from the statistics and leave tombstones
+	 * for them within the current transaction. The contracts must exist, or
+	 * listeners would be told of deletes that didn't happen.
+	 */
+	private int deleteChunk(List<Long> ids) {
+		
+		if(ids.isEmpty()) {
+			return 0;
+		}
+		
+		Date now = new Date();
+		
+		contractStatisticRepository.subtractContracts(ids);
+		contractTombstoneRepository.addTombstones(ids, now);
+		
+		int deleted = contractRepository.deleteByIds(ids);
+		
+		ids.forEach(id -> eventPublisher.publishEvent(ContractEvent.deleted(id, now)));
+		
+		return deleted;
+	}
+	
+	/**
+	 * Read a contract from the primary database in a transaction of its own,
+	 * as it is once the current transaction has committed.
+	 */
+	private Contract findCommitted(long id) {
+		return committedReadTemplate.execute(status -> contractRepository.findOne(id));
+	}
+	
+	/**
+	 * Remove deleted contracts from the cache, once their deletion has been
+	 * committed so they can't be cached again from a read of the old rows.
+	 */
+	private void evict(List<Long> ids) {
+		
+		Cache cache = cacheManager.getCache(CONTRACT_CACHE);
+		if(cache != null) {
+			ids.forEach(cache::evict);
+		}
+	}
+	
+	/**
+	 * Remove a contract changed in the current transaction from the cache once
+	 * the transaction commits, for the same reason as {@link #evict(List)}, or
+	 * straight away if there is no transaction.
+	 */
+	private void evictAfterCommit(long id) {
+		
+		if(!TransactionSynchronizationManager.isSynchronizationActive()) {
+			evict(Collections.singletonList(id));
+			return;
+		}
+		
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+			
+			@Override
+			public void afterCommit() {
+				evict(Collections.singletonList(id));
+			}
+		});
+	}
+	
+	/**
+	 * Accumulate a change to the statistic for the given status and type, to
+	 * be applied by {@link #updateStatistics(Map)}.
+	 */
+	private static void addToStatistics(Map<String, ContractStatistic> statistics, ContractStatus status, 
+			ContractType type, long count, long amountRequested) {
+		
+		ContractStatistic statistic = statistics.computeIfAbsent(ContractStatistic.key(status, type),
+				key -> new ContractStatistic(status, type, 0, 0));
+		
+		statistic.setCount(statistic.getCount() + count);
+		statistic.setAmountRequestedTotal(statistic.getAmountRequestedTotal() + amountRequested);
+	}
+	
+	/**
+	 * Apply accumulated changes to the statistics within the current
+	 * transaction.
+	 */
+	private void updateStatistics(Map<String, ContractStatistic> statistics) {
+		
+		for(ContractStatistic statistic : statistics.values()) {
+			updateStatistics(statistic.getStatus(), statistic.getType(), statistic.getCount(), statistic.getAmountRequestedTotal());
+		}
+	}
+	
+	/**
+	 * Add to the statistics for the given status and type within the current
+	 * transaction.
+	 */
+	private void updateStatistics(ContractStatus status, ContractType type, long count, long amountRequested) {
+		
+		if(count == 0 && amountRequested == 0) {
+			return;
+		}
+		
+		contractStatisticRepository.increment(ContractStatistic.key(status, type), count, amountRequested);
 	}
 }
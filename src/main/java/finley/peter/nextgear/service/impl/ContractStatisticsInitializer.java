@@ -0,0 +1,34 @@
+package finley.peter.nextgear.service.impl;
+
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+import finley.peter.nextgear.dao.ContractStatisticRepository;
+import finley.peter.nextgear.service.ContractService;
+
+/**
+ * Builds the contract statistics on startup if they have never been built,
+ * so they can be incremented from then on.
+ */
+@Component
+public class ContractStatisticsInitializer implements ApplicationRunner {
+
+	private ContractService contractService;
+	
+	private ContractStatisticRepository contractStatisticRepository;
+	
+	public ContractStatisticsInitializer(ContractService contractService, 
+			ContractStatisticRepository contractStatisticRepository) {
+		this.contractService = contractService;
+		this.contractStatisticRepository = contractStatisticRepository;
+	}
+
+	@Override
+	public void run(ApplicationArguments args) {
+		
+		if(contractStatisticRepository.count() == 0) {
+			contractService.rebuildStatistics();
+		}
+	}
+}
@@ -0,0 +1,240 @@
+package finley.peter.nextgear.service.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import finley.peter.nextgear.model.Contract;
+import finley.peter.nextgear.service.ContractBatchResult;
+import finley.peter.nextgear.service.ContractService;
+import finley.peter.nextgear.service.ContractWriteBehindService;
+import finley.peter.nextgear.service.PendingContract;
+import finley.peter.nextgear.service.WriteQueueFullException;
+
+/**
+ * Implementation of {@link ContractWriteBehindService}. A single writer thread
+ * takes up to a batch of contracts from the queue at a time and creates them
+ * with {@link ContractService#createAll(List)}, so each batch is one
+ * transaction. If the transaction fails every contract in the batch is marked
+ * as failed.
+ * <p>
+ * On shutdown new contracts are rejected and the writer runs until the queue
+ * is empty, waiting at most the shutdown timeout. Submitting holds a read lock
+ * from checking that contracts are accepted until the contract is queued, and
+ * shutdown takes the write lock to stop accepting them, so none can be queued
+ * after the writer has seen the last of the queue.
+ */
+@Service
+public class ContractWriteBehindServiceImpl implements ContractWriteBehindService {
+
+	private static final Logger logger = LoggerFactory.getLogger(ContractWriteBehindServiceImpl.class);
+	
+	private static final long POLL_INTERVAL_MILLIS = 100;
+	
+	private ContractService contractService;
+	
+	private final boolean enabled;
+	private final int capacity;
+	private final int batchSize;
+	private final long shutdownTimeout;
+	
+	private final BlockingQueue<PendingContract> queue;
+	
+	private final Cache<String, PendingContract> tracked;
+	
+	private final Counter written;
+	private final Counter failed;
+	private final Counter rejected;
+	
+	private final Thread writer = new Thread(this::writeQueued, "contract-writer");
+	
+	private final ReadWriteLock acceptingLock = new ReentrantReadWriteLock();
+	
+	private volatile boolean accepting;
+	
+	public ContractWriteBehindServiceImpl(ContractService contractService, MetricRegistry metricRegistry,
+			@Value("${contracts.write-behind.enabled:false}") boolean enabled,
+			@Value("${contracts.write-behind.queue-capacity:10000}") int capacity,
+			@Value("${contracts.write-behind.batch-size:500}") int batchSize,
+			@Value("${contracts.write-behind.shutdown-timeout:30000}") long shutdownTimeout,
+			@Value("${contracts.write-behind.tracking-time:600000}") long trackingTime) {
+		
+		this.contractService = contractService;
+		this.enabled = enabled;
+		this.capacity = capacity;
+		this.batchSize = batchSize;
+		this.shutdownTimeout = shutdownTimeout;
+		this.queue = new ArrayBlockingQueue<>(capacity);
+		this.tracked = Caffeine.newBuilder()
+				.expireAfterWrite(trackingTime, TimeUnit.MILLISECONDS)
+				.build();
+		
+		metricRegistry.register("write-behind.contracts.queued", (Gauge<Integer>) queue::size);
+		this.written = metricRegistry.counter("write-behind.contracts.written");
+		this.failed = metricRegistry.counter("write-behind.contracts.failed");
+		this.rejected = metricRegistry.counter("write-behind.contracts.rejected");
+	}
+	
+	@PostConstruct
+	public void start() {
+		
+		if(enabled) {
+			accepting = true;
+			writer.start();
+		}
+	}
+	
+	/**
+	 * Stop accepting contracts and write those already queued.
+	 * 
+	 * @throws InterruptedException
+	 */
+	@PreDestroy
+	public void shutdown() throws InterruptedException {
+		
+		if(!enabled) {
+			return;
+		}
+		
+		// waits for contracts being submitted to be queued
+		acceptingLock.writeLock().lock();
+		try {
+			accepting = false;
+		} finally {
+			acceptingLock.writeLock().unlock();
+		}
+		
+		writer.join(shutdownTimeout);
+		
+		if(writer.isAlive()) {
+			logger.warn("Contract writer did not finish within {}ms, {} contracts were not written", 
+					shutdownTimeout, queue.size());
+		}
+	}
+
+	@Override
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	@Override
+	public PendingContract submit(Contract contract) {
+		
+		acceptingLock.readLock().lock();
+		try {
+			
+			if(!accepting) {
+				throw new RejectedExecutionException("Contracts are not being accepted for writing");
+			}
+			
+			contractService.validate(contract);
+			
+			PendingContract pending = new PendingContract(UUID.randomUUID().toString(), contract);
+			tracked.put(pending.getTrackingId(), pending);
+			
+			if(!queue.offer(pending)) {
+				tracked.invalidate(pending.getTrackingId());
+				rejected.inc();
+				throw new WriteQueueFullException("The write queue is full, " + capacity 
+						+ " contracts are waiting to be written");
+			}
+			
+			return pending;
+			
+		} finally {
+			acceptingLock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public PendingContract getPending(String trackingId) {
+		return tracked.getIfPresent(trackingId);
+	}
+
+	@Override
+	public int getQueued() {
+		return queue.size();
+	}
+
+	@Override
+	public int getCapacity() {
+		return capacity;
+	}
+	
+	/**
+	 * Write batches from the queue until shut down and the queue is empty.
+	 */
+	private void writeQueued() {
+		
+		List<PendingContract> batch = new ArrayList<>(batchSize);
+		try {
+			while(accepting || !queue.isEmpty()) {
+				
+				PendingContract first = queue.poll(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+				if(first == null) {
+					continue;
+				}
+				
+				batch.add(first);
+				queue.drainTo(batch, batchSize - 1);
+				
+				write(batch);
+				batch.clear();
+			}
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	private void write(List<PendingContract> batch) {
+		
+		List<Contract> contracts = batch.stream()
+				.map(PendingContract::getContract)
+				.collect(Collectors.toList());
+		
+		try {
+			
+			List<ContractBatchResult> results = contractService.createAll(contracts);
+			
+			for(int i = 0; i < batch.size(); i++) {
+				
+				ContractBatchResult result = results.get(i);
+				if(result.isCreated()) {
+					batch.get(i).created(result.getContract());
+					written.inc();
+				} else {
+					batch.get(i).failed(result.getError().getMessage());
+					failed.inc();
+				}
+			}
+			
+		} catch(RuntimeException e) {
+			
+			logger.error("Failed to write a batch of " + batch.size() + " contracts", e);
+			
+			batch.forEach(pending -> pending.failed(e.getMessage()));
+			failed.inc(batch.size());
+		}
+	}
+}
@@ -0,0 +1,313 @@
+package finley.peter.nextgear.service.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import finley.peter.nextgear.dao.ContractShards;
+import finley.peter.nextgear.dao.ShardContext;
+import finley.peter.nextgear.model.Contract;
+import finley.peter.nextgear.model.ContractField;
+import finley.peter.nextgear.model.ContractFilter;
+import finley.peter.nextgear.model.ContractStatistic;
+import finley.peter.nextgear.model.ContractSummary;
+import finley.peter.nextgear.model.ContractTombstone;
+import finley.peter.nextgear.model.ContractType;
+import finley.peter.nextgear.service.ContractBatchResult;
+import finley.peter.nextgear.service.ContractDecisionRule;
+import finley.peter.nextgear.service.ContractService;
+
+/**
+ * A {@link ContractService} over contracts sharded across several databases,
+ * see {@link ContractShards}. Each call is passed to the unsharded service with
+ * its database work routed to the right shard through the
+ * {@link ShardContext}.
+ * <p>
+ * Calls for a single contract go to one shard, found from the business number
+ * for creates and from the id otherwise. Calls for many contracts are
+ * scattered to the shards involved in parallel and their results gathered:
+ * pages and ids are merged in id order, counts and statistics are summed.
+ * Each shard's part runs in its own transaction, so a call spanning shards is
+ * not atomic.
+ */
+public class ShardedContractService implements ContractService {
+
+	private final ContractService contractService;
+	
+	private final ContractShards shards;
+	
+	private final ExecutorService executor;
+	
+	/**
+	 * @param contractService the unsharded service
+	 * @param shards the shards
+	 * @param poolSize the number of threads calls are scattered on
+	 */
+	public ShardedContractService(ContractService contractService, ContractShards shards, int poolSize) {
+		this.contractService = contractService;
+		this.shards = shards;
+		this.executor = Executors.newFixedThreadPool(poolSize, new CustomizableThreadFactory("contract-shard-"));
+	}
+	
+	public void shutdown() {
+		executor.shutdown();
+	}
+
+	@Override
+	public Slice<ContractSummary> findPage(ContractFilter filter, Set<ContractField> fields, long afterId, int limit) {
+		
+		List<Slice<ContractSummary>> slices = onAllShards(() -> contractService.findPage(filter, fields, afterId, limit));
+		
+		List<ContractSummary> summaries = merge(slices.stream().map(Slice::getContent).collect(Collectors.toList()), 
+				ContractSummary::getId);
+		
+		boolean hasNext = summaries.size() > limit || slices.stream().anyMatch(Slice::hasNext);
+		if(summaries.size() > limit) {
+			summaries = summaries.subList(0, limit);
+		}
+		
+		return new SliceImpl<>(summaries, new PageRequest(0, limit), hasNext);
+	}
+
+	@Override
+	public Slice<ContractTombstone> findDeleted(Date since, long afterId, int limit) {
+		
+		List<Slice<ContractTombstone>> slices = onAllShards(() -> contractService.findDeleted(since, afterId, limit));
+		
+		List<ContractTombstone> tombstones = merge(slices.stream().map(Slice::getContent).collect(Collectors.toList()), 
+				ContractTombstone::getId);
+		
+		boolean hasNext = tombstones.size() > limit || slices.stream().anyMatch(Slice::hasNext);
+		if(tombstones.size() > limit) {
+			tombstones = tombstones.subList(0, limit);
+		}
+		
+		return new SliceImpl<>(tombstones, new PageRequest(0, limit), hasNext);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Shards are exported one after another, so contracts are in id order
+	 * within each shard only.
+	 */
+	@Override
+	public void exportAll(Consumer<Contract> consumer) {
+		
+		for(int shard = 0; shard < shards.getCount(); shard++) {
+			ShardContext.run(shard, () -> contractService.exportAll(consumer));
+		}
+	}
+
+	@Override
+	public List<ContractStatistic> getStatistics() {
+		return sum(onAllShards(contractService::getStatistics));
+	}
+
+	@Override
+	public List<ContractStatistic> rebuildStatistics() {
+		return sum(onAllShards(contractService::rebuildStatistics));
+	}
+
+	@Override
+	public Contract findOne(long id) {
+		return ShardContext.call(shards.shardOfId(id), () -> contractService.findOne(id));
+	}
+
+	@Override
+	public Contract create(String name, long businessNumber, ContractType type, int amountRequested) {
+		return ShardContext.call(shards.shardOf(businessNumber), 
+				() -> contractService.create(name, businessNumber, type, amountRequested));
+	}
+
+	@Override
+	public void validate(Contract contract) {
+		contractService.validate(contract);
+	}
+
+	@Override
+	public List<ContractBatchResult> createAll(List<Contract> contracts) {
+		
+		// contracts without a business number fail validation on any shard
+		Map<Integer, List<Integer>> positions = new TreeMap<>();
+		for(int i = 0; i < contracts.size(); i++) {
+			Long businessNumber = contracts.get(i).getBusinessNumber();
+			int shard = businessNumber == null ? 0 : shards.shardOf(businessNumber);
+			positions.computeIfAbsent(shard, key -> new ArrayList<>()).add(i);
+		}
+		
+		Map<Integer, List<Contract>> batches = new TreeMap<>();
+		positions.forEach((shard, indexes) -> batches.put(shard, 
+				indexes.stream().map(contracts::get).collect(Collectors.toList())));
+		
+		Map<Integer, List<ContractBatchResult>> shardResults = onShards(batches, contractService::createAll);
+		
+		// put the results back in the order the contracts were given
+		ContractBatchResult[] results = new ContractBatchResult[contracts.size()];
+		shardResults.forEach((shard, batchResults) -> {
+			List<Integer> indexes = positions.get(shard);
+			for(int i = 0; i < indexes.size(); i++) {
+				results[indexes.get(i)] = batchResults.get(i);
+			}
+		});
+		
+		return Arrays.asList(results);
+	}
+
+	@Override
+	public void update(Contract contract) {
+		ShardContext.run(shards.shardOfId(contract.getId()), () -> contractService.update(contract));
+	}
+
+	@Override
+	public void delete(long id, Long version) {
+		ShardContext.run(shards.shardOfId(id), () -> contractService.delete(id, version));
+	}
+
+	@Override
+	public long deleteAll(Collection<Long> ids) {
+		
+		return onShards(byShard(ids), contractService::deleteAll).values().stream()
+				.mapToLong(Long::longValue)
+				.sum();
+	}
+
+	@Override
+	public long deleteAll(ContractFilter filter) {
+		
+		// check once rather than failing on every shard
+		if(filter.isEmpty()) {
+			throw new IllegalArgumentException("A filter must be specified to delete contracts");
+		}
+		
+		return onAllShards(() -> contractService.deleteAll(filter)).stream()
+				.mapToLong(Long::longValue)
+				.sum();
+	}
+
+	@Override
+	public List<Long> findUndecidedIds(ContractType type, long afterId, int limit) {
+		
+		List<Long> ids = merge(onAllShards(() -> contractService.findUndecidedIds(type, afterId, limit)), 
+				Function.identity());
+		
+		return ids.size() > limit ? ids.subList(0, limit) : ids;
+	}
+
+	@Override
+	public List<Contract> decideAll(Collection<Long> ids, ContractDecisionRule rule) {
+		
+		return onShards(byShard(ids), shardIds -> contractService.decideAll(shardIds, rule)).values().stream()
+				.flatMap(List::stream)
+				.collect(Collectors.toList());
+	}
+	
+	/**
+	 * Call the service on every shard in parallel.
+	 * 
+	 * @return each shard's result, in shard order
+	 */
+	private <T> List<T> onAllShards(Supplier<T> call) {
+		
+		List<CompletableFuture<T>> futures = IntStream.range(0, shards.getCount())
+				.mapToObj(shard -> CompletableFuture.supplyAsync(() -> ShardContext.call(shard, call), executor))
+				.collect(Collectors.toList());
+		
+		return futures.stream()
+				.map(ShardedContractService::join)
+				.collect(Collectors.toList());
+	}
+	
+	/**
+	 * Call the service on the given shards in parallel, each with its own
+	 * argument.
+	 * 
+	 * @return each shard's result, by shard
+	 */
+	private <A, T> Map<Integer, T> onShards(Map<Integer, A> arguments, Function<A, T> call) {
+		
+		Map<Integer, CompletableFuture<T>> futures = new TreeMap<>();
+		arguments.forEach((shard, argument) -> futures.put(shard, CompletableFuture.supplyAsync(
+				() -> ShardContext.call(shard, () -> call.apply(argument)), executor)));
+		
+		Map<Integer, T> results = new TreeMap<>();
+		futures.forEach((shard, future) -> results.put(shard, join(future)));
+		
+		return results;
+	}
+	
+	/**
+	 * Wait for a shard's result, rethrowing the exception it failed with so
+	 * callers see the same exceptions as from an unsharded service.
+	 */
+	private static <T> T join(CompletableFuture<T> future) {
+		
+		try {
+			return future.join();
+		} catch(CompletionException e) {
+			if(e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw e;
+		}
+	}
+	
+	private Map<Integer, List<Long>> byShard(Collection<Long> ids) {
+		return ids.stream().collect(Collectors.groupingBy(shards::shardOfId, TreeMap::new, Collectors.toList()));
+	}
+	
+	/**
+	 * Merge lists that are each ordered by id into one list ordered by id.
+	 */
+	private static <T> List<T> merge(List<List<T>> lists, Function<T, Long> id) {
+		
+		List<T> merged = new ArrayList<>();
+		lists.forEach(merged::addAll);
+		
+		// the sort finds the ordered runs, so this costs little more than a merge
+		merged.sort(Comparator.comparing(id));
+		
+		return merged;
+	}
+	
+	/**
+	 * Add up each shard's statistics for the same status and type.
+	 */
+	private static List<ContractStatistic> sum(List<List<ContractStatistic>> shardStatistics) {
+		
+		Map<String, ContractStatistic> statistics = new LinkedHashMap<>();
+		for(List<ContractStatistic> shard : shardStatistics) {
+			for(ContractStatistic statistic : shard) {
+				
+				ContractStatistic total = statistics.computeIfAbsent(statistic.getId(), 
+						key -> new ContractStatistic(statistic.getStatus(), statistic.getType(), 0, 0));
+				
+				total.setCount(total.getCount() + statistic.getCount());
+				total.setAmountRequestedTotal(total.getAmountRequestedTotal() + statistic.getAmountRequestedTotal());
+			}
+		}
+		
+		return new ArrayList<>(statistics.values());
+	}
+}
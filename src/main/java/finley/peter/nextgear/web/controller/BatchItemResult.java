@@ -0,0 +1,55 @@
+package finley.peter.nextgear.web.controller;
+
+import org.springframework.http.HttpStatus;
+
+import finley.peter.nextgear.model.Contract;
+import finley.peter.nextgear.service.ContractBatchResult;
+
+/**
+ * Object used to return the result of a single item of a batch request back
+ * to the client. The status is the HTTP status the item would have received
+ * had it been sent on its own.
+ */
+public class BatchItemResult {
+
+	private int status;
+	private Contract contract;
+	private ErrorInformation error;
+	
+	public BatchItemResult() {
+	}
+	
+	public BatchItemResult(ContractBatchResult result) {
+		if(result.isCreated()) {
+			this.status = HttpStatus.CREATED.value();
+			this.contract = result.getContract();
+		} else {
+			this.status = HttpStatus.BAD_REQUEST.value();
+			this.error = new ErrorInformation(result.getError(), HttpStatus.BAD_REQUEST);
+		}
+	}
+
+	public int getStatus() {
+		return status;
+	}
+
+	public void setStatus(int status) {
+		this.status = status;
+	}
+
+	public Contract getContract() {
+		return contract;
+	}
+
+	public void setContract(Contract contract) {
+		this.contract = contract;
+	}
+
+	public ErrorInformation getError() {
+		return error;
+	}
+
+	public void setError(ErrorInformation error) {
+		this.error = error;
+	}
+}
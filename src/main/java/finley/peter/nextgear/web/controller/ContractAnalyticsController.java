@@ -0,0 +1,74 @@
+package finley.peter.nextgear.web.controller;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestController;
+
+import finley.peter.nextgear.analytics.ContractAggregate;
+import finley.peter.nextgear.analytics.ContractColumns;
+import finley.peter.nextgear.analytics.ContractDimension;
+
+/**
+ * RESTful services for analytical queries over contracts. Queries are answered
+ * from the in-memory {@link ContractColumns} rather than the database.
+ */
+@RestController
+@RequestMapping("/contracts")
+public class ContractAnalyticsController {
+
+	private static final List<Double> DEFAULT_PERCENTILES = Arrays.asList(50.0, 90.0, 99.0);
+	
+	private ContractColumns contractColumns;
+	
+	public ContractAnalyticsController(ContractColumns contractColumns) {
+		this.contractColumns = contractColumns;
+	}
+
+	/**
+	 * Get the count, sum, average, range and percentiles of the amount
+	 * requested of contracts, optionally grouped.
+	 * 
+	 * @param groupBy
+	 *            the dimensions to group by, any of <code>type</code>,
+	 *            <code>status</code> and <code>month</code> (of activation)
+	 * @param percentiles
+	 *            the percentiles to calculate, 50, 90 and 99 by default
+	 * @return one aggregate per group
+	 */
+	@GetMapping(path="/analytics", produces=MediaType.APPLICATION_JSON_VALUE)
+	public HttpEntity<List<ContractAggregate>> getAnalytics(
+			@RequestParam(name="groupBy", required=false) List<String> groupBy,
+			@RequestParam(name="percentiles", required=false) List<Double> percentiles) {
+		
+		Set<ContractDimension> dimensions = EnumSet.noneOf(ContractDimension.class);
+		if(groupBy != null) {
+			groupBy.forEach(name -> dimensions.add(ContractDimension.parse(name)));
+		}
+		
+		double[] requestedPercentiles = (percentiles == null ? DEFAULT_PERCENTILES : percentiles).stream()
+				.mapToDouble(Double::doubleValue)
+				.toArray();
+		
+		return new ResponseEntity<>(contractColumns.aggregate(dimensions, requestedPercentiles), HttpStatus.OK);
+	}
+	
+	@ExceptionHandler(IllegalArgumentException.class)
+	@ResponseStatus(value=HttpStatus.BAD_REQUEST)
+	public HttpEntity<ErrorInformation> badRequest( Exception exception ) {
+		
+		ErrorInformation errorInformation = new ErrorInformation(exception, HttpStatus.BAD_REQUEST);
+		return new HttpEntity<ErrorInformation>(errorInformation);
+	}
+}
@@ -0,0 +1,150 @@
+package finley.peter.nextgear.web.controller;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import finley.peter.nextgear.feed.ChangeOffsetExpiredException;
+import finley.peter.nextgear.feed.ContractChange;
+import finley.peter.nextgear.feed.ContractChangeFeed;
+
+/**
+ * RESTful services for following contract changes from the
+ * {@link ContractChangeFeed}, by long polling or as server-sent events.
+ * Clients resume from the offset of the last change they saw; without one
+ * they get the changes from now on.
+ */
+@RestController
+@RequestMapping("/contracts")
+public class ContractChangeController {
+	
+	private ContractChangeFeed contractChangeFeed;
+	
+	private long maxWait;
+	
+	private long streamTimeout;
+	
+	private int maxLimit;
+	
+	public ContractChangeController(ContractChangeFeed contractChangeFeed, 
+			@Value("${contracts.changes.max-wait:30000}") long maxWait,
+			@Value("${contracts.changes.stream-timeout:300000}") long streamTimeout,
+			@Value("${contracts.page.max-limit:1000}") int maxLimit) {
+		this.contractChangeFeed = contractChangeFeed;
+		this.maxWait = maxWait;
+		this.streamTimeout = streamTimeout;
+		this.maxLimit = maxLimit;
+	}
+
+	/**
+	 * Get the changes after an offset, waiting for some if there are none yet.
+	 * 
+	 * @param after
+	 *            the offset of the last change seen
+	 * @param limit
+	 *            the most changes to return, at most
+	 *            <code>contracts.page.max-limit</code>
+	 * @param wait
+	 *            the most milliseconds to wait for changes, at most
+	 *            <code>contracts.changes.max-wait</code>
+	 * @return the changes, empty if none came within the wait; 410 if the
+	 *         changes after the offset are no longer held
+	 */
+	@GetMapping(path="/changes", produces=MediaType.APPLICATION_JSON_VALUE)
+	public DeferredResult<List<ContractChange>> pollChanges(
+			@RequestParam(name="after", required=false) Long after,
+			@RequestParam(name="limit", required=false) Integer limit,
+			@RequestParam(name="wait", required=false) Long wait) {
+		
+		if(limit != null && limit < 1) {
+			throw new IllegalArgumentException("Limit must be greater than 0");
+		}
+		
+		if(wait != null && wait < 0) {
+			throw new IllegalArgumentException("Wait must not be negative");
+		}
+		
+		DeferredResult<List<ContractChange>> result = new DeferredResult<>(
+				Math.max(1, wait == null ? maxWait : Math.min(wait, maxWait)), Collections.emptyList());
+		
+		contractChangeFeed.poll(after == null ? contractChangeFeed.getLastOffset() : after, 
+				limit == null ? maxLimit : Math.min(limit, maxLimit), result);
+		
+		return result;
+	}
+	
+	/**
+	 * Stream the changes after an offset as server-sent events named by the
+	 * change type, with the offset as the event id. The stream ends after
+	 * <code>contracts.changes.stream-timeout</code> milliseconds, or when the
+	 * client falls too far behind, and is resumed by reconnecting with the
+	 * <code>Last-Event-ID</code> header.
+	 * 
+	 * @param lastEventId
+	 *            the offset of the last change seen, sent by clients
+	 *            reconnecting
+	 * @param after
+	 *            the offset of the last change seen, if there is no
+	 *            <code>Last-Event-ID</code>
+	 * @return the stream; 410 if the changes after the offset are no longer
+	 *         held, 503 if there are too many subscribers
+	 */
+	@GetMapping(path="/changes", produces=MediaType.TEXT_EVENT_STREAM_VALUE)
+	public ResponseEntity<SseEmitter> streamChanges(@RequestHeader(name="Last-Event-ID", required=false) Long lastEventId,
+			@RequestParam(name="after", required=false) Long after) {
+		
+		Long offset = lastEventId != null ? lastEventId : after;
+		
+		SseEmitter emitter = new SseEmitter(streamTimeout);
+		
+		// errors have no event stream representation, so are answered with the status alone
+		try {
+			contractChangeFeed.stream(offset == null ? contractChangeFeed.getLastOffset() : offset, emitter);
+		} catch(ChangeOffsetExpiredException e) {
+			return ResponseEntity.status(HttpStatus.GONE).build();
+		} catch(RejectedExecutionException e) {
+			return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+		}
+		
+		return ResponseEntity.ok(emitter);
+	}
+	
+	@ExceptionHandler(ChangeOffsetExpiredException.class)
+	@ResponseStatus(value=HttpStatus.GONE)
+	public HttpEntity<ErrorInformation> gone( Exception exception ) {
+		
+		ErrorInformation errorInformation = new ErrorInformation(exception, HttpStatus.GONE);
+		return new HttpEntity<ErrorInformation>(errorInformation);
+	}
+	
+	@ExceptionHandler(RejectedExecutionException.class)
+	@ResponseStatus(value=HttpStatus.SERVICE_UNAVAILABLE)
+	public HttpEntity<ErrorInformation> serviceUnavailable( Exception exception ) {
+		
+		ErrorInformation errorInformation = new ErrorInformation(exception, HttpStatus.SERVICE_UNAVAILABLE);
+		return new HttpEntity<ErrorInformation>(errorInformation);
+	}
+	
+	@ExceptionHandler(IllegalArgumentException.class)
+	@ResponseStatus(value=HttpStatus.BAD_REQUEST)
+	public HttpEntity<ErrorInformation> badRequest( Exception exception ) {
+		
+		ErrorInformation errorInformation = new ErrorInformation(exception, HttpStatus.BAD_REQUEST);
+		return new HttpEntity<ErrorInformation>(errorInformation);
+	}
+}
@@ -1,7 +1,28 @@
 package finley.peter.nextgear.web.controller;
 
-import org.springframework.data.domain.Example;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.metrics.CounterService;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Slice;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.format.annotation.DateTimeFormat.ISO;
 import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -12,92 +33,455 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 
+import finley.peter.nextgear.concurrent.DatabaseExecutor;
 import finley.peter.nextgear.model.Contract;
-import finley.peter.nextgear.model.ContractStatus;
+import finley.peter.nextgear.model.ContractField;
+import finley.peter.nextgear.model.ContractFilter;
+import finley.peter.nextgear.model.ContractStatistic;
+import finley.peter.nextgear.model.ContractSummary;
+import finley.peter.nextgear.model.ContractTombstone;
 import finley.peter.nextgear.model.ContractType;
 import finley.peter.nextgear.service.ContractService;
+import finley.peter.nextgear.service.ContractWriteBehindService;
+import finley.peter.nextgear.service.PendingContract;
+import finley.peter.nextgear.service.WriteQueueFullException;
 
 /**
- * RESTful services for working with {@link Contract}s.
+ * RESTful services for working with {@link Contract}s. Service calls run on the
+ * {@link DatabaseExecutor} so request threads are released while they wait on
+ * the database; a 503 is returned if the executor is overloaded.
  */
 @RestController
 @RequestMapping("/contracts")
 public class ContractController {
 	
+	/**
+	 * Media type for newline-delimited JSON.
+	 */
+	public static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+	
+	/**
+	 * Media type for Smile, Jackson's binary JSON.
+	 */
+	public static final String APPLICATION_SMILE_VALUE = "application/x-jackson-smile";
+	
+	public static final MediaType APPLICATION_SMILE = MediaType.valueOf(APPLICATION_SMILE_VALUE);
+	
+	/**
+	 * Header holding the time a syncing client passes back as its next
+	 * <code>modifiedSince</code> or <code>since</code>.
+	 */
+	public static final String SYNC_WATERMARK = "Sync-Watermark";
+	
+	private static final DateTimeFormatter SYNC_WATERMARK_FORMAT = 
+			DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSSZ").withZone(ZoneOffset.UTC);
+	
 	private ContractService contractService;
 	
-	public ContractController(ContractService contractService) {
+	private DatabaseExecutor databaseExecutor;
+	
+	private ContractWriteBehindService writeBehindService;
+	
+	private ObjectMapper objectMapper;
+	
+	private CounterService counterService;
+	
+	private int maxPageLimit;
+	
+	private long maxTransactionTime;
+	
+	public ContractController(ContractService contractService, DatabaseExecutor databaseExecutor, 
+			ContractWriteBehindService writeBehindService, ObjectMapper objectMapper, CounterService counterService,
+			@Value("${contracts.page.max-limit:1000}") int maxPageLimit,
+			@Value("${contracts.sync.max-transaction-time:60000}") long maxTransactionTime) {
 		this.contractService = contractService;
+		this.databaseExecutor = databaseExecutor;
+		this.writeBehindService = writeBehindService;
+		this.objectMapper = objectMapper;
+		this.counterService = counterService;
+		this.maxPageLimit = maxPageLimit;
+		this.maxTransactionTime = maxTransactionTime;
+	}
+
+	/**
+	 * Get a page of contracts ordered by id, optionally filtered by status,
+	 * type, business number, amount requested range, activation date range and
+	 * modification time. Syncing clients pass the <code>Sync-Watermark</code>
+	 * header of their last sync's first page as <code>modifiedSince</code>, not
+	 * a time of their own: a contract is stamped before its transaction
+	 * commits, so it may show up later than its time, and the watermark is set
+	 * back far enough to still include it. Deletes are synced the same way with
+	 * {@link #getDeletedContracts(Date, Integer, String)}. If more contracts
+	 * are available a <code>Link</code> header with <code>rel="next"</code> is
+	 * returned pointing at the next page. An ETag is returned for the page and a
+	 * 304 is returned, without a body, if it matches the
+	 * <code>If-None-Match</code> header.
+	 * <p>
+	 * The page is JSON unless the <code>Accept</code> header prefers Smile,
+	 * which is much cheaper to write and smaller for long pages. Clients that
+	 * only need some fields can list them in <code>fields</code>, and only
+	 * those are selected and sent. Each representation has its own ETag.
+	 * 
+	 * @param filter
+	 *            the filter, bound from the <code>status</code>,
+	 *            <code>type</code>, <code>businessNumber</code>,
+	 *            <code>minAmountRequested</code>,
+	 *            <code>maxAmountRequested</code>, <code>activatedFrom</code> and
+	 *            <code>activatedTo</code> (yyyy-MM-dd) and
+	 *            <code>modifiedSince</code> (yyyy-MM-dd'T'HH:mm:ss.SSSZ) request
+	 *            parameters
+	 * @param fields the comma separated fields to return, such as
+	 *            <code>id,status,amountRequested</code>; all of them if not
+	 *            given
+	 * @param limit the maximum number of contracts to return, capped at the
+	 *            configured maximum
+	 * @param next the opaque cursor returned with the previous page
+	 * @param accept the representations the client accepts
+	 * @return
+	 */
+	@GetMapping(produces={ MediaType.APPLICATION_JSON_VALUE, APPLICATION_SMILE_VALUE })
+	public CompletableFuture<HttpEntity<List<ContractSummary>>> getContracts(ContractFilter filter,
+			@RequestParam(name="fields", required=false) String fields,
+			@RequestParam(name="limit", required=false) Integer limit,
+			@RequestParam(name="next", required=false) String next,
+			@RequestHeader(name=HttpHeaders.ACCEPT, required=false) String accept) {
+		
+		Set<ContractField> contractFields = ContractField.parse(fields);
+		int pageLimit = limit == null ? maxPageLimit : Math.min(limit, maxPageLimit);
+		long afterId = next == null ? 0 : ContractCursor.decode(next);
+		MediaType representation = representation(accept);
+		
+		// the current request isn't available on the database thread
+		UriComponentsBuilder currentRequest = ServletUriComponentsBuilder.fromCurrentRequest();
+		String watermark = next == null ? syncWatermark() : null;
+		
+		return databaseExecutor.submit(() -> {
+			
+			Slice<ContractSummary> page = contractService.findPage(filter, contractFields, afterId, pageLimit);
+			List<ContractSummary> contracts = page.getContent();
+			
+			// a matching If-None-Match is answered with a 304 when the entity is handled
+			HttpHeaders headers = new HttpHeaders();
+			if(watermark != null) {
+				headers.set(SYNC_WATERMARK, watermark);
+			}
+			headers.setETag(ContractETags.of(contracts, page.hasNext(), contractFields, representation));
+			headers.setVary(Collections.singletonList(HttpHeaders.ACCEPT));
+			if(page.hasNext()) {
+				
+				String cursor = ContractCursor.encode(contracts.get(contracts.size() - 1).getId());
+				// the request's query is already encoded
+				String nextPage = currentRequest
+						.replaceQueryParam("next", cursor)
+						.build(true)
+						.toUriString();
+				
+				headers.add(HttpHeaders.LINK, "<" + nextPage + ">; rel=\"next\"");
+			}
+			
+			return new ResponseEntity<>(contracts, headers, HttpStatus.OK);
+		});
+	}
+
+	/**
+	 * Get the time a client syncing from now on should pass back on its next
+	 * sync, set back by the longest a transaction may take to commit.
+	 */
+	private String syncWatermark() {
+		return SYNC_WATERMARK_FORMAT.format(Instant.now().minusMillis(maxTransactionTime));
 	}
 
 	/**
-	 * Get all contracts, optionally filtered by the given {@link ContractStatus}.
+	 * Get the representation of a contract list the client will be sent,
+	 * choosing it the way the response's message converter will.
+	 */
+	private static MediaType representation(String accept) {
+		
+		if(accept != null) {
+			
+			List<MediaType> acceptable = MediaType.parseMediaTypes(accept);
+			MediaType.sortBySpecificityAndQuality(acceptable);
+			
+			for(MediaType mediaType : acceptable) {
+				if(mediaType.includes(MediaType.APPLICATION_JSON)) {
+					break;
+				}
+				if(mediaType.includes(APPLICATION_SMILE)) {
+					return APPLICATION_SMILE;
+				}
+			}
+		}
+		
+		return MediaType.APPLICATION_JSON;
+	}
+
+	/**
+	 * Get a page of the contracts deleted since a time, ordered by id. If more
+	 * are available a <code>Link</code> header with <code>rel="next"</code> is
+	 * returned pointing at the next page. Like
+	 * {@link #getContracts(ContractFilter, String, Integer, String, String)}
+	 * the first page has a <code>Sync-Watermark</code> header to pass back as
+	 * <code>since</code> on the next sync.
 	 * 
-	 * @param status the status to filter on
+	 * @param since the earliest deletion time to include
+	 *            (yyyy-MM-dd'T'HH:mm:ss.SSSZ)
+	 * @param limit the maximum number of contracts to return, capped at the
+	 *            configured maximum
+	 * @param next the opaque cursor returned with the previous page
 	 * @return
 	 */
-	@GetMapping(produces=MediaType.APPLICATION_JSON_VALUE)
-	public HttpEntity<Iterable<Contract>> getContracts(@RequestParam(name="status", required=false) ContractStatus status) {
+	@GetMapping(path="/deleted", produces=MediaType.APPLICATION_JSON_VALUE)
+	public CompletableFuture<HttpEntity<List<ContractTombstone>>> getDeletedContracts(
+			@RequestParam(name="since", required=false) @DateTimeFormat(iso=ISO.DATE_TIME) Date since,
+			@RequestParam(name="limit", required=false) Integer limit,
+			@RequestParam(name="next", required=false) String next) {
 		
-		Contract contract = new Contract();
-		contract.setStatus(status);
+		int pageLimit = limit == null ? maxPageLimit : Math.min(limit, maxPageLimit);
+		long afterId = next == null ? 0 : ContractCursor.decode(next);
 		
-		Example<Contract> example = Example.of(contract);
+		UriComponentsBuilder currentRequest = ServletUriComponentsBuilder.fromCurrentRequest();
+		String watermark = next == null ? syncWatermark() : null;
 		
-		Iterable<Contract> contracts = contractService.findAll(example);
+		return databaseExecutor.submit(() -> {
+			
+			Slice<ContractTombstone> page = contractService.findDeleted(since, afterId, pageLimit);
+			List<ContractTombstone> tombstones = page.getContent();
+			
+			HttpHeaders headers = new HttpHeaders();
+			if(watermark != null) {
+				headers.set(SYNC_WATERMARK, watermark);
+			}
+			if(page.hasNext()) {
+				
+				String cursor = ContractCursor.encode(tombstones.get(tombstones.size() - 1).getId());
+				// the request's query is already encoded
+				String nextPage = currentRequest
+						.replaceQueryParam("next", cursor)
+						.build(true)
+						.toUriString();
+				
+				headers.add(HttpHeaders.LINK, "<" + nextPage + ">; rel=\"next\"");
+			}
+			
+			return new ResponseEntity<>(tombstones, headers, HttpStatus.OK);
+		});
+	}
+
+	/**
+	 * Export all contracts as newline-delimited JSON, one contract per line,
+	 * ordered by id. Contracts are written to the response as they are read so
+	 * memory use is constant regardless of the number of contracts.
+	 * 
+	 * @return
+	 */
+	@GetMapping(path="/export", produces=APPLICATION_NDJSON_VALUE)
+	public ResponseEntity<StreamingResponseBody> exportContracts() {
+		
+		ObjectWriter writer = objectMapper.writerFor(Contract.class)
+				.without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+		
+		StreamingResponseBody body = outputStream -> {
+			
+			JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream);
+			
+			contractService.exportAll(contract -> {
+				try {
+					writer.writeValue(generator, contract);
+					generator.writeRaw('\n');
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+			
+			generator.flush();
+		};
+		
+		return ResponseEntity.ok()
+				.contentType(MediaType.valueOf(APPLICATION_NDJSON_VALUE))
+				.body(body);
+	}
+
+	/**
+	 * Get the number of contracts and total amount requested for every
+	 * combination of status and type. A null status counts contracts that have
+	 * not yet been approved or denied.
+	 * 
+	 * @return
+	 */
+	@GetMapping(path="/stats", produces=MediaType.APPLICATION_JSON_VALUE)
+	public CompletableFuture<HttpEntity<List<ContractStatistic>>> getStatistics() {
+		
+		return databaseExecutor.submit(() -> new ResponseEntity<>(contractService.getStatistics(), HttpStatus.OK));
+	}
+
+	/**
+	 * Recalculate the contract statistics from the contracts themselves.
+	 * 
+	 * @return the recalculated statistics
+	 */
+	@PostMapping(path="/stats/rebuild", produces=MediaType.APPLICATION_JSON_VALUE)
+	public CompletableFuture<HttpEntity<List<ContractStatistic>>> rebuildStatistics() {
 		
-		return new ResponseEntity<>(contracts, HttpStatus.OK);
+		return databaseExecutor.submit(() -> new ResponseEntity<>(contractService.rebuildStatistics(), HttpStatus.OK));
 	}
 
 	/**
-	 * Get a single contract by id.
+	 * Get a single contract by id. The contract's version is returned as its
+	 * ETag and a 304 is returned, without a body, if it matches the
+	 * <code>If-None-Match</code> header. Only the contract's <code>fields</code>
+	 * are sent if they are given; the contract is still read whole, as it is
+	 * usually cached.
 	 * 
 	 * @param id
+	 * @param fields the comma separated fields to return, as for
+	 *            {@link #getContracts(ContractFilter, String, Integer, String, String)}
 	 * @return
-	 * @throws NotFoundException
 	 */
 	@GetMapping(path="/{id}", produces=MediaType.APPLICATION_JSON_VALUE)
-	public HttpEntity<Contract> getContract(@PathVariable long id) throws NotFoundException {
-		
-		Contract contract = contractService.findOne(id);
+	public CompletableFuture<HttpEntity<?>> getContract(@PathVariable long id,
+			@RequestParam(name="fields", required=false) String fields) {
 		
-		if(contract == null) {
-			throw new NotFoundException("Contract does not exist.");
-		}
+		Set<ContractField> contractFields = ContractField.parse(fields);
 		
-		return new ResponseEntity<>(contract, HttpStatus.OK);
+		return databaseExecutor.submit(() -> {
+			
+			Contract contract = contractService.findOne(id);
+			
+			if(contract == null) {
+				throw new NotFoundException("Contract does not exist.");
+			}
+			
+			String eTag = ContractETags.of(contract, contractFields);
+			if(contractFields.containsAll(ContractField.ALL)) {
+				return ResponseEntity.ok().eTag(eTag).body(contract);
+			}
+			
+			return ResponseEntity.ok().eTag(eTag).body(ContractSummary.of(contract, contractFields));
+		});
 	}
 
 	/**
 	 * Create a new contract. The type can be either EXPRESS or SALES. Express
 	 * contracts must have a amount requested less than $50,000 and will be
 	 * automatically approved.
+	 * <p>
+	 * If write-behind is enabled the contract is validated and queued rather
+	 * than created, and a 202 is returned with the pending contract and a
+	 * <code>Location</code> header to track it by. A 429 is returned if the
+	 * queue is full.
 	 * 
 	 * @param newContract
 	 *            The contract parameters. Note that only the name, businessNumber,
 	 *            type, and amountRequested properties may be specified.
-	 * @return
+	 * @return the created contract, or the pending contract
 	 */
 	@PostMapping(consumes=MediaType.APPLICATION_JSON_VALUE, produces=MediaType.APPLICATION_JSON_VALUE)
-	public HttpEntity<Contract> createContract(@RequestBody Contract newContract) {
+	public CompletableFuture<HttpEntity<?>> createContract(@RequestBody Contract newContract) {
+		
+		if(writeBehindService.isEnabled()) {
+			
+			PendingContract pending = writeBehindService.submit(newContract);
+			
+			URI location = ServletUriComponentsBuilder.fromCurrentRequest()
+					.path("/pending/{trackingId}")
+					.buildAndExpand(pending.getTrackingId())
+					.toUri();
+			
+			return CompletableFuture.completedFuture(ResponseEntity.accepted().location(location).body(pending));
+		}
 		
 		String name = newContract.getName();
 		long businessNumber = newContract.getBusinessNumber();
 		ContractType type = newContract.getType();
 		int amountRequested = newContract.getAmountRequested();
 
-		Contract contract = contractService.create(name, businessNumber, type, amountRequested);
+		return databaseExecutor.submit(() -> {
+			
+			Contract contract = contractService.create(name, businessNumber, type, amountRequested);
+			
+			return new ResponseEntity<>(contract, HttpStatus.CREATED);
+		});
+	}
+
+	/**
+	 * Get the number of contracts waiting to be written by write-behind.
+	 * 
+	 * @return
+	 */
+	@GetMapping(path="/pending", produces=MediaType.APPLICATION_JSON_VALUE)
+	public HttpEntity<WriteQueueStatus> getWriteQueueStatus() {
+		
+		WriteQueueStatus status = new WriteQueueStatus(writeBehindService.isEnabled(), 
+				writeBehindService.getQueued(), writeBehindService.getCapacity());
+		
+		return new ResponseEntity<>(status, HttpStatus.OK);
+	}
+
+	/**
+	 * Get a contract accepted for write-behind, to find out whether it has been
+	 * created yet. Contracts are tracked for a limited time once written.
+	 * 
+	 * @param trackingId the id returned when the contract was accepted
+	 * @return
+	 * @throws NotFoundException
+	 */
+	@GetMapping(path="/pending/{trackingId}", produces=MediaType.APPLICATION_JSON_VALUE)
+	public HttpEntity<PendingContract> getPendingContract(@PathVariable String trackingId) throws NotFoundException {
+		
+		PendingContract pending = writeBehindService.getPending(trackingId);
+		
+		if(pending == null) {
+			throw new NotFoundException("Pending contract does not exist.");
+		}
+		
+		return new ResponseEntity<>(pending, HttpStatus.OK);
+	}
+
+	/**
+	 * Create several contracts in one request and one transaction. Each contract
+	 * is validated as in {@link #createContract(Contract)}; a contract that fails
+	 * validation is reported in its result without affecting the others.
+	 * 
+	 * @param newContracts
+	 *            The contract parameters. Note that only the name, businessNumber,
+	 *            type, and amountRequested properties may be specified.
+	 * @return one result per contract, in request order
+	 */
+	@PostMapping(path="/batch", consumes=MediaType.APPLICATION_JSON_VALUE, produces=MediaType.APPLICATION_JSON_VALUE)
+	public CompletableFuture<HttpEntity<List<BatchItemResult>>> createContracts(@RequestBody List<Contract> newContracts) {
 		
-		return new ResponseEntity<>(contract, HttpStatus.CREATED);
+		return databaseExecutor.submit(() -> {
+			
+			List<BatchItemResult> results = contractService.createAll(newContracts).stream()
+					.map(BatchItemResult::new)
+					.collect(Collectors.toList());
+			
+			results.stream()
+					.filter(result -> result.getError() != null)
+					.forEach(result -> counterService.increment("counter.contracts.errors.validation"));
+			
+			return new ResponseEntity<>(results, HttpStatus.OK);
+		});
 	}
 
 	/**
-	 * Update an existing contract.
+	 * Update an existing contract. If an <code>If-Match</code> header is given
+	 * the update only succeeds if it matches the contract's current ETag,
+	 * otherwise a 412 is returned.
 	 * 
 	 * @param id
 	 *            the ID of the contract to update
@@ -105,40 +489,129 @@ public class ContractController {
 	 *            The updated contract properties. Note that only the contract name
 	 *            and businessNumber may be changed. The amountRequested may be
 	 *            changed if the contract has no status.
+	 * @param ifMatch
+	 *            the ETag the contract must currently have
+	 * @return the contract's new ETag, if an <code>If-Match</code> header was
+	 *         given
 	 */
 	@PutMapping(path="/{id}", consumes=MediaType.APPLICATION_JSON_VALUE)
-	@ResponseStatus(value = HttpStatus.NO_CONTENT)
-	public void updateContract(@PathVariable(name="id") long id, @RequestBody Contract contract) {
+	public CompletableFuture<HttpEntity<Void>> updateContract(@PathVariable(name="id") long id, @RequestBody Contract contract,
+			@RequestHeader(name=HttpHeaders.IF_MATCH, required=false) String ifMatch) {
 		
 		contract.setId(id);
+		contract.setVersion(ContractETags.parseVersion(ifMatch));
 
-		contractService.update(contract);
+		return databaseExecutor.submit(() -> {
+			
+			contractService.update(contract);
+			
+			// the new version is only known when the old one was given
+			if(contract.getVersion() == null) {
+				return ResponseEntity.noContent().build();
+			}
+			
+			contract.setVersion(contract.getVersion() + 1);
+			return ResponseEntity.noContent().eTag(ContractETags.of(contract)).build();
+		});
 	}
 
 	/**
-	 * Delete a contract.
+	 * Delete a contract. If an <code>If-Match</code> header is given the
+	 * contract is only deleted if it matches the contract's current ETag,
+	 * otherwise a 412 is returned. A 404 is returned if the contract doesn't
+	 * exist.
 	 * 
 	 * @param id the ID of the contract to delete
+	 * @param ifMatch the ETag the contract must currently have
 	 */
 	@DeleteMapping(path="/{id}")
-	@ResponseStatus(value = HttpStatus.NO_CONTENT)
-	public void deleteContract(@PathVariable long id) {
+	public CompletableFuture<HttpEntity<Void>> deleteContract(@PathVariable long id, 
+			@RequestHeader(name=HttpHeaders.IF_MATCH, required=false) String ifMatch) {
 
-		contractService.delete(id);
+		Long version = ContractETags.parseVersion(ifMatch);
+		
+		return databaseExecutor.submit(() -> {
+			
+			contractService.delete(id, version);
+			
+			return ResponseEntity.noContent().build();
+		});
 	}
 	
-	@ExceptionHandler(NotFoundException.class)
+	/**
+	 * Delete contracts in bulk, either by id or by filter. Contracts are deleted
+	 * in chunks, each in its own transaction, so a failure part way through
+	 * leaves earlier chunks deleted.
+	 * 
+	 * @param ids the ids of the contracts to delete, given as repeated
+	 *            <code>id</code> request parameters
+	 * @param filter
+	 *            the filter, bound from the same request parameters as
+	 *            {@link #getContracts(ContractFilter, String, Integer, String, String)}; used
+	 *            when no ids are given and must not be empty
+	 * @return the number of contracts deleted
+	 */
+	@DeleteMapping(produces=MediaType.APPLICATION_JSON_VALUE)
+	public CompletableFuture<HttpEntity<DeleteResult>> deleteContracts(
+			@RequestParam(name="id", required=false) List<Long> ids, ContractFilter filter) {
+		
+		if(ids != null && !filter.isEmpty()) {
+			throw new IllegalArgumentException("Contracts may be deleted by id or by filter, not both");
+		}
+		
+		return databaseExecutor.submit(() -> {
+			
+			long deleted = ids != null ? contractService.deleteAll(ids) : contractService.deleteAll(filter);
+			
+			return new ResponseEntity<>(new DeleteResult(deleted), HttpStatus.OK);
+		});
+	}
+	
+	@ExceptionHandler({NotFoundException.class, EmptyResultDataAccessException.class})
 	@ResponseStatus(value=HttpStatus.NOT_FOUND)
 	public HttpEntity<ErrorInformation> notFound( Exception exception ) {
 		
+		counterService.increment("counter.contracts.errors.not-found");
+		
 		ErrorInformation errorInformation = new ErrorInformation(exception, HttpStatus.NOT_FOUND);
 		return new HttpEntity<ErrorInformation>(errorInformation);
 	}
 	
+	@ExceptionHandler(OptimisticLockingFailureException.class)
+	@ResponseStatus(value=HttpStatus.PRECONDITION_FAILED)
+	public HttpEntity<ErrorInformation> preconditionFailed( Exception exception ) {
+		
+		ErrorInformation errorInformation = new ErrorInformation(exception, HttpStatus.PRECONDITION_FAILED);
+		return new HttpEntity<ErrorInformation>(errorInformation);
+	}
+	
+	@ExceptionHandler(WriteQueueFullException.class)
+	public HttpEntity<ErrorInformation> tooManyRequests( Exception exception ) {
+		
+		counterService.increment("counter.contracts.errors.overloaded");
+		
+		ErrorInformation errorInformation = new ErrorInformation(exception, HttpStatus.TOO_MANY_REQUESTS);
+		return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+				.header(HttpHeaders.RETRY_AFTER, "1")
+				.body(errorInformation);
+	}
+	
+	@ExceptionHandler(RejectedExecutionException.class)
+	@ResponseStatus(value=HttpStatus.SERVICE_UNAVAILABLE)
+	public HttpEntity<ErrorInformation> serviceUnavailable( Exception exception ) {
+		
+		counterService.increment("counter.contracts.errors.overloaded");
+		
+		ErrorInformation errorInformation = new ErrorInformation(exception, HttpStatus.SERVICE_UNAVAILABLE);
+		return new HttpEntity<ErrorInformation>(errorInformation);
+	}
+	
 	@ExceptionHandler(IllegalArgumentException.class)
 	@ResponseStatus(value=HttpStatus.BAD_REQUEST)
 	public HttpEntity<ErrorInformation> badRequest( Exception exception ) {
 		
+		counterService.increment("counter.contracts.errors.validation");
+		
 		ErrorInformation errorInformation = new ErrorInformation(exception, HttpStatus.BAD_REQUEST);
 		return new HttpEntity<ErrorInformation>(errorInformation);
 	}
@@ -0,0 +1,37 @@
+package finley.peter.nextgear.web.controller;
+
+import java.nio.ByteBuffer;
+import java.util.Base64;
+
+/**
+ * Encodes and decodes the opaque cursors handed out by the paged contract
+ * list. A cursor wraps the id of the last contract on a page; clients should
+ * treat it as an arbitrary string.
+ */
+final class ContractCursor {
+
+	private ContractCursor() {
+	}
+
+	static String encode(long id) {
+		
+		byte[] bytes = ByteBuffer.allocate(Long.BYTES).putLong(id).array();
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+	}
+
+	static long decode(String cursor) {
+		
+		byte[] bytes;
+		try {
+			bytes = Base64.getUrlDecoder().decode(cursor);
+		} catch(IllegalArgumentException e) {
+			throw new IllegalArgumentException("Invalid cursor: " + cursor, e);
+		}
+		
+		if(bytes.length != Long.BYTES) {
+			throw new IllegalArgumentException("Invalid cursor: " + cursor);
+		}
+		
+		return ByteBuffer.wrap(bytes).getLong();
+	}
+}
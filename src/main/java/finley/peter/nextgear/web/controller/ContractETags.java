@@ -0,0 +1,90 @@
+package finley.peter.nextgear.web.controller;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+
+import org.springframework.http.MediaType;
+import org.springframework.util.DigestUtils;
+
+import finley.peter.nextgear.model.Contract;
+import finley.peter.nextgear.model.ContractField;
+import finley.peter.nextgear.model.ContractSummary;
+
+/**
+ * Builds and parses the strong ETags used for conditional contract requests.
+ * A single contract's ETag is its version, followed by the fields sent if they
+ * aren't all of them. A list's ETag is a digest of the id and version of every
+ * contract in it, so it changes whenever any contract in the list changes
+ * without the list having to be serialized first, and of the fields and media
+ * type it is sent with, as representations of a list differ.
+ */
+final class ContractETags {
+
+	private ContractETags() {
+	}
+
+	static String of(Contract contract) {
+		return of(contract, ContractField.ALL);
+	}
+
+	static String of(Contract contract, Set<ContractField> fields) {
+		
+		if(fields.containsAll(ContractField.ALL)) {
+			return "\"" + contract.getVersion() + "\"";
+		}
+		
+		return "\"" + contract.getVersion() + "-" + Integer.toHexString(ContractField.mask(fields)) + "\"";
+	}
+
+	static String of(List<ContractSummary> contracts, boolean hasNext, Set<ContractField> fields, 
+			MediaType representation) {
+		
+		byte[] type = representation.toString().getBytes(StandardCharsets.US_ASCII);
+		
+		ByteBuffer buffer = ByteBuffer.allocate(contracts.size() * 2 * Long.BYTES + 1 + Integer.BYTES + type.length);
+		for(ContractSummary contract : contracts) {
+			buffer.putLong(contract.getId());
+			buffer.putLong(contract.getVersion());
+		}
+		buffer.put((byte) (hasNext ? 1 : 0));
+		buffer.putInt(ContractField.mask(fields));
+		buffer.put(type);
+		
+		return "\"" + DigestUtils.md5DigestAsHex(buffer.array()) + "\"";
+	}
+
+	/**
+	 * Get the version required by an <code>If-Match</code> header, which may
+	 * be the ETag of any of the contract's representations.
+	 * 
+	 * @param ifMatch the header value
+	 * @return the required version, or null if any version will do
+	 */
+	static Long parseVersion(String ifMatch) {
+		
+		if(ifMatch == null || ifMatch.trim().equals("*")) {
+			return null;
+		}
+		
+		String version = ifMatch.trim();
+		if(version.length() < 2 || !version.startsWith("\"") || !version.endsWith("\"")) {
+			// weak or malformed tags never match
+			return -1L;
+		}
+		
+		version = version.substring(1, version.length() - 1);
+		
+		int fields = version.indexOf('-');
+		if(fields > 0) {
+			version = version.substring(0, fields);
+		}
+		
+		try {
+			return Long.parseLong(version);
+		} catch(NumberFormatException e) {
+			return -1L;
+		}
+	}
+}
@@ -0,0 +1,25 @@
+package finley.peter.nextgear.web.controller;
+
+/**
+ * Object used to return the number of contracts removed by a bulk delete back
+ * to the client.
+ */
+public class DeleteResult {
+
+	private long deleted;
+	
+	public DeleteResult() {
+	}
+	
+	public DeleteResult(long deleted) {
+		this.deleted = deleted;
+	}
+
+	public long getDeleted() {
+		return deleted;
+	}
+
+	public void setDeleted(long deleted) {
+		this.deleted = deleted;
+	}
+}
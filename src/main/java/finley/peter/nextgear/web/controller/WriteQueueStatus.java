@@ -0,0 +1,45 @@
+package finley.peter.nextgear.web.controller;
+
+/**
+ * Object used to return the state of the write-behind queue back to the
+ * client.
+ */
+public class WriteQueueStatus {
+
+	private boolean enabled;
+	private int queued;
+	private int capacity;
+	
+	public WriteQueueStatus() {
+	}
+	
+	public WriteQueueStatus(boolean enabled, int queued, int capacity) {
+		this.enabled = enabled;
+		this.queued = queued;
+		this.capacity = capacity;
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	public int getQueued() {
+		return queued;
+	}
+
+	public void setQueued(int queued) {
+		this.queued = queued;
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public void setCapacity(int capacity) {
+		this.capacity = capacity;
+	}
+}
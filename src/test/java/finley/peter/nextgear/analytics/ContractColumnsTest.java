@@ -0,0 +1,219 @@
+package finley.peter.nextgear.analytics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import finley.peter.nextgear.model.Contract;
+import finley.peter.nextgear.model.ContractStatus;
+import finley.peter.nextgear.model.ContractType;
+import finley.peter.nextgear.service.ContractEvent;
+
+/**
+ * Unit tests for {@link ContractColumns}.
+ */
+public class ContractColumnsTest {
+	
+	private static final double[] NO_PERCENTILES = {};
+
+	private ContractColumns columns;
+	
+	@Before
+	public void before() {
+		columns = new ContractColumns(2);
+	}
+	
+	@After
+	public void after() {
+		columns.shutdown();
+	}
+	
+	/**
+	 * Aggregates over all contracts, grouped by each dimension.
+	 */
+	@Test
+	public void testAggregate() {
+		
+		Date january = date(2017, Calendar.JANUARY);
+		Date february = date(2017, Calendar.FEBRUARY);
+		
+		columns.load(Stream.of(
+				row(1, 100, ContractStatus.APPROVED, ContractType.EXPRESS, january),
+				row(2, 300, ContractStatus.APPROVED, ContractType.EXPRESS, february),
+				row(3, 1000, null, ContractType.SALES, null),
+				row(4, 2000, ContractStatus.DENIED, ContractType.SALES, february)));
+		
+		List<ContractAggregate> all = columns.aggregate(EnumSet.noneOf(ContractDimension.class), new double[] {50, 100});
+		
+		assertThat(all).hasSize(1);
+		assertThat(all.get(0).getType()).isNull();
+		assertThat(all.get(0).getCount()).isEqualTo(4);
+		assertThat(all.get(0).getSum()).isEqualTo(3400);
+		assertThat(all.get(0).getAverage()).isEqualTo(850);
+		assertThat(all.get(0).getMin()).isEqualTo(100);
+		assertThat(all.get(0).getMax()).isEqualTo(2000);
+		assertThat(all.get(0).getPercentiles()).containsEntry("p50", 300).containsEntry("p100", 2000);
+		
+		List<ContractAggregate> byTypeAndStatus = columns.aggregate(
+				EnumSet.of(ContractDimension.TYPE, ContractDimension.STATUS), NO_PERCENTILES);
+		
+		assertThat(byTypeAndStatus).extracting("type", "status", "count", "sum").containsExactly(
+				tuple(ContractType.SALES, "NONE", 1L, 1000L),
+				tuple(ContractType.SALES, "DENIED", 1L, 2000L),
+				tuple(ContractType.EXPRESS, "APPROVED", 2L, 400L));
+		assertThat(byTypeAndStatus.get(0).getPercentiles()).isNull();
+		
+		List<ContractAggregate> byMonth = columns.aggregate(EnumSet.of(ContractDimension.MONTH), NO_PERCENTILES);
+		
+		assertThat(byMonth).extracting("month", "count").containsExactly(
+				tuple("NONE", 1L),
+				tuple("2017-01", 1L),
+				tuple("2017-02", 2L));
+	}
+	
+	/**
+	 * Rows loaded out of id order, as they are from several shards, give the
+	 * same results and still take changes.
+	 */
+	@Test
+	public void testLoadUnordered() {
+		
+		columns.load(Stream.of(
+				row(3, 300, null, ContractType.SALES, null),
+				row(6, 600, null, ContractType.SALES, null),
+				row(1, 100, null, ContractType.SALES, null),
+				row(4, 400, ContractStatus.DENIED, ContractType.SALES, null)));
+		
+		columns.onContractEvent(ContractEvent.deleted(1));
+		columns.onContractEvent(ContractEvent.updated(contract(6, 700, null)));
+		
+		List<ContractAggregate> all = columns.aggregate(EnumSet.noneOf(ContractDimension.class), NO_PERCENTILES);
+		
+		assertThat(columns.size()).isEqualTo(3);
+		assertThat(all.get(0).getSum()).isEqualTo(1400);
+	}
+	
+	/**
+	 * Committed changes are applied, with updates only changing the amount of
+	 * contracts with no status.
+	 */
+	@Test
+	public void testEvents() {
+		
+		columns.load(Stream.of(
+				row(1, 100, ContractStatus.APPROVED, ContractType.EXPRESS, null),
+				row(3, 1000, null, ContractType.SALES, null)));
+		
+		// created out of id order
+		columns.onContractEvent(ContractEvent.created(contract(2, 200, null)));
+		columns.onContractEvent(ContractEvent.updated(contract(1, 5000, null)));
+		columns.onContractEvent(ContractEvent.updated(contract(3, 1500, null)));
+		columns.onContractEvent(ContractEvent.deleted(2));
+		columns.onContractEvent(ContractEvent.deleted(99));
+		
+		List<ContractAggregate> all = columns.aggregate(EnumSet.noneOf(ContractDimension.class), NO_PERCENTILES);
+		
+		assertThat(columns.size()).isEqualTo(2);
+		assertThat(all.get(0).getCount()).isEqualTo(2);
+		assertThat(all.get(0).getSum()).isEqualTo(1600);
+	}
+	
+	/**
+	 * Decided contracts move to their new status and activation month.
+	 */
+	@Test
+	public void testDecided() {
+		
+		Date january = date(2017, Calendar.JANUARY);
+		
+		columns.load(Stream.of(
+				row(1, 1000, null, ContractType.SALES, null),
+				row(2, 2000, null, ContractType.SALES, null)));
+		
+		Contract approved = contract(1, 1000, ContractStatus.APPROVED);
+		approved.setActivationDate(january);
+		
+		columns.onContractEvent(ContractEvent.decided(approved));
+		columns.onContractEvent(ContractEvent.decided(contract(2, 2000, ContractStatus.DENIED)));
+		
+		// the amount of a decided contract can't change
+		columns.onContractEvent(ContractEvent.updated(contract(1, 5000, null)));
+		
+		List<ContractAggregate> byStatusAndMonth = columns.aggregate(
+				EnumSet.of(ContractDimension.STATUS, ContractDimension.MONTH), NO_PERCENTILES);
+		
+		assertThat(byStatusAndMonth).extracting("status", "month", "sum").containsExactly(
+				tuple("APPROVED", "2017-01", 1000L),
+				tuple("DENIED", "NONE", 2000L));
+	}
+	
+	/**
+	 * Tables larger than the scan threshold are split across tasks, and
+	 * deleted rows are compacted away, without changing the results.
+	 */
+	@Test
+	public void testParallelScan() {
+		
+		int rows = ContractColumns.SCAN_THRESHOLD * 4;
+		
+		columns.load(Stream.iterate(1, id -> id + 1)
+				.limit(rows)
+				.map(id -> row(id, id, null, id % 2 == 0 ? ContractType.SALES : ContractType.EXPRESS, null)));
+		
+		// remove the first half, forcing a compaction
+		for(long id = 1; id <= rows / 2 + 1; id++) {
+			columns.onContractEvent(ContractEvent.deleted(id));
+		}
+		
+		List<ContractAggregate> byType = columns.aggregate(EnumSet.of(ContractDimension.TYPE), new double[] {50});
+		
+		long expectedCount = rows / 2 - 1;
+		long expectedSum = ((long) rows * (rows + 1) / 2) - ((long) (rows / 2 + 1) * (rows / 2 + 2) / 2);
+		
+		assertThat(columns.size()).isEqualTo((int) expectedCount);
+		assertThat(byType).hasSize(2);
+		assertThat(byType.get(0).getCount() + byType.get(1).getCount()).isEqualTo(expectedCount);
+		assertThat(byType.get(0).getSum() + byType.get(1).getSum()).isEqualTo(expectedSum);
+		assertThat(Math.min(byType.get(0).getMin(), byType.get(1).getMin())).isEqualTo(rows / 2 + 2);
+		assertThat(Math.max(byType.get(0).getMax(), byType.get(1).getMax())).isEqualTo(rows);
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void testInvalidPercentile() {
+		
+		columns.aggregate(EnumSet.noneOf(ContractDimension.class), new double[] {0});
+	}
+	
+	private static Object[] row(long id, int amount, ContractStatus status, ContractType type, Date activationDate) {
+		return new Object[] {id, amount, status, type, activationDate};
+	}
+	
+	private static Contract contract(long id, int amount, ContractStatus status) {
+		
+		Contract contract = new Contract();
+		contract.setId(id);
+		contract.setAmountRequested(amount);
+		contract.setStatus(status);
+		contract.setType(ContractType.SALES);
+		
+		return contract;
+	}
+	
+	private static Date date(int year, int month) {
+		
+		Calendar calendar = Calendar.getInstance();
+		calendar.clear();
+		calendar.set(year, month, 15);
+		
+		return calendar.getTime();
+	}
+}
@@ -0,0 +1,263 @@
+package finley.peter.nextgear.changelog;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.entry;
+import static org.assertj.core.api.Assertions.tuple;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import finley.peter.nextgear.model.Contract;
+import finley.peter.nextgear.model.ContractStatus;
+import finley.peter.nextgear.model.ContractType;
+import finley.peter.nextgear.service.ContractEvent;
+
+/**
+ * Unit tests for {@link ChangeLog} and replaying it with
+ * {@link ChangeLogRestorer.Replay}.
+ */
+public class ChangeLogTest {
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	private Path directory;
+	
+	private ChangeLog changeLog;
+	
+	@Before
+	public void before() throws IOException {
+		directory = folder.getRoot().toPath().resolve("log");
+		changeLog = new ChangeLog(directory, 1024);
+	}
+
+	@After
+	public void after() {
+		changeLog.close();
+	}
+
+	/**
+	 * Test that every kind of change is read back as it was appended.
+	 */
+	@Test
+	public void testReplay() throws IOException {
+		
+		Date activationDate = new Date(1500000000000L);
+		
+		changeLog.append(ContractEvent.created(contract(1, "first", null, null)));
+		Contract second = contract(2, "sëcond", ContractStatus.APPROVED, activationDate);
+		second.setLastModified(activationDate);
+		changeLog.append(ContractEvent.created(second));
+		changeLog.append(ContractEvent.updated(contract(1, "renamed", null, null)));
+		changeLog.append(ContractEvent.decided(contract(1, "renamed", ContractStatus.DENIED, null)));
+		changeLog.append(ContractEvent.deleted(2));
+		
+		List<ContractEvent> events = replay(changeLog);
+		
+		assertThat(events).extracting("type").containsExactly(ContractEvent.Type.CREATED, ContractEvent.Type.CREATED,
+				ContractEvent.Type.UPDATED, ContractEvent.Type.DECIDED, ContractEvent.Type.DELETED);
+		assertThat(events).extracting("contract").extracting("id", "name", "status", "activationDate", "version")
+				.containsExactly(
+						tuple(1L, "first", null, null, 0L),
+						tuple(2L, "sëcond", ContractStatus.APPROVED, activationDate, 0L),
+						tuple(1L, "renamed", null, null, 0L),
+						tuple(1L, "renamed", ContractStatus.DENIED, null, 0L),
+						tuple(2L, null, null, null, null));
+		assertThat(events.get(1).getContract()).extracting("businessNumber", "amountRequested", "type", "lastModified")
+				.containsExactly(2L, 2000, ContractType.SALES, activationDate);
+		assertThat(events.get(0).getContract().getLastModified()).isNull();
+	}
+
+	/**
+	 * Test that segments are rolled when full, and that a reopened log
+	 * carries on where it left off.
+	 */
+	@Test
+	public void testSegments() throws IOException {
+		
+		for(long id = 1; id <= 50; id++) {
+			changeLog.append(ContractEvent.created(contract(id, "contract " + id, null, null)));
+		}
+		
+		assertThat(changeLog.getSegmentCount()).isGreaterThan(1);
+		
+		changeLog.close();
+		changeLog = new ChangeLog(directory, 1024);
+		
+		changeLog.append(ContractEvent.deleted(1));
+		
+		List<ContractEvent> events = replay(changeLog);
+		
+		assertThat(events).hasSize(51);
+		assertThat(events.subList(0, 50)).extracting("contract").extracting("id")
+				.isSortedAccordingTo((id1, id2) -> ((Long) id1).compareTo((Long) id2));
+		assertThat(events.get(50).getType()).isEqualTo(ContractEvent.Type.DELETED);
+	}
+
+	/**
+	 * Test that a partly written record at the end of the log is dropped when
+	 * it is opened, and that a damaged record before it fails the replay.
+	 */
+	@Test
+	public void testCorruption() throws IOException {
+		
+		changeLog.append(ContractEvent.created(contract(1, "first", null, null)));
+		changeLog.append(ContractEvent.created(contract(2, "second", null, null)));
+		changeLog.close();
+		
+		Path segment = directory.resolve("0000000000.log");
+		
+		// a length for a record that was never finished
+		int end = recordSize("first") + recordSize("second");
+		try(RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+			file.seek(end);
+			file.writeInt(100);
+			file.writeInt(12345);
+		}
+		
+		changeLog = new ChangeLog(directory, 1024);
+		changeLog.append(ContractEvent.created(contract(3, "third", null, null)));
+		
+		assertThat(replay(changeLog)).extracting("contract").extracting("id").containsExactly(1L, 2L, 3L);
+		
+		// damage the second record's name
+		try(RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+			file.seek(recordSize("first") + 8 + 3 + 8 + 4);
+			file.write('X');
+		}
+		
+		assertThatThrownBy(() -> replay(changeLog)).isInstanceOf(IllegalStateException.class)
+				.hasMessageContaining("is corrupt");
+	}
+
+	/**
+	 * Test that replaying the changes rebuilds the contracts as the service
+	 * left them, whatever order changes to the same contract were logged in.
+	 */
+	@Test
+	public void testApply() throws IOException {
+		
+		changeLog.append(ContractEvent.created(contract(1, "first", null, null)));
+		changeLog.append(ContractEvent.created(contract(2, "second", null, null)));
+		changeLog.append(ContractEvent.created(contract(3, "third", null, null)));
+		changeLog.append(ContractEvent.created(contract(4, "fourth", null, null)));
+		
+		Date lastModified = new Date(1500000000000L);
+		Contract update = contract(1, "renamed", null, null);
+		update.setAmountRequested(5000);
+		update.setVersion(1L);
+		update.setLastModified(lastModified);
+		changeLog.append(ContractEvent.updated(update));
+		
+		// decided after it was renamed, but logged first
+		Date activationDate = new Date();
+		Contract decided = contract(2, "second renamed", ContractStatus.APPROVED, activationDate);
+		decided.setVersion(2L);
+		decided.setLastModified(activationDate);
+		changeLog.append(ContractEvent.decided(decided));
+		
+		update = contract(2, "second renamed", null, null);
+		update.setVersion(1L);
+		update.setLastModified(lastModified);
+		changeLog.append(ContractEvent.updated(update));
+		
+		// logged without the version, the amount can't change once decided
+		changeLog.append(ContractEvent.decided(versionless(contract(4, "fourth", ContractStatus.APPROVED, activationDate))));
+		update = versionless(contract(4, "fourth renamed", null, null));
+		update.setAmountRequested(5000);
+		changeLog.append(ContractEvent.updated(update));
+		
+		changeLog.append(ContractEvent.deleted(3));
+		changeLog.append(ContractEvent.deleted(5));
+		
+		ChangeLogRestorer.Replay replay = new ChangeLogRestorer.Replay();
+		changeLog.replay(replay::apply);
+		
+		assertThat(replay.getContracts()).extracting("id", "name", "amountRequested", "status", "activationDate", "version",
+				"lastModified")
+				.containsExactly(
+						tuple(1L, "renamed", 5000, null, null, 1L, lastModified),
+						tuple(2L, "second renamed", 2000, ContractStatus.APPROVED, activationDate, 2L, activationDate),
+						tuple(4L, "fourth renamed", 2000, ContractStatus.APPROVED, activationDate, 2L, null));
+	}
+
+	/**
+	 * Test that changes logged before their contract's create are applied
+	 * once it is created, and that a contract deleted before it is logged as
+	 * created isn't restored.
+	 */
+	@Test
+	public void testApplyBeforeCreated() throws IOException {
+		
+		Date activationDate = new Date();
+		Contract decided = contract(1, "first", ContractStatus.DENIED, activationDate);
+		decided.setVersion(1L);
+		changeLog.append(ContractEvent.decided(decided));
+		changeLog.append(ContractEvent.created(contract(1, "first", null, null)));
+		
+		Date deleted = new Date(1500000000000L);
+		changeLog.append(ContractEvent.deleted(2, deleted));
+		changeLog.append(ContractEvent.created(contract(2, "second", null, null)));
+		
+		changeLog.append(ContractEvent.created(contract(3, "third", null, null)));
+		
+		ChangeLogRestorer.Replay replay = new ChangeLogRestorer.Replay();
+		changeLog.replay(replay::apply);
+		
+		assertThat(replay.getContracts()).extracting("id", "status", "activationDate", "version")
+				.containsExactly(
+						tuple(1L, ContractStatus.DENIED, activationDate, 1L),
+						tuple(3L, null, null, 0L));
+		assertThat(replay.getTombstones()).containsOnly(entry(2L, deleted));
+	}
+
+	private static List<ContractEvent> replay(ChangeLog changeLog) throws IOException {
+		
+		List<ContractEvent> events = new ArrayList<>();
+		changeLog.replay(events::add);
+		
+		return events;
+	}
+
+	/**
+	 * @return the size of a record of a contract made by {@link #contract}
+	 *         with no status or activation date
+	 */
+	private static int recordSize(String name) {
+		// header, type, mask, id, name, business number, amount, type, version
+		return 8 + 3 + 8 + 4 + name.length() + 8 + 4 + 1 + 8;
+	}
+
+	private static Contract versionless(Contract contract) {
+		
+		contract.setVersion(null);
+		
+		return contract;
+	}
+
+	private static Contract contract(long id, String name, ContractStatus status, Date activationDate) {
+		
+		Contract contract = new Contract();
+		contract.setId(id);
+		contract.setName(name);
+		contract.setBusinessNumber(id);
+		contract.setType(ContractType.SALES);
+		contract.setAmountRequested(2000);
+		contract.setStatus(status);
+		contract.setActivationDate(activationDate);
+		contract.setVersion(0L);
+		
+		return contract;
+	}
+}
@@ -0,0 +1,116 @@
+package finley.peter.nextgear.concurrent;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * Unit tests for {@link DatabaseExecutor}.
+ */
+public class DatabaseExecutorTest {
+
+	private MetricRegistry metricRegistry = new MetricRegistry();
+	
+	private DatabaseExecutor executor;
+	
+	private CountDownLatch release = new CountDownLatch(1);
+	
+	@After
+	public void after() throws InterruptedException {
+		release.countDown();
+		if(executor != null) {
+			executor.shutdown();
+		}
+	}
+	
+	/**
+	 * Test that a task's result and exceptions are passed to the future.
+	 */
+	@Test
+	public void testSubmit() throws Exception {
+		
+		executor = new DatabaseExecutor("test", 1, 1, 1000, metricRegistry);
+		
+		assertThat(executor.submit(() -> "result").get(1, TimeUnit.SECONDS)).isEqualTo("result");
+		
+		CompletableFuture<Object> failed = executor.submit(() -> {
+			throw new IllegalArgumentException("invalid");
+		});
+		
+		assertThat(cause(failed)).isInstanceOf(IllegalArgumentException.class).hasMessage("invalid");
+	}
+	
+	/**
+	 * Test that tasks run on the calling thread when no pool is used.
+	 */
+	@Test
+	public void testInline() throws Exception {
+		
+		DatabaseExecutor inline = new DatabaseExecutor();
+		
+		CompletableFuture<Thread> future = inline.submit(Thread::currentThread);
+		
+		assertThat(future.isDone()).isTrue();
+		assertThat(future.get()).isSameAs(Thread.currentThread());
+	}
+	
+	/**
+	 * Test that a task is rejected immediately once the queue is full.
+	 */
+	@Test
+	public void testQueueFull() throws Exception {
+		
+		executor = new DatabaseExecutor("test", 1, 1, 1000, metricRegistry);
+		
+		CountDownLatch started = new CountDownLatch(1);
+		executor.submit(() -> {
+			started.countDown();
+			return release.await(5, TimeUnit.SECONDS);
+		});
+		started.await(1, TimeUnit.SECONDS);
+		
+		CompletableFuture<String> queued = executor.submit(() -> "queued");
+		CompletableFuture<String> rejected = executor.submit(() -> "rejected");
+		
+		assertThat(rejected.isCompletedExceptionally()).isTrue();
+		assertThat(cause(rejected)).isInstanceOf(RejectedExecutionException.class);
+		assertThat(metricRegistry.counter("executor.test.rejected").getCount()).isEqualTo(1);
+		assertThat(metricRegistry.getGauges().get("executor.test.queued").getValue()).isEqualTo(1);
+		
+		release.countDown();
+		assertThat(queued.get(1, TimeUnit.SECONDS)).isEqualTo("queued");
+	}
+	
+	/**
+	 * Test that a task that waited longer than the queue timeout is not run.
+	 */
+	@Test
+	public void testQueueTimeout() throws Exception {
+		
+		executor = new DatabaseExecutor("test", 1, 1, 10, metricRegistry);
+		
+		executor.submit(() -> release.await(50, TimeUnit.MILLISECONDS));
+		CompletableFuture<String> expired = executor.submit(() -> "expired");
+		
+		assertThat(cause(expired)).isInstanceOf(RejectedExecutionException.class);
+		assertThat(metricRegistry.counter("executor.test.expired").getCount()).isEqualTo(1);
+	}
+	
+	private static Throwable cause(CompletableFuture<?> future) throws Exception {
+		try {
+			future.get(1, TimeUnit.SECONDS);
+			throw new AssertionError("Expected the future to fail");
+		} catch(ExecutionException e) {
+			return e.getCause();
+		}
+	}
+}
@@ -0,0 +1,69 @@
+package finley.peter.nextgear.config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import org.springframework.boot.actuate.metrics.CounterService;
+import org.springframework.http.HttpEntity;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import finley.peter.nextgear.concurrent.DatabaseExecutor;
+import finley.peter.nextgear.model.ContractStatistic;
+import finley.peter.nextgear.service.ContractService;
+import finley.peter.nextgear.service.ContractWriteBehindService;
+import finley.peter.nextgear.web.controller.ContractController;
+
+/**
+ * Unit tests for {@link LatencyMetricsAspect}.
+ */
+public class LatencyMetricsAspectTest {
+
+	private MetricRegistry metricRegistry = new MetricRegistry();
+
+	private DatabaseExecutor databaseExecutor = mock(DatabaseExecutor.class);
+
+	/**
+	 * Test that an asynchronous controller call is timed until its result is
+	 * complete, not just until it returns.
+	 */
+	@Test
+	public void testTimesUntilComplete() throws InterruptedException {
+
+		CompletableFuture<HttpEntity<List<ContractStatistic>>> result = new CompletableFuture<>();
+		when(databaseExecutor.<HttpEntity<List<ContractStatistic>>>submit(any())).thenReturn(result);
+
+		ContractController controller = proxy(new ContractController(mock(ContractService.class), databaseExecutor,
+				mock(ContractWriteBehindService.class), new ObjectMapper(), mock(CounterService.class), 1000, 60000));
+
+		controller.getStatistics();
+
+		Timer timer = metricRegistry.timer("timer.controller.ContractController.getStatistics");
+		assertThat(timer.getCount()).isEqualTo(0);
+
+		Thread.sleep(50);
+		result.complete(null);
+
+		assertThat(timer.getCount()).isEqualTo(1);
+		assertThat(timer.getSnapshot().getMax()).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(50));
+	}
+
+	private <T> T proxy(T target) {
+
+		AspectJProxyFactory factory = new AspectJProxyFactory(target);
+		factory.setProxyTargetClass(true);
+		factory.addAspect(new LatencyMetricsAspect(metricRegistry));
+
+		return factory.getProxy();
+	}
+}
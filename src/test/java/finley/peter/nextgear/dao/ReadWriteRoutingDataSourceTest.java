@@ -0,0 +1,106 @@
+package finley.peter.nextgear.dao;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Unit tests for {@link ReadWriteRoutingDataSource}.
+ */
+public class ReadWriteRoutingDataSourceTest {
+
+	private DataSource primary = mock(DataSource.class);
+	
+	private DataSource replica0 = mock(DataSource.class);
+	
+	private DataSource replica1 = mock(DataSource.class);
+	
+	private Map<DataSource, Connection> connections = new HashMap<>();
+	
+	private ReadWriteRoutingDataSource dataSource = new ReadWriteRoutingDataSource(primary, Arrays.asList(replica0, replica1));
+	
+	@Before
+	public void before() throws SQLException {
+		for(DataSource target : Arrays.asList(primary, replica0, replica1)) {
+			Connection connection = mock(Connection.class);
+			when(target.getConnection()).thenReturn(connection);
+			connections.put(target, connection);
+		}
+	}
+	
+	@After
+	public void after() {
+		TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+		ReplicaContext.clear();
+	}
+	
+	/**
+	 * Test that read only transactions use the replicas in turn and everything
+	 * else the primary.
+	 */
+	@Test
+	public void testRouting() throws SQLException {
+		
+		assertThat(target()).isSameAs(primary);
+		
+		TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+		
+		assertThat(target()).isSameAs(replica0);
+		assertThat(target()).isSameAs(replica1);
+		assertThat(target()).isSameAs(replica0);
+	}
+	
+	/**
+	 * Test that reads use the primary when the context asks for it, also on
+	 * another thread running a decorated task.
+	 */
+	@Test
+	public void testPrimaryOnly() throws Exception {
+		
+		TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+		ReplicaContext.setPrimaryOnly(true);
+		
+		assertThat(target()).isSameAs(primary);
+		
+		DataSource[] used = new DataSource[1];
+		Thread thread = new Thread(ReplicaContext.decorate(() -> {
+			TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+			try {
+				used[0] = target();
+			} catch(SQLException e) {
+				throw new IllegalStateException(e);
+			}
+		}));
+		thread.start();
+		thread.join();
+		
+		assertThat(used[0]).isSameAs(primary);
+	}
+	
+	/**
+	 * @return the data source the next connection comes from
+	 */
+	private DataSource target() throws SQLException {
+		
+		Connection connection = dataSource.getConnection();
+		
+		return connections.entrySet().stream()
+				.filter(entry -> entry.getValue() == connection)
+				.map(Map.Entry::getKey)
+				.findFirst()
+				.get();
+	}
+}
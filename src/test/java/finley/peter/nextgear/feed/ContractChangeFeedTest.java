@@ -0,0 +1,208 @@
+package finley.peter.nextgear.feed;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.codahale.metrics.MetricRegistry;
+
+import finley.peter.nextgear.model.Contract;
+import finley.peter.nextgear.service.ContractEvent;
+
+/**
+ * Unit tests for {@link ContractChangeFeed}.
+ */
+public class ContractChangeFeedTest {
+	
+	private MetricRegistry metricRegistry = new MetricRegistry();
+	
+	private ContractChangeFeed feed = new ContractChangeFeed(metricRegistry, 3, 2, 2);
+	
+	@After
+	public void after() {
+		feed.shutdown();
+	}
+
+	/**
+	 * Test that the changes held are read from an offset, and that offsets
+	 * whose following changes have been overwritten are refused.
+	 */
+	@Test
+	public void testRead() {
+		
+		assertThat(feed.read(0, 10)).isEmpty();
+		
+		for(long id = 1; id <= 5; id++) {
+			assertThat(publish(id)).isEqualTo(id);
+		}
+		
+		assertThat(feed.getLastOffset()).isEqualTo(5);
+		assertThat(feed.read(2, 10)).extracting("offset").containsExactly(3L, 4L, 5L);
+		assertThat(feed.read(2, 2)).extracting("contract").extracting("id").containsExactly(3L, 4L);
+		assertThat(feed.read(5, 10)).isEmpty();
+		
+		assertThatThrownBy(() -> feed.read(1, 10)).isInstanceOf(ChangeOffsetExpiredException.class);
+		assertThatThrownBy(() -> feed.read(6, 10)).isInstanceOf(ChangeOffsetExpiredException.class);
+		assertThatThrownBy(() -> feed.read(5, 0)).isInstanceOf(IllegalArgumentException.class);
+	}
+
+	/**
+	 * Test that a poll is completed by the next change, and that there can
+	 * only be so many subscribers.
+	 */
+	@Test
+	public void testPoll() throws InterruptedException {
+		
+		publish(1);
+		
+		DeferredResult<List<ContractChange>> available = new DeferredResult<>();
+		feed.poll(0, 10, available);
+		assertThat(result(available)).extracting("offset").containsExactly(1L);
+		
+		DeferredResult<List<ContractChange>> waiting = new DeferredResult<>();
+		feed.poll(1, 10, waiting);
+		feed.poll(1, 10, new DeferredResult<>());
+		assertThat(waiting.hasResult()).isFalse();
+		
+		assertThatThrownBy(() -> feed.poll(1, 10, new DeferredResult<>()))
+				.isInstanceOf(RejectedExecutionException.class);
+				
+		publish(2);
+		
+		long deadline = System.currentTimeMillis() + 5000;
+		while(!waiting.hasResult() && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		
+		assertThat(result(waiting)).extracting("offset").containsExactly(2L);
+	}
+
+	/**
+	 * Test that changes are streamed in order, including those published
+	 * before the stream started.
+	 */
+	@Test
+	public void testStream() throws InterruptedException {
+		
+		publish(1);
+		publish(2);
+		
+		RecordingEmitter emitter = new RecordingEmitter(null);
+		feed.stream(1, emitter);
+		
+		publish(3);
+		
+		emitter.await(2);
+		assertThat(emitter.events).hasSize(2);
+		assertThat(emitter.events.get(0)).contains("id:2", "event:CREATED");
+		assertThat(emitter.events.get(1)).contains("id:3");
+	}
+
+	/**
+	 * Test that a stream whose client has stopped reading is disconnected
+	 * once it falls behind the buffer, without holding up publishing, and
+	 * completed once its stuck send returns.
+	 */
+	@Test
+	public void testSlowConsumer() throws Exception {
+		
+		CountDownLatch release = new CountDownLatch(1);
+		RecordingEmitter emitter = new RecordingEmitter(release);
+		feed.stream(0, emitter);
+		
+		try {
+			publish(1);
+			assertThat(emitter.sending.await(5, TimeUnit.SECONDS)).isTrue();
+			
+			// publishing must not wait for the send holding the emitter's lock
+			CompletableFuture.runAsync(() -> {
+				for(long id = 2; id <= 10; id++) {
+					publish(id);
+				}
+			}).get(5, TimeUnit.SECONDS);
+			
+			assertThat(metricRegistry.counter("changes.disconnected").getCount()).isEqualTo(1);
+			assertThat(emitter.completed.getCount()).isEqualTo(1);
+		} finally {
+			release.countDown();
+		}
+		
+		assertThat(emitter.completed.await(5, TimeUnit.SECONDS)).isTrue();
+	}
+
+	@SuppressWarnings("unchecked")
+	private static List<ContractChange> result(DeferredResult<List<ContractChange>> result) {
+		return (List<ContractChange>) result.getResult();
+	}
+
+	private long publish(long id) {
+		
+		Contract contract = new Contract();
+		contract.setId(id);
+		
+		return feed.publish(ContractEvent.Type.CREATED, contract);
+	}
+
+	/**
+	 * Records the events sent, optionally blocking each send until released
+	 * like a client that has stopped reading. Like {@link SseEmitter}'s, sends
+	 * hold the emitter's lock, so completing waits for them.
+	 */
+	private static class RecordingEmitter extends SseEmitter {
+		
+		private final List<String> events = new CopyOnWriteArrayList<>();
+		
+		private final CountDownLatch release;
+		
+		private final CountDownLatch sending = new CountDownLatch(1);
+		
+		private final CountDownLatch completed = new CountDownLatch(1);
+		
+		RecordingEmitter(CountDownLatch release) {
+			this.release = release;
+		}
+		
+		@Override
+		public synchronized void send(SseEventBuilder builder) throws IOException {
+			
+			sending.countDown();
+			
+			if(release != null) {
+				try {
+					release.await();
+				} catch(InterruptedException e) {
+					throw new IOException(e);
+				}
+			}
+			
+			StringBuilder event = new StringBuilder();
+			builder.build().forEach(part -> event.append(part.getData()));
+			events.add(event.toString());
+		}
+		
+		@Override
+		public synchronized void complete() {
+			completed.countDown();
+		}
+		
+		void await(int count) throws InterruptedException {
+			
+			long deadline = System.currentTimeMillis() + 5000;
+			while(events.size() < count && System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+		}
+	}
+}
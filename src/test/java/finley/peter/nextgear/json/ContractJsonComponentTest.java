@@ -0,0 +1,127 @@
+package finley.peter.nextgear.json;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.List;
+
+import org.junit.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+import finley.peter.nextgear.model.Contract;
+import finley.peter.nextgear.model.ContractField;
+import finley.peter.nextgear.model.ContractStatus;
+import finley.peter.nextgear.model.ContractSummary;
+import finley.peter.nextgear.model.ContractType;
+
+/**
+ * Unit tests for {@link ContractJsonComponent}, checking its output against
+ * Jackson's bean serializer's.
+ */
+public class ContractJsonComponentTest {
+	
+	/**
+	 * Test that contracts and summaries, with and without null fields, are
+	 * written exactly as the bean serializer writes them.
+	 */
+	@Test
+	public void testSameAsBeanSerializer() throws JsonProcessingException {
+		
+		assertSameOutput(Jackson2ObjectMapperBuilder.json());
+	}
+
+	/**
+	 * Test that dates follow the mapper's date format when they aren't written
+	 * as timestamps.
+	 */
+	@Test
+	public void testDateFormat() throws JsonProcessingException {
+		
+		assertSameOutput(Jackson2ObjectMapperBuilder.json().featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS));
+	}
+
+	/**
+	 * Test that null fields are left out when the mapper excludes nulls.
+	 */
+	@Test
+	public void testNonNullInclusion() throws JsonProcessingException {
+		
+		assertSameOutput(Jackson2ObjectMapperBuilder.json().serializationInclusion(JsonInclude.Include.NON_NULL));
+	}
+
+	/**
+	 * Test that Smile output is the same too.
+	 */
+	@Test
+	public void testSmile() throws JsonProcessingException {
+		
+		ObjectMapper beanMapper = new ObjectMapper(new SmileFactory());
+		ObjectMapper mapper = new ObjectMapper(new SmileFactory()).registerModule(module());
+		
+		for(Object value : values()) {
+			assertThat(mapper.writeValueAsBytes(value)).isEqualTo(beanMapper.writeValueAsBytes(value));
+		}
+	}
+
+	/**
+	 * Test that only the fields a summary holds are written, nulls included.
+	 */
+	@Test
+	public void testSparseFields() throws JsonProcessingException {
+		
+		ObjectMapper mapper = new ObjectMapper().registerModule(module());
+		
+		ContractSummary summary = new ContractSummary(1L, null, null, null, 3000, null, null, 4L, null,
+				EnumSet.of(ContractField.ID, ContractField.AMOUNT_REQUESTED, ContractField.STATUS));
+				
+		assertThat(mapper.writeValueAsString(summary)).isEqualTo("{\"id\":1,\"amountRequested\":3000,\"status\":null}");
+	}
+
+	private static void assertSameOutput(Jackson2ObjectMapperBuilder builder) throws JsonProcessingException {
+		
+		ObjectMapper beanMapper = builder.build();
+		ObjectMapper mapper = builder.modulesToInstall(module()).build();
+		
+		for(Object value : values()) {
+			assertThat(mapper.writeValueAsString(value)).isEqualTo(beanMapper.writeValueAsString(value));
+		}
+	}
+
+	private static SimpleModule module() {
+		return new SimpleModule()
+				.addSerializer(Contract.class, new ContractJsonComponent.ContractSerializer())
+				.addSerializer(ContractSummary.class, new ContractJsonComponent.ContractSummarySerializer());
+	}
+
+	private static List<Object> values() {
+		
+		Contract contract = new Contract();
+		contract.setId(1);
+		contract.setName("näme \"quoted\"");
+		contract.setBusinessNumber(2);
+		contract.setActivationDate(new Date(1500000000000L));
+		contract.setAmountRequested(3000);
+		contract.setStatus(ContractStatus.APPROVED);
+		contract.setType(ContractType.EXPRESS);
+		contract.setVersion(4L);
+		contract.setLastModified(new Date(1500000001234L));
+		
+		ContractSummary summary = new ContractSummary(contract.getId(), contract.getName(),
+				contract.getBusinessNumber(), contract.getActivationDate(), contract.getAmountRequested(),
+				contract.getStatus(), contract.getType(), contract.getVersion(), contract.getLastModified());
+				
+		ContractSummary undecided = new ContractSummary(5L, "undecided", 6L, null, 7000, null, ContractType.SALES,
+				0L, null);
+				
+		return Arrays.asList(contract, new Contract(), summary, undecided, Arrays.asList(summary, undecided));
+	}
+}
@@ -0,0 +1,111 @@
+package finley.peter.nextgear.service.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.dao.OptimisticLockingFailureException;
+
+import com.codahale.metrics.MetricRegistry;
+
+import finley.peter.nextgear.model.Contract;
+import finley.peter.nextgear.model.ContractStatus;
+import finley.peter.nextgear.model.ContractType;
+import finley.peter.nextgear.service.ContractDecisionRule;
+import finley.peter.nextgear.service.ContractService;
+
+/**
+ * Unit tests for {@link ContractApprovalServiceImpl}.
+ */
+public class ContractApprovalServiceImplTest {
+	
+	private ContractService contractService = mock(ContractService.class);
+	
+	private ContractDecisionRule rule = contract -> ContractStatus.APPROVED;
+	
+	private MetricRegistry metricRegistry = new MetricRegistry();
+	
+	private ContractApprovalServiceImpl approvalService = 
+			new ContractApprovalServiceImpl(contractService, rule, metricRegistry, 2, 2);
+	
+	@After
+	public void after() {
+		approvalService.shutdown();
+	}
+	
+	/**
+	 * Undecided contracts are scanned a chunk at a time from the last id of
+	 * the previous chunk, and every chunk is decided.
+	 */
+	@Test
+	public void testDecidePending() {
+		
+		when(contractService.findUndecidedIds(ContractType.SALES, 0, 2)).thenReturn(Arrays.asList(1L, 2L));
+		when(contractService.findUndecidedIds(ContractType.SALES, 2, 2)).thenReturn(Arrays.asList(3L, 5L));
+		when(contractService.findUndecidedIds(ContractType.SALES, 5, 2)).thenReturn(Arrays.asList(8L));
+		
+		when(contractService.decideAll(Arrays.asList(1L, 2L), rule)).thenReturn(decided(ContractStatus.APPROVED, 1, 2));
+		when(contractService.decideAll(Arrays.asList(3L, 5L), rule)).thenReturn(decided(ContractStatus.DENIED, 3));
+		when(contractService.decideAll(Arrays.asList(8L), rule)).thenReturn(decided(ContractStatus.APPROVED, 8));
+		
+		assertThat(approvalService.decidePending()).isEqualTo(4);
+		
+		assertThat(metricRegistry.meter("approval.contracts.approved").getCount()).isEqualTo(3);
+		assertThat(metricRegistry.meter("approval.contracts.denied").getCount()).isEqualTo(1);
+		assertThat(metricRegistry.timer("approval.contracts.chunks").getCount()).isEqualTo(3);
+		assertThat(metricRegistry.counter("approval.contracts.failed").getCount()).isEqualTo(0);
+	}
+	
+	/**
+	 * A chunk that fails is counted and the remaining chunks are still
+	 * decided.
+	 */
+	@Test
+	public void testChunkFails() {
+		
+		when(contractService.findUndecidedIds(ContractType.SALES, 0, 2)).thenReturn(Arrays.asList(1L, 2L));
+		when(contractService.findUndecidedIds(ContractType.SALES, 2, 2)).thenReturn(Arrays.asList(3L));
+		
+		when(contractService.decideAll(Arrays.asList(1L, 2L), rule))
+				.thenThrow(new OptimisticLockingFailureException("Contract changed"));
+		when(contractService.decideAll(Arrays.asList(3L), rule)).thenReturn(decided(ContractStatus.APPROVED, 3));
+		
+		assertThat(approvalService.decidePending()).isEqualTo(1);
+		
+		assertThat(metricRegistry.counter("approval.contracts.failed").getCount()).isEqualTo(2);
+	}
+	
+	/**
+	 * Nothing is decided when there are no undecided contracts.
+	 */
+	@Test
+	public void testNothingPending() {
+		
+		when(contractService.findUndecidedIds(eq(ContractType.SALES), anyLong(), eq(2))).thenReturn(Collections.emptyList());
+		
+		assertThat(approvalService.decidePending()).isEqualTo(0);
+		
+		assertThat(metricRegistry.timer("approval.contracts.chunks").getCount()).isEqualTo(0);
+	}
+	
+	private static List<Contract> decided(ContractStatus status, long... ids) {
+		
+		return Arrays.stream(ids)
+				.mapToObj(id -> {
+					Contract contract = new Contract();
+					contract.setId(id);
+					contract.setStatus(status);
+					return contract;
+				})
+				.collect(Collectors.toList());
+	}
+}
@@ -0,0 +1,174 @@
+package finley.peter.nextgear.service.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Date;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import finley.peter.nextgear.dao.ContractRepository;
+import finley.peter.nextgear.model.Contract;
+import finley.peter.nextgear.model.ContractType;
+import finley.peter.nextgear.service.ContractService;
+
+/**
+ * Tests the caching behaviour of {@link ContractServiceImpl}.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment=WebEnvironment.NONE)
+public class ContractServiceImplCachingTest {
+
+	@MockBean
+	private ContractRepository contractRepository;
+	
+	@Autowired
+	private ContractService contractService;
+	
+	@Autowired
+	private CacheManager cacheManager;
+	
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+	
+	@Before
+	public void before() {
+		cacheManager.getCache(ContractServiceImpl.CONTRACT_CACHE).clear();
+	}
+	
+	/**
+	 * Repeated lookups are served from the cache.
+	 */
+	@Test
+	public void testFindOneCached() {
+		
+		Contract contract = contract(1);
+		when(contractRepository.findOne(1L)).thenReturn(contract);
+		
+		assertThat(contractService.findOne(1)).isSameAs(contract);
+		assertThat(contractService.findOne(1)).isSameAs(contract);
+		
+		verify(contractRepository, times(1)).findOne(1L);
+	}
+	
+	/**
+	 * Missing contracts are not cached.
+	 */
+	@Test
+	public void testFindOneMissingNotCached() {
+		
+		assertThat(contractService.findOne(2)).isNull();
+		assertThat(contractService.findOne(2)).isNull();
+		
+		verify(contractRepository, times(2)).findOne(2L);
+	}
+	
+	/**
+	 * Created contracts are put in the cache.
+	 */
+	@Test
+	public void testCreatePopulatesCache() {
+		
+		Contract contract = contract(3);
+		when(contractRepository.save(any(Contract.class))).thenReturn(contract);
+		
+		contractService.create("name", 1, ContractType.SALES, 1000);
+		
+		assertThat(contractService.findOne(3)).isSameAs(contract);
+		verify(contractRepository, times(0)).findOne(3L);
+	}
+	
+	/**
+	 * Updating a contract evicts it from the cache.
+	 */
+	@Test
+	public void testUpdateEvicts() {
+		
+		Contract contract = contract(4);
+		when(contractRepository.findOne(4L)).thenReturn(contract);
+		when(contractRepository.updateDetails(eq(4L), isNull(), eq(contract.getName()), 
+				eq(contract.getBusinessNumber()), eq(contract.getAmountRequested()), any(Date.class))).thenReturn(1);
+		
+		contractService.findOne(4);
+		contractService.update(contract);
+		contractService.findOne(4);
+		
+		// once for each findOne, update doesn't read the contract
+		verify(contractRepository, times(2)).findOne(4L);
+	}
+	
+	/**
+	 * Deleting a contract evicts it from the cache.
+	 */
+	@Test
+	public void testDeleteEvicts() {
+		
+		when(contractRepository.findOne(5L)).thenReturn(contract(5));
+		when(contractRepository.deleteById(5L, null)).thenReturn(1);
+		
+		contractService.findOne(5);
+		contractService.delete(5, null);
+		
+		assertThat(cacheManager.getCache(ContractServiceImpl.CONTRACT_CACHE).get(5L)).isNull();
+	}
+	
+	/**
+	 * A contract is only evicted once its update commits, so a read before
+	 * then can't cache it again from the old row.
+	 */
+	@Test
+	public void testEvictsAfterCommit() {
+		
+		Contract contract = contract(6);
+		when(contractRepository.findOne(6L)).thenReturn(contract);
+		when(contractRepository.updateDetails(eq(6L), isNull(), eq(contract.getName()), 
+				eq(contract.getBusinessNumber()), eq(contract.getAmountRequested()), any(Date.class))).thenReturn(1);
+		when(contractRepository.deleteById(6L, null)).thenReturn(1);
+		
+		Cache cache = cacheManager.getCache(ContractServiceImpl.CONTRACT_CACHE);
+		TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+		
+		contractService.findOne(6);
+		transactionTemplate.execute(status -> {
+			contractService.update(contract);
+			assertThat(cache.get(6L)).isNotNull();
+			return null;
+		});
+		assertThat(cache.get(6L)).isNull();
+		
+		contractService.findOne(6);
+		transactionTemplate.execute(status -> {
+			contractService.delete(6, null);
+			assertThat(cache.get(6L)).isNotNull();
+			return null;
+		});
+		assertThat(cache.get(6L)).isNull();
+	}
+	
+	private Contract contract(long id) {
+		
+		Contract contract = new Contract();
+		contract.setId(id);
+		contract.setName("name");
+		contract.setBusinessNumber(1);
+		contract.setAmountRequested(1000);
+		contract.setType(ContractType.SALES);
+		return contract;
+	}
+}
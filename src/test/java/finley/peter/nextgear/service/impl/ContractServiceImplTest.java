@@ -2,27 +2,57 @@ package finley.peter.nextgear.service.impl;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.ArgumentMatchers.same;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.stream.Stream;
+
+import javax.persistence.EntityManager;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
-import org.springframework.data.domain.Example;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.transaction.PlatformTransactionManager;
 
 import finley.peter.nextgear.dao.ContractRepository;
+import finley.peter.nextgear.dao.ContractStatisticRepository;
+import finley.peter.nextgear.dao.ContractTombstoneRepository;
 import finley.peter.nextgear.model.Contract;
+import finley.peter.nextgear.model.ContractField;
+import finley.peter.nextgear.model.ContractFilter;
+import finley.peter.nextgear.model.ContractStatistic;
 import finley.peter.nextgear.model.ContractStatus;
+import finley.peter.nextgear.model.ContractSummary;
+import finley.peter.nextgear.model.ContractTombstone;
 import finley.peter.nextgear.model.ContractType;
+import finley.peter.nextgear.service.ContractBatchResult;
+import finley.peter.nextgear.service.ContractEvent;
+import finley.peter.nextgear.service.ContractStatisticsRebuiltEvent;
 
 /**
  * Unit tests for {@link ContractServiceImpl}.
@@ -31,6 +61,27 @@ public class ContractServiceImplTest {
 	
 	@Mock
 	private ContractRepository contractRepository;
+	
+	@Mock
+	private ContractStatisticRepository contractStatisticRepository;
+	
+	@Mock
+	private ContractTombstoneRepository contractTombstoneRepository;
+	
+	@Mock
+	private EntityManager entityManager;
+	
+	@Mock
+	private PlatformTransactionManager transactionManager;
+	
+	@Mock
+	private CacheManager cacheManager;
+	
+	@Mock
+	private Cache cache;
+	
+	@Mock
+	private ApplicationEventPublisher eventPublisher;
 
 	@InjectMocks
 	private ContractServiceImpl contractService;
@@ -38,20 +89,89 @@ public class ContractServiceImplTest {
 	@Before
 	public void before() {
 		MockitoAnnotations.initMocks(this);
+		when(cacheManager.getCache(ContractServiceImpl.CONTRACT_CACHE)).thenReturn(cache);
 	}
 	
+	/**
+	 * Pages are requested from the repository using the filter, starting after
+	 * the given id.
+	 */
 	@Test
-	public void testFindAll() {
+	public void testFindPage() {
 		
-		Example<Contract> example = Example.of(new Contract());
+		ContractFilter filter = new ContractFilter();
+		filter.setStatus(ContractStatus.APPROVED);
 		
-		List<Contract> contracts = new ArrayList<>();
-
-		when(contractRepository.findAll(same(example))).thenReturn(contracts);
-
-		Iterable<Contract> result = contractService.findAll(example);
+		Slice<ContractSummary> page = new SliceImpl<>(new ArrayList<>());
+		
+		when(contractRepository.findSummaries(same(filter), same(ContractField.ALL), eq(10L), eq(5))).thenReturn(page);
+		
+		Slice<ContractSummary> result = contractService.findPage(filter, ContractField.ALL, 10, 5);
+		
+		assertThat(result).isSameAs(page);
+	}
+	
+	/**
+	 * Page limit must be >0.
+	 */
+	@Test(expected=IllegalArgumentException.class)
+	public void testFindPageLimitTooSmall() {
 		
-		assertThat(result).isSameAs(contracts);
+		contractService.findPage(new ContractFilter(), ContractField.ALL, 0, 0);
+	}
+	
+	/**
+	 * Deletes are found a page at a time, with one more tombstone fetched than
+	 * the limit to find out if there is another page.
+	 */
+	@Test
+	public void testFindDeleted() {
+		
+		Date since = new Date();
+		
+		when(contractTombstoneRepository.findDeletedSince(eq(since), eq(10L), any(Pageable.class))).thenReturn(
+				Arrays.asList(new ContractTombstone(11, since), new ContractTombstone(12, since), 
+						new ContractTombstone(13, since)));
+		
+		Slice<ContractTombstone> page = contractService.findDeleted(since, 10, 2);
+		
+		assertThat(page.getContent()).extracting("id").containsExactly(11L, 12L);
+		assertThat(page.hasNext()).isTrue();
+		
+		ArgumentCaptor<Pageable> pageable = ArgumentCaptor.forClass(Pageable.class);
+		verify(contractTombstoneRepository).findDeletedSince(eq(since), eq(10L), pageable.capture());
+		assertThat(pageable.getValue().getPageSize()).isEqualTo(3);
+	}
+	
+	/**
+	 * The time to find deletes since is required.
+	 */
+	@Test(expected=IllegalArgumentException.class)
+	public void testFindDeletedWithoutSince() {
+		
+		contractService.findDeleted(null, 0, 10);
+	}
+	
+	/**
+	 * Exported contracts are passed to the consumer in order and detached once
+	 * consumed.
+	 */
+	@Test
+	public void testExportAll() {
+		
+		Contract contract1 = new Contract();
+		contract1.setId(1);
+		Contract contract2 = new Contract();
+		contract2.setId(2);
+		
+		when(contractRepository.streamAll()).thenReturn(Stream.of(contract1, contract2));
+		
+		List<Contract> exported = new ArrayList<>();
+		contractService.exportAll(exported::add);
+		
+		assertThat(exported).containsExactly(contract1, contract2);
+		verify(entityManager).detach(same(contract1));
+		verify(entityManager).detach(same(contract2));
 	}
 	
 	@Test
@@ -194,11 +314,148 @@ public class ContractServiceImplTest {
 		assertThat(savedContract.getBusinessNumber()).isEqualTo(businessNumber);
 		assertThat(savedContract.getType()).isEqualTo(type);
 		assertThat(savedContract.getActivationDate()).isEqualToIgnoringSeconds(new Date());
+		assertThat(savedContract.getLastModified()).isEqualTo(savedContract.getActivationDate());
 		assertThat(savedContract.getStatus()).isEqualTo(ContractStatus.APPROVED);
 		
 		assertThat(result).isSameAs(expectedContract);
 	}
 	
+	/**
+	 * Valid contracts in a batch are saved together; invalid ones are reported
+	 * without being saved.
+	 */
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testCreateAll() {
+		
+		Contract express = new Contract();
+		express.setName("express");
+		express.setBusinessNumber(1);
+		express.setType(ContractType.EXPRESS);
+		express.setAmountRequested(1000);
+		
+		Contract tooLarge = new Contract();
+		tooLarge.setName("too large");
+		tooLarge.setBusinessNumber(1);
+		tooLarge.setType(ContractType.EXPRESS);
+		tooLarge.setAmountRequested(50000);
+		
+		Contract noAmount = new Contract();
+		noAmount.setName("no amount");
+		noAmount.setBusinessNumber(1);
+		noAmount.setType(ContractType.SALES);
+		
+		Contract sales = new Contract();
+		sales.setName("sales");
+		sales.setBusinessNumber(2);
+		sales.setType(ContractType.SALES);
+		sales.setAmountRequested(50000);
+		
+		ArgumentCaptor<Iterable<Contract>> savedContractsArgument = ArgumentCaptor.forClass(Iterable.class);
+		when(contractRepository.save(savedContractsArgument.capture())).thenReturn(new ArrayList<>());
+		
+		List<ContractBatchResult> results = contractService.createAll(Arrays.asList(express, tooLarge, noAmount, sales));
+		
+		assertThat(results).hasSize(4);
+		assertThat(results.get(0).isCreated()).isTrue();
+		assertThat(results.get(0).getContract().getStatus()).isEqualTo(ContractStatus.APPROVED);
+		assertThat(results.get(1).isCreated()).isFalse();
+		assertThat(results.get(1).getError().getMessage()).isEqualTo("EXPRESS contract amounts must be less than 50000");
+		assertThat(results.get(2).isCreated()).isFalse();
+		assertThat(results.get(3).isCreated()).isTrue();
+		assertThat(results.get(3).getContract().getStatus()).isNull();
+		
+		assertThat(savedContractsArgument.getValue())
+				.containsExactly(results.get(0).getContract(), results.get(3).getContract());
+		
+		verify(contractStatisticRepository).increment("APPROVED.EXPRESS", 1, 1000);
+		verify(contractStatisticRepository).increment("NONE.SALES", 1, 50000);
+	}
+	
+	/**
+	 * Creating a contract adds it to the statistics for its status and type.
+	 */
+	@Test
+	public void testCreateUpdatesStatistics() {
+		
+		when(contractRepository.save(any(Contract.class))).thenReturn(new Contract());
+		
+		contractService.create("name", 1, ContractType.EXPRESS, 1000);
+		
+		verify(contractStatisticRepository).increment("APPROVED.EXPRESS", 1, 1000);
+	}
+	
+	/**
+	 * Updating a contract adjusts the amount total of contracts with no status
+	 * before the contract's amount is replaced.
+	 */
+	@Test
+	public void testUpdateAmountUpdatesStatistics() {
+		
+		Contract updatedContract = new Contract();
+		updatedContract.setId(1);
+		updatedContract.setAmountRequested(250);
+		updatedContract.setBusinessNumber(1);
+		
+		when(contractRepository.updateDetails(eq(1L), isNull(), isNull(), eq(1L), eq(250), any(Date.class)))
+				.thenReturn(1);
+		
+		contractService.update(updatedContract);
+		
+		InOrder inOrder = inOrder(contractStatisticRepository, contractRepository);
+		inOrder.verify(contractStatisticRepository).adjustPendingAmount(1L, 250L);
+		inOrder.verify(contractRepository).updateDetails(eq(1L), isNull(), isNull(), eq(1L), eq(250), any(Date.class));
+	}
+	
+	/**
+	 * Deleting a contract removes it from the statistics and leaves a
+	 * tombstone for it before it is deleted.
+	 */
+	@Test
+	public void testDeleteUpdatesStatistics() {
+		
+		when(contractRepository.deleteById(1L, null)).thenReturn(1);
+		
+		contractService.delete(1, null);
+		
+		InOrder inOrder = inOrder(contractStatisticRepository, contractTombstoneRepository, contractRepository);
+		inOrder.verify(contractStatisticRepository).subtractContracts(Collections.singleton(1L));
+		inOrder.verify(contractTombstoneRepository).addTombstones(eq(Collections.singleton(1L)), any(Date.class));
+		inOrder.verify(contractRepository).deleteById(1L, null);
+	}
+	
+	/**
+	 * Rebuilt statistics include every status and type combination, with
+	 * zeros for any combination that has no contracts.
+	 */
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testRebuildStatistics() {
+		
+		ContractStatistic approvedExpress = new ContractStatistic(ContractStatus.APPROVED, ContractType.EXPRESS, 2, 3000);
+		when(contractRepository.summarize()).thenReturn(Arrays.asList(approvedExpress));
+		
+		ArgumentCaptor<Iterable<ContractStatistic>> savedStatisticsArgument = ArgumentCaptor.forClass(Iterable.class);
+		when(contractStatisticRepository.save(savedStatisticsArgument.capture())).thenReturn(new ArrayList<>());
+		
+		contractService.rebuildStatistics();
+		
+		verify(contractStatisticRepository).deleteAllInBatch();
+		verify(eventPublisher).publishEvent(any(ContractStatisticsRebuiltEvent.class));
+		
+		List<ContractStatistic> saved = new ArrayList<>();
+		savedStatisticsArgument.getValue().forEach(saved::add);
+		
+		assertThat(saved).hasSize((ContractStatus.values().length + 1) * ContractType.values().length);
+		assertThat(saved).contains(approvedExpress);
+		for(ContractStatistic statistic : saved) {
+			if(statistic != approvedExpress) {
+				assertThat(statistic.getCount()).isEqualTo(0);
+				assertThat(statistic.getAmountRequestedTotal()).isEqualTo(0);
+			}
+		}
+	}
+	
 	/**
 	 * Test that an exception is thrown when updating a contract that doesn't exist.
 	 */
@@ -209,8 +466,10 @@ public class ContractServiceImplTest {
 
 		Contract contract = new Contract();
 		contract.setId(id);
+		contract.setBusinessNumber(1);
+		contract.setAmountRequested(1000);
 
-		when(contractRepository.findOne(id)).thenReturn(null);
+		when(contractRepository.updateDetails(eq(id), any(), any(), anyLong(), anyInt(), any())).thenReturn(0);
 		
 		try {
 			contractService.update(contract);
@@ -220,8 +479,10 @@ public class ContractServiceImplTest {
 	}
 
 	/**
-	 * Test {@link ContractServiceImpl#update(Contract)} ensuring read-only
-	 * properties can't be changed.
+	 * Test {@link ContractServiceImpl#update(Contract)} ensuring only the
+	 * updatable properties are passed to the single statement update, without
+	 * saving the contract, and that the contract as stored is published rather
+	 * than the request.
 	 */
 	@Test
 	public void testUpdateExisting() {
@@ -236,79 +497,66 @@ public class ContractServiceImplTest {
 		updatedContract.setName("New name");
 		updatedContract.setStatus(ContractStatus.APPROVED);
 		updatedContract.setType(ContractType.EXPRESS);
+		updatedContract.setVersion(3L);
 		
-		Date existingActivationDate = new Date();
-		int existingAmountRequested = 100;
-		ContractStatus existingStatus = ContractStatus.DENIED;
-		ContractType existingType = ContractType.SALES;
-		
-		Contract existingContract = new Contract();
-		existingContract.setId(id);
-		existingContract.setActivationDate(existingActivationDate);
-		existingContract.setAmountRequested(existingAmountRequested);
-		existingContract.setBusinessNumber(1);
-		existingContract.setName("name");
-		existingContract.setStatus(existingStatus);
-		existingContract.setType(existingType);
-
-		when(contractRepository.findOne(id)).thenReturn(existingContract);
-		when(contractRepository.save(same(existingContract))).thenReturn(existingContract);
-		
-		Contract result = contractService.update(updatedContract);
-		
-		assertThat(result.getId()).isEqualTo(id);
-		assertThat(result.getActivationDate()).isSameAs(existingActivationDate);
-		assertThat(result.getAmountRequested()).isEqualTo(existingAmountRequested);
-		assertThat(result.getBusinessNumber()).isEqualTo(updatedContract.getBusinessNumber());
-		assertThat(result.getName()).isEqualTo(updatedContract.getName());
-		assertThat(result.getStatus()).isSameAs(existingStatus);
-		assertThat(result.getType()).isSameAs(existingType);
-
-		verify(contractRepository, never()).save(same(updatedContract));
+		Contract storedContract = new Contract();
+		storedContract.setId(id);
+		storedContract.setVersion(4L);
+		
+		when(contractRepository.updateDetails(eq(id), eq(3L), eq("New name"), eq(9L), eq(1000), any(Date.class)))
+				.thenReturn(1);
+		when(contractRepository.findOne(id)).thenReturn(storedContract);
+		
+		contractService.update(updatedContract);
+		
+		ArgumentCaptor<Date> lastModified = ArgumentCaptor.forClass(Date.class);
+		verify(contractRepository).updateDetails(eq(id), eq(3L), eq("New name"), eq(9L), eq(1000), 
+				lastModified.capture());
+		assertThat(lastModified.getValue()).isNotNull();
+		verify(contractRepository, never()).save(any(Contract.class));
+		verify(contractRepository, never()).findOne(id);
+		
+		// only what was updated is published, the contract is read if asked for
+		ArgumentCaptor<ContractEvent> event = ArgumentCaptor.forClass(ContractEvent.class);
+		verify(eventPublisher).publishEvent(event.capture());
+		assertThat(event.getValue().getContract()).isNotSameAs(updatedContract)
+				.extracting("id", "name", "businessNumber", "amountRequested", "status", "type", "version", "lastModified")
+				.containsExactly(id, "New name", 9L, 1000, null, null, 4L, lastModified.getValue());
+		assertThat(updatedContract.getLastModified()).isNull();
+		
+		assertThat(event.getValue().getStoredContract()).isSameAs(storedContract);
+		assertThat(event.getValue().getStoredContract()).isSameAs(storedContract);
+		verify(contractRepository, times(1)).findOne(id);
 	}
 
 	/**
-	 * Test {@link ContractServiceImpl#update(Contract)} when the existing contract
-	 * has no status yet, thus allowing the requested amount to be changed. Ensure
-	 * read-only attributes still can't be changed.
+	 * Updating with a version other than the current version fails.
 	 */
-	@Test
-	public void testUpdateExistingWithNoStatus() {
-
-		long id = 1;
-
+	@Test(expected=OptimisticLockingFailureException.class)
+	public void testUpdateVersionMismatch() {
+		
 		Contract updatedContract = new Contract();
-		updatedContract.setId(id);
-		updatedContract.setActivationDate(new Date());
+		updatedContract.setId(1);
+		updatedContract.setBusinessNumber(1);
 		updatedContract.setAmountRequested(1000);
-		updatedContract.setBusinessNumber(9);
-		updatedContract.setName("New name");
-		updatedContract.setStatus(ContractStatus.APPROVED);
-		updatedContract.setType(ContractType.EXPRESS);
+		updatedContract.setVersion(1L);
 		
-		ContractType existingType = ContractType.SALES;
+		when(contractRepository.updateDetails(eq(1L), eq(1L), any(), anyLong(), anyInt(), any())).thenReturn(0);
+		when(contractRepository.exists(1L)).thenReturn(true);
 		
-		Contract existingContract = new Contract();
-		existingContract.setId(id);
-		existingContract.setAmountRequested(100);
-		existingContract.setBusinessNumber(1);
-		existingContract.setName("name");
-		existingContract.setType(existingType);
-
-		when(contractRepository.findOne(id)).thenReturn(existingContract);
-		when(contractRepository.save(same(existingContract))).thenReturn(existingContract);
-		
-		Contract result = contractService.update(updatedContract);
-		
-		assertThat(result.getId()).isEqualTo(id);
-		assertThat(result.getActivationDate()).isNull();
-		assertThat(result.getAmountRequested()).isEqualTo(updatedContract.getAmountRequested());
-		assertThat(result.getBusinessNumber()).isEqualTo(updatedContract.getBusinessNumber());
-		assertThat(result.getName()).isEqualTo(updatedContract.getName());
-		assertThat(result.getStatus()).isNull();
-		assertThat(result.getType()).isSameAs(existingType);
-
-		verify(contractRepository, never()).save(same(updatedContract));
+		contractService.update(updatedContract);
+	}
+	
+	/**
+	 * Deleting with a version other than the current version fails.
+	 */
+	@Test(expected=OptimisticLockingFailureException.class)
+	public void testDeleteVersionMismatch() {
+		
+		when(contractRepository.deleteById(1L, 1L)).thenReturn(0);
+		when(contractRepository.exists(1L)).thenReturn(true);
+		
+		contractService.delete(1, 1L);
 	}
 	
 	@Test
@@ -316,8 +564,216 @@ public class ContractServiceImplTest {
 		
 		long id = 1;
 
-		contractService.delete(id);
+		when(contractRepository.deleteById(id, null)).thenReturn(1);
+		
+		contractService.delete(id, null);
+		
+		verify(contractRepository).deleteById(id, null);
+		verify(contractRepository, never()).findOne(id);
+	}
+	
+	/**
+	 * Each change publishes an event for the changed contract.
+	 */
+	@Test
+	public void testEventsPublished() {
+		
+		Contract contract = new Contract();
+		contract.setId(1);
+		contract.setBusinessNumber(1);
+		contract.setAmountRequested(1000);
+		
+		when(contractRepository.save(any(Contract.class))).thenReturn(contract);
+		when(contractRepository.updateDetails(eq(1L), isNull(), isNull(), eq(1L), eq(1000), any(Date.class)))
+				.thenReturn(1);
+		when(contractRepository.deleteById(1L, null)).thenReturn(1);
+		
+		Contract storedContract = new Contract();
+		storedContract.setId(1);
+		when(contractRepository.findOne(1L)).thenReturn(storedContract);
+		
+		contractService.create("name", 1, ContractType.SALES, 1000);
+		contractService.update(contract);
+		contractService.delete(1, null);
+		
+		ArgumentCaptor<ContractEvent> events = ArgumentCaptor.forClass(ContractEvent.class);
+		verify(eventPublisher, times(3)).publishEvent(events.capture());
+		
+		assertThat(events.getAllValues()).extracting("type").containsExactly(
+				ContractEvent.Type.CREATED, ContractEvent.Type.UPDATED, ContractEvent.Type.DELETED);
+		assertThat(events.getAllValues().get(0).getContract()).isSameAs(contract);
+		assertThat(events.getAllValues().get(1).getStoredContract()).isSameAs(storedContract);
+		assertThat(events.getAllValues().get(2).getContract().getId()).isEqualTo(1);
+	}
+	
+	/**
+	 * Undecided ids are found a limited chunk at a time.
+	 */
+	@Test
+	public void testFindUndecidedIds() {
+		
+		List<Long> ids = Arrays.asList(11L, 12L);
+		
+		when(contractRepository.findUndecidedIds(eq(ContractType.SALES), eq(10L), any(Pageable.class))).thenReturn(ids);
+		
+		assertThat(contractService.findUndecidedIds(ContractType.SALES, 10, 2)).isSameAs(ids);
+		
+		ArgumentCaptor<Pageable> pageable = ArgumentCaptor.forClass(Pageable.class);
+		verify(contractRepository).findUndecidedIds(eq(ContractType.SALES), eq(10L), pageable.capture());
+		assertThat(pageable.getValue().getPageSize()).isEqualTo(2);
+	}
+	
+	/**
+	 * Contracts without a status are given the rule's decision and moved
+	 * between statistics; decided contracts and those the rule leaves
+	 * undecided are untouched.
+	 */
+	@Test
+	public void testDecideAll() {
+		
+		Contract approve = undecided(1, 1000);
+		Contract deny = undecided(2, 200000);
+		Contract skip = undecided(3, 0);
+		Contract alreadyDecided = undecided(4, 1000);
+		alreadyDecided.setStatus(ContractStatus.DENIED);
+		
+		List<Long> ids = Arrays.asList(1L, 2L, 3L, 4L);
+		
+		when(contractRepository.findAll(ids)).thenReturn(Arrays.asList(approve, deny, skip, alreadyDecided));
+		
+		List<Contract> decided = contractService.decideAll(ids, contract -> contract.getAmountRequested() == 0 ? null
+				: contract.getAmountRequested() <= 100000 ? ContractStatus.APPROVED : ContractStatus.DENIED);
+		
+		assertThat(decided).containsExactly(approve, deny);
+		assertThat(approve.getStatus()).isEqualTo(ContractStatus.APPROVED);
+		assertThat(approve.getActivationDate()).isNotNull();
+		assertThat(approve.getLastModified()).isEqualTo(approve.getActivationDate());
+		assertThat(deny.getStatus()).isEqualTo(ContractStatus.DENIED);
+		assertThat(deny.getActivationDate()).isNull();
+		assertThat(skip.getStatus()).isNull();
+		assertThat(skip.getLastModified()).isNull();
+		
+		verify(contractStatisticRepository).increment(ContractStatistic.key(null, ContractType.SALES), -2, -201000);
+		verify(contractStatisticRepository).increment(ContractStatistic.key(ContractStatus.APPROVED, ContractType.SALES), 1, 1000);
+		verify(contractStatisticRepository).increment(ContractStatistic.key(ContractStatus.DENIED, ContractType.SALES), 1, 200000);
+		
+		ArgumentCaptor<ContractEvent> events = ArgumentCaptor.forClass(ContractEvent.class);
+		verify(eventPublisher, times(2)).publishEvent(events.capture());
+		assertThat(events.getAllValues()).extracting("type").containsOnly(ContractEvent.Type.DECIDED);
+		
+		verify(cache).evict(1L);
+		verify(cache).evict(2L);
+		verify(cache, never()).evict(3L);
+	}
+	
+	/**
+	 * Deleting a contract that doesn't exist fails.
+	 */
+	@Test(expected=EmptyResultDataAccessException.class)
+	public void testDeleteNonExisting() {
+		
+		contractService.delete(1, null);
+	}
+	
+	/**
+	 * Deleting by id removes duplicate ids and deletes in chunks, evicting each
+	 * chunk from the cache.
+	 */
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testDeleteAllByIds() {
+		
+		List<Long> ids = new ArrayList<>();
+		for(long id = 1; id <= ContractServiceImpl.DELETE_CHUNK_SIZE + 1; id++) {
+			ids.add(id);
+		}
+		ids.add(1L);
+		
+		when(contractRepository.findExistingIds(any(List.class))).thenAnswer(invocation -> invocation.getArgument(0));
+		when(contractRepository.deleteByIds(any(List.class))).thenAnswer(invocation -> 
+				((List<Long>) invocation.getArgument(0)).size());
+		
+		long deleted = contractService.deleteAll(ids);
+		
+		assertThat(deleted).isEqualTo(ContractServiceImpl.DELETE_CHUNK_SIZE + 1);
+		verify(contractRepository).deleteByIds(ids.subList(0, ContractServiceImpl.DELETE_CHUNK_SIZE));
+		verify(contractRepository).deleteByIds(Arrays.asList(ContractServiceImpl.DELETE_CHUNK_SIZE + 1L));
+		verify(contractStatisticRepository, times(2)).subtractContracts(any(List.class));
+		verify(contractTombstoneRepository).addTombstones(eq(ids.subList(0, ContractServiceImpl.DELETE_CHUNK_SIZE)), 
+				any(Date.class));
+		verify(cache).evict(1L);
+		verify(cache).evict(ContractServiceImpl.DELETE_CHUNK_SIZE + 1L);
+	}
+	
+	/**
+	 * Deleting by id only deletes, and tells listeners of, the contracts that
+	 * exist.
+	 */
+	@Test
+	public void testDeleteAllByIdsMissing() {
+		
+		when(contractRepository.findExistingIds(Arrays.asList(1L, 2L, 3L))).thenReturn(Arrays.asList(2L));
+		when(contractRepository.deleteByIds(Arrays.asList(2L))).thenReturn(1);
+		
+		assertThat(contractService.deleteAll(Arrays.asList(1L, 2L, 3L))).isEqualTo(1);
+		
+		verify(contractStatisticRepository).subtractContracts(Arrays.asList(2L));
+		verify(contractTombstoneRepository).addTombstones(eq(Arrays.asList(2L)), any(Date.class));
+		
+		ArgumentCaptor<ContractEvent> event = ArgumentCaptor.forClass(ContractEvent.class);
+		verify(eventPublisher).publishEvent(event.capture());
+		assertThat(event.getValue().getType()).isEqualTo(ContractEvent.Type.DELETED);
+		assertThat(event.getValue().getContract().getId()).isEqualTo(2L);
+		
+		// none exist, so there is nothing to delete
+		assertThat(contractService.deleteAll(Arrays.asList(4L))).isEqualTo(0);
+		
+		verify(contractRepository, times(1)).deleteByIds(any());
+		verify(contractStatisticRepository, times(1)).subtractContracts(any());
+	}
+	
+	/**
+	 * Deleting by filter pages through the matching ids until a short chunk.
+	 */
+	@Test
+	public void testDeleteAllByFilter() {
+		
+		ContractFilter filter = new ContractFilter();
+		filter.setStatus(ContractStatus.DENIED);
+		
+		List<Long> firstChunk = new ArrayList<>();
+		for(long id = 1; id <= ContractServiceImpl.DELETE_CHUNK_SIZE; id++) {
+			firstChunk.add(id);
+		}
+		List<Long> secondChunk = Arrays.asList(ContractServiceImpl.DELETE_CHUNK_SIZE + 1L);
+		
+		when(contractRepository.findIds(filter, 0, ContractServiceImpl.DELETE_CHUNK_SIZE)).thenReturn(firstChunk);
+		when(contractRepository.findIds(filter, ContractServiceImpl.DELETE_CHUNK_SIZE, ContractServiceImpl.DELETE_CHUNK_SIZE))
+				.thenReturn(secondChunk);
+		
+		long deleted = contractService.deleteAll(filter);
+		
+		assertThat(deleted).isEqualTo(ContractServiceImpl.DELETE_CHUNK_SIZE + 1);
+		verify(contractRepository).deleteByIds(firstChunk);
+		verify(contractRepository).deleteByIds(secondChunk);
+	}
+	
+	/**
+	 * Deleting with an empty filter, which would delete everything, fails.
+	 */
+	@Test(expected=IllegalArgumentException.class)
+	public void testDeleteAllEmptyFilter() {
+		
+		contractService.deleteAll(new ContractFilter());
+	}
+	
+	private static Contract undecided(long id, int amountRequested) {
+		
+		Contract contract = new Contract();
+		contract.setId(id);
+		contract.setType(ContractType.SALES);
+		contract.setAmountRequested(amountRequested);
 		
-		verify(contractRepository).delete(id);
+		return contract;
 	}
 }
@@ -0,0 +1,239 @@
+package finley.peter.nextgear.service.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+
+import org.junit.After;
+import org.junit.Test;
+import org.mockito.stubbing.Answer;
+
+import com.codahale.metrics.MetricRegistry;
+
+import finley.peter.nextgear.model.Contract;
+import finley.peter.nextgear.model.ContractType;
+import finley.peter.nextgear.service.ContractBatchResult;
+import finley.peter.nextgear.service.ContractService;
+import finley.peter.nextgear.service.PendingContract;
+import finley.peter.nextgear.service.WriteQueueFullException;
+
+/**
+ * Unit tests for {@link ContractWriteBehindServiceImpl}.
+ */
+public class ContractWriteBehindServiceImplTest {
+	
+	private ContractService contractService = mock(ContractService.class);
+	
+	private CountDownLatch release = new CountDownLatch(1);
+	
+	private ContractWriteBehindServiceImpl writeBehindService;
+	
+	@After
+	public void after() throws InterruptedException {
+		release.countDown();
+		writeBehindService.shutdown();
+	}
+	
+	/**
+	 * Submitted contracts are written in the background and can be tracked.
+	 */
+	@Test
+	public void testSubmit() throws InterruptedException {
+		
+		when(contractService.createAll(anyList())).thenAnswer(createAll(false));
+		start(10);
+		
+		PendingContract pending = writeBehindService.submit(contract("name"));
+		
+		assertThat(pending.getTrackingId()).isNotNull();
+		assertThat(writeBehindService.getPending(pending.getTrackingId())).isSameAs(pending);
+		
+		awaitWritten(pending);
+		
+		assertThat(pending.getState()).isEqualTo(PendingContract.State.CREATED);
+		assertThat(pending.getContract().getId()).isNotNull();
+		assertThat(writeBehindService.getQueued()).isEqualTo(0);
+	}
+	
+	/**
+	 * Invalid contracts are rejected before they are queued.
+	 */
+	@Test(expected=IllegalArgumentException.class)
+	public void testSubmitInvalid() {
+		
+		doThrow(new IllegalArgumentException("Contract name must be specified"))
+				.when(contractService).validate(any(Contract.class));
+		start(10);
+		
+		writeBehindService.submit(contract(null));
+	}
+	
+	/**
+	 * Contracts are rejected once the queue is full.
+	 */
+	@Test
+	public void testQueueFull() throws InterruptedException {
+		
+		when(contractService.createAll(anyList())).thenAnswer(createAll(true));
+		start(1);
+		
+		// taken by the writer, which then waits
+		writeBehindService.submit(contract("first"));
+		while(writeBehindService.getQueued() > 0) {
+			Thread.sleep(10);
+		}
+		
+		PendingContract queued = writeBehindService.submit(contract("second"));
+		
+		try {
+			writeBehindService.submit(contract("third"));
+			throw new AssertionError("Expected the queue to be full");
+		} catch(WriteQueueFullException e) {
+			assertThat(writeBehindService.getQueued()).isEqualTo(1);
+		}
+		
+		release.countDown();
+		awaitWritten(queued);
+		
+		assertThat(queued.getState()).isEqualTo(PendingContract.State.CREATED);
+	}
+	
+	/**
+	 * Queued contracts are written before shutdown completes, and no more are
+	 * accepted.
+	 */
+	@Test
+	public void testDrainOnShutdown() throws InterruptedException {
+		
+		when(contractService.createAll(anyList())).thenAnswer(createAll(true));
+		start(10);
+		
+		List<PendingContract> pending = new ArrayList<>();
+		for(int i = 0; i < 5; i++) {
+			pending.add(writeBehindService.submit(contract("contract" + i)));
+		}
+		
+		new Thread(() -> {
+			try {
+				Thread.sleep(100);
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			release.countDown();
+		}).start();
+		
+		writeBehindService.shutdown();
+		
+		for(PendingContract contract : pending) {
+			assertThat(contract.getState()).isEqualTo(PendingContract.State.CREATED);
+		}
+		
+		try {
+			writeBehindService.submit(contract("late"));
+			throw new AssertionError("Expected the contract to be rejected");
+		} catch(RejectedExecutionException e) {
+			// expected
+		}
+	}
+	
+	/**
+	 * Shutdown waits for a contract being submitted to be queued, and writes
+	 * it.
+	 */
+	@Test
+	public void testShutdownDuringSubmit() throws Exception {
+		
+		CountDownLatch validating = new CountDownLatch(1);
+		doAnswer(invocation -> {
+			validating.countDown();
+			release.await(5, TimeUnit.SECONDS);
+			return null;
+		}).when(contractService).validate(any(Contract.class));
+		when(contractService.createAll(anyList())).thenAnswer(createAll(false));
+		start(10);
+		
+		CompletableFuture<PendingContract> submitted = CompletableFuture.supplyAsync(
+				() -> writeBehindService.submit(contract("name")));
+		validating.await(5, TimeUnit.SECONDS);
+		
+		CompletableFuture<Void> shutdown = CompletableFuture.runAsync(() -> {
+			try {
+				writeBehindService.shutdown();
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		
+		try {
+			shutdown.get(300, TimeUnit.MILLISECONDS);
+			throw new AssertionError("Expected shutdown to wait for the submit");
+		} catch(TimeoutException e) {
+			// expected
+		}
+		
+		release.countDown();
+		shutdown.get(5, TimeUnit.SECONDS);
+		
+		assertThat(submitted.get().getState()).isEqualTo(PendingContract.State.CREATED);
+	}
+	
+	private void start(int capacity) {
+		writeBehindService = new ContractWriteBehindServiceImpl(contractService, new MetricRegistry(), 
+				true, capacity, 2, 5000, 60000);
+		writeBehindService.start();
+	}
+	
+	/**
+	 * Answer createAll by creating every contract, optionally waiting to be
+	 * released first.
+	 */
+	@SuppressWarnings("unchecked")
+	private Answer<List<ContractBatchResult>> createAll(boolean wait) {
+		return invocation -> {
+			
+			if(wait) {
+				release.await(5, TimeUnit.SECONDS);
+			}
+			
+			return ((List<Contract>) invocation.getArgument(0)).stream()
+					.map(contract -> {
+						Contract created = contract("created");
+						created.setId(1);
+						return ContractBatchResult.created(created);
+					})
+					.collect(Collectors.toList());
+		};
+	}
+	
+	private static void awaitWritten(PendingContract pending) throws InterruptedException {
+		
+		long deadline = System.currentTimeMillis() + 5000;
+		while(pending.getState() == PendingContract.State.QUEUED && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+	}
+	
+	private static Contract contract(String name) {
+		
+		Contract contract = new Contract();
+		contract.setName(name);
+		contract.setBusinessNumber(1);
+		contract.setType(ContractType.SALES);
+		contract.setAmountRequested(1000);
+		
+		return contract;
+	}
+}
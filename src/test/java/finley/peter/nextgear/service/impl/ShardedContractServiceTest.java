@@ -0,0 +1,198 @@
+package finley.peter.nextgear.service.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+
+import finley.peter.nextgear.dao.ContractShards;
+import finley.peter.nextgear.dao.ShardContext;
+import finley.peter.nextgear.model.Contract;
+import finley.peter.nextgear.model.ContractField;
+import finley.peter.nextgear.model.ContractFilter;
+import finley.peter.nextgear.model.ContractStatistic;
+import finley.peter.nextgear.model.ContractSummary;
+import finley.peter.nextgear.model.ContractTombstone;
+import finley.peter.nextgear.model.ContractType;
+import finley.peter.nextgear.service.ContractBatchResult;
+import finley.peter.nextgear.service.ContractService;
+
+/**
+ * Unit tests for {@link ShardedContractService}. The unsharded service is a
+ * mock that answers according to the shard it is called on.
+ */
+public class ShardedContractServiceTest {
+	
+	private ContractService contractService = mock(ContractService.class);
+	
+	private ContractShards shards = new ContractShards(3);
+	
+	private ShardedContractService shardedService = new ShardedContractService(contractService, shards, 3);
+	
+	@After
+	public void after() {
+		shardedService.shutdown();
+	}
+	
+	/**
+	 * Contracts are created on the shard of their business number, and found
+	 * again on the shard encoded in their id.
+	 */
+	@Test
+	public void testSingleContractRouting() {
+		
+		when(contractService.create(any(), anyLong(), any(), eq(1000))).thenAnswer(invocation -> 
+				contract(ContractShards.encodeId(1, ShardContext.current(), shards.getCount()), invocation.getArgument(1)));
+		when(contractService.findOne(anyLong())).thenAnswer(invocation -> 
+				contract(invocation.getArgument(0), ShardContext.current()));
+		
+		for(long businessNumber = 1; businessNumber <= 10; businessNumber++) {
+			
+			Contract contract = shardedService.create("name", businessNumber, ContractType.SALES, 1000);
+			
+			assertThat(shards.shardOfId(contract.getId())).isEqualTo(shards.shardOf(businessNumber));
+			
+			// findOne's answer records the shard it was called on as the business number
+			assertThat(shardedService.findOne(contract.getId()).getBusinessNumber())
+					.isEqualTo(shards.shardOf(businessNumber));
+		}
+		
+		assertThat(ShardContext.current()).isEqualTo(0);
+	}
+	
+	/**
+	 * Pages from every shard are merged in id order and limited.
+	 */
+	@Test
+	public void testFindPage() {
+		
+		Map<Integer, List<Long>> shardIds = new ConcurrentHashMap<>();
+		shardIds.put(0, Arrays.asList(3L, 6L, 9L));
+		shardIds.put(1, Arrays.asList(1L, 4L));
+		shardIds.put(2, Arrays.asList(2L, 5L, 8L));
+		
+		ContractFilter filter = new ContractFilter();
+		
+		when(contractService.findPage(filter, ContractField.ALL, 0, 4)).thenAnswer(invocation -> slice(shardIds.get(ShardContext.current())));
+		
+		Slice<ContractSummary> page = shardedService.findPage(filter, ContractField.ALL, 0, 4);
+		
+		assertThat(page.getContent()).extracting("id").containsExactly(1L, 2L, 3L, 4L);
+		assertThat(page.hasNext()).isTrue();
+	}
+	
+	/**
+	 * Deletes from every shard are merged in id order, and the last page has
+	 * no next page.
+	 */
+	@Test
+	public void testFindDeleted() {
+		
+		Map<Integer, List<Long>> shardIds = new ConcurrentHashMap<>();
+		shardIds.put(0, Arrays.asList(3L));
+		shardIds.put(1, Arrays.asList(1L, 7L));
+		shardIds.put(2, Arrays.asList());
+		
+		Date since = new Date();
+		
+		when(contractService.findDeleted(since, 0, 4)).thenAnswer(invocation -> new SliceImpl<>(
+				shardIds.get(ShardContext.current()).stream()
+						.map(id -> new ContractTombstone(id, since))
+						.collect(Collectors.toList()), 
+				new PageRequest(0, 4), false));
+		
+		Slice<ContractTombstone> page = shardedService.findDeleted(since, 0, 4);
+		
+		assertThat(page.getContent()).extracting("id").containsExactly(1L, 3L, 7L);
+		assertThat(page.hasNext()).isFalse();
+	}
+	
+	/**
+	 * Batches are split by shard and the results returned in the order the
+	 * contracts were given.
+	 */
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testCreateAll() {
+		
+		when(contractService.createAll(anyList())).thenAnswer(invocation -> 
+				((List<Contract>) invocation.getArgument(0)).stream()
+						.map(contract -> {
+							assertThat(shards.shardOf(contract.getBusinessNumber())).isEqualTo(ShardContext.current());
+							return ContractBatchResult.created(contract);
+						})
+						.collect(Collectors.toList()));
+		
+		List<Contract> contracts = new ArrayList<>();
+		for(long businessNumber = 1; businessNumber <= 10; businessNumber++) {
+			contracts.add(contract(0, businessNumber));
+		}
+		
+		List<ContractBatchResult> results = shardedService.createAll(contracts);
+		
+		assertThat(results).extracting("contract").containsExactlyElementsOf(contracts);
+	}
+	
+	/**
+	 * Each shard's statistics are added together.
+	 */
+	@Test
+	public void testGetStatistics() {
+		
+		when(contractService.getStatistics()).thenAnswer(invocation -> Arrays.asList(
+				new ContractStatistic(null, ContractType.SALES, 1, 1000 * (ShardContext.current() + 1))));
+		
+		List<ContractStatistic> statistics = shardedService.getStatistics();
+		
+		assertThat(statistics).hasSize(1);
+		assertThat(statistics.get(0).getCount()).isEqualTo(3);
+		assertThat(statistics.get(0).getAmountRequestedTotal()).isEqualTo(6000);
+	}
+	
+	/**
+	 * Exceptions from a shard are rethrown as they are.
+	 */
+	@Test(expected=IllegalArgumentException.class)
+	public void testShardException() {
+		
+		when(contractService.findPage(any(), any(), anyLong(), eq(0)))
+				.thenThrow(new IllegalArgumentException("Page limit must be greater than 0"));
+		
+		shardedService.findPage(new ContractFilter(), ContractField.ALL, 0, 0);
+	}
+	
+	private static Slice<ContractSummary> slice(List<Long> ids) {
+		
+		List<ContractSummary> summaries = ids.stream()
+				.map(id -> new ContractSummary(id, "name", 1L, null, 1000, null, ContractType.SALES, 0L, null))
+				.collect(Collectors.toList());
+		
+		return new SliceImpl<>(summaries, new PageRequest(0, 4), false);
+	}
+	
+	private static Contract contract(long id, long businessNumber) {
+		
+		Contract contract = new Contract();
+		contract.setId(id);
+		contract.setBusinessNumber(businessNumber);
+		
+		return contract;
+	}
+}
@@ -0,0 +1,119 @@
+package finley.peter.nextgear.web.controller;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.util.FileSystemUtils;
+
+import finley.peter.nextgear.NextGearAssignmentApplication;
+import finley.peter.nextgear.model.Contract;
+import finley.peter.nextgear.model.ContractStatistic;
+import finley.peter.nextgear.model.ContractStatus;
+import finley.peter.nextgear.model.ContractType;
+import finley.peter.nextgear.service.ContractService;
+
+/**
+ * Integration test of the contract change log: contracts changed through the
+ * {@link ContractController} are restored from the log by a second application
+ * starting with an empty database.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment=WebEnvironment.RANDOM_PORT, properties={
+		"contracts.change-log.enabled=true",
+		"contracts.change-log.directory=" + ContractControllerChangeLogTest.DIRECTORY,
+		"spring.datasource.url=jdbc:h2:mem:changelog;DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE"
+})
+public class ContractControllerChangeLogTest {
+	
+	static final String DIRECTORY = "target/change-log-test";
+	
+	@Autowired
+	private TestRestTemplate restTemplate;
+	
+	@Autowired
+	private ContractService contractService;
+	
+	@BeforeClass
+	public static void beforeClass() {
+		FileSystemUtils.deleteRecursively(new File(DIRECTORY));
+	}
+
+	@Test
+	public void testRestore() {
+		
+		Contract first = createContract("logged first", ContractType.SALES, 1000);
+		Contract second = createContract("logged second", ContractType.SALES, 2000);
+		Contract express = createContract("logged express", ContractType.EXPRESS, 3000);
+		Contract deleted = createContract("logged deleted", ContractType.SALES, 4000);
+		
+		first.setName("logged first renamed");
+		first.setAmountRequested(1500);
+		restTemplate.put("/contracts/{0}", first, first.getId());
+		
+		contractService.decideAll(Collections.singleton(second.getId()), contract -> ContractStatus.DENIED);
+		
+		restTemplate.delete("/contracts/{0}", deleted.getId());
+		
+		List<ContractStatistic> statistics = contractService.getStatistics();
+		
+		try(ConfigurableApplicationContext restored = new SpringApplicationBuilder(NextGearAssignmentApplication.class)
+				.run("--server.port=0", "--spring.jmx.enabled=false",
+						"--contracts.change-log.enabled=true",
+						"--contracts.change-log.directory=" + DIRECTORY,
+						"--spring.datasource.url=jdbc:h2:mem:changelogrestored;DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE")) {
+						
+			ContractService restoredService = restored.getBean(ContractService.class);
+			
+			for(Contract contract : new Contract[] { first, second, express }) {
+				assertThat(fields(restoredService.findOne(contract.getId())))
+						.isEqualTo(fields(contractService.findOne(contract.getId())));
+			}
+			
+			assertThat(restoredService.findOne(deleted.getId())).isNull();
+			
+			assertThat(restoredService.getStatistics()).usingFieldByFieldElementComparator()
+					.containsExactlyInAnyOrder(statistics.toArray(new ContractStatistic[0]));
+					
+			// new ids carry on after the restored ones
+			assertThat(restoredService.create("after restore", 1, ContractType.SALES, 1000).getId())
+					.isGreaterThan(deleted.getId());
+		}
+	}
+
+	private static List<Object> fields(Contract contract) {
+		return Arrays.asList(contract.getId(), contract.getName(), contract.getBusinessNumber(),
+				contract.getActivationDate() == null ? null : contract.getActivationDate().getTime(),
+				contract.getAmountRequested(), contract.getStatus(), contract.getType(), contract.getVersion());
+	}
+
+	private Contract createContract(String name, ContractType type, int amountRequested) {
+		
+		Contract contract = new Contract();
+		contract.setName(name);
+		contract.setBusinessNumber(1);
+		contract.setType(type);
+		contract.setAmountRequested(amountRequested);
+		
+		ResponseEntity<Contract> response = restTemplate.postForEntity("/contracts", contract, Contract.class);
+		
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.CREATED);
+		
+		return response.getBody();
+	}
+}
@@ -1,24 +1,58 @@
 package finley.peter.nextgear.web.controller;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.embedded.LocalServerPort;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
 import org.springframework.boot.test.web.client.TestRestTemplate;
 import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.test.context.junit4.SpringRunner;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+import finley.peter.nextgear.analytics.ContractAggregate;
+import finley.peter.nextgear.feed.ContractChange;
+import finley.peter.nextgear.feed.ContractChangeFeed;
+import finley.peter.nextgear.json.ContractJsonComponent;
 import finley.peter.nextgear.model.Contract;
+import finley.peter.nextgear.model.ContractStatistic;
 import finley.peter.nextgear.model.ContractStatus;
+import finley.peter.nextgear.model.ContractSummary;
+import finley.peter.nextgear.model.ContractTombstone;
 import finley.peter.nextgear.model.ContractType;
+import finley.peter.nextgear.service.ContractApprovalService;
+import finley.peter.nextgear.service.ContractEvent;
 
 /**
  * Integration test that demonstrates/tests various uses of the
@@ -31,9 +65,27 @@ public class ContractControllerIntegrationTest {
 	@Autowired
 	private TestRestTemplate restTemplate;
 	
+	@Autowired
+	private ObjectMapper objectMapper;
+	
+	@Autowired
+	private ContractApprovalService approvalService;
+	
+	@Autowired
+	private ContractChangeFeed contractChangeFeed;
+	
+	@LocalServerPort
+	private int port;
+	
 	private static final ParameterizedTypeReference<List<Contract>> CONTRACT_LIST_PARAMETERIZED_TYPE_REF = 
 			new ParameterizedTypeReference<List<Contract>>() {};
 	
+	private static final ParameterizedTypeReference<List<ContractStatistic>> CONTRACT_STATISTIC_LIST_PARAMETERIZED_TYPE_REF = 
+			new ParameterizedTypeReference<List<ContractStatistic>>() {};
+	
+	private static final ParameterizedTypeReference<List<ContractChange>> CONTRACT_CHANGE_LIST_PARAMETERIZED_TYPE_REF = 
+			new ParameterizedTypeReference<List<ContractChange>>() {};
+	
 	@Test
 	public void testAll() {
 		
@@ -66,6 +118,775 @@ public class ContractControllerIntegrationTest {
 		assertThat(contracts).containsExactlyInAnyOrder(contract1, contract3);
 	}
 	
+	/**
+	 * Test walking the contract list a page at a time by following the
+	 * <code>Link</code> header.
+	 */
+	@Test
+	public void testPagination() {
+		
+		List<Contract> created = new ArrayList<>();
+		for(int i = 0; i < 5; i++) {
+			created.add(createContract("paged" + i, 2, ContractType.SALES, 1000));
+		}
+		
+		List<Contract> contracts = new ArrayList<>();
+		URI next = URI.create("/contracts?limit=2");
+		while(next != null) {
+			
+			ResponseEntity<List<Contract>> response = 
+					restTemplate.exchange(next.toString(), HttpMethod.GET, null, CONTRACT_LIST_PARAMETERIZED_TYPE_REF);
+			
+			assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+			assertThat(response.getBody().size()).isLessThanOrEqualTo(2);
+			
+			contracts.addAll(response.getBody());
+			next = nextPage(response.getHeaders());
+		}
+		
+		assertThat(contracts).containsAll(created);
+		assertThat(contracts).doesNotHaveDuplicates();
+		
+		created.forEach(contract -> deleteContract(contract.getId()));
+	}
+	
+	/**
+	 * Test filtering contracts by business number.
+	 */
+	@Test
+	public void testFilterByBusinessNumber() {
+		
+		Contract contract1 = createContract("business1", 7001, ContractType.EXPRESS, 1000);
+		Contract contract2 = createContract("business2", 7001, ContractType.SALES, 1000);
+		Contract other = createContract("other", 7002, ContractType.SALES, 1000);
+		
+		ResponseEntity<List<Contract>> response = restTemplate.exchange("/contracts?businessNumber={0}", HttpMethod.GET, null, 
+				CONTRACT_LIST_PARAMETERIZED_TYPE_REF, 7001);
+		
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(response.getBody()).containsExactly(contract1, contract2);
+		
+		response = restTemplate.exchange("/contracts?businessNumber={0}&status={1}", HttpMethod.GET, null, 
+				CONTRACT_LIST_PARAMETERIZED_TYPE_REF, 7001, ContractStatus.APPROVED);
+		
+		assertThat(response.getBody()).containsExactly(contract1);
+		
+		deleteContract(contract1.getId());
+		deleteContract(contract2.getId());
+		deleteContract(other.getId());
+	}
+	
+	/**
+	 * Test filtering contracts by type, amount range and activation date.
+	 */
+	@Test
+	public void testFilter() {
+		
+		Contract small = createContract("small", 8001, ContractType.EXPRESS, 100);
+		Contract large = createContract("large", 8001, ContractType.EXPRESS, 40000);
+		Contract sales = createContract("sales", 8001, ContractType.SALES, 40000);
+		
+		ResponseEntity<List<Contract>> response = restTemplate.exchange(
+				"/contracts?businessNumber={0}&type={1}&minAmountRequested={2}&maxAmountRequested={3}", HttpMethod.GET, null, 
+				CONTRACT_LIST_PARAMETERIZED_TYPE_REF, 8001, ContractType.EXPRESS, 1000, 50000);
+		
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(response.getBody()).containsExactly(large);
+		
+		// express contracts are activated on creation, sales contracts aren't
+		String today = new SimpleDateFormat("yyyy-MM-dd").format(new Date());
+		response = restTemplate.exchange("/contracts?businessNumber={0}&activatedFrom={1}", HttpMethod.GET, null, 
+				CONTRACT_LIST_PARAMETERIZED_TYPE_REF, 8001, today);
+		
+		assertThat(response.getBody()).containsExactly(small, large);
+		
+		response = restTemplate.exchange("/contracts?businessNumber={0}&activatedTo={1}", HttpMethod.GET, null, 
+				CONTRACT_LIST_PARAMETERIZED_TYPE_REF, 8001, today);
+		
+		assertThat(response.getBody()).isEmpty();
+		
+		deleteContract(small.getId());
+		deleteContract(large.getId());
+		deleteContract(sales.getId());
+	}
+	
+	/**
+	 * Test syncing only the contracts changed and deleted since a time.
+	 */
+	@Test
+	public void testDeltaSync() throws InterruptedException, UnsupportedEncodingException {
+		
+		Contract unchanged = createContract("unchanged", 12001, ContractType.SALES, 1000);
+		Contract updated = createContract("updated", 12001, ContractType.SALES, 1000);
+		Contract deleted = createContract("deleted", 12001, ContractType.SALES, 1000);
+		
+		assertThat(unchanged.getLastModified()).isNotNull();
+		
+		// the last sync, after the contracts were created
+		Thread.sleep(5);
+		Date since = new Date();
+		Thread.sleep(5);
+		
+		updated.setName("updated since");
+		updateContract(updated);
+		deleteContract(deleted.getId());
+		
+		// the offset's + must be encoded
+		String sinceParameter = URLEncoder.encode(new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ").format(since), "UTF-8");
+		
+		ResponseEntity<List<Contract>> response = restTemplate.exchange(
+				URI.create("/contracts?businessNumber=12001&modifiedSince=" + sinceParameter), 
+				HttpMethod.GET, null, CONTRACT_LIST_PARAMETERIZED_TYPE_REF);
+		
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(response.getBody()).extracting("id", "name").containsExactly(tuple(updated.getId(), "updated since"));
+		assertThat(response.getBody().get(0).getLastModified()).isAfterOrEqualsTo(since);
+		
+		deleteContract(unchanged.getId());
+		
+		// deletes come a page at a time
+		ResponseEntity<List<ContractTombstone>> deletes = restTemplate.exchange(
+				URI.create("/contracts/deleted?limit=1&since=" + sinceParameter), 
+				HttpMethod.GET, null, new ParameterizedTypeReference<List<ContractTombstone>>() {});
+		
+		assertThat(deletes.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(deletes.getBody()).extracting("id").containsExactly(unchanged.getId());
+		assertThat(deletes.getBody().get(0).getDeleted()).isAfterOrEqualsTo(since);
+		
+		deletes = restTemplate.exchange(nextPage(deletes.getHeaders()), HttpMethod.GET, null, 
+				new ParameterizedTypeReference<List<ContractTombstone>>() {});
+		
+		assertThat(deletes.getBody()).extracting("id").containsExactly(deleted.getId());
+		assertThat(nextPage(deletes.getHeaders())).isNull();
+		
+		ResponseEntity<ErrorInformation> error = restTemplate.getForEntity("/contracts/deleted", ErrorInformation.class);
+		assertThat(error.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+		
+		deleteContract(updated.getId());
+	}
+	
+	/**
+	 * Test that the first page of a sync has a watermark, set back by the
+	 * longest a transaction may take, to pass back on the next sync.
+	 */
+	@Test
+	public void testSyncWatermark() throws UnsupportedEncodingException, ParseException {
+		
+		long before = System.currentTimeMillis();
+		
+		Contract first = createContract("watermark1", 12002, ContractType.SALES, 1000);
+		Contract second = createContract("watermark2", 12002, ContractType.SALES, 1000);
+		
+		ResponseEntity<List<Contract>> response = restTemplate.exchange("/contracts?businessNumber=12002&limit=1", 
+				HttpMethod.GET, null, CONTRACT_LIST_PARAMETERIZED_TYPE_REF);
+		
+		String watermark = response.getHeaders().getFirst(ContractController.SYNC_WATERMARK);
+		assertThat(new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ").parse(watermark).getTime())
+				.isBetween(before - 60000, System.currentTimeMillis() - 60000);
+		
+		response = restTemplate.exchange(nextPage(response.getHeaders()), HttpMethod.GET, null, 
+				CONTRACT_LIST_PARAMETERIZED_TYPE_REF);
+		assertThat(response.getHeaders().getFirst(ContractController.SYNC_WATERMARK)).isNull();
+		
+		// changes stamped up to a transaction's length before the watermark was taken are synced
+		String watermarkParameter = URLEncoder.encode(watermark, "UTF-8");
+		response = restTemplate.exchange(URI.create("/contracts?businessNumber=12002&modifiedSince=" + watermarkParameter), 
+				HttpMethod.GET, null, CONTRACT_LIST_PARAMETERIZED_TYPE_REF);
+		assertThat(response.getBody()).extracting("id").containsExactly(first.getId(), second.getId());
+		
+		deleteContract(first.getId());
+		deleteContract(second.getId());
+		
+		ResponseEntity<List<ContractTombstone>> deletes = restTemplate.exchange(
+				URI.create("/contracts/deleted?since=" + watermarkParameter), 
+				HttpMethod.GET, null, new ParameterizedTypeReference<List<ContractTombstone>>() {});
+		assertThat(deletes.getBody()).extracting("id").contains(first.getId(), second.getId());
+		assertThat(deletes.getHeaders().getFirst(ContractController.SYNC_WATERMARK)).isNotNull();
+	}
+	
+	/**
+	 * Test conditional requests for a single contract using its ETag.
+	 */
+	@Test
+	public void testConditionalRequests() {
+		
+		Contract contract = createContract("conditional", 9, ContractType.SALES, 1000);
+		
+		ResponseEntity<Contract> response = restTemplate.getForEntity("/contracts/{0}", Contract.class, contract.getId());
+		String eTag = response.getHeaders().getETag();
+		
+		assertThat(eTag).isEqualTo("\"" + contract.getVersion() + "\"");
+		
+		// unchanged so not modified
+		HttpHeaders headers = new HttpHeaders();
+		headers.setIfNoneMatch(eTag);
+		response = restTemplate.exchange("/contracts/{0}", HttpMethod.GET, new HttpEntity<>(headers), Contract.class, contract.getId());
+		
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+		assertThat(response.getBody()).isNull();
+		
+		// update with the current ETag
+		contract.setName("conditional updated");
+		headers = new HttpHeaders();
+		headers.setIfMatch(eTag);
+		ResponseEntity<Void> updated = restTemplate.exchange("/contracts/{0}", HttpMethod.PUT, new HttpEntity<>(contract, headers), 
+				Void.class, contract.getId());
+		
+		assertThat(updated.getStatusCode()).isEqualTo(HttpStatus.NO_CONTENT);
+		assertThat(updated.getHeaders().getETag()).isNotEqualTo(eTag);
+		
+		// old ETag is now stale for both reads and writes
+		headers = new HttpHeaders();
+		headers.setIfNoneMatch(eTag);
+		response = restTemplate.exchange("/contracts/{0}", HttpMethod.GET, new HttpEntity<>(headers), Contract.class, contract.getId());
+		
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(response.getBody().getName()).isEqualTo("conditional updated");
+		
+		headers = new HttpHeaders();
+		headers.setIfMatch(eTag);
+		ResponseEntity<ErrorInformation> failed = restTemplate.exchange("/contracts/{0}", HttpMethod.PUT, new HttpEntity<>(contract, headers), 
+				ErrorInformation.class, contract.getId());
+		
+		assertThat(failed.getStatusCode()).isEqualTo(HttpStatus.PRECONDITION_FAILED);
+		
+		failed = restTemplate.exchange("/contracts/{0}", HttpMethod.DELETE, new HttpEntity<>(headers), 
+				ErrorInformation.class, contract.getId());
+		
+		assertThat(failed.getStatusCode()).isEqualTo(HttpStatus.PRECONDITION_FAILED);
+		
+		headers = new HttpHeaders();
+		headers.setIfMatch(updated.getHeaders().getETag());
+		ResponseEntity<Void> deleted = restTemplate.exchange("/contracts/{0}", HttpMethod.DELETE, new HttpEntity<>(headers), 
+				Void.class, contract.getId());
+		
+		assertThat(deleted.getStatusCode()).isEqualTo(HttpStatus.NO_CONTENT);
+	}
+	
+	/**
+	 * Test conditional requests for a page of contracts.
+	 */
+	@Test
+	public void testConditionalListRequests() {
+		
+		Contract contract = createContract("conditional list", 10, ContractType.SALES, 1000);
+		
+		ResponseEntity<String> response = restTemplate.getForEntity("/contracts?businessNumber={0}", String.class, 10);
+		String eTag = response.getHeaders().getETag();
+		
+		assertThat(eTag).isNotNull();
+		
+		HttpHeaders headers = new HttpHeaders();
+		headers.setIfNoneMatch(eTag);
+		response = restTemplate.exchange("/contracts?businessNumber={0}", HttpMethod.GET, new HttpEntity<>(headers), String.class, 10);
+		
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+		
+		contract.setName("conditional list updated");
+		updateContract(contract);
+		
+		response = restTemplate.exchange("/contracts?businessNumber={0}", HttpMethod.GET, new HttpEntity<>(headers), String.class, 10);
+		
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(response.getHeaders().getETag()).isNotEqualTo(eTag);
+		
+		deleteContract(contract.getId());
+	}
+	
+	/**
+	 * Test that a page of contracts is sent as Smile to clients that prefer
+	 * it, with the same content as the default JSON but its own ETag.
+	 */
+	@Test
+	public void testSmile() throws IOException {
+		
+		Contract contract1 = createContract("smile1", 13001, ContractType.SALES, 1000);
+		Contract contract2 = createContract("smile2", 13001, ContractType.EXPRESS, 2000);
+		
+		ResponseEntity<byte[]> json = restTemplate.getForEntity("/contracts?businessNumber={0}", byte[].class, 13001);
+		
+		assertThat(json.getHeaders().getContentType().isCompatibleWith(MediaType.APPLICATION_JSON)).isTrue();
+		
+		HttpHeaders headers = new HttpHeaders();
+		headers.set(HttpHeaders.ACCEPT, "application/json;q=0.5, " + ContractController.APPLICATION_SMILE_VALUE);
+		ResponseEntity<byte[]> smile = restTemplate.exchange("/contracts?businessNumber={0}", HttpMethod.GET, 
+				new HttpEntity<>(headers), byte[].class, 13001);
+		
+		assertThat(smile.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(smile.getHeaders().getContentType().isCompatibleWith(ContractController.APPLICATION_SMILE)).isTrue();
+		assertThat(smile.getHeaders().getVary()).contains(HttpHeaders.ACCEPT);
+		assertThat(smile.getHeaders().getETag()).isNotEqualTo(json.getHeaders().getETag());
+		
+		List<Contract> fromSmile = new ObjectMapper(new SmileFactory()).readValue(smile.getBody(), 
+				objectMapper.getTypeFactory().constructCollectionType(List.class, Contract.class));
+		List<Contract> fromJson = objectMapper.readValue(json.getBody(), 
+				objectMapper.getTypeFactory().constructCollectionType(List.class, Contract.class));
+		
+		assertThat(fromSmile).containsExactly(contract1, contract2);
+		assertThat(fromSmile).usingFieldByFieldElementComparator().containsExactlyElementsOf(fromJson);
+		
+		// each representation is only matched by its own ETag
+		headers.setIfNoneMatch(json.getHeaders().getETag());
+		smile = restTemplate.exchange("/contracts?businessNumber={0}", HttpMethod.GET, new HttpEntity<>(headers), 
+				byte[].class, 13001);
+		
+		assertThat(smile.getStatusCode()).isEqualTo(HttpStatus.OK);
+		
+		deleteContract(contract1.getId());
+		deleteContract(contract2.getId());
+	}
+	
+	/**
+	 * Test that only the fields asked for are returned, for lists and single
+	 * contracts, that each set of fields has its own ETag and that unknown
+	 * fields are rejected.
+	 */
+	@Test
+	public void testFields() {
+		
+		Contract contract1 = createContract("fields1", 15001, ContractType.SALES, 1000);
+		Contract contract2 = createContract("fields2", 15001, ContractType.EXPRESS, 2000);
+		
+		ResponseEntity<List<Map<String, Object>>> sparse = restTemplate.exchange(
+				"/contracts?businessNumber={0}&fields={1}&limit=1", HttpMethod.GET, null, 
+				new ParameterizedTypeReference<List<Map<String, Object>>>() {}, 15001, "id, status,amountRequested");
+		
+		assertThat(sparse.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(sparse.getBody()).hasSize(1);
+		assertThat(sparse.getBody().get(0)).containsOnlyKeys("id", "status", "amountRequested")
+				.containsEntry("amountRequested", 1000)
+				.containsEntry("status", null);
+		
+		// the next page has the same fields
+		sparse = restTemplate.exchange(nextPage(sparse.getHeaders()), HttpMethod.GET, null, 
+				new ParameterizedTypeReference<List<Map<String, Object>>>() {});
+		
+		assertThat(sparse.getBody()).hasSize(1);
+		assertThat(sparse.getBody().get(0)).containsOnlyKeys("id", "status", "amountRequested")
+				.containsEntry("status", ContractStatus.APPROVED.name());
+		
+		ResponseEntity<String> full = restTemplate.getForEntity("/contracts?businessNumber={0}&limit=1&next={1}", 
+				String.class, 15001, ContractCursor.encode(contract1.getId()));
+		
+		assertThat(full.getHeaders().getETag()).isNotEqualTo(sparse.getHeaders().getETag());
+		
+		ResponseEntity<Map<String, Object>> single = restTemplate.exchange("/contracts/{0}?fields={1}", 
+				HttpMethod.GET, null, new ParameterizedTypeReference<Map<String, Object>>() {}, contract1.getId(), "name");
+		
+		assertThat(single.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(single.getBody()).containsOnlyKeys("name").containsEntry("name", "fields1");
+		assertThat(single.getHeaders().getETag()).isNotEqualTo(ContractETags.of(contract1));
+		
+		// any representation's ETag may be used to update the contract
+		HttpHeaders headers = new HttpHeaders();
+		headers.setIfMatch(single.getHeaders().getETag());
+		contract1.setName("fields1 updated");
+		ResponseEntity<Void> updated = restTemplate.exchange("/contracts/{0}", HttpMethod.PUT, 
+				new HttpEntity<>(contract1, headers), Void.class, contract1.getId());
+		
+		assertThat(updated.getStatusCode()).isEqualTo(HttpStatus.NO_CONTENT);
+		
+		ResponseEntity<ErrorInformation> unknown = restTemplate.getForEntity("/contracts?fields={0}", 
+				ErrorInformation.class, "id,secret");
+		
+		assertThat(unknown.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+		assertThat(unknown.getBody().getMessage()).contains("secret");
+		
+		unknown = restTemplate.getForEntity("/contracts/{0}?fields=", ErrorInformation.class, contract2.getId());
+		
+		assertThat(unknown.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+		
+		deleteContract(contract1.getId());
+		deleteContract(contract2.getId());
+	}
+	
+	/**
+	 * Test that a long page of contracts is gzipped for clients that accept it,
+	 * and written by the hand-written contract serializer.
+	 */
+	@Test
+	public void testCompression() throws IOException {
+		
+		assertThat(objectMapper.getSerializerProviderInstance().findValueSerializer(ContractSummary.class))
+				.isInstanceOf(ContractJsonComponent.ContractSummarySerializer.class);
+		
+		List<Contract> created = new ArrayList<>();
+		for(int i = 0; i < 20; i++) {
+			created.add(createContract("compressed" + i, 14001, ContractType.SALES, 1000 + i));
+		}
+		
+		HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + port 
+				+ "/contracts?businessNumber=14001").openConnection();
+		connection.setRequestProperty(HttpHeaders.ACCEPT_ENCODING, "gzip");
+		try(InputStream body = new GZIPInputStream(connection.getInputStream())) {
+			
+			assertThat(connection.getHeaderField(HttpHeaders.CONTENT_ENCODING)).isEqualTo("gzip");
+			
+			List<Contract> contracts = objectMapper.readValue(body, 
+					objectMapper.getTypeFactory().constructCollectionType(List.class, Contract.class));
+			assertThat(contracts).containsExactlyElementsOf(created);
+		} finally {
+			connection.disconnect();
+		}
+		
+		restTemplate.delete("/contracts?businessNumber={0}", 14001);
+	}
+	
+	/**
+	 * Test that a 400 error is returned for a malformed page cursor.
+	 */
+	@Test
+	public void testInvalidCursor() {
+		
+		ResponseEntity<ErrorInformation> response = restTemplate.getForEntity("/contracts?next={0}", ErrorInformation.class, "bogus");
+		
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+	}
+	
+	/**
+	 * Test exporting all contracts as newline-delimited JSON.
+	 */
+	@Test
+	public void testExport() throws IOException {
+		
+		Contract contract1 = createContract("exported1", 3, ContractType.EXPRESS, 1000);
+		Contract contract2 = createContract("exported2", 3, ContractType.SALES, 1000);
+		
+		ResponseEntity<String> response = restTemplate.getForEntity("/contracts/export", String.class);
+		
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(response.getHeaders().getContentType().toString()).isEqualTo(ContractController.APPLICATION_NDJSON_VALUE);
+		assertThat(response.getBody()).endsWith("\n");
+		
+		List<Contract> contracts = new ArrayList<>();
+		for(String line : response.getBody().split("\n")) {
+			contracts.add(objectMapper.readValue(line, Contract.class));
+		}
+		
+		assertThat(contracts).contains(contract1, contract2);
+		
+		deleteContract(contract1.getId());
+		deleteContract(contract2.getId());
+	}
+	
+	/**
+	 * Test creating several contracts in one request where one of them is
+	 * invalid.
+	 */
+	@Test
+	public void testCreateBatch() {
+		
+		Contract valid = new Contract();
+		valid.setName("batch1");
+		valid.setBusinessNumber(4);
+		valid.setType(ContractType.EXPRESS);
+		valid.setAmountRequested(1000);
+		
+		Contract invalid = new Contract();
+		invalid.setName("batch2");
+		invalid.setBusinessNumber(4);
+		invalid.setType(ContractType.EXPRESS);
+		invalid.setAmountRequested(50000);
+		
+		ResponseEntity<List<BatchItemResult>> response = restTemplate.exchange("/contracts/batch", HttpMethod.POST, 
+				new HttpEntity<>(Arrays.asList(valid, invalid)), new ParameterizedTypeReference<List<BatchItemResult>>() {});
+		
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+		
+		List<BatchItemResult> results = response.getBody();
+		assertThat(results).hasSize(2);
+		
+		BatchItemResult created = results.get(0);
+		assertThat(created.getStatus()).isEqualTo(HttpStatus.CREATED.value());
+		assertThat(created.getContract().getStatus()).isEqualTo(ContractStatus.APPROVED);
+		assertThat(getContract(created.getContract().getId()).getName()).isEqualTo("batch1");
+		
+		BatchItemResult failed = results.get(1);
+		assertThat(failed.getStatus()).isEqualTo(HttpStatus.BAD_REQUEST.value());
+		assertThat(failed.getContract()).isNull();
+		assertThat(failed.getError().getMessage()).isEqualTo("EXPRESS contract amounts must be less than 50000");
+		
+		deleteContract(created.getContract().getId());
+	}
+	
+	/**
+	 * Test that statistics follow contracts as they are created, updated and
+	 * deleted, and agree with a rebuild from the contracts.
+	 */
+	@Test
+	public void testStatistics() {
+		
+		ContractStatistic approvedExpress = getStatistic(ContractStatus.APPROVED, ContractType.EXPRESS);
+		ContractStatistic pendingSales = getStatistic(null, ContractType.SALES);
+		
+		Contract express = createContract("stats1", 6, ContractType.EXPRESS, 1000);
+		Contract sales = createContract("stats2", 6, ContractType.SALES, 60000);
+		
+		sales.setAmountRequested(70000);
+		updateContract(sales);
+		
+		assertThat(getStatistic(ContractStatus.APPROVED, ContractType.EXPRESS).getCount()).isEqualTo(approvedExpress.getCount() + 1);
+		assertThat(getStatistic(ContractStatus.APPROVED, ContractType.EXPRESS).getAmountRequestedTotal())
+				.isEqualTo(approvedExpress.getAmountRequestedTotal() + 1000);
+		assertThat(getStatistic(null, ContractType.SALES).getCount()).isEqualTo(pendingSales.getCount() + 1);
+		assertThat(getStatistic(null, ContractType.SALES).getAmountRequestedTotal())
+				.isEqualTo(pendingSales.getAmountRequestedTotal() + 70000);
+		
+		ResponseEntity<List<ContractStatistic>> rebuilt = restTemplate.exchange("/contracts/stats/rebuild", HttpMethod.POST, null, 
+				CONTRACT_STATISTIC_LIST_PARAMETERIZED_TYPE_REF);
+		
+		assertThat(rebuilt.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(rebuilt.getBody()).usingFieldByFieldElementComparator().containsExactlyInAnyOrder(getStatistics().toArray(new ContractStatistic[0]));
+		
+		deleteContract(express.getId());
+		deleteContract(sales.getId());
+		
+		assertThat(getStatistic(ContractStatus.APPROVED, ContractType.EXPRESS)).isEqualToComparingFieldByField(approvedExpress);
+		assertThat(getStatistic(null, ContractType.SALES)).isEqualToComparingFieldByField(pendingSales);
+	}
+	
+	/**
+	 * Test that contract cache counters are published on the metrics endpoint.
+	 */
+	@Test
+	public void testCacheMetrics() {
+		
+		Contract contract = createContract("cached", 5, ContractType.EXPRESS, 1000);
+		getContract(contract.getId());
+		
+		ResponseEntity<Map<String, Object>> response = restTemplate.exchange("/metrics", HttpMethod.GET, null, 
+				new ParameterizedTypeReference<Map<String, Object>>() {});
+		
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(response.getBody()).containsKeys("cache.contracts.hits", "cache.contracts.misses", "cache.contracts.evictions");
+		assertThat(((Number) response.getBody().get("cache.contracts.hits")).longValue()).isGreaterThan(0);
+		
+		deleteContract(contract.getId());
+	}
+	
+	/**
+	 * Test that the actuator endpoints other than metrics still require
+	 * authentication.
+	 */
+	@Test
+	public void testSensitiveEndpointsProtected() {
+		
+		for(String endpoint : Arrays.asList("/env", "/configprops", "/dump", "/trace")) {
+			assertThat(restTemplate.getForEntity(endpoint, String.class).getStatusCode())
+					.as(endpoint)
+					.isEqualTo(HttpStatus.UNAUTHORIZED);
+		}
+	}
+	
+	/**
+	 * Test that latency timers and error counters are published on the metrics
+	 * endpoint.
+	 */
+	@Test
+	public void testLatencyMetrics() {
+		
+		restTemplate.getForEntity("/contracts/{0}", ErrorInformation.class, 999);
+		
+		ResponseEntity<Map<String, Object>> response = restTemplate.exchange("/metrics", HttpMethod.GET, null, 
+				new ParameterizedTypeReference<Map<String, Object>>() {});
+		
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(response.getBody()).containsKeys(
+				"timer.controller.ContractController.getContract.snapshot.99thPercentile",
+				"timer.service.ContractService.findOne.snapshot.99thPercentile",
+				"timer.repository.ContractRepository.findOne.snapshot.99thPercentile",
+				"counter.contracts.errors.not-found",
+				"executor.database.active",
+				"executor.database.queued",
+				"executor.database.wait.snapshot.99thPercentile");
+	}
+	
+	/**
+	 * Test that an update changes the amount of a contract with no status only,
+	 * and that updating a missing contract is a 400 error.
+	 */
+	@Test
+	public void testUpdate() {
+		
+		Contract express = createContract("update1", 10, ContractType.EXPRESS, 1000);
+		Contract sales = createContract("update2", 10, ContractType.SALES, 1000);
+		
+		express.setName("update1 updated");
+		express.setAmountRequested(2000);
+		updateContract(express);
+		
+		sales.setAmountRequested(2000);
+		updateContract(sales);
+		
+		assertThat(getContract(express.getId()).getName()).isEqualTo("update1 updated");
+		assertThat(getContract(express.getId()).getAmountRequested()).isEqualTo(1000);
+		assertThat(getContract(sales.getId()).getAmountRequested()).isEqualTo(2000);
+		assertThat(getContract(sales.getId()).getVersion()).isEqualTo(sales.getVersion() + 1);
+		
+		ResponseEntity<ErrorInformation> missing = restTemplate.exchange("/contracts/{0}", HttpMethod.PUT, new HttpEntity<>(sales), 
+				ErrorInformation.class, 999);
+		
+		assertThat(missing.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+		
+		deleteContract(express.getId());
+		deleteContract(sales.getId());
+	}
+	
+	/**
+	 * Test deleting contracts by id and by filter, and that statistics follow.
+	 */
+	@Test
+	public void testBulkDelete() {
+		
+		ContractStatistic pendingSales = getStatistic(null, ContractType.SALES);
+		
+		Contract contract1 = createContract("bulk1", 11, ContractType.SALES, 1000);
+		Contract contract2 = createContract("bulk2", 11, ContractType.SALES, 2000);
+		Contract contract3 = createContract("bulk3", 11, ContractType.SALES, 3000);
+		
+		ResponseEntity<DeleteResult> response = restTemplate.exchange("/contracts?id={0}&id={1}&id={2}", HttpMethod.DELETE, null, 
+				DeleteResult.class, contract1.getId(), contract2.getId(), 999);
+		
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(response.getBody().getDeleted()).isEqualTo(2);
+		
+		ResponseEntity<ErrorInformation> missing = restTemplate.getForEntity("/contracts/{0}", ErrorInformation.class, contract1.getId());
+		assertThat(missing.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+		
+		response = restTemplate.exchange("/contracts?businessNumber=11", HttpMethod.DELETE, null, DeleteResult.class);
+		
+		assertThat(response.getBody().getDeleted()).isEqualTo(1);
+		assertThat(getStatistic(null, ContractType.SALES)).isEqualToComparingFieldByField(pendingSales);
+		
+		// deleting everything by accident is not allowed, nor is mixing ids and a filter
+		ResponseEntity<ErrorInformation> error = restTemplate.exchange("/contracts", HttpMethod.DELETE, null, ErrorInformation.class);
+		assertThat(error.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+		
+		error = restTemplate.exchange("/contracts?id=1&businessNumber=11", HttpMethod.DELETE, null, ErrorInformation.class);
+		assertThat(error.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+		
+		// single deletes of a missing contract are not found
+		error = restTemplate.exchange("/contracts/{0}", HttpMethod.DELETE, null, ErrorInformation.class, contract3.getId());
+		assertThat(error.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+	}
+	
+	/**
+	 * Test that analytics follow contracts as they are created and deleted.
+	 */
+	@Test
+	public void testAnalytics() {
+		
+		ContractAggregate pendingSales = getPendingSalesAggregate();
+		
+		Contract contract1 = createContract("analytics1", 12, ContractType.SALES, 1000);
+		Contract contract2 = createContract("analytics2", 12, ContractType.SALES, 3000);
+		
+		ContractAggregate updated = getPendingSalesAggregate();
+		assertThat(updated.getCount()).isEqualTo(pendingSales.getCount() + 2);
+		assertThat(updated.getSum()).isEqualTo(pendingSales.getSum() + 4000);
+		assertThat(updated.getPercentiles()).containsOnlyKeys("p50", "p90", "p99");
+		
+		deleteContract(contract1.getId());
+		deleteContract(contract2.getId());
+		
+		assertThat(getPendingSalesAggregate()).isEqualToComparingFieldByField(pendingSales);
+		
+		ResponseEntity<ErrorInformation> error = restTemplate.getForEntity("/contracts/analytics?groupBy=colour", ErrorInformation.class);
+		assertThat(error.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+	}
+	
+	/**
+	 * Test that changes are followed from an offset by long polling and as
+	 * server-sent events.
+	 */
+	@Test
+	public void testChanges() throws IOException {
+		
+		long offset = contractChangeFeed.getLastOffset();
+		
+		// nothing yet, the poll times out empty
+		assertThat(restTemplate.exchange("/contracts/changes?after={0}&wait=100", HttpMethod.GET, null, 
+				CONTRACT_CHANGE_LIST_PARAMETERIZED_TYPE_REF, offset).getBody()).isEmpty();
+		
+		Contract contract = createContract("changes", 13, ContractType.SALES, 1000);
+		deleteContract(contract.getId());
+		
+		List<ContractChange> changes = restTemplate.exchange("/contracts/changes?after={0}&wait=1000", HttpMethod.GET, null, 
+				CONTRACT_CHANGE_LIST_PARAMETERIZED_TYPE_REF, offset).getBody();
+		assertThat(changes).extracting("offset", "type", "contract.id").containsExactly(
+				tuple(offset + 1, ContractEvent.Type.CREATED, contract.getId()),
+				tuple(offset + 2, ContractEvent.Type.DELETED, contract.getId()));
+		assertThat(changes.get(0).getContract().getName()).isEqualTo("changes");
+		
+		// resuming a stream after the create
+		HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + port + "/contracts/changes").openConnection();
+		connection.setRequestProperty(HttpHeaders.ACCEPT, MediaType.TEXT_EVENT_STREAM_VALUE);
+		connection.setRequestProperty("Last-Event-ID", Long.toString(offset + 1));
+		connection.setReadTimeout(5000);
+		try(BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8))) {
+			
+			assertThat(reader.readLine()).isEqualTo("id:" + (offset + 2));
+			assertThat(reader.readLine()).isEqualTo("event:DELETED");
+			
+			ContractChange change = objectMapper.readValue(reader.readLine().substring("data:".length()), ContractChange.class);
+			assertThat(change.getContract().getId()).isEqualTo(contract.getId());
+		} finally {
+			connection.disconnect();
+		}
+		
+		ResponseEntity<ErrorInformation> error = restTemplate.getForEntity("/contracts/changes?after={0}", 
+				ErrorInformation.class, offset + 1000);
+		assertThat(error.getStatusCode()).isEqualTo(HttpStatus.GONE);
+		
+		connection = (HttpURLConnection) new URL("http://localhost:" + port + "/contracts/changes").openConnection();
+		connection.setRequestProperty(HttpHeaders.ACCEPT, MediaType.TEXT_EVENT_STREAM_VALUE);
+		connection.setRequestProperty("Last-Event-ID", Long.toString(offset + 1000));
+		try {
+			assertThat(connection.getResponseCode()).isEqualTo(HttpStatus.GONE.value());
+		} finally {
+			connection.disconnect();
+		}
+	}
+	
+	/**
+	 * Test that the approval service decides pending SALES contracts, and that
+	 * cached contracts, statistics and analytics follow.
+	 */
+	@Test
+	public void testApproval() {
+		
+		// other tests may leave undecided contracts, which are decided too
+		ContractStatistic pendingSales = getStatistic(null, ContractType.SALES);
+		ContractStatistic deniedSales = getStatistic(ContractStatus.DENIED, ContractType.SALES);
+		
+		Contract approve = createContract("approval1", 13, ContractType.SALES, 1000);
+		Contract deny = createContract("approval2", 13, ContractType.SALES, 200000);
+		
+		// cache them as undecided
+		getContract(approve.getId());
+		getContract(deny.getId());
+		
+		assertThat(approvalService.decidePending()).isEqualTo(pendingSales.getCount() + 2);
+		
+		Contract approved = getContract(approve.getId());
+		assertThat(approved.getStatus()).isEqualTo(ContractStatus.APPROVED);
+		assertThat(approved.getActivationDate()).isNotNull();
+		assertThat(approved.getVersion()).isEqualTo(approve.getVersion() + 1);
+		assertThat(getContract(deny.getId()).getStatus()).isEqualTo(ContractStatus.DENIED);
+		
+		assertThat(getStatistic(null, ContractType.SALES).getCount()).isEqualTo(0);
+		assertThat(getStatistic(null, ContractType.SALES).getAmountRequestedTotal()).isEqualTo(0);
+		assertThat(getStatistic(ContractStatus.DENIED, ContractType.SALES).getAmountRequestedTotal())
+				.isGreaterThanOrEqualTo(deniedSales.getAmountRequestedTotal() + 200000);
+		assertThat(getPendingSalesAggregate().getCount()).isEqualTo(0);
+		
+		// nothing left to decide
+		assertThat(approvalService.decidePending()).isEqualTo(0);
+		
+		deleteContract(approve.getId());
+		deleteContract(deny.getId());
+	}
+	
 	/**
 	 * Test that a 400 error is returned when attempting to create a contract with
 	 * EXPRESS type with an amount over the limit.
@@ -140,6 +961,35 @@ public class ContractControllerIntegrationTest {
 		return getContracts(null);
 	}
 	
+	private List<ContractStatistic> getStatistics() {
+		
+		ResponseEntity<List<ContractStatistic>> response = 
+				restTemplate.exchange("/contracts/stats", HttpMethod.GET, null, CONTRACT_STATISTIC_LIST_PARAMETERIZED_TYPE_REF);
+		
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+		
+		return response.getBody();
+	}
+	
+	private ContractStatistic getStatistic(ContractStatus status, ContractType type) {
+		
+		return getStatistics().stream()
+				.filter(statistic -> statistic.getStatus() == status && statistic.getType() == type)
+				.findFirst()
+				.get();
+	}
+	
+	private URI nextPage(HttpHeaders headers) {
+		
+		String link = headers.getFirst(HttpHeaders.LINK);
+		if(link == null) {
+			return null;
+		}
+		
+		URI uri = URI.create(link.substring(link.indexOf('<') + 1, link.indexOf('>')));
+		return URI.create(uri.getRawPath() + "?" + uri.getRawQuery());
+	}
+	
 	private Contract getContract(long id) {
 
 		ResponseEntity<Contract> response = restTemplate.getForEntity("/contracts/{0}", Contract.class, id);
@@ -149,6 +999,19 @@ public class ContractControllerIntegrationTest {
 		return response.getBody();
 	}
 	
+	private ContractAggregate getPendingSalesAggregate() {
+		
+		ResponseEntity<List<ContractAggregate>> response = restTemplate.exchange("/contracts/analytics?groupBy=type,status", 
+				HttpMethod.GET, null, new ParameterizedTypeReference<List<ContractAggregate>>() {});
+		
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+		
+		return response.getBody().stream()
+				.filter(aggregate -> aggregate.getType() == ContractType.SALES && "NONE".equals(aggregate.getStatus()))
+				.findFirst()
+				.orElseGet(ContractAggregate::new);
+	}
+	
 	private void updateContract(Contract contract) {
 		
 		restTemplate.put("/contracts/{0}", contract, contract.getId());
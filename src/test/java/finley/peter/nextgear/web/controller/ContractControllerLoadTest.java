@@ -0,0 +1,267 @@
+package finley.peter.nextgear.web.controller;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import finley.peter.nextgear.model.Contract;
+import finley.peter.nextgear.model.ContractType;
+
+/**
+ * Load test of the {@link ContractController} RESTful API. A number of
+ * concurrent clients run a weighted mix of create, get, list, update and
+ * delete requests for a fixed time after a warmup, and the throughput and
+ * latency distribution of each operation is reported.
+ * <p>
+ * Only runs when the <code>loadtest.enabled</code> system property is true,
+ * which the <code>loadtest</code> Maven profile sets. It can be configured
+ * with the following system properties:
+ * <ul>
+ * <li><code>loadtest.clients</code> - number of concurrent clients (default 8)</li>
+ * <li><code>loadtest.warmup</code> - warmup time in seconds (default 5)</li>
+ * <li><code>loadtest.duration</code> - measured time in seconds (default 30)</li>
+ * <li><code>loadtest.mix</code> - relative weight of each operation (default
+ * <code>create=20,get=50,list=20,update=5,delete=5</code>)</li>
+ * </ul>
+ * The full latency distribution of each operation is written to
+ * <code>target/loadtest/&lt;operation&gt;.hgrm</code>.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment=WebEnvironment.RANDOM_PORT)
+public class ContractControllerLoadTest {
+
+	private static final int CONTRACTS_PER_CLIENT = 100;
+	
+	private static final long MAX_LATENCY_MICROS = TimeUnit.MINUTES.toMicros(1);
+	
+	private enum Operation {
+		CREATE, GET, LIST, UPDATE, DELETE
+	}
+	
+	@Autowired
+	private TestRestTemplate restTemplate;
+	
+	private int clients;
+	private long warmupSeconds;
+	private long durationSeconds;
+	private Map<Operation, Integer> mix;
+	
+	private final Map<Operation, Histogram> latencies = new EnumMap<>(Operation.class);
+	private final Map<Operation, AtomicLong> errors = new EnumMap<>(Operation.class);
+	
+	@Before
+	public void before() {
+		
+		assumeTrue(Boolean.getBoolean("loadtest.enabled"));
+		
+		clients = Integer.getInteger("loadtest.clients", 8);
+		warmupSeconds = Long.getLong("loadtest.warmup", 5);
+		durationSeconds = Long.getLong("loadtest.duration", 30);
+		mix = parseMix(System.getProperty("loadtest.mix", "create=20,get=50,list=20,update=5,delete=5"));
+		
+		for(Operation operation : Operation.values()) {
+			latencies.put(operation, new ConcurrentHistogram(MAX_LATENCY_MICROS, 3));
+			errors.put(operation, new AtomicLong());
+		}
+	}
+	
+	@Test
+	public void testLoad() throws Exception {
+		
+		ExecutorService executor = Executors.newFixedThreadPool(clients);
+		try {
+			
+			run(executor, warmupSeconds, false);
+			run(executor, durationSeconds, true);
+			
+		} finally {
+			executor.shutdownNow();
+		}
+		
+		report();
+		
+		for(Operation operation : Operation.values()) {
+			assertThat(errors.get(operation).get()).as("%s errors", operation).isEqualTo(0);
+		}
+	}
+	
+	/**
+	 * Run all clients for the given time, waiting for them to finish.
+	 */
+	private void run(ExecutorService executor, long seconds, boolean record) throws Exception {
+		
+		long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+		
+		List<Future<?>> futures = new ArrayList<>();
+		for(int i = 0; i < clients; i++) {
+			futures.add(executor.submit(() -> runClient(end, record)));
+		}
+		
+		for(Future<?> future : futures) {
+			future.get();
+		}
+	}
+	
+	private void runClient(long end, boolean record) {
+		
+		Random random = ThreadLocalRandom.current();
+		
+		// each client works on its own contracts so they don't delete each other's
+		List<Long> ids = new ArrayList<>();
+		for(int i = 0; i < CONTRACTS_PER_CLIENT; i++) {
+			ids.add(create(random).getBody().getId());
+		}
+		
+		while(System.nanoTime() < end) {
+			
+			Operation operation = nextOperation(random);
+			if(ids.isEmpty() && operation != Operation.LIST) {
+				operation = Operation.CREATE;
+			}
+			
+			long start = System.nanoTime();
+			ResponseEntity<?> response = execute(operation, ids, random);
+			long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+			
+			if(record) {
+				latencies.get(operation).recordValue(Math.min(micros, MAX_LATENCY_MICROS));
+				if(!response.getStatusCode().is2xxSuccessful()) {
+					errors.get(operation).incrementAndGet();
+				}
+			}
+		}
+		
+		ids.forEach(id -> restTemplate.delete("/contracts/{0}", id));
+	}
+	
+	private ResponseEntity<?> execute(Operation operation, List<Long> ids, Random random) {
+		
+		switch(operation) {
+		case CREATE:
+			ResponseEntity<Contract> created = create(random);
+			if(created.getStatusCode().is2xxSuccessful()) {
+				ids.add(created.getBody().getId());
+			}
+			return created;
+			
+		case GET:
+			return restTemplate.getForEntity("/contracts/{0}", String.class, randomId(ids, random));
+			
+		case LIST:
+			return restTemplate.getForEntity("/contracts?limit=100", String.class);
+			
+		case UPDATE:
+			Contract contract = newContract(random);
+			long id = randomId(ids, random);
+			return restTemplate.exchange("/contracts/{0}", HttpMethod.PUT, new HttpEntity<>(contract), Void.class, id);
+			
+		case DELETE:
+			long deleted = ids.remove(random.nextInt(ids.size()));
+			return restTemplate.exchange("/contracts/{0}", HttpMethod.DELETE, null, Void.class, deleted);
+			
+		default:
+			throw new IllegalStateException("Unknown operation " + operation);
+		}
+	}
+	
+	private ResponseEntity<Contract> create(Random random) {
+		return restTemplate.postForEntity("/contracts", newContract(random), Contract.class);
+	}
+	
+	private Contract newContract(Random random) {
+		
+		Contract contract = new Contract();
+		contract.setName("load");
+		contract.setBusinessNumber(random.nextInt(1000));
+		contract.setType(random.nextBoolean() ? ContractType.EXPRESS : ContractType.SALES);
+		contract.setAmountRequested(1 + random.nextInt(49999));
+		return contract;
+	}
+	
+	private long randomId(List<Long> ids, Random random) {
+		return ids.get(random.nextInt(ids.size()));
+	}
+	
+	private Operation nextOperation(Random random) {
+		
+		int total = mix.values().stream().mapToInt(Integer::intValue).sum();
+		int value = random.nextInt(total);
+		
+		for(Map.Entry<Operation, Integer> entry : mix.entrySet()) {
+			value -= entry.getValue();
+			if(value < 0) {
+				return entry.getKey();
+			}
+		}
+		
+		throw new IllegalStateException("Empty operation mix");
+	}
+	
+	private static Map<Operation, Integer> parseMix(String value) {
+		
+		Map<Operation, Integer> mix = new EnumMap<>(Operation.class);
+		for(String entry : value.split(",")) {
+			String[] parts = entry.split("=");
+			mix.put(Operation.valueOf(parts[0].trim().toUpperCase()), Integer.parseInt(parts[1].trim()));
+		}
+		
+		return mix;
+	}
+	
+	private void report() throws FileNotFoundException {
+		
+		File directory = new File("target/loadtest");
+		directory.mkdirs();
+		
+		System.out.printf("%nContract load test: %d clients, %ds%n", clients, durationSeconds);
+		System.out.printf("%-8s %10s %10s %10s %10s %10s %10s %8s%n", 
+				"op", "count", "ops/s", "p50 ms", "p99 ms", "p999 ms", "max ms", "errors");
+		
+		for(Operation operation : Operation.values()) {
+			
+			Histogram histogram = latencies.get(operation);
+			
+			System.out.printf("%-8s %10d %10.1f %10.2f %10.2f %10.2f %10.2f %8d%n",
+					operation.name().toLowerCase(),
+					histogram.getTotalCount(),
+					histogram.getTotalCount() / (double) durationSeconds,
+					histogram.getValueAtPercentile(50) / 1000.0,
+					histogram.getValueAtPercentile(99) / 1000.0,
+					histogram.getValueAtPercentile(99.9) / 1000.0,
+					histogram.getMaxValue() / 1000.0,
+					errors.get(operation).get());
+			
+			try(PrintStream out = new PrintStream(new File(directory, operation.name().toLowerCase() + ".hgrm"))) {
+				histogram.outputPercentileDistribution(out, 1000.0);
+			}
+		}
+	}
+}
@@ -0,0 +1,155 @@
+package finley.peter.nextgear.web.controller;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.assertj.core.groups.Tuple;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import finley.peter.nextgear.dao.ContractReplicaFeeder;
+import finley.peter.nextgear.model.Contract;
+import finley.peter.nextgear.model.ContractStatistic;
+import finley.peter.nextgear.model.ContractType;
+
+/**
+ * Integration test of the {@link ContractController} reading from two embedded
+ * replicas that lag a second behind the primary.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment=WebEnvironment.RANDOM_PORT, properties={
+		"contracts.replicas.count=2",
+		"contracts.replicas.lag=1000",
+		"spring.datasource.url=jdbc:h2:mem:replicaprimary;DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE",
+		"contracts.replicas.url=jdbc:h2:mem:replica{replica};DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE"
+})
+public class ContractControllerReplicaTest {
+
+	@Autowired
+	private TestRestTemplate restTemplate;
+	
+	@Autowired
+	private ContractReplicaFeeder contractReplicaFeeder;
+	
+	private static final ParameterizedTypeReference<List<Contract>> CONTRACT_LIST_PARAMETERIZED_TYPE_REF = 
+			new ParameterizedTypeReference<List<Contract>>() {};
+	
+	/**
+	 * A new contract is read from the primary by its creator, and from the
+	 * replicas by everyone once they have caught up.
+	 */
+	@Test
+	public void testReadYourWrites() throws InterruptedException {
+		
+		Contract contract = new Contract();
+		contract.setName("replicated");
+		contract.setBusinessNumber(4242L);
+		contract.setType(ContractType.SALES);
+		contract.setAmountRequested(1000);
+		
+		ResponseEntity<Contract> created = restTemplate.postForEntity("/contracts", contract, Contract.class);
+		assertThat(created.getStatusCode()).isEqualTo(HttpStatus.CREATED);
+		
+		String cookie = created.getHeaders().getFirst(HttpHeaders.SET_COOKIE);
+		assertThat(cookie).startsWith("contracts-last-write=");
+		
+		HttpHeaders headers = new HttpHeaders();
+		headers.add(HttpHeaders.COOKIE, cookie.substring(0, cookie.indexOf(';')));
+		
+		// the creator reads from the primary
+		assertThat(findByBusinessNumber(new HttpEntity<>(headers))).extracting("name").containsExactly("replicated");
+		
+		// everyone else reads from the replicas, which haven't caught up yet
+		assertThat(findByBusinessNumber(null)).isEmpty();
+		
+		awaitReplicas();
+		
+		// both replicas, in turn
+		assertThat(findByBusinessNumber(null)).extracting("name").containsExactly("replicated");
+		assertThat(findByBusinessNumber(null)).extracting("name").containsExactly("replicated");
+		
+		// with the statistics the contract changed
+		assertThat(statistics(null)).containsExactlyElementsOf(statistics(new HttpEntity<>(headers)));
+		
+		restTemplate.delete("/contracts/{0}", created.getBody().getId());
+	}
+	
+	/**
+	 * A contract updated by a client is read back updated by that client,
+	 * even after someone else has read it from a replica that hasn't caught
+	 * up with the update.
+	 */
+	@Test
+	public void testReadYourUpdates() throws InterruptedException {
+		
+		Contract contract = new Contract();
+		contract.setName("cached");
+		contract.setBusinessNumber(4343L);
+		contract.setType(ContractType.SALES);
+		contract.setAmountRequested(1000);
+		
+		Contract created = restTemplate.postForEntity("/contracts", contract, Contract.class).getBody();
+		awaitReplicas();
+		
+		contract.setName("cached updated");
+		ResponseEntity<Void> updated = restTemplate.exchange("/contracts/{0}", HttpMethod.PUT, 
+				new HttpEntity<>(contract), Void.class, created.getId());
+		assertThat(updated.getStatusCode()).isEqualTo(HttpStatus.NO_CONTENT);
+		
+		String cookie = updated.getHeaders().getFirst(HttpHeaders.SET_COOKIE);
+		HttpHeaders headers = new HttpHeaders();
+		headers.add(HttpHeaders.COOKIE, cookie.substring(0, cookie.indexOf(';')));
+		
+		// everyone else reads the old contract from a replica
+		assertThat(getContract(created.getId(), null).getName()).isEqualTo("cached");
+		
+		// which mustn't be cached for the writer to read
+		assertThat(getContract(created.getId(), new HttpEntity<>(headers)).getName()).isEqualTo("cached updated");
+		
+		awaitReplicas();
+		restTemplate.delete("/contracts/{0}", created.getId());
+	}
+	
+	private List<Tuple> statistics(HttpEntity<?> request) {
+		
+		List<ContractStatistic> statistics = restTemplate.exchange("/contracts/stats", HttpMethod.GET, request, 
+				new ParameterizedTypeReference<List<ContractStatistic>>() {}).getBody();
+		
+		return statistics.stream()
+				.sorted(Comparator.comparing(ContractStatistic::getId))
+				.map(statistic -> tuple(statistic.getId(), statistic.getCount(), statistic.getAmountRequestedTotal()))
+				.collect(Collectors.toList());
+	}
+	
+	private void awaitReplicas() throws InterruptedException {
+		
+		long deadline = System.currentTimeMillis() + 10000;
+		while(contractReplicaFeeder.getPending() > 0 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(50);
+		}
+	}
+	
+	private Contract getContract(long id, HttpEntity<?> request) {
+		return restTemplate.exchange("/contracts/{0}", HttpMethod.GET, request, Contract.class, id).getBody();
+	}
+	
+	private List<Contract> findByBusinessNumber(HttpEntity<?> request) {
+		return restTemplate.exchange("/contracts?businessNumber=4242", HttpMethod.GET, request, 
+				CONTRACT_LIST_PARAMETERIZED_TYPE_REF).getBody();
+	}
+}
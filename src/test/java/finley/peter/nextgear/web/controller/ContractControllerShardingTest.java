@@ -0,0 +1,154 @@
+package finley.peter.nextgear.web.controller;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+import finley.peter.nextgear.dao.ContractShards;
+import finley.peter.nextgear.model.Contract;
+import finley.peter.nextgear.model.ContractStatistic;
+import finley.peter.nextgear.model.ContractType;
+
+/**
+ * Integration test of the {@link ContractController} with contracts sharded
+ * across three embedded databases.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment=WebEnvironment.RANDOM_PORT, properties={
+		"contracts.sharding.shards=3",
+		"spring.datasource.url=jdbc:h2:mem:sharding0;DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE",
+		"contracts.sharding.url=jdbc:h2:mem:sharding{shard};DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE"
+})
+public class ContractControllerShardingTest {
+
+	@Autowired
+	private TestRestTemplate restTemplate;
+	
+	@Autowired
+	private ContractShards contractShards;
+	
+	@Autowired
+	private MetricRegistry metricRegistry;
+	
+	private static final ParameterizedTypeReference<List<Contract>> CONTRACT_LIST_PARAMETERIZED_TYPE_REF = 
+			new ParameterizedTypeReference<List<Contract>>() {};
+	
+	private static final ParameterizedTypeReference<List<ContractStatistic>> CONTRACT_STATISTIC_LIST_PARAMETERIZED_TYPE_REF = 
+			new ParameterizedTypeReference<List<ContractStatistic>>() {};
+	
+	/**
+	 * Contracts are spread across shards by business number, found by id, and
+	 * listed in id order across shards.
+	 */
+	@Test
+	public void testSharding() {
+		
+		List<Contract> created = new ArrayList<>();
+		for(long businessNumber = 1; businessNumber <= 9; businessNumber++) {
+			created.add(createContract("sharded" + businessNumber, businessNumber, 1000));
+		}
+		
+		for(Contract contract : created) {
+			assertThat(contractShards.shardOfId(contract.getId()))
+					.isEqualTo(contractShards.shardOf(contract.getBusinessNumber()));
+			assertThat(restTemplate.getForObject("/contracts/{0}", Contract.class, contract.getId()).getName())
+					.isEqualTo(contract.getName());
+		}
+		
+		assertThat(created.stream().map(contract -> contractShards.shardOfId(contract.getId())).distinct().count())
+				.isEqualTo(3);
+		
+		// pages of two, merged across the shards
+		List<Contract> listed = new ArrayList<>();
+		String uri = "/contracts?limit=2";
+		while(uri != null) {
+			
+			ResponseEntity<List<Contract>> page = restTemplate.exchange(uri, HttpMethod.GET, null, CONTRACT_LIST_PARAMETERIZED_TYPE_REF);
+			listed.addAll(page.getBody());
+			
+			String link = page.getHeaders().getFirst("Link");
+			uri = link == null ? null : link.substring(link.indexOf("/contracts"), link.indexOf('>'));
+		}
+		
+		assertThat(listed).extracting("id").containsExactlyInAnyOrder(created.stream().map(Contract::getId).toArray());
+		assertThat(listed).isSortedAccordingTo((contract1, contract2) -> contract1.getId().compareTo(contract2.getId()));
+		
+		List<Contract> filtered = restTemplate.exchange("/contracts?businessNumber=5", HttpMethod.GET, null, 
+				CONTRACT_LIST_PARAMETERIZED_TYPE_REF).getBody();
+		assertThat(filtered).extracting("name").containsExactly("sharded5");
+		
+		// statistics are added up across the shards
+		ContractStatistic pendingSales = restTemplate.exchange("/contracts/stats", HttpMethod.GET, null, 
+				CONTRACT_STATISTIC_LIST_PARAMETERIZED_TYPE_REF).getBody().stream()
+				.filter(statistic -> statistic.getStatus() == null && statistic.getType() == ContractType.SALES)
+				.findFirst()
+				.get();
+		assertThat(pendingSales.getCount()).isEqualTo(9);
+		assertThat(pendingSales.getAmountRequestedTotal()).isEqualTo(9000);
+		
+		// updates and deletes go to the contract's shard
+		Contract contract = created.get(0);
+		contract.setName("sharded updated");
+		restTemplate.put("/contracts/{0}", contract, contract.getId());
+		assertThat(restTemplate.getForObject("/contracts/{0}", Contract.class, contract.getId()).getName())
+				.isEqualTo("sharded updated");
+		
+		restTemplate.delete("/contracts/{0}", contract.getId());
+		assertThat(restTemplate.getForEntity("/contracts/{0}", ErrorInformation.class, contract.getId()).getStatusCode())
+				.isEqualTo(HttpStatus.NOT_FOUND);
+		
+		ResponseEntity<DeleteResult> deleted = restTemplate.exchange("/contracts?type=SALES", HttpMethod.DELETE, null, 
+				DeleteResult.class);
+		assertThat(deleted.getBody().getDeleted()).isEqualTo(8);
+	}
+	
+	/**
+	 * The sharded service is timed separately from the service calls it makes
+	 * to each shard.
+	 */
+	@Test
+	public void testShardedServiceTimed() {
+		
+		Timer sharded = metricRegistry.timer("timer.sharded.ContractService.findPage");
+		Timer service = metricRegistry.timer("timer.service.ContractService.findPage");
+		long shardedCount = sharded.getCount();
+		long serviceCount = service.getCount();
+		
+		assertThat(restTemplate.exchange("/contracts?limit=2", HttpMethod.GET, null, CONTRACT_LIST_PARAMETERIZED_TYPE_REF)
+				.getStatusCode()).isEqualTo(HttpStatus.OK);
+		
+		assertThat(sharded.getCount() - shardedCount).isEqualTo(1);
+		assertThat(service.getCount() - serviceCount).isEqualTo(3);
+	}
+	
+	private Contract createContract(String name, long businessNumber, int amountRequested) {
+		
+		Contract contract = new Contract();
+		contract.setName(name);
+		contract.setBusinessNumber(businessNumber);
+		contract.setType(ContractType.SALES);
+		contract.setAmountRequested(amountRequested);
+		
+		ResponseEntity<Contract> response = restTemplate.postForEntity("/contracts", contract, Contract.class);
+		
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.CREATED);
+		
+		return response.getBody();
+	}
+}
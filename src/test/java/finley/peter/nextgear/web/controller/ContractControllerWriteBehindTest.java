@@ -0,0 +1,91 @@
+package finley.peter.nextgear.web.controller;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.net.URI;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import finley.peter.nextgear.model.Contract;
+import finley.peter.nextgear.model.ContractType;
+import finley.peter.nextgear.service.PendingContract;
+
+/**
+ * Integration test of creating contracts through the {@link ContractController}
+ * with write-behind enabled. Uses its own database so the contracts it creates
+ * don't affect {@link ContractControllerIntegrationTest}.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment=WebEnvironment.RANDOM_PORT, properties={
+		"contracts.write-behind.enabled=true",
+		"spring.datasource.url=jdbc:h2:mem:writebehind"
+})
+public class ContractControllerWriteBehindTest {
+
+	@Autowired
+	private TestRestTemplate restTemplate;
+	
+	@Test
+	public void testCreate() throws InterruptedException {
+		
+		Contract contract = new Contract();
+		contract.setName("write-behind");
+		contract.setBusinessNumber(1);
+		contract.setType(ContractType.SALES);
+		contract.setAmountRequested(1000);
+		
+		ResponseEntity<PendingContract> response = restTemplate.postForEntity("/contracts", contract, PendingContract.class);
+		
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.ACCEPTED);
+		assertThat(response.getBody().getTrackingId()).isNotNull();
+		
+		URI location = response.getHeaders().getLocation();
+		assertThat(location.getPath()).isEqualTo("/contracts/pending/" + response.getBody().getTrackingId());
+		
+		// poll until written
+		PendingContract pending = response.getBody();
+		long deadline = System.currentTimeMillis() + 5000;
+		while(pending.getState() == PendingContract.State.QUEUED && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+			pending = restTemplate.getForObject(location, PendingContract.class);
+		}
+		
+		assertThat(pending.getState()).isEqualTo(PendingContract.State.CREATED);
+		
+		Contract created = restTemplate.getForObject("/contracts/{0}", Contract.class, pending.getContract().getId());
+		assertThat(created.getName()).isEqualTo("write-behind");
+		
+		ResponseEntity<WriteQueueStatus> status = restTemplate.getForEntity("/contracts/pending", WriteQueueStatus.class);
+		assertThat(status.getBody().isEnabled()).isTrue();
+		assertThat(status.getBody().getQueued()).isEqualTo(0);
+	}
+	
+	/**
+	 * Invalid contracts are rejected immediately rather than queued.
+	 */
+	@Test
+	public void testCreateInvalid() {
+		
+		Contract contract = new Contract();
+		contract.setName("write-behind");
+		contract.setBusinessNumber(1);
+		contract.setType(ContractType.EXPRESS);
+		contract.setAmountRequested(50000);
+		
+		ResponseEntity<ErrorInformation> response = restTemplate.postForEntity("/contracts", contract, ErrorInformation.class);
+		
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+		
+		ResponseEntity<ErrorInformation> missing = restTemplate.getForEntity("/contracts/pending/{0}", ErrorInformation.class, "unknown");
+		
+		assertThat(missing.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+	}
+}